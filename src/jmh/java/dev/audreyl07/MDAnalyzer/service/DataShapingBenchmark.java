@@ -0,0 +1,85 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read path of GET /{dataType}/{resultType}/{symbol}: decode the /exec JSON into a columnar series
+ * (HttpQueryBackend), shape it in DataService, then serialize the response the way Spring MVC does (Jackson).
+ *
+ * Run with allocation profiling: ./mvnw -Pjmh test-compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataShapingBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int rows;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DataService dataService = new DataService();
+
+    private String responseBody;
+    private List<Object> dataset;
+    private OhlcvSeries series;
+    private List<Map<String, Object>> fullResponse;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        responseBody = ExecFixtures.historicalResponse(rows);
+        dataset = ExecFixtures.dataset(responseBody);
+        series = HttpQueryBackend.toOhlcvSeries(dataset);
+        fullResponse = dataService.outputAsFull(series);
+    }
+
+    @Benchmark
+    public Map<String, Object> decodeExecResponse() throws Exception {
+        return mapper.readValue(responseBody, Map.class);
+    }
+
+    @Benchmark
+    public OhlcvSeries toOhlcvSeries() {
+        return HttpQueryBackend.toOhlcvSeries(dataset);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> outputAsSingle() {
+        return dataService.outputAsSingle(series);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> outputAsFull() {
+        return dataService.outputAsFull(series);
+    }
+
+    @Benchmark
+    public byte[] serializeFullResponse() throws Exception {
+        return mapper.writeValueAsBytes(fullResponse);
+    }
+
+    @Benchmark
+    public byte[] endToEndFull() throws Exception {
+        Map<String, Object> response = mapper.readValue(responseBody, Map.class);
+        List<Object> decoded = (List<Object>) response.get("dataset");
+        return mapper.writeValueAsBytes(dataService.outputAsFull(HttpQueryBackend.toOhlcvSeries(decoded)));
+    }
+}
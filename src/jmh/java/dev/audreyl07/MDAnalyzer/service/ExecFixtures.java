@@ -0,0 +1,73 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recorded QuestDB /exec payloads for benchmarks.
+ *
+ * The 1k-row historical_d response under fixtures/ is used as-is; larger sizes replay its
+ * rows with consecutive dates so the JSON keeps the recorded shape and value distribution.
+ */
+final class ExecFixtures {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String HISTORICAL_D_1K = "/fixtures/exec_historical_d_1k.json";
+
+    private ExecFixtures() {
+    }
+
+    /**
+     * @return a /exec response body for SELECT * FROM historical_d with {@code rows} rows
+     */
+    static String historicalResponse(int rows) {
+        Map<String, Object> recorded = load(HISTORICAL_D_1K);
+        List<Object> dataset = (List<Object>) recorded.get("dataset");
+        if (rows == dataset.size()) {
+            return write(recorded);
+        }
+        List<Object> expanded = new ArrayList<>(rows);
+        LocalDate date = LocalDate.of(1990, 1, 2);
+        for (int i = 0; i < rows; i++) {
+            List<Object> row = new ArrayList<>((List<Object>) dataset.get(i % dataset.size()));
+            row.set(1, date.plusDays(i) + "T00:00:00.000000Z");
+            expanded.add(row);
+        }
+        Map<String, Object> response = new LinkedHashMap<>(recorded);
+        response.put("dataset", expanded);
+        response.put("count", rows);
+        return write(response);
+    }
+
+    static List<Object> dataset(String responseBody) {
+        try {
+            return (List<Object>) MAPPER.readValue(responseBody, Map.class).get("dataset");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, Object> load(String resource) {
+        try (InputStream in = ExecFixtures.class.getResourceAsStream(resource)) {
+            return MAPPER.readValue(in, Map.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String write(Map<String, Object> response) {
+        try {
+            return MAPPER.writeValueAsString(response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
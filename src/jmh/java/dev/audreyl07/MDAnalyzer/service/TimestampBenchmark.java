@@ -0,0 +1,58 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-row cost of TimestampDecoder over the timestamps of the recorded fixture: the QuestDB string
+ * layout, and epoch microseconds as returned in epochTimestamps mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimestampBenchmark {
+
+    private String[] timestamps;
+    private Long[] epochMicros;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Object> dataset = ExecFixtures.dataset(ExecFixtures.historicalResponse(1000));
+        timestamps = new String[dataset.size()];
+        epochMicros = new Long[dataset.size()];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = (String) ((List<Object>) dataset.get(i)).get(1);
+            epochMicros[i] = Instant.parse(timestamps[i]).toEpochMilli() * 1000;
+        }
+    }
+
+    @Benchmark
+    public void convertToMillisecond(Blackhole bh) {
+        bh.consume(TimestampDecoder.toEpochSeconds(timestamps[index]));
+        index = index + 1 == timestamps.length ? 0 : index + 1;
+    }
+
+    @Benchmark
+    public void convertEpochMicros(Blackhole bh) {
+        bh.consume(TimestampDecoder.toEpochSeconds(epochMicros[index]));
+        index = index + 1 == epochMicros.length ? 0 : index + 1;
+    }
+}
@@ -0,0 +1,193 @@
+package dev.audreyl07.MDAnalyzer.loadtest;
+
+import dev.audreyl07.MDAnalyzer.MdAnalyzerApplication;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load test: starts MDAnalyzer against {@link QuestDBStub} on loopback and drives a
+ * weighted mix of GET requests from closed-loop client threads.
+ *
+ * Options (all --name=value):
+ * - concurrency (32): client threads
+ * - duration (30) / warmup (5): seconds; warmup samples are discarded
+ * - mix (stock/full/{ticker}:70,market/single/high52w:30): path templates with weights
+ * - tickers (50): number of synthetic tickers substituted for {ticker}
+ * - rows (7500): rows per replayed series response
+ * - latency (5) / jitter (5): stub delay in milliseconds
+ * - replay: directory with recorded /exec bodies named <table>.json
+ * - report (target/loadtest): directory for the summary and per-scenario HdrHistogram distributions
+ *
+ * Run: ./mvnw -Ploadtest test-compile exec:exec "-Dloadtest.args=--concurrency=64 --duration=60"
+ */
+public class LoadTestHarness {
+
+    private record Scenario(String template, int weight, ConcurrentHistogram histogram, AtomicLong errors) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration", "30"));
+        long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "5"));
+        int tickers = Integer.parseInt(options.getOrDefault("tickers", "50"));
+        int rows = Integer.parseInt(options.getOrDefault("rows", "7500"));
+        long latency = Long.parseLong(options.getOrDefault("latency", "5"));
+        long jitter = Long.parseLong(options.getOrDefault("jitter", "5"));
+        Path replay = options.containsKey("replay") ? Path.of(options.get("replay")) : null;
+        Path reportDir = Path.of(options.getOrDefault("report", "target/loadtest"));
+        List<Scenario> scenarios = scenarios(options.getOrDefault("mix", "stock/full/{ticker}:70,market/single/high52w:30"));
+
+        try (QuestDBStub stub = new QuestDBStub(rows, latency, jitter, replay, Math.max(16, concurrency * 2));
+             ConfigurableApplicationContext app = SpringApplication.run(MdAnalyzerApplication.class,
+                     "--server.port=0",
+                     "--mdanalyzer.hostName=" + stub.getHostName(),
+                     "--mdanalyzer.questdb.maxConnections=" + Math.max(20, concurrency),
+                     "--spring.main.banner-mode=off",
+                     "--logging.level.root=WARN")) {
+            int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+            String baseUrl = "http://127.0.0.1:" + port + "/";
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(Executors.newFixedThreadPool(concurrency))
+                    .build();
+
+            long start = System.nanoTime();
+            long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+            long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+            ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                workers.submit(() -> drive(client, baseUrl, scenarios, tickers, measureFrom, end));
+            }
+            workers.shutdown();
+            workers.awaitTermination(warmupSeconds + durationSeconds + 60, TimeUnit.SECONDS);
+
+            report(System.out, scenarios, durationSeconds, concurrency, rows, latency, jitter);
+            Files.createDirectories(reportDir);
+            try (PrintStream out = new PrintStream(Files.newOutputStream(reportDir.resolve("summary.txt")))) {
+                report(out, scenarios, durationSeconds, concurrency, rows, latency, jitter);
+            }
+            for (Scenario scenario : scenarios) {
+                String name = scenario.template().replaceAll("[^A-Za-z0-9]+", "_");
+                try (PrintStream out = new PrintStream(Files.newOutputStream(reportDir.resolve(name + ".hgrm")))) {
+                    scenario.histogram().outputPercentileDistribution(out, 1000.0);
+                }
+            }
+            System.out.println("Reports written to " + reportDir.toAbsolutePath());
+        }
+        System.exit(0);
+    }
+
+    private static void drive(HttpClient client, String baseUrl, List<Scenario> scenarios, int tickers,
+                              long measureFrom, long end) {
+        int totalWeight = scenarios.stream().mapToInt(Scenario::weight).sum();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            Scenario scenario = pick(scenarios, random.nextInt(totalWeight));
+            String path = scenario.template().replace("{ticker}", "T" + random.nextInt(tickers));
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+            long started = System.nanoTime();
+            boolean ok;
+            try {
+                HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                ok = response.statusCode() == 200;
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long finished = System.nanoTime();
+            if (started >= measureFrom) {
+                if (ok) {
+                    scenario.histogram().recordValue(TimeUnit.NANOSECONDS.toMicros(finished - started));
+                } else {
+                    scenario.errors().incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static Scenario pick(List<Scenario> scenarios, int point) {
+        for (Scenario scenario : scenarios) {
+            point -= scenario.weight();
+            if (point < 0) {
+                return scenario;
+            }
+        }
+        return scenarios.get(scenarios.size() - 1);
+    }
+
+    private static void report(PrintStream out, List<Scenario> scenarios, long durationSeconds, int concurrency,
+                               int rows, long latency, long jitter) {
+        out.printf(Locale.ROOT, "concurrency=%d duration=%ds rows=%d stubLatency=%d+%dms%n",
+                concurrency, durationSeconds, rows, latency, jitter);
+        out.printf(Locale.ROOT, "%-32s %9s %9s %9s %9s %9s %9s %9s %7s%n",
+                "scenario", "count", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        Histogram total = new Histogram(3);
+        long errors = 0;
+        for (Scenario scenario : scenarios) {
+            Histogram h = scenario.histogram().copy();
+            total.add(h);
+            errors += scenario.errors().get();
+            line(out, scenario.template(), h, durationSeconds, scenario.errors().get());
+        }
+        line(out, "TOTAL", total, durationSeconds, errors);
+    }
+
+    private static void line(PrintStream out, String name, Histogram h, long durationSeconds, long errors) {
+        out.printf(Locale.ROOT, "%-32s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %7d%n",
+                name, h.getTotalCount(), h.getTotalCount() / (double) durationSeconds,
+                h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0, h.getValueAtPercentile(99.9) / 1000.0,
+                h.getMaxValue() / 1000.0, errors);
+    }
+
+    private static List<Scenario> scenarios(String mix) {
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            int idx = part.lastIndexOf(':');
+            String template = idx > 0 ? part.substring(0, idx) : part;
+            int weight = idx > 0 ? Integer.parseInt(part.substring(idx + 1)) : 1;
+            scenarios.add(new Scenario(template, weight, new ConcurrentHistogram(3), new AtomicLong()));
+        }
+        return scenarios;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int idx = arg.indexOf('=');
+                options.put(arg.substring(2, idx), arg.substring(idx + 1));
+            }
+        }
+        return options;
+    }
+}
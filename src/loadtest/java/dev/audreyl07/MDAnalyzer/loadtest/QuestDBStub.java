@@ -0,0 +1,149 @@
+package dev.audreyl07.MDAnalyzer.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback stand-in for QuestDB's HTTP /exec endpoint.
+ *
+ * Replays recorded /exec responses by table:
+ * - historical_d / indices_d: the recorded 1k-row OHLCV response, replayed to {@code seriesRows} rows
+ * - analysis_market: the recorded breadth response
+ * - MAX(date) lookups: a fixed latest date
+ * - anything else: {"dml":"OK"}
+ *
+ * A recorded body named {@code <table>.json} in the replay directory overrides the built-in one.
+ * Every response is delayed by {@code latencyMillis} plus a uniform jitter, to model QuestDB work.
+ */
+public class QuestDBStub implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, byte[]> responses = new LinkedHashMap<>();
+    private final byte[] latestDate = "{\"dataset\":[[20250101]],\"count\":1}".getBytes(StandardCharsets.UTF_8);
+    private final byte[] dmlOk = "{\"dml\":\"OK\"}".getBytes(StandardCharsets.UTF_8);
+    private final long latencyMillis;
+    private final long jitterMillis;
+
+    public QuestDBStub(int seriesRows, long latencyMillis, long jitterMillis, Path replayDir, int threads) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        byte[] series = expandSeries(load("/fixtures/exec_historical_d_1k.json"), seriesRows);
+        responses.put("historical_d", series);
+        responses.put("indices_d", series);
+        responses.put("analysis_market", MAPPER.writeValueAsBytes(load("/fixtures/exec_analysis_market_1k.json")));
+        if (replayDir != null) {
+            for (String table : List.copyOf(responses.keySet())) {
+                Path recorded = replayDir.resolve(table + ".json");
+                if (Files.exists(recorded)) {
+                    responses.put(table, Files.readAllBytes(recorded));
+                }
+            }
+        }
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.createContext("/exec", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getHostName() {
+        return "127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String query = queryParameter(exchange.getRequestURI().getRawQuery());
+        byte[] body = dmlOk;
+        if (query.contains("MAX(date)")) {
+            body = latestDate;
+        } else {
+            for (Map.Entry<String, byte[]> entry : responses.entrySet()) {
+                if (query.contains("FROM " + entry.getKey())) {
+                    body = entry.getValue();
+                    break;
+                }
+            }
+        }
+        sleep();
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private void sleep() {
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String queryParameter(String rawQuery) {
+        if (rawQuery == null) {
+            return "";
+        }
+        for (String part : rawQuery.split("&")) {
+            if (part.startsWith("query=")) {
+                return URLDecoder.decode(part.substring(6), StandardCharsets.UTF_8);
+            }
+        }
+        return "";
+    }
+
+    private static byte[] expandSeries(Map<String, Object> recorded, int rows) throws IOException {
+        List<Object> dataset = (List<Object>) recorded.get("dataset");
+        List<Object> expanded = new ArrayList<>(rows);
+        LocalDate date = LocalDate.of(1990, 1, 2);
+        for (int i = 0; i < rows; i++) {
+            List<Object> row = new ArrayList<>((List<Object>) dataset.get(i % dataset.size()));
+            row.set(1, date.plusDays(i) + "T00:00:00.000000Z");
+            expanded.add(row);
+        }
+        Map<String, Object> response = new LinkedHashMap<>(recorded);
+        response.put("dataset", expanded);
+        response.put("count", rows);
+        return MAPPER.writeValueAsBytes(response);
+    }
+
+    private static Map<String, Object> load(String resource) {
+        try (InputStream in = QuestDBStub.class.getResourceAsStream(resource)) {
+            return MAPPER.readValue(in, Map.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,52 @@
+package dev.audreyl07.MDAnalyzer.controller;
+
+import dev.audreyl07.MDAnalyzer.service.QueryBackend;
+import dev.audreyl07.MDAnalyzer.service.QueryBulkheads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps a full {@link QueryBulkheads} bulkhead to 503 with Retry-After, so clients back off instead
+ * of receiving an empty series. A failed {@link QueryBackend} read is a 503 as well; the body is
+ * never built, so no ETag or max-age is sent for it.
+ *
+ * Bodies are always JSON, since a /stream query fails after its NDJSON content type was set.
+ */
+@RestControllerAdvice
+public class BulkheadExceptionHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkheadExceptionHandler.class);
+
+    @ExceptionHandler(QueryBulkheads.BulkheadFullException.class)
+    public ResponseEntity<Object> bulkheadFull(QueryBulkheads.BulkheadFullException e) {
+        log.warn(e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(failure(e));
+    }
+
+    @ExceptionHandler(QueryBackend.QueryFailedException.class)
+    public ResponseEntity<Object> queryFailed(QueryBackend.QueryFailedException e) {
+        log.warn(e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(failure(e));
+    }
+
+    private static Map<String, Object> failure(RuntimeException e) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("success", Boolean.FALSE);
+        map.put("error", e.getMessage());
+        return map;
+    }
+}
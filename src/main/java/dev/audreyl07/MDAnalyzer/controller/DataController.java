@@ -1,9 +1,42 @@
 package dev.audreyl07.MDAnalyzer.controller;
 
+import dev.audreyl07.MDAnalyzer.service.BreadthEngine;
+import dev.audreyl07.MDAnalyzer.service.CorrelationService;
 import dev.audreyl07.MDAnalyzer.service.DataService;
+import dev.audreyl07.MDAnalyzer.service.IndicatorService;
+import dev.audreyl07.MDAnalyzer.service.QueryBackend;
+import dev.audreyl07.MDAnalyzer.service.RelativeStrengthRanker;
+import dev.audreyl07.MDAnalyzer.service.ScreenerService;
+import dev.audreyl07.MDAnalyzer.service.SeriesCache;
+import dev.audreyl07.MDAnalyzer.service.SeriesPushService;
+import dev.audreyl07.MDAnalyzer.service.SeriesStore;
+import dev.audreyl07.MDAnalyzer.service.SeriesStreamWriter;
+import dev.audreyl07.MDAnalyzer.service.TickerGroups;
+import dev.audreyl07.MDAnalyzer.service.Watermarks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * REST controller exposing data retrieval endpoints for market datasets.
@@ -13,23 +46,337 @@ import org.springframework.web.bind.annotation.*;
  *   - dataType: "stock" | "index" | "market" (market returns analysis series)
  *   - resultType: "single" (default) | "full"
  *   - symbol: ticker symbol, e.g., AAPL, ^GSPC
+ *   - responses carry a weak ETag built from the table's latest processed date and a public
+ *     Cache-Control max-age, so clients revalidate with If-None-Match and get 304 until the next pipeline run
+ *   - since (optional, epoch seconds): only rows after that time; X-Series-Watermark carries the time of
+ *     the newest row the client now has, to be sent as since on the next poll
+ * - GET /indicator/{dataType}/{symbol}/{indicator}?length=..&k=..&since=..: Indicator computed from the
+ *   ticker's series, one row per bar after the warm-up
+ *   - indicator: sma | ema | rsi | atr (length), bollinger (length, k; middle/upper/lower), high52w | low52w
+ *   - versioned like the series responses (ETag, since, X-Series-Watermark)
+ * - GET /rs/{period}/{symbol}?since=..: Relative-strength percentile history of a stock from rs_rank_d
+ *   - period: 1m | 3m | 6m | 12m; rows {time, value (0-100 percentile), return}
+ *   - versioned like the series responses
+ * - GET /group/{group}/{type}?since=..: Breadth of a ticker group from analysis_group, rows {time, value}
+ *   - type: high52w | low52w | ma_n | ma_n_m; 404 for an unknown group; versioned like the series responses
+ * - GET /breadth/{dataType}?conditions=..&since=..: Percentage of tickers meeting all listed conditions
+ *   per date, from in-memory bitsets ({@link BreadthEngine})
+ *   - conditions: comma separated, e.g. above_sma:200,high52w or rsi_above:14:70
+ *   - rows: {time, count, total, percentage}; versioned like the series responses
+ * - GET /screener/{dataType}?filters=..&sort=..&limit=..: Tickers of the latest day matching every filter
+ *   ({@link ScreenerService})
+ *   - filters: comma separated field:min:max with open bounds left empty, e.g. pctHigh52w:-5:,volume:1000000:
+ *   - sort: a field, prefixed with - for descending; limit: at most mdanalyzer.screener.maxLimit rows
+ * - GET /correlation/{dataType}?tickers=..&window=..: Correlation matrix of the tickers' daily log returns
+ *   over the last window trading days ({@link CorrelationService})
+ *   - body: {tickers, missing, from, to, observations, matrix}, matrix rows in the order of tickers
+ *   - at most mdanalyzer.correlation.maxTickers tickers and maxWindow days; same ETag as the series responses
+ * - GET /stream/{dataType}/{resultType}/{symbols}?format=ndjson|sse: Stream the same rows as they are
+ *   read, as NDJSON (default) or server-sent events
+ *   - dataType: "stock" | "index"
+ *   - symbols: one ticker, or several separated by commas (rows then carry a ticker field)
+ * - GET /subscribe?stocks=..&indices=..&analysis=..: Server-sent events carrying the rows each pipeline
+ *   stage writes for the listed tickers and analysis types (comma separated)
+ *   - event subscribed: {"keys": n}, sent once the subscription is registered
+ *   - event bars: {"table", "ticker", "rows": [full OHLCV rows]}
+ *   - event analysis: {"table", "type", "rows": [{time, value}]}
+ *   - 400 for no or too many keys or an unknown analysis type, 503 when the subscriber limit is reached
  */
-@CrossOrigin(origins = "http://localhost:1234")
+@CrossOrigin(origins = "http://localhost:1234", exposedHeaders = DataController.SERIES_WATERMARK)
 @RestController
 @RequestMapping("")
 public class DataController {
 
+    private static final Logger log = LoggerFactory.getLogger(DataController.class);
+
+    static final String SERIES_WATERMARK = "X-Series-Watermark";
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     @Autowired
     DataService dataService;
 
+    @Autowired
+    Watermarks watermarks;
+
+    @Autowired
+    SeriesPushService seriesPushService;
+
+    @Autowired
+    IndicatorService indicatorService;
+
+    @Autowired
+    BreadthEngine breadthEngine;
+
+    @Autowired
+    ScreenerService screenerService;
+
+    @Autowired
+    CorrelationService correlationService;
+
+    @Autowired
+    TickerGroups tickerGroups;
+
+    @Value("${mdanalyzer.http.maxAgeSeconds:300}")
+    long maxAgeSeconds = 300;
+
+    @Value("${mdanalyzer.stream.maxTickers:1000}")
+    int maxStreamTickers = 1000;
+
+    @Value("${mdanalyzer.stream.flushRows:500}")
+    int flushRows = 500;
+
+    @Value("${mdanalyzer.indicators.maxLength:1000}")
+    int maxIndicatorLength = 1000;
+
+    @Value("${mdanalyzer.breadth.maxConditionsPerRequest:8}")
+    int maxBreadthConditions = 8;
+
+    @Value("${mdanalyzer.screener.maxLimit:1000}")
+    int maxScreenerLimit = 1000;
+
+    @Value("${mdanalyzer.correlation.maxTickers:500}")
+    int maxCorrelationTickers = 500;
+
+    @Value("${mdanalyzer.correlation.maxWindow:1260}")
+    int maxCorrelationWindow = 1260;
+
+    @Value("${mdanalyzer.push.timeoutMillis:1800000}")
+    long pushTimeoutMillis = 1800000;
+
     @GetMapping(value = "/{dataType}/{resultType}/{symbol}")
-    public ResponseEntity<Object> getData(@PathVariable String dataType, @PathVariable String resultType, @PathVariable String symbol) {
-        System.out.println("dataType:" + dataType);
-        System.out.println("resultType:" + resultType);
-        System.out.println("symbol:" + symbol);
-        if ("market".equalsIgnoreCase(dataType)) {
-            return ResponseEntity.ok().body(dataService.getAnalysis(symbol));
+    public ResponseEntity<Object> getData(@PathVariable String dataType, @PathVariable String resultType,
+                                          @PathVariable String symbol,
+                                          @RequestParam(required = false) Long since, WebRequest webRequest) {
+        log.debug("getData dataType={} resultType={} symbol={} since={}", dataType, resultType, symbol, since);
+        boolean market = "market".equalsIgnoreCase(dataType);
+        String table = market ? SeriesStore.ANALYSIS_TABLE : DataService.tableFor(dataType);
+        return versioned(table, since, webRequest, () -> market ? dataService.getAnalysis(symbol, since)
+                : dataService.getData(dataType, resultType, symbol, since));
+    }
+
+    @GetMapping(value = "/indicator/{dataType}/{symbol}/{indicator}")
+    public ResponseEntity<Object> getIndicator(@PathVariable String dataType, @PathVariable String symbol,
+                                               @PathVariable String indicator,
+                                               @RequestParam(required = false) Integer length,
+                                               @RequestParam(defaultValue = "2") double k,
+                                               @RequestParam(required = false) Long since, WebRequest webRequest) {
+        log.debug("getIndicator dataType={} symbol={} indicator={} length={} k={}", dataType, symbol, indicator, length, k);
+        String table = DataService.tableFor(dataType);
+        IndicatorService.Indicator parsed = IndicatorService.Indicator.parse(indicator);
+        int window = length != null ? length : parsed == null ? 0 : parsed.getDefaultLength();
+        if (table == null || parsed == null || (parsed.getDefaultLength() > 0 && (window < 1 || window > maxIndicatorLength))
+                || !(k > 0)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return versioned(table, since, webRequest, () ->
+                indicatorService.toRows(indicatorService.compute(table, symbol, parsed, window, k), since));
+    }
+
+    @GetMapping(value = "/rs/{period}/{symbol}")
+    public ResponseEntity<Object> getRelativeStrength(@PathVariable String period, @PathVariable String symbol,
+                                                      @RequestParam(required = false) Long since, WebRequest webRequest) {
+        log.debug("getRelativeStrength period={} symbol={} since={}", period, symbol, since);
+        if (!RelativeStrengthRanker.PERIODS.contains(period)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return versioned("rs_rank_d", since, webRequest, () -> dataService.getRelativeStrength(period, symbol, since));
+    }
+
+    @GetMapping(value = "/group/{group}/{type}")
+    public ResponseEntity<Object> getGroupBreadth(@PathVariable String group, @PathVariable String type,
+                                                  @RequestParam(required = false) Long since, WebRequest webRequest) {
+        log.debug("getGroupBreadth group={} type={} since={}", group, type, since);
+        String analysisType = DataService.groupBreadthType(type);
+        if (analysisType == null) {
+            return ResponseEntity.badRequest().build();
         }
-        return ResponseEntity.ok().body(dataService.getData(dataType, resultType, symbol));
+        if (tickerGroups.get(group) == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return versioned("analysis_group", since, webRequest, () -> dataService.getGroupBreadth(group, analysisType, since));
+    }
+
+    @GetMapping(value = "/breadth/{dataType}")
+    public ResponseEntity<Object> getBreadth(@PathVariable String dataType, @RequestParam String conditions,
+                                             @RequestParam(required = false) Long since, WebRequest webRequest) {
+        log.debug("getBreadth dataType={} conditions={} since={}", dataType, conditions, since);
+        String table = DataService.tableFor(dataType);
+        List<String> specs = split(conditions);
+        List<BreadthEngine.Condition> parsed = specs.stream().map(BreadthEngine.Condition::parse).toList();
+        if (table == null || parsed.isEmpty() || parsed.size() > maxBreadthConditions
+                || parsed.stream().anyMatch(c -> c == null || c.length() > maxIndicatorLength)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return versioned(table, since, webRequest, () -> breadthEngine.toRows(breadthEngine.compute(table, parsed), since));
+    }
+
+    @GetMapping(value = "/screener/{dataType}")
+    public ResponseEntity<Object> screen(@PathVariable String dataType, @RequestParam(defaultValue = "") String filters,
+                                         @RequestParam(required = false) String sort,
+                                         @RequestParam(defaultValue = "100") int limit, WebRequest webRequest) {
+        log.debug("screen dataType={} filters={} sort={} limit={}", dataType, filters, sort, limit);
+        String table = DataService.tableFor(dataType);
+        List<ScreenerService.Filter> parsed = split(filters).stream().map(ScreenerService.Filter::parse).toList();
+        boolean descending = sort != null && sort.startsWith("-");
+        ScreenerService.Field sortField = sort == null ? null : ScreenerService.Field.parse(descending ? sort.substring(1) : sort);
+        if (table == null || parsed.stream().anyMatch(f -> f == null) || (sort != null && sortField == null)
+                || limit < 1 || limit > maxScreenerLimit) {
+            return ResponseEntity.badRequest().build();
+        }
+        return versioned(table, null, webRequest, () -> screenerService.screen(table, parsed, sortField, descending, limit));
+    }
+
+    @GetMapping(value = "/correlation/{dataType}")
+    public ResponseEntity<Object> getCorrelation(@PathVariable String dataType, @RequestParam String tickers,
+                                                 @RequestParam(defaultValue = "252") int window, WebRequest webRequest) {
+        log.debug("getCorrelation dataType={} tickers={} window={}", dataType, tickers, window);
+        String table = DataService.tableFor(dataType);
+        List<String> basket = split(tickers);
+        if (table == null || basket.size() < 2 || basket.size() > maxCorrelationTickers
+                || window < 2 || window > maxCorrelationWindow) {
+            return ResponseEntity.badRequest().build();
+        }
+        return cacheable(table, webRequest, response -> {
+            CorrelationService.Result result = correlationService.compute(table, basket, window);
+            return result == null ? ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build()
+                    : response.body(CorrelationService.toMap(result));
+        });
+    }
+
+    /**
+     * Serves rows derived from one table like {@link #cacheable}, with the series watermark header.
+     */
+    private ResponseEntity<Object> versioned(String table, Long since, WebRequest webRequest,
+                                             Supplier<List<Map<String, Object>>> rows) {
+        return cacheable(table, webRequest, response -> withSeriesWatermark(response, rows.get(), since));
+    }
+
+    /**
+     * Serves a body derived from one table with a weak ETag built from the date of the newest row served and the
+     * table's write generation ({@link Watermarks}) and a public max-age; 304 when the client's ETag is current.
+     * The ETag is only attached to a built body, so a read that throws leaves no validator behind.
+     */
+    private ResponseEntity<Object> cacheable(String table, WebRequest webRequest,
+                                             Function<ResponseEntity.BodyBuilder, ResponseEntity<Object>> body) {
+        String watermark = table == null ? null : watermarks.served(table);
+        if (watermark == null) {
+            return body.apply(ResponseEntity.ok().cacheControl(CacheControl.noCache()));
+        }
+        String etag = "W/\"" + table + "-" + watermark + "-" + watermarks.generation(table) + "\"";
+        CacheControl cacheControl = CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds)).cachePublic();
+        if (matches(webRequest.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        return body.apply(ResponseEntity.ok().eTag(etag).cacheControl(cacheControl));
+    }
+
+    /**
+     * Weak If-None-Match comparison, done here rather than with checkNotModified because that writes
+     * the ETag header before the body is read.
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        ETag current = ETag.create(etag);
+        for (ETag candidate : ETag.parse(ifNoneMatch)) {
+            if (candidate.isWildcard() || candidate.compare(current, false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Newest row time of the response, or since itself when nothing newer exists.
+     */
+    private static ResponseEntity<Object> withSeriesWatermark(ResponseEntity.BodyBuilder response,
+                                                              List<Map<String, Object>> body, Long since) {
+        Object newest = body.isEmpty() ? since : body.get(body.size() - 1).get("time");
+        if (newest != null) {
+            response.header(SERIES_WATERMARK, newest.toString());
+        }
+        return response.body(body);
+    }
+
+    @GetMapping(value = "/stream/{dataType}/{resultType}/{symbols}")
+    public ResponseEntity<StreamingResponseBody> streamData(@PathVariable String dataType, @PathVariable String resultType,
+                                                            @PathVariable String symbols,
+                                                            @RequestParam(defaultValue = "ndjson") String format) {
+        log.debug("streamData dataType={} resultType={} symbols={} format={}", dataType, resultType, symbols, format);
+        String table = DataService.tableFor(dataType);
+        List<String> tickers = split(symbols);
+        boolean sse = "sse".equalsIgnoreCase(format);
+        if (table == null || tickers.isEmpty() || tickers.size() > maxStreamTickers
+                || !(sse || "ndjson".equalsIgnoreCase(format))) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean full = "full".equalsIgnoreCase(resultType);
+        StreamingResponseBody body = out -> {
+            SeriesStreamWriter writer = new SeriesStreamWriter(out,
+                    sse ? SeriesStreamWriter.Format.SSE : SeriesStreamWriter.Format.NDJSON, full, tickers.size() > 1, flushRows);
+            // -1 means the query failed before any row was written, so the response is not committed yet
+            if (dataService.streamData(table, tickers, writer) < 0) {
+                if (!sse) {
+                    throw new QueryBackend.QueryFailedException("Query failed: stream " + table);
+                }
+                writer.fail("query failed");
+            }
+            writer.close();
+        };
+        return ResponseEntity.ok().contentType(sse ? MediaType.TEXT_EVENT_STREAM : NDJSON).body(body);
+    }
+
+    @GetMapping(value = "/subscribe")
+    public ResponseEntity<SseEmitter> subscribe(@RequestParam(defaultValue = "") String stocks,
+                                                @RequestParam(defaultValue = "") String indices,
+                                                @RequestParam(defaultValue = "") String analysis) {
+        log.debug("subscribe stocks={} indices={} analysis={}", stocks, indices, analysis);
+        Set<SeriesCache.Key> keys = new LinkedHashSet<>();
+        split(stocks).forEach(ticker -> keys.add(new SeriesCache.Key(DataService.tableFor("stock"), ticker)));
+        split(indices).forEach(ticker -> keys.add(new SeriesCache.Key(DataService.tableFor("index"), ticker)));
+        for (String name : split(analysis)) {
+            String type = DataService.analysisType(name);
+            if (type == null) {
+                return ResponseEntity.badRequest().build();
+            }
+            keys.add(new SeriesCache.Key(SeriesStore.ANALYSIS_TABLE, type));
+        }
+        SseEmitter emitter = new SseEmitter(pushTimeoutMillis);
+        SeriesPushService.Subscription subscription = keys.isEmpty() ? null : seriesPushService.subscribe(new SeriesPushService.Subscriber() {
+            @Override
+            public void send(String event, String data) throws IOException {
+                emitter.send(SseEmitter.event().name(event).data(data));
+            }
+
+            @Override
+            public void heartbeat() throws IOException {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        }, keys);
+        if (subscription == null) {
+            return keys.isEmpty() ? ResponseEntity.badRequest().build()
+                    : ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        emitter.onCompletion(() -> seriesPushService.unsubscribe(subscription));
+        emitter.onTimeout(() -> seriesPushService.unsubscribe(subscription));
+        emitter.onError(e -> seriesPushService.unsubscribe(subscription));
+        try {
+            emitter.send(SseEmitter.event().name("subscribed").data("{\"keys\":" + keys.size() + "}"));
+        } catch (IOException e) {
+            seriesPushService.unsubscribe(subscription);
+            emitter.completeWithError(e);
+        }
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(emitter);
+    }
+
+    private static List<String> split(String values) {
+        return Arrays.stream(values.split(",")).map(String::trim).filter(v -> !v.isEmpty()).distinct().toList();
     }
-}
\ No newline at end of file
+}
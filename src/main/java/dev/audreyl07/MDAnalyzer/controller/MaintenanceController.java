@@ -1,14 +1,23 @@
 package dev.audreyl07.MDAnalyzer.controller;
 
 import dev.audreyl07.MDAnalyzer.service.MaintenanceService;
+import dev.audreyl07.MDAnalyzer.service.TickerGroups;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -18,18 +27,27 @@ import java.util.Map;
  * - Import raw files into QuestDB
  * - Populate historical and indicator tables (52w highs/lows, MA, comparisons)
  * - Update analysis aggregates (market-wide metrics)
+ * - Rank tickers by relative strength per date (rs_rank_d)
+ * - Manage named ticker groups and compute their breadth (analysis_group)
  * - Query latest processed date per table/type
+ * - Enable dedup upsert keys on existing tables, so the incremental stages can be re-run from a day
+ *   ("from": yyyyMMdd in the request body)
  */
 @RestController
 @RequestMapping("/maintenance")
 public class MaintenanceController {
 
+    private static final Logger log = LoggerFactory.getLogger(MaintenanceController.class);
+
     @Autowired
     MaintenanceService maintenanceService;
 
+    @Autowired
+    TickerGroups tickerGroups;
+
     @PostMapping(value = "/import-questdb")
     public ResponseEntity<Object> importQuestDb(@RequestBody Map<String, Object> request) {
-        System.out.println("request:" + request);
+        log.info("/import-questdb request={}", request);
         String type = request.getOrDefault("type", "").toString();
         Map<String, Object> result = maintenanceService.importRawFiles(type);
         result.putIfAbsent("success", Boolean.TRUE);
@@ -38,43 +56,45 @@ public class MaintenanceController {
 
     @PostMapping(value = "/insert-historical")
     public ResponseEntity<Object> insertIntoHistorical(@RequestBody Map<String, Object> request) {
-        System.out.println("request:" + request);
+        log.info("/insert-historical request={}", request);
         String type = request.getOrDefault("type", "").toString();
-        Map<String, Object> result = maintenanceService.insertIntoHistorical(type);
+        Map<String, Object> result = maintenanceService.insertIntoHistorical(type, from(request));
         result.putIfAbsent("success", Boolean.TRUE);
         return ResponseEntity.ok().body(result);
     }
 
     @PostMapping(value = "/insert-52w")
     public ResponseEntity<Object> insertIndicator52w(@RequestBody Map<String, Object> request) {
-        System.out.println("request:" + request);
+        log.info("/insert-52w request={}", request);
         String type = request.getOrDefault("type", "").toString();
-        Map<String, Object> result = maintenanceService.insertIntoIndicator52w(type);
+        Map<String, Object> result = maintenanceService.insertIntoIndicator52w(type, from(request));
         result.putIfAbsent("success", Boolean.TRUE);
         return ResponseEntity.ok().body(result);
     }
 
     @PostMapping(value = "/insert-analysis52w")
     public ResponseEntity<Object> insertAnalysis52w(@RequestBody Map<String, Object> request) {
-        System.out.println("request:" + request);
+        log.info("/insert-analysis52w request={}", request);
         String type = request.getOrDefault("type", "").toString();
-        Map<String, Object> result = maintenanceService.insertIntoAnalysis52w(type);
+        Map<String, Object> result = "all".equals(type)
+                ? maintenanceService.insertIntoAnalysis52wHighLow(from(request))
+                : maintenanceService.insertIntoAnalysis52w(type, from(request));
         result.putIfAbsent("success", Boolean.TRUE);
         return ResponseEntity.ok().body(result);
     }
 
     @PostMapping(value = "/update-52w")
     public ResponseEntity<Object> update52w(@RequestBody Map<String, Object> request) {
-        System.out.println("request:" + request);
+        log.info("/update-52w request={}", request);
         String type = request.getOrDefault("type", "").toString();
-        Map<String, Object> result = maintenanceService.updateAnalysis52w(type);
+        Map<String, Object> result = maintenanceService.updateAnalysis52w(type, from(request));
         result.putIfAbsent("success", Boolean.TRUE);
         return ResponseEntity.ok().body(result);
     }
 
     @PostMapping(value = "/insert-MA")
     public ResponseEntity<Object> insertIndicatorMA(@RequestBody Map<String, Object> request) {
-        System.out.println("request:" + request);
+        log.info("/insert-MA request={}", request);
         String type = request.getOrDefault("type", "").toString();
         int interval = Integer.valueOf(request.getOrDefault("interval", 0).toString());
         boolean truncate = Boolean.valueOf(request.getOrDefault("truncate", Boolean.FALSE).toString());
@@ -85,7 +105,7 @@ public class MaintenanceController {
 
     @PostMapping(value = "/insert-MACompare")
     public ResponseEntity<Object> insertIndicatorMACompare(@RequestBody Map<String, Object> request) {
-        System.out.println("request:" + request);
+        log.info("/insert-MACompare request={}", request);
         String type = request.getOrDefault("type", "").toString();
         int interval = Integer.valueOf(request.getOrDefault("interval", 0).toString());
         int secondInterval = Integer.valueOf(request.getOrDefault("second_interval", 0).toString());
@@ -96,27 +116,85 @@ public class MaintenanceController {
 
     @PostMapping(value = "/insert-analysisMA")
     public ResponseEntity<Object> insertAnalysisMA(@RequestBody Map<String, Object> request) {
-        System.out.println("request:" + request);
+        log.info("/insert-analysisMA request={}", request);
         String type = request.getOrDefault("type", "").toString();
-        Map<String, Object> result = maintenanceService.insertIntoAnalysisMA(type);
+        Map<String, Object> result = maintenanceService.insertIntoAnalysisMA(type, from(request));
         result.putIfAbsent("success", Boolean.TRUE);
         return ResponseEntity.ok().body(result);
     }
 
     @PostMapping(value = "/update-MA")
     public ResponseEntity<Object> updateMA(@RequestBody Map<String, Object> request) {
-        System.out.println("request:" + request);
+        log.info("/update-MA request={}", request);
         String type = request.getOrDefault("type", "").toString();
-        int firstInterval = Integer.valueOf(request.getOrDefault("first_interval", 0).toString());
-        int secondInterval = Integer.valueOf(request.getOrDefault("second_interval", 0).toString());
-        Map<String, Object> result = maintenanceService.updateAnalysisMA(type, firstInterval, secondInterval);
+        Map<String, Object> result;
+        if (request.get("intervals") instanceof List<?> intervals) {
+            List<Integer> values = intervals.stream().map(i -> Integer.valueOf(i.toString())).toList();
+            result = maintenanceService.updateAnalysisMA(type, values);
+        } else {
+            int firstInterval = Integer.valueOf(request.getOrDefault("first_interval", 0).toString());
+            int secondInterval = Integer.valueOf(request.getOrDefault("second_interval", 0).toString());
+            result = maintenanceService.updateAnalysisMA(type, firstInterval, secondInterval);
+        }
+        result.putIfAbsent("success", Boolean.TRUE);
+        return ResponseEntity.ok().body(result);
+    }
+
+    @PostMapping(value = "/insert-RS")
+    public ResponseEntity<Object> insertRelativeStrength(@RequestBody Map<String, Object> request) {
+        log.info("/insert-RS request={}", request);
+        String type = request.getOrDefault("type", "").toString();
+        Map<String, Object> result = maintenanceService.insertIntoRelativeStrength(type, from(request));
+        result.putIfAbsent("success", Boolean.TRUE);
+        return ResponseEntity.ok().body(result);
+    }
+
+    @PostMapping(value = "/update-group-breadth")
+    public ResponseEntity<Object> updateGroupBreadth(@RequestBody(required = false) Map<String, Object> request) {
+        log.info("/update-group-breadth request={}", request);
+        Map<String, Object> result = maintenanceService.insertIntoGroupBreadth(request == null ? null : from(request));
         result.putIfAbsent("success", Boolean.TRUE);
         return ResponseEntity.ok().body(result);
     }
 
+    @PostMapping(value = "/migrate-dedup")
+    public ResponseEntity<Object> migrateDedup() {
+        log.info("/migrate-dedup");
+        Map<String, Object> result = maintenanceService.migrateDedup();
+        return ResponseEntity.ok().body(result);
+    }
+
+    @GetMapping(value = "/groups")
+    public ResponseEntity<Object> getGroups() {
+        return ResponseEntity.ok().body(tickerGroups.getAll());
+    }
+
+    @PutMapping(value = "/groups/{name}")
+    public ResponseEntity<Object> putGroup(@PathVariable String name, @RequestBody Map<String, Object> request) throws IOException {
+        log.info("/groups/{} request={}", name, request);
+        Object tickers = request.get("tickers");
+        if (!(tickers instanceof List<?> list) || !tickerGroups.put(name, list.stream().map(String::valueOf).toList())) {
+            return ResponseEntity.badRequest().build();
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", Boolean.TRUE);
+        result.put("name", name);
+        result.put("tickers", tickerGroups.get(name).size());
+        return ResponseEntity.ok().body(result);
+    }
+
+    @DeleteMapping(value = "/groups/{name}")
+    public ResponseEntity<Object> deleteGroup(@PathVariable String name) throws IOException {
+        log.info("/groups/{} delete", name);
+        if (!tickerGroups.remove(name)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().body(Map.of("success", Boolean.TRUE));
+    }
+
     @PostMapping(value = "/latest")
     public ResponseEntity<Object> getlatest(@RequestBody Map<String, Object> request) {
-        System.out.println("request:" + request);
+        log.info("/latest request={}", request);
         String table = request.getOrDefault("table", "").toString();
         String type = request.getOrDefault("type", "").toString();
         String result = maintenanceService.getLatestDate(table, type);
@@ -125,4 +203,12 @@ public class MaintenanceController {
         map.put("latest", result);
         return ResponseEntity.ok().body(map);
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the optional first day (yyyyMMdd) of a re-run
+     */
+    private static String from(Map<String, Object> request) {
+        Object from = request.get("from");
+        return from == null || from.toString().isBlank() ? null : from.toString();
+    }
+}
@@ -0,0 +1,36 @@
+package dev.audreyl07.MDAnalyzer.controller;
+
+import dev.audreyl07.MDAnalyzer.service.QueryBulkheads;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Runs /maintenance requests in the maintenance bulkhead of {@link QueryBulkheads}, so pipeline
+ * queries queue behind their own limit and give way to chart reads.
+ */
+@Configuration
+public class MaintenanceTrafficConfig implements WebMvcConfigurer {
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new MaintenanceTrafficInterceptor()).addPathPatterns("/maintenance/**");
+    }
+
+    static class MaintenanceTrafficInterceptor implements HandlerInterceptor {
+
+        @Override
+        public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            QueryBulkheads.setMaintenance(true);
+            return true;
+        }
+
+        @Override
+        public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+            QueryBulkheads.setMaintenance(false);
+        }
+    }
+}
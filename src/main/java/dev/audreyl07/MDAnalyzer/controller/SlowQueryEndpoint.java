@@ -0,0 +1,37 @@
+package dev.audreyl07.MDAnalyzer.controller;
+
+import dev.audreyl07.MDAnalyzer.service.QueryLog;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint exposing the in-memory slow query log.
+ *
+ * Endpoints:
+ * - GET /actuator/slowqueries: slowest retained queries (fingerprint, duration, rows, bytes), slowest first
+ * - DELETE /actuator/slowqueries: reset the log, e.g. before measuring a new release
+ */
+@Component
+@Endpoint(id = "slowqueries")
+public class SlowQueryEndpoint {
+
+    private final QueryLog queryLog;
+
+    public SlowQueryEndpoint(QueryLog queryLog) {
+        this.queryLog = queryLog;
+    }
+
+    @ReadOperation
+    public List<QueryLog.Entry> slowQueries() {
+        return queryLog.getSlowest();
+    }
+
+    @DeleteOperation
+    public void clear() {
+        queryLog.clear();
+    }
+}
@@ -0,0 +1,394 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory market breadth: for every date and condition a bitset over ticker ids, counted with popcounts.
+ *
+ * - Tickers of a table get dense int ids; each (condition, date) holds a long[] of hit bits and one of
+ *   eligible bits (tickers with a bar that date and a defined indicator value)
+ * - A condition is evaluated with {@link IndicatorKernels} in one pass over every ticker's series,
+ *   ({@link SeriesScan})
+ * - Several conditions are combined with AND word by word, so any combination of cached conditions is
+ *   answered without touching the series
+ * - When the table's latest date moves past a condition's evaluated range, the next request evaluates
+ *   only the new dates; bits of older dates are never rewritten. A stage that writes dates already
+ *   evaluated (a re-run of a range) clears the table, which is then evaluated from scratch
+ * - Up to maxConditions conditions are kept per table, least recently used first out
+ *
+ * Percentages match the analysis_market convention: count * 100 / eligible tickers of the date.
+ */
+@Service
+public class BreadthEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(BreadthEngine.class);
+
+    private static final DateTimeFormatter WATERMARK = DateTimeFormatter.BASIC_ISO_DATE;
+
+    /**
+     * Per-ticker conditions. length is the indicator window, threshold a percentage or RSI level.
+     */
+    public enum Kind {
+        ABOVE_SMA("above_sma", 50, 0),
+        BELOW_SMA("below_sma", 50, 0),
+        HIGH_52W("high52w", 0, 0),
+        LOW_52W("low52w", 0, 0),
+        RSI_ABOVE("rsi_above", 14, 70),
+        RSI_BELOW("rsi_below", 14, 30);
+
+        private final String apiName;
+        private final int defaultLength;
+        private final double defaultThreshold;
+
+        Kind(String apiName, int defaultLength, double defaultThreshold) {
+            this.apiName = apiName;
+            this.defaultLength = defaultLength;
+            this.defaultThreshold = defaultThreshold;
+        }
+
+        public int getDefaultLength() {
+            return defaultLength;
+        }
+    }
+
+    /**
+     * One condition with its parameters, written name[:length[:threshold]].
+     *
+     * - above_sma:n[:pct] / below_sma:n[:pct]: close more than pct percent above / below its n-bar SMA
+     * - high52w / low52w: the 52-week high (low) moved up (down) on the date, as in analysis_market
+     * - rsi_above:n:level / rsi_below:n:level: n-bar RSI above / below level
+     */
+    public record Condition(Kind kind, int length, double threshold) {
+
+        /**
+         * @return the condition, or null for an unknown name or malformed parameters
+         */
+        public static Condition parse(String spec) {
+            String[] parts = spec.trim().split(":");
+            Kind kind = null;
+            for (Kind candidate : Kind.values()) {
+                if (candidate.apiName.equalsIgnoreCase(parts[0])) {
+                    kind = candidate;
+                }
+            }
+            if (kind == null || parts.length > 3 || (kind.defaultLength == 0 && parts.length > 1)) {
+                return null;
+            }
+            try {
+                int length = parts.length > 1 ? Integer.parseInt(parts[1]) : kind.defaultLength;
+                double threshold = parts.length > 2 ? Double.parseDouble(parts[2]) : kind.defaultThreshold;
+                if ((kind.defaultLength > 0 && length < 1) || Double.isNaN(threshold) || Double.isInfinite(threshold)) {
+                    return null;
+                }
+                return new Condition(kind, length, threshold);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Breadth per date: count of tickers meeting every condition out of total eligible tickers.
+     */
+    public record Result(int size, long[] time, int[] count, int[] total) {
+    }
+
+    /**
+     * Hit and eligible bitsets per date of one condition.
+     */
+    static final class Bits {
+        final TreeMap<Long, long[]> hits = new TreeMap<>();
+        final TreeMap<Long, long[]> eligible = new TreeMap<>();
+        long through = Long.MIN_VALUE;
+
+        static void set(TreeMap<Long, long[]> map, long time, int id) {
+            int word = id >>> 6;
+            long[] words = map.get(time);
+            if (words == null || words.length <= word) {
+                words = words == null ? new long[word + 1] : Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+                map.put(time, words);
+            }
+            words[word] |= 1L << id;
+        }
+    }
+
+    /**
+     * Ticker ids and cached conditions of one table. Guarded by its own monitor.
+     */
+    final class Universe {
+        final Map<String, Integer> ids = new HashMap<>();
+        final Map<Condition, Bits> conditions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Condition, Bits> eldest) {
+                return size() > maxConditions;
+            }
+        };
+    }
+
+    @Value("${mdanalyzer.breadth.maxConditions:32}")
+    int maxConditions = 32;
+
+    @Autowired
+    SeriesScan seriesScan;
+
+    @Autowired
+    QueryMetrics queryMetrics;
+
+    private final Map<String, Universe> universes = new ConcurrentHashMap<>();
+
+    /**
+     * Breadth of the conditions combined with AND, evaluating conditions that are missing or behind the table.
+     */
+    public Result compute(String table, List<Condition> conditions) {
+        Universe universe = universes.computeIfAbsent(table, t -> new Universe());
+        synchronized (universe) {
+            long latest = seriesScan.latestTime(table);
+            List<Condition> stale = new ArrayList<>();
+            List<Bits> staleBits = new ArrayList<>();
+            List<Bits> bits = new ArrayList<>(conditions.size());
+            for (Condition condition : conditions) {
+                Bits condBits = universe.conditions.computeIfAbsent(condition, c -> new Bits());
+                if (condBits.through == Long.MIN_VALUE || condBits.through < latest) {
+                    stale.add(condition);
+                    staleBits.add(condBits);
+                }
+                bits.add(condBits);
+            }
+            queryMetrics.recordCache("breadth", stale.isEmpty());
+            if (!stale.isEmpty()) {
+                evaluate(table, universe, stale, staleBits);
+            }
+            return combine(bits);
+        }
+    }
+
+    /**
+     * Drops the table's ids and bitsets; the next request evaluates from scratch.
+     */
+    public void clear(String table) {
+        universes.remove(table);
+    }
+
+    private void evaluate(String table, Universe universe, List<Condition> stale, List<Bits> staleBits) {
+        long start = System.currentTimeMillis();
+        Bits[] bits = staleBits.toArray(new Bits[0]);
+        long[] after = new long[bits.length];
+        for (int c = 0; c < bits.length; c++) {
+            after[c] = bits[c].through;
+        }
+        long[] newest = {Long.MIN_VALUE};
+        Scratch scratch = new Scratch();
+        boolean complete;
+        try {
+            complete = seriesScan.forEach(table, (ticker, series) -> {
+                if (series.size() == 0) {
+                    return;
+                }
+                int id = universe.ids.computeIfAbsent(ticker, t -> universe.ids.size());
+                for (int c = 0; c < bits.length; c++) {
+                    apply(stale.get(c), series, id, after[c], bits[c], scratch);
+                }
+                newest[0] = Math.max(newest[0], series.time()[series.size() - 1]);
+            });
+        } catch (IOException e) {
+            log.warn("breadth evaluation of table={} failed: {}", table, e.getMessage());
+            complete = false;
+        }
+        if (!complete) {
+            log.warn("breadth evaluation of table={} incomplete; retried on the next request", table);
+            return;
+        }
+        for (Bits condBits : bits) {
+            condBits.through = Math.max(condBits.through, newest[0]);
+        }
+        log.info("breadth evaluated table={} conditions={} tickers={} in {} ms", table, stale, universe.ids.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Reusable kernel outputs, grown to the longest series seen.
+     */
+    static final class Scratch {
+        double[] values = new double[0];
+        int[] deque = new int[0];
+
+        void ensure(int size) {
+            if (values.length < size) {
+                values = new double[size];
+                deque = new int[size];
+            }
+        }
+    }
+
+    /**
+     * Sets the condition's bits for the ticker's rows after the given time.
+     */
+    static void apply(Condition condition, OhlcvSeries series, int id, long after, Bits bits, Scratch scratch) {
+        int size = series.size();
+        long[] time = series.time();
+        double[] close = series.close();
+        int from = DataService.firstAfter(time, size, after);
+        if (from == size) {
+            return;
+        }
+        scratch.ensure(size);
+        double[] out = scratch.values;
+        double factor = condition.threshold() / 100;
+        switch (condition.kind()) {
+            case ABOVE_SMA, BELOW_SMA -> IndicatorKernels.sma(close, size, condition.length(), out);
+            case RSI_ABOVE, RSI_BELOW -> IndicatorKernels.rsi(close, size, condition.length(), out);
+            case HIGH_52W -> IndicatorKernels.rollingMax(time, series.high(), size, IndicatorKernels.WINDOW_52W_SECONDS,
+                    out, scratch.deque);
+            case LOW_52W -> IndicatorKernels.rollingMin(time, series.low(), size, IndicatorKernels.WINDOW_52W_SECONDS,
+                    out, scratch.deque);
+        }
+        // the 52w extremes are compared with the last bar that had one, so a missing bar does not hide the next
+        double last = Double.NaN;
+        for (int i = from - 1; i >= 0 && Double.isNaN(last); i--) {
+            last = out[i];
+        }
+        for (int i = from; i < size; i++) {
+            double value = out[i];
+            double previous = last;
+            if (!Double.isNaN(value)) {
+                last = value;
+            }
+            boolean defined = !Double.isNaN(value) && !Double.isNaN(close[i]);
+            boolean hit;
+            switch (condition.kind()) {
+                case ABOVE_SMA -> hit = close[i] > value * (1 + factor);
+                case BELOW_SMA -> hit = close[i] < value * (1 - factor);
+                case RSI_ABOVE -> hit = value > condition.threshold();
+                case RSI_BELOW -> hit = value < condition.threshold();
+                case HIGH_52W -> {
+                    defined &= !Double.isNaN(previous);
+                    hit = value > previous;
+                }
+                default -> {
+                    defined &= !Double.isNaN(previous);
+                    hit = value < previous;
+                }
+            }
+            if (!defined) {
+                continue;
+            }
+            Bits.set(bits.eligible, time[i], id);
+            if (hit) {
+                Bits.set(bits.hits, time[i], id);
+            }
+        }
+    }
+
+    /**
+     * ANDs the conditions' bitsets per date of the first condition and counts them.
+     */
+    static Result combine(List<Bits> bits) {
+        TreeMap<Long, long[]> dates = bits.get(0).eligible;
+        long[] time = new long[dates.size()];
+        int[] count = new int[dates.size()];
+        int[] total = new int[dates.size()];
+        int size = 0;
+        long[][] hits = new long[bits.size()][];
+        long[][] eligible = new long[bits.size()][];
+        for (Long date : dates.keySet()) {
+            int words = Integer.MAX_VALUE;
+            for (int c = 0; c < bits.size(); c++) {
+                hits[c] = bits.get(c).hits.get(date);
+                eligible[c] = bits.get(c).eligible.get(date);
+                words = Math.min(words, eligible[c] == null ? 0 : eligible[c].length);
+            }
+            int hitCount = 0;
+            int eligibleCount = 0;
+            for (int w = 0; w < words; w++) {
+                long hit = -1L;
+                long defined = -1L;
+                for (int c = 0; c < bits.size(); c++) {
+                    hit &= hits[c] == null || hits[c].length <= w ? 0 : hits[c][w];
+                    defined &= eligible[c][w];
+                }
+                hitCount += Long.bitCount(hit);
+                eligibleCount += Long.bitCount(defined);
+            }
+            if (eligibleCount > 0) {
+                time[size] = date;
+                count[size] = hitCount;
+                total[size] = eligibleCount;
+                size++;
+            }
+        }
+        return new Result(size, time, count, total);
+    }
+
+    /**
+     * Shapes a result like the analysis responses: time, count, total and percentage per date after since.
+     */
+    public List<Map<String, Object>> toRows(Result result, Long since) {
+        int from = since == null ? 0 : DataService.firstAfter(result.time(), result.size(), since);
+        List<Map<String, Object>> rows = new ArrayList<>(result.size() - from);
+        for (int i = from; i < result.size(); i++) {
+            Map<String, Object> m = new HashMap<>();
+            m.put("time", result.time()[i]);
+            m.put("count", result.count()[i]);
+            m.put("total", result.total()[i]);
+            m.put("percentage", result.count()[i] * 100.0 / result.total()[i]);
+            rows.add(m);
+        }
+        return rows;
+    }
+
+    @EventListener
+    public void onPipelineStageCompleted(PipelineStageCompletedEvent event) {
+        clearRewritten(event.table(), event.watermark(), event.stage());
+    }
+
+    /**
+     * Dates evaluated from the store's old copy while it reloaded are cleared again.
+     */
+    @EventListener
+    public void onSeriesReloaded(SeriesReloadedEvent event) {
+        clearRewritten(event.table(), event.watermark(), "store_reload");
+    }
+
+    private void clearRewritten(String table, String watermarkDay, String stage) {
+        Universe universe = universes.get(table);
+        if (universe == null) {
+            return;
+        }
+        long watermark = LocalDate.parse(watermarkDay, WATERMARK).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        synchronized (universe) {
+            boolean rewound = universe.conditions.values().stream().anyMatch(bits -> bits.through > watermark);
+            if (rewound) {
+                log.info("breadth of table={} cleared: stage={} wrote rows at or before evaluated dates", table, stage);
+                clear(table);
+            }
+        }
+    }
+
+    int conditionCount(String table) {
+        Universe universe = universes.get(table);
+        if (universe == null) {
+            return 0;
+        }
+        synchronized (universe) {
+            return universe.conditions.size();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prefetches the most requested tickers and every market analysis series into {@link SeriesCache}.
+ *
+ * - Runs once the application is ready, and delayMillis after a pipeline stage wrote new rows;
+ *   stages completing within that delay share one run
+ * - Tickers are the topTickers most requested since the previous run ({@link SeriesCache#hotTickers(int)}),
+ *   plus seedTickers (stocks) so a fresh process has something to warm
+ * - At most concurrency reads are in flight at once, so a warm-up cannot flood QuestDB; they run in
+ *   the maintenance bulkhead ({@link QueryBulkheads}) and give way to interactive reads
+ *
+ * Reads go through {@link DataService#loadSeries(String, String)}, so tables served by the
+ * {@link SeriesStore} are not read again.
+ */
+@Component
+public class CacheWarmer {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheWarmer.class);
+
+    @Value("${mdanalyzer.warmup.enabled:true}")
+    boolean enabled = true;
+
+    @Value("${mdanalyzer.warmup.topTickers:50}")
+    int topTickers = 50;
+
+    @Value("${mdanalyzer.warmup.concurrency:4}")
+    int concurrency = 4;
+
+    @Value("${mdanalyzer.warmup.delayMillis:5000}")
+    long delayMillis = 5000;
+
+    @Value("${mdanalyzer.warmup.seedTickers:}")
+    List<String> seedTickers = List.of();
+
+    @Autowired
+    DataService dataService;
+
+    @Autowired
+    SeriesCache seriesCache;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-warmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        schedule(0);
+    }
+
+    @EventListener
+    public void onPipelineStageCompleted(PipelineStageCompletedEvent event) {
+        schedule(delayMillis);
+    }
+
+    @PreDestroy
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void schedule(long delay) {
+        if (enabled && scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(() -> {
+                scheduled.set(false);
+                warmUp();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return number of series read
+     */
+    int warmUp() {
+        long start = System.currentTimeMillis();
+        Set<SeriesCache.Key> tickers = new LinkedHashSet<>(seriesCache.hotTickers(topTickers));
+        for (String ticker : seedTickers) {
+            if (!ticker.isBlank()) {
+                tickers.add(new SeriesCache.Key("historical_d", ticker.trim()));
+            }
+        }
+        seriesCache.decayRequestCounts();
+
+        AtomicInteger failed = new AtomicInteger();
+        List<Callable<Object>> reads = new ArrayList<>();
+        for (String type : SeriesStore.ANALYSIS_TYPES) {
+            reads.add(() -> read(() -> dataService.loadAnalysis(type), failed));
+        }
+        for (SeriesCache.Key key : tickers) {
+            reads.add(() -> read(() -> dataService.loadSeries(key.table(), key.ticker()), failed));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            Thread thread = new Thread(QueryBulkheads.maintenanceThread(r), "cache-warmer-read");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (Future<Object> read : pool.invokeAll(reads)) {
+                read.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("warm-up failed: {}", e.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+        log.info("warm-up done tickers={} analysis={} failed={} durationMs={}", tickers.size(),
+                SeriesStore.ANALYSIS_TYPES.size(), failed.get(), System.currentTimeMillis() - start);
+        return reads.size() - failed.get();
+    }
+
+    private static Object read(Callable<?> call, AtomicInteger failed) {
+        try {
+            return call.call();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.debug("warm-up read failed: {}", e.getMessage());
+            return null;
+        }
+    }
+}
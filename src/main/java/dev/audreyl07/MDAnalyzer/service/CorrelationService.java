@@ -0,0 +1,292 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pairwise correlation of daily log returns over a basket of tickers.
+ *
+ * - The basket's bars after a calendar lookback are read in one pass ({@link SeriesScan}); the dates of
+ *   all its series form the axis, of which the last window + 1 are kept
+ * - Closes are aligned on that axis and carried forward over a ticker's missing dates (a zero return);
+ *   tickers without a close on the first date, or with constant closes, are left out and reported
+ * - Each return row is centred and scaled to unit length once, so a correlation is a dot product
+ * - The upper triangle is split into BLOCK x BLOCK tiles computed on a fork-join pool; a tile keeps its
+ *   rows in cache while it walks the other block's rows
+ */
+@Service
+public class CorrelationService {
+
+    private static final Logger log = LoggerFactory.getLogger(CorrelationService.class);
+
+    private static final long DAY = 86400;
+
+    static final int BLOCK = 64;
+
+    private static final int TILES_PER_TASK = 4;
+
+    /**
+     * Correlations of the included tickers; matrix[i][j] belongs to tickers i and j. from and to are the
+     * first and last return dates (epoch seconds).
+     */
+    public record Result(List<String> tickers, List<String> missing, long from, long to, int observations,
+                         double[][] matrix) {
+    }
+
+    /**
+     * Computes the tiles from..to of a tile list.
+     */
+    static final class TileTask extends RecursiveAction {
+        private final double[][] z;
+        private final double[][] matrix;
+        private final int[] tiles;
+        private final int from;
+        private final int to;
+
+        TileTask(double[][] z, double[][] matrix, int[] tiles, int from, int to) {
+            this.z = z;
+            this.matrix = matrix;
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TILES_PER_TASK) {
+                for (int t = from; t < to; t++) {
+                    tile(z, matrix, tiles[2 * t], tiles[2 * t + 1]);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new TileTask(z, matrix, tiles, from, mid), new TileTask(z, matrix, tiles, mid, to));
+        }
+    }
+
+    @Autowired
+    SeriesScan seriesScan;
+
+    @Autowired
+    QueryMetrics queryMetrics;
+
+    @Value("${mdanalyzer.correlation.parallelism:0}")
+    int parallelism = 0;
+
+    private volatile ForkJoinPool pool;
+
+    @PreDestroy
+    void close() {
+        ForkJoinPool current = pool;
+        if (current != null) {
+            current.shutdown();
+        }
+    }
+
+    /**
+     * @param window returns per ticker (trading days)
+     * @return the matrix, or null when the series could not be read
+     */
+    public Result compute(String table, List<String> tickers, int window) {
+        long start = System.currentTimeMillis();
+        long latest = seriesScan.latestTime(table);
+        if (latest == Long.MIN_VALUE) {
+            return new Result(List.of(), tickers, 0, 0, 0, new double[0][0]);
+        }
+        // about 5 trading days a week, plus room for holidays
+        long after = Math.floorDiv(latest, DAY) * DAY - ((long) window * 3 / 2 + 14) * DAY;
+        Map<String, OhlcvSeries> basket = new LinkedHashMap<>();
+        try {
+            if (!seriesScan.forEach(table, tickers, after, basket::put)) {
+                return null;
+            }
+        } catch (IOException e) {
+            log.warn("correlation read of table={} failed: {}", table, e.getMessage());
+            return null;
+        }
+        long[] axis = axis(basket, window + 1);
+        List<String> included = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        List<double[]> rows = new ArrayList<>();
+        for (String ticker : tickers) {
+            OhlcvSeries series = basket.get(ticker);
+            double[] row = series == null || axis.length < 3 ? null : standardize(logReturns(series, axis));
+            if (row == null) {
+                missing.add(ticker);
+            } else {
+                included.add(ticker);
+                rows.add(row);
+            }
+        }
+        double[][] matrix = correlate(rows.toArray(new double[0][]), pool());
+        queryMetrics.recordQuery("correlation", System.currentTimeMillis() - start);
+        return axis.length < 3 ? new Result(List.of(), missing, 0, 0, 0, matrix)
+                : new Result(included, missing, axis[1], axis[axis.length - 1], axis.length - 1, matrix);
+    }
+
+    /**
+     * Response body; correlations rounded to 4 decimals.
+     */
+    public static Map<String, Object> toMap(Result result) {
+        double[][] rounded = new double[result.matrix().length][];
+        for (int i = 0; i < rounded.length; i++) {
+            rounded[i] = new double[result.matrix()[i].length];
+            for (int j = 0; j < rounded[i].length; j++) {
+                rounded[i][j] = Math.round(result.matrix()[i][j] * 10000) / 10000.0;
+            }
+        }
+        Map<String, Object> m = new HashMap<>();
+        m.put("tickers", result.tickers());
+        m.put("missing", result.missing());
+        m.put("from", result.from());
+        m.put("to", result.to());
+        m.put("observations", result.observations());
+        m.put("matrix", rounded);
+        return m;
+    }
+
+    /**
+     * @return the last count dates found in any of the series, ascending
+     */
+    static long[] axis(Map<String, OhlcvSeries> basket, int count) {
+        TreeSet<Long> dates = new TreeSet<>();
+        for (OhlcvSeries series : basket.values()) {
+            for (int i = 0; i < series.size(); i++) {
+                dates.add(series.time()[i]);
+            }
+        }
+        while (dates.size() > count) {
+            dates.pollFirst();
+        }
+        return dates.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * @return log returns between consecutive axis dates with closes carried forward, or null when the
+     * series has no usable close on the first date
+     */
+    static double[] logReturns(OhlcvSeries series, long[] axis) {
+        long[] time = series.time();
+        double[] close = series.close();
+        int i = -1;
+        while (i + 1 < series.size() && time[i + 1] <= axis[0]) {
+            i++;
+        }
+        if (i < 0 || !(close[i] > 0)) {
+            return null;
+        }
+        double previous = close[i];
+        double[] returns = new double[axis.length - 1];
+        for (int d = 1; d < axis.length; d++) {
+            double current = previous;
+            while (i + 1 < series.size() && time[i + 1] <= axis[d]) {
+                i++;
+                if (close[i] > 0) {
+                    current = close[i];
+                }
+            }
+            returns[d - 1] = Math.log(current / previous);
+            previous = current;
+        }
+        return returns;
+    }
+
+    /**
+     * Centres the row and scales it to unit length in place.
+     *
+     * @return the row, or null when it has no variance
+     */
+    static double[] standardize(double[] row) {
+        if (row == null) {
+            return null;
+        }
+        double mean = 0;
+        for (double v : row) {
+            mean += v;
+        }
+        mean /= row.length;
+        double squares = 0;
+        for (int i = 0; i < row.length; i++) {
+            row[i] -= mean;
+            squares += row[i] * row[i];
+        }
+        if (!(squares > 1e-24)) {
+            return null;
+        }
+        double scale = 1 / Math.sqrt(squares);
+        for (int i = 0; i < row.length; i++) {
+            row[i] *= scale;
+        }
+        return row;
+    }
+
+    /**
+     * @param z standardized rows of equal length
+     * @return the symmetric matrix of their dot products, with a unit diagonal
+     */
+    static double[][] correlate(double[][] z, ForkJoinPool pool) {
+        int n = z.length;
+        double[][] matrix = new double[n][n];
+        int blocks = (n + BLOCK - 1) / BLOCK;
+        int[] tiles = new int[blocks * (blocks + 1)];
+        int t = 0;
+        for (int bi = 0; bi < blocks; bi++) {
+            for (int bj = bi; bj < blocks; bj++) {
+                tiles[t++] = bi;
+                tiles[t++] = bj;
+            }
+        }
+        pool.invoke(new TileTask(z, matrix, tiles, 0, t / 2));
+        for (int i = 0; i < n; i++) {
+            matrix[i][i] = 1;
+        }
+        return matrix;
+    }
+
+    private static void tile(double[][] z, double[][] matrix, int bi, int bj) {
+        int n = z.length;
+        int iEnd = Math.min(n, (bi + 1) * BLOCK);
+        int jEnd = Math.min(n, (bj + 1) * BLOCK);
+        for (int i = bi * BLOCK; i < iEnd; i++) {
+            double[] a = z[i];
+            for (int j = bi == bj ? i + 1 : bj * BLOCK; j < jEnd; j++) {
+                double[] b = z[j];
+                double sum = 0;
+                for (int k = 0; k < a.length; k++) {
+                    sum += a[k] * b[k];
+                }
+                // rounding can push |sum| just past 1
+                sum = Math.max(-1, Math.min(1, sum));
+                matrix[i][j] = sum;
+                matrix[j][i] = sum;
+            }
+        }
+    }
+
+    private ForkJoinPool pool() {
+        ForkJoinPool current = pool;
+        if (current == null) {
+            synchronized (this) {
+                if (pool == null) {
+                    pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+                }
+                current = pool;
+            }
+        }
+        return current;
+    }
+}
@@ -0,0 +1,180 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Buffers rows computed in the JVM into CSV chunks and loads them through QuestDB's /imp endpoint.
+ *
+ * Rows are written to a temporary file; once a chunk reaches {@code chunkRows} rows it is
+ * uploaded with {@link QuestDBService#importCsv(String, Path)} and a new chunk is started.
+ * Non-finite doubles are written as empty fields so QuestDB stores them as null.
+ */
+public class CsvImportWriter implements Closeable {
+
+    private final QuestDBService questDBService;
+    private final String table;
+    private final String header;
+    private final int chunkRows;
+
+    private Path chunkFile;
+    private BufferedWriter writer;
+    private int chunkCount;
+    private long rowCount;
+    private long importedRows;
+    private long duration;
+    private boolean failed;
+    private boolean firstField;
+
+    public CsvImportWriter(QuestDBService questDBService, String table, String header, int chunkRows) {
+        this.questDBService = questDBService;
+        this.table = table;
+        this.header = header;
+        this.chunkRows = chunkRows;
+    }
+
+    public CsvImportWriter beginRow() {
+        if (writer == null) {
+            openChunk();
+        }
+        firstField = true;
+        return this;
+    }
+
+    public CsvImportWriter add(String value) {
+        separator();
+        if (value != null) {
+            write(value);
+        }
+        return this;
+    }
+
+    public CsvImportWriter add(long value) {
+        separator();
+        write(Long.toString(value));
+        return this;
+    }
+
+    public CsvImportWriter add(double value) {
+        separator();
+        if (Double.isFinite(value)) {
+            write(Double.toString(value));
+        }
+        return this;
+    }
+
+    public void endRow() {
+        write("\n");
+        chunkCount++;
+        rowCount++;
+        if (chunkCount >= chunkRows) {
+            flushChunk();
+        }
+    }
+
+    /**
+     * Uploads any pending rows. Safe to call more than once.
+     */
+    public void flush() {
+        if (writer != null) {
+            flushChunk();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            discardChunk();
+        }
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getImportedRows() {
+        return importedRows;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    private void openChunk() {
+        try {
+            chunkFile = Files.createTempFile(table + "_", ".csv");
+            writer = Files.newBufferedWriter(chunkFile, StandardCharsets.UTF_8);
+            writer.write(header);
+            writer.write("\n");
+            chunkCount = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flushChunk() {
+        try {
+            writer.close();
+            writer = null;
+            if (chunkCount > 0) {
+                Map<String, Object> result = questDBService.importCsv(table, chunkFile);
+                Object durationObj = result.get("duration");
+                if (durationObj instanceof Number) {
+                    duration += ((Number) durationObj).longValue();
+                }
+                Map<String, Object> response = (Map<String, Object>) result.get("response");
+                if (response == null || !"OK".equals(response.get("status"))) {
+                    failed = true;
+                } else if (response.get("rowsImported") instanceof Number) {
+                    importedRows += ((Number) response.get("rowsImported")).longValue();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            discardChunk();
+        }
+    }
+
+    private void discardChunk() {
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            if (chunkFile != null) {
+                Files.deleteIfExists(chunkFile);
+                chunkFile = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void separator() {
+        if (!firstField) {
+            write(",");
+        }
+        firstField = false;
+    }
+
+    private void write(String value) {
+        try {
+            writer.write(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
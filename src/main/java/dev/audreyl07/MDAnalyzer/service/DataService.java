@@ -1,11 +1,11 @@
 package dev.audreyl07.MDAnalyzer.service;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -15,100 +15,282 @@ import java.util.Map;
  * Business logic for retrieving and shaping market data for API responses.
  *
  * Responsibilities:
- * - Query QuestDB for stock and index historical series
- * - Transform raw rows into simplified structures (single vs full OHLCV)
- * - Provide market analysis series (52w highs/lows, MA 50/200 breadth)
+ * - Read stock and index historical series from the {@link SeriesStore} once loaded, otherwise
+ *   through the {@link SeriesCache} and the configured {@link QueryBackend}
+ * - Coalesce concurrent reads of the same ticker or analysis type into one backend query
+ *   ({@link SingleFlight}), so a burst of identical requests costs QuestDB one query per key. Flights
+ *   are keyed by traffic class as well, so a read never waits on a {@link CacheWarmer} load queued
+ *   behind the maintenance bulkhead
+ * - Stream series of one or many tickers without materialising them ({@link #streamData})
+ * - Count requests per ticker so {@link CacheWarmer} can prefetch the popular ones
+ * - Transform columnar series into simplified structures (single vs full OHLCV), optionally only the
+ *   bars after a client's last known time so polling transfers a few rows instead of the history
+ * - Provide market analysis series (52w highs/lows, MA 50/200 breadth), from the store when loaded
+ * - Provide a ticker's relative-strength percentile history from rs_rank_d and the breadth series of a
+ *   ticker group from analysis_group, both read through the {@link QueryBackend}
  */
 @Service
 public class DataService {
 
+    private static final Logger log = LoggerFactory.getLogger(DataService.class);
+
+    @Autowired
+    QueryBackend queryBackend;
+
+    @Autowired
+    SeriesStore seriesStore;
+
+    @Autowired
+    SeriesCache seriesCache;
+
+    @Autowired
+    QueryMetrics queryMetrics;
+
     @Autowired
     QuestDBService questDBService;
 
+    @Autowired
+    SqlTemplates sqlTemplates;
+
+    private final SingleFlight<FlightKey<SeriesCache.Key>, OhlcvSeries> seriesFlight =
+            new SingleFlight<>(coalesced -> queryMetrics.recordCoalesced("series", coalesced));
+
+    private final SingleFlight<FlightKey<String>, ValueSeries> analysisFlight =
+            new SingleFlight<>(coalesced -> queryMetrics.recordCoalesced("analysis", coalesced));
+
+    /**
+     * A flight key with the caller's {@link QueryBulkheads} traffic class.
+     */
+    private record FlightKey<K>(K key, boolean maintenance) {
+
+        static <K> FlightKey<K> of(K key) {
+            return new FlightKey<>(key, QueryBulkheads.isMaintenance());
+        }
+    }
 
     public List<Map<String, Object>> getData(String dataType, String resultType, String symbol) {
-        String query;
-        if ("stock".equals(dataType)) {
-            query = "SELECT * FROM historical_d WHERE ticker = '" + symbol + "' ORDER BY date ASC;";
-        } else if ("index".equals(dataType)) {
-            query = "SELECT * FROM indices_d WHERE ticker = '" + symbol + "' ORDER BY date ASC;";
-        } else {
+        return getData(dataType, resultType, symbol, null);
+    }
+
+    /**
+     * @param since epoch seconds; when set only bars after it are returned
+     */
+    public List<Map<String, Object>> getData(String dataType, String resultType, String symbol, Long since) {
+        String table = tableFor(dataType);
+        if (table == null) {
             return List.of();
         }
-        Map<String, Object> map = questDBService.executeQuery(query);
-        Map<String, Object> response = (Map<String, Object>) map.get("response");
-        List<Object> list = (List<Object>) response.get("dataset");
+        seriesCache.recordRequest(table, symbol);
+        OhlcvSeries series = loadSeries(table, symbol);
+        int from = since == null ? 0 : firstAfter(series.time(), series.size(), since);
 
         if ("full".equalsIgnoreCase(resultType)) {
-            return outputAsFull(list);
+            return outputAsFull(series, from);
         }
 
-        return outputAsSingle(list);
+        return outputAsSingle(series, from);
     }
 
-    private List<Map<String, Object>> outputAsSingle(List<Object> list) {
-        List<Map<String, Object>> listOfMap = new ArrayList<>();
-        for (Object obj : list) {
-            List<Object> row = (List<Object>) obj;
+    /**
+     * @return the table behind a data type, or null for an unknown type
+     */
+    public static String tableFor(String dataType) {
+        if ("stock".equals(dataType)) {
+            return "historical_d";
+        } else if ("index".equals(dataType)) {
+            return "indices_d";
+        }
+        return null;
+    }
+
+    /**
+     * Streams the series of the given tickers to the writer, ticker by ticker in the requested order
+     * when the table is in the {@link SeriesStore}, otherwise row by row as QuestDB returns them
+     * (ordered by ticker, then date). Nothing is cached or buffered.
+     *
+     * @return rows written, or -1 when the query failed
+     */
+    public long streamData(String table, List<String> symbols, SeriesStreamWriter writer) throws IOException {
+        if (seriesStore.isReady(table)) {
+            for (String symbol : symbols) {
+                writer.write(symbol, seriesStore.readSeries(table, symbol, Long.MIN_VALUE, Long.MAX_VALUE));
+            }
+            return writer.getRows();
+        }
+        String query = sqlTemplates.render(SqlTemplates.SERIES_BATCH_READ, Map.of("source", table, "tickers", symbols));
+        long start = System.currentTimeMillis();
+        long rows = questDBService.exportQuery(query, row -> writer.write((String) row[0],
+                TimestampDecoder.toEpochSeconds(row[1]), toDouble(row[2]), toDouble(row[3]), toDouble(row[4]),
+                toDouble(row[5]), toDouble(row[6])));
+        queryMetrics.recordQuery("series_stream", System.currentTimeMillis() - start);
+        log.debug("streamed table={} tickers={} rows={}", table, symbols.size(), rows);
+        return rows;
+    }
+
+    public OhlcvSeries loadSeries(String table, String symbol) {
+        if (seriesStore.isReady(table)) {
+            return queryMetrics.time("series_store", () -> seriesStore.readSeries(table, symbol, Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+        return seriesCache.getSeries(table, symbol, () -> seriesFlight.run(FlightKey.of(new SeriesCache.Key(table, symbol)),
+                () -> queryMetrics.time("series", () -> queryBackend.readSeries(table, symbol))));
+    }
+
+    public ValueSeries loadAnalysis(String analysisType) {
+        ValueSeries stored = seriesStore.readAnalysis(analysisType);
+        if (stored != null) {
+            return stored;
+        }
+        return seriesCache.getAnalysis(analysisType, () -> analysisFlight.run(FlightKey.of(analysisType),
+                () -> queryMetrics.time("analysis", () -> queryBackend.readAnalysis(analysisType))));
+    }
+
+    List<Map<String, Object>> outputAsSingle(OhlcvSeries series) {
+        return outputAsSingle(series, 0);
+    }
+
+    List<Map<String, Object>> outputAsSingle(OhlcvSeries series, int from) {
+        List<Map<String, Object>> listOfMap = new ArrayList<>(series.size() - from);
+        for (int i = from; i < series.size(); i++) {
             Map<String, Object> m = new HashMap<>();
-            m.put("time", convertToMillisecond(row.get(1)));
-            m.put("value", row.get(5));
-            m.put("volume", row.get(6));
+            m.put("time", series.time()[i]);
+            m.put("value", value(series.close()[i]));
+            m.put("volume", value(series.volume()[i]));
             listOfMap.add(m);
         }
-        System.out.println("Number of record:" + listOfMap.size());
+        log.debug("records={}", listOfMap.size());
         return listOfMap;
     }
 
-    private List<Map<String, Object>> outputAsFull(List<Object> list) {
-        List<Map<String, Object>> listOfMap = new ArrayList<>();
-        for (Object obj : list) {
-            List<Object> row = (List<Object>) obj;
+    List<Map<String, Object>> outputAsFull(OhlcvSeries series) {
+        return outputAsFull(series, 0);
+    }
+
+    List<Map<String, Object>> outputAsFull(OhlcvSeries series, int from) {
+        List<Map<String, Object>> listOfMap = new ArrayList<>(series.size() - from);
+        for (int i = from; i < series.size(); i++) {
             Map<String, Object> m = new HashMap<>();
-            m.put("time", convertToMillisecond(row.get(1)));
-            m.put("open", row.get(2));
-            m.put("high", row.get(3));
-            m.put("low", row.get(4));
-            m.put("close", row.get(5));
-            m.put("volume", row.get(6));
+            m.put("time", series.time()[i]);
+            m.put("open", value(series.open()[i]));
+            m.put("high", value(series.high()[i]));
+            m.put("low", value(series.low()[i]));
+            m.put("close", value(series.close()[i]));
+            m.put("volume", value(series.volume()[i]));
             listOfMap.add(m);
         }
-        System.out.println("Number of record:" + listOfMap.size());
+        log.debug("records={}", listOfMap.size());
         return listOfMap;
     }
 
-    private Long convertToMillisecond(Object object) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSS'Z'");
-        LocalDateTime dateTime = LocalDateTime.parse((String) object, formatter);
-        long milliseconds = dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
-        return milliseconds / 1000;
+    public List<Map<String, Object>> getAnalysis(String type) {
+        return getAnalysis(type, null);
     }
 
-    public List<Map<String, Object>> getAnalysis(String type) {
-        String query;
+    /**
+     * @param since epoch seconds; when set only points after it are returned
+     */
+    public List<Map<String, Object>> getAnalysis(String type, Long since) {
+        String analysisType = analysisType(type);
+        if (analysisType == null) {
+            return List.of();
+        }
+        ValueSeries series = loadAnalysis(analysisType);
+        return outputAsValues(series, since == null ? 0 : firstAfter(series.time(), series.size(), since));
+    }
+
+    /**
+     * @return the analysis_market type for an API name (case-insensitive), or null for an unknown name
+     */
+    public static String analysisType(String type) {
         if ("high52w".equalsIgnoreCase(type)) {
-            query = "SELECT date, percentage FROM analysis_market WHERE type = 'high52w' ORDER BY date ASC";
+            return "high52w";
         } else if ("low52w".equalsIgnoreCase(type)) {
-            query = "SELECT date, percentage FROM analysis_market WHERE type = 'low52w' ORDER BY date ASC";
+            return "low52w";
         } else if ("ma_50_200".equalsIgnoreCase(type)) {
-            query = "SELECT date, percentage FROM analysis_market WHERE type = 'MA_50_200' ORDER BY date ASC";
-        } else {
+            return "MA_50_200";
+        }
+        return null;
+    }
+
+    /**
+     * @return the analysis_group type for an API name: an {@link #analysisType(String)} or any MA_n / MA_n_m,
+     * or null
+     */
+    public static String groupBreadthType(String type) {
+        String analysis = analysisType(type);
+        if (analysis != null) {
+            return analysis;
+        }
+        return type != null && type.matches("(?i)ma_\\d+(_\\d+)?") ? "MA_" + type.substring(3) : null;
+    }
+
+    public List<Map<String, Object>> getGroupBreadth(String group, String type, Long since) {
+        ValueSeries series = queryMetrics.time("group_breadth", () -> queryBackend.readGroupBreadth(group, type));
+        return outputAsValues(series, since == null ? 0 : firstAfter(series.time(), series.size(), since));
+    }
+
+    /**
+     * @param period one of {@link RelativeStrengthRanker#PERIODS}
+     * @param since  epoch seconds; when set only dates after it are returned
+     * @return {time, value (percentile), return} per date, empty for an unknown period
+     */
+    public List<Map<String, Object>> getRelativeStrength(String period, String symbol, Long since) {
+        if (!RelativeStrengthRanker.PERIODS.contains(period)) {
             return List.of();
         }
-        System.out.println("Query:" + query);
-        Map<String, Object> map = questDBService.executeQuery(query);
-        Map<String, Object> response = (Map<String, Object>) map.get("response");
-        List<Map<String, Object>> list = (List<Map<String, Object>>) response.get("dataset");
+        RelativeStrengthSeries series = queryMetrics.time("rs", () -> queryBackend.readRelativeStrength(symbol, period));
         List<Map<String, Object>> listOfMap = new ArrayList<>();
-        for (Object obj : list) {
-            List<Object> row = (List<Object>) obj;
+        for (int i = since == null ? 0 : firstAfter(series.time(), series.size(), since); i < series.size(); i++) {
+            if (Double.isNaN(series.rank()[i])) {
+                continue;
+            }
+            Map<String, Object> m = new HashMap<>();
+            m.put("time", series.time()[i]);
+            m.put("value", series.rank()[i]);
+            m.put("return", value(series.returns()[i]));
+            listOfMap.add(m);
+        }
+        log.debug("records={}", listOfMap.size());
+        return listOfMap;
+    }
+
+    List<Map<String, Object>> outputAsValues(ValueSeries series, int from) {
+        List<Map<String, Object>> listOfMap = new ArrayList<>(series.size() - from);
+        for (int i = from; i < series.size(); i++) {
             Map<String, Object> m = new HashMap<>();
-            m.put("time", convertToMillisecond(row.get(0)));
-            m.put("value", row.get(1));
+            m.put("time", series.time()[i]);
+            m.put("value", value(series.value()[i]));
             listOfMap.add(m);
         }
-        System.out.println("Number of record:" + listOfMap.size());
+        log.debug("records={}", listOfMap.size());
         return listOfMap;
     }
 
-}
\ No newline at end of file
+    /**
+     * @return index of the first time after since, or size when there is none
+     */
+    static int firstAfter(long[] time, int size, long since) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (time[mid] <= since) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Missing values are NaN in the series and null in the response.
+     */
+    private static Double value(double v) {
+        return Double.isNaN(v) ? null : v;
+    }
+
+    static double toDouble(Object value) {
+        return value instanceof Number number ? number.doubleValue() : Double.NaN;
+    }
+
+}
@@ -0,0 +1,128 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-group breadth counts of one pass over indicator rows, for every group at once.
+ *
+ * - Each ticker maps to the groups containing it, so a row costs one lookup and one increment per
+ *   group of its ticker, however many groups exist
+ * - Rows must arrive in date order; a date's counts are handed to the sink when the next date starts
+ *   (or on {@link #finish()}), so memory is one date's counts per type and group
+ * - A (group, type) count is only emitted for dates after that pair's own watermark; the caller scans
+ *   from the oldest watermark, so a new group backfills in the same pass that appends the others
+ */
+public class GroupBreadthCounter {
+
+    /**
+     * Receives one date's counts of a group and type; total > 0.
+     */
+    public interface RowSink {
+        void accept(String group, String type, long date, long total, long count);
+    }
+
+    private final String[] groups;
+    private final Map<String, int[]> membership = new HashMap<>();
+    private final Map<String, Long> watermarks;
+    private final RowSink sink;
+
+    private final Map<String, Integer> types = new HashMap<>();
+    private final List<String> typeNames = new ArrayList<>();
+    private final List<long[]> typeWatermarks = new ArrayList<>();
+    private long[][] totals = new long[0][];
+    private long[][] counts = new long[0][];
+
+    private long date = Long.MIN_VALUE;
+
+    /**
+     * @param groups     tickers by group name
+     * @param watermarks last written date (epoch seconds) by {@link #key(String, String)}; missing pairs
+     *                   are written for every date
+     */
+    public GroupBreadthCounter(Map<String, List<String>> groups, Map<String, Long> watermarks, RowSink sink) {
+        this.groups = groups.keySet().toArray(new String[0]);
+        this.watermarks = watermarks;
+        this.sink = sink;
+        for (int g = 0; g < this.groups.length; g++) {
+            for (String ticker : groups.get(this.groups[g])) {
+                int[] current = membership.get(ticker);
+                int[] updated = current == null ? new int[1] : Arrays.copyOf(current, current.length + 1);
+                updated[updated.length - 1] = g;
+                membership.put(ticker, updated);
+            }
+        }
+    }
+
+    public static String key(String group, String type) {
+        return group + '\u0000' + type;
+    }
+
+    /**
+     * Counts the ticker in the total of each of its groups for the type and date, and in the count when hit.
+     */
+    public void add(long time, String type, String ticker, boolean hit) {
+        int[] member = membership.get(ticker);
+        if (member == null) {
+            return;
+        }
+        if (time != date) {
+            flush();
+            date = time;
+        }
+        Integer index = types.get(type);
+        if (index == null) {
+            index = register(type);
+        }
+        long[] total = totals[index];
+        long[] count = counts[index];
+        for (int g : member) {
+            total[g]++;
+            if (hit) {
+                count[g]++;
+            }
+        }
+    }
+
+    /**
+     * Emits the counts of the last date.
+     */
+    public void finish() {
+        flush();
+        date = Long.MIN_VALUE;
+    }
+
+    private int register(String type) {
+        int index = typeNames.size();
+        types.put(type, index);
+        typeNames.add(type);
+        long[] last = new long[groups.length];
+        for (int g = 0; g < groups.length; g++) {
+            last[g] = watermarks.getOrDefault(key(groups[g], type), Long.MIN_VALUE);
+        }
+        typeWatermarks.add(last);
+        totals = Arrays.copyOf(totals, index + 1);
+        counts = Arrays.copyOf(counts, index + 1);
+        totals[index] = new long[groups.length];
+        counts[index] = new long[groups.length];
+        return index;
+    }
+
+    private void flush() {
+        for (int t = 0; t < typeNames.size(); t++) {
+            long[] total = totals[t];
+            long[] count = counts[t];
+            long[] last = typeWatermarks.get(t);
+            for (int g = 0; g < groups.length; g++) {
+                if (total[g] > 0 && date > last[g]) {
+                    sink.accept(groups[g], typeNames.get(t), date, total[g], count[g]);
+                }
+            }
+            Arrays.fill(total, 0);
+            Arrays.fill(count, 0);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link QueryBackend} over QuestDB's HTTP /exec endpoint.
+ *
+ * Queries are SQL text with the ticker or type quoted as a string literal; rows come back as JSON
+ * and are decoded into columnar series. Timestamps are decoded by {@link TimestampDecoder}, or with
+ * mdanalyzer.read.epochTimestamps enabled the date column is cast to LONG so nothing is parsed.
+ */
+@Component
+@ConditionalOnProperty(name = "mdanalyzer.backend", havingValue = "http", matchIfMissing = true)
+public class HttpQueryBackend implements QueryBackend {
+
+    @Autowired
+    QuestDBService questDBService;
+
+    @Autowired
+    SqlTemplates sqlTemplates;
+
+    @Value("${mdanalyzer.read.epochTimestamps:false}")
+    boolean epochTimestamps = false;
+
+    @Override
+    public OhlcvSeries readSeries(String table, String ticker) {
+        String columns = epochTimestamps ? "ticker, CAST(date AS LONG) AS date, open, high, low, close, vol" : "*";
+        String query = "SELECT " + columns + " FROM " + table + " WHERE ticker = " + QuestDBService.quote(ticker) + " ORDER BY date ASC;";
+        return toOhlcvSeries(dataset(query));
+    }
+
+    @Override
+    public ValueSeries readAnalysis(String type) {
+        String columns = epochTimestamps ? "CAST(date AS LONG) AS date, percentage" : "date, percentage";
+        String query = "SELECT " + columns + " FROM analysis_market WHERE type = " + QuestDBService.quote(type) + " ORDER BY date ASC";
+        return toValueSeries(dataset(query));
+    }
+
+    @Override
+    public RelativeStrengthSeries readRelativeStrength(String ticker, String period) {
+        int index = periodIndex(period);
+        List<Object> dataset = dataset(sqlTemplates.render(SqlTemplates.RS_READ, Map.of("ticker", ticker)));
+        RelativeStrengthSeries.Builder builder = new RelativeStrengthSeries.Builder(dataset.size());
+        for (Object obj : dataset) {
+            List<Object> row = (List<Object>) obj;
+            builder.add(TimestampDecoder.toEpochSeconds(row.get(0)), toDouble(row.get(1 + index)),
+                    toDouble(row.get(1 + RelativeStrengthRanker.PERIODS.size() + index)));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public ValueSeries readGroupBreadth(String group, String type) {
+        return toValueSeries(dataset(sqlTemplates.render(SqlTemplates.GROUP_BREADTH_READ, Map.of("group", group, "type", type))));
+    }
+
+    /**
+     * @return the period's offset among the return and rank columns of {@link SqlTemplates#RS_READ}
+     */
+    static int periodIndex(String period) {
+        int index = RelativeStrengthRanker.PERIODS.indexOf(period);
+        if (index < 0) {
+            throw new IllegalArgumentException("unknown period " + period);
+        }
+        return index;
+    }
+
+    /**
+     * Decodes /exec rows laid out as historical_d (ticker, date, open, high, low, close, vol).
+     */
+    static OhlcvSeries toOhlcvSeries(List<Object> dataset) {
+        OhlcvSeries.Builder builder = new OhlcvSeries.Builder(dataset.size());
+        for (Object obj : dataset) {
+            List<Object> row = (List<Object>) obj;
+            builder.add(TimestampDecoder.toEpochSeconds(row.get(1)), toDouble(row.get(2)), toDouble(row.get(3)),
+                    toDouble(row.get(4)), toDouble(row.get(5)), toDouble(row.get(6)));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Decodes /exec rows laid out as (date, value).
+     */
+    static ValueSeries toValueSeries(List<Object> dataset) {
+        ValueSeries.Builder builder = new ValueSeries.Builder(dataset.size());
+        for (Object obj : dataset) {
+            List<Object> row = (List<Object>) obj;
+            builder.add(TimestampDecoder.toEpochSeconds(row.get(0)), toDouble(row.get(1)));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @throws QueryFailedException when /exec returned an error or no response at all
+     */
+    private List<Object> dataset(String query) {
+        Map<String, Object> map = questDBService.executeQuery(query);
+        Map<String, Object> response = (Map<String, Object>) map.get("response");
+        List<Object> dataset = response == null ? null : (List<Object>) response.get("dataset");
+        if (dataset == null) {
+            Object error = response == null ? "no response" : response.getOrDefault("error", "no dataset");
+            throw new QueryFailedException("Query failed: " + error);
+        }
+        return dataset;
+    }
+
+    private static double toDouble(Object value) {
+        return value instanceof Number number ? number.doubleValue() : Double.NaN;
+    }
+}
@@ -0,0 +1,217 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+/**
+ * Single-pass technical indicator kernels over primitive columns.
+ *
+ * Every kernel reads the first size entries of its inputs and writes one value per row into a
+ * caller-supplied output array, NaN until the window is filled; nothing is allocated. A missing (NaN)
+ * input is skipped: its row is NaN and windows span the last n rows that have a value, so a gap never
+ * poisons the rows after it. Unlike
+ * {@link MovingAverageCalculator}, which matches the batch SQL and excludes the current row, windows
+ * here include the current row, as charting libraries expect.
+ */
+public final class IndicatorKernels {
+
+    /**
+     * RANGE BETWEEN '365' DAY PRECEDING AND CURRENT ROW, as in the indicator_52w template.
+     */
+    public static final long WINDOW_52W_SECONDS = 365L * 86400;
+
+    private IndicatorKernels() {
+    }
+
+    /**
+     * Simple moving average of the last n values.
+     */
+    public static void sma(double[] values, int size, int n, double[] out) {
+        double sum = 0;
+        int count = 0;
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            double v = values[i];
+            if (Double.isNaN(v)) {
+                out[i] = Double.NaN;
+                continue;
+            }
+            sum += v;
+            if (++count > n) {
+                tail = nextValue(values, tail);
+                sum -= values[tail++];
+                count--;
+            }
+            out[i] = count == n ? sum / n : Double.NaN;
+        }
+    }
+
+    /**
+     * Exponential moving average with alpha 2 / (n + 1), seeded with the SMA of the first n values.
+     */
+    public static void ema(double[] values, int size, int n, double[] out) {
+        double alpha = 2.0 / (n + 1);
+        double sum = 0;
+        double ema = Double.NaN;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            double v = values[i];
+            if (Double.isNaN(v)) {
+                out[i] = Double.NaN;
+                continue;
+            }
+            if (++count <= n) {
+                sum += v;
+                ema = count == n ? sum / n : Double.NaN;
+            } else {
+                ema += alpha * (v - ema);
+            }
+            out[i] = ema;
+        }
+    }
+
+    /**
+     * Relative strength index with Wilder smoothing over n changes.
+     */
+    public static void rsi(double[] close, int size, int n, double[] out) {
+        double gain = 0;
+        double loss = 0;
+        double previous = Double.NaN;
+        int changes = 0;
+        for (int i = 0; i < size; i++) {
+            if (Double.isNaN(close[i]) || Double.isNaN(previous)) {
+                // a missing close, or the first one: the next change is measured from the last known close
+                previous = Double.isNaN(close[i]) ? previous : close[i];
+                out[i] = Double.NaN;
+                continue;
+            }
+            double change = close[i] - previous;
+            previous = close[i];
+            double up = change > 0 ? change : 0;
+            double down = change < 0 ? -change : 0;
+            if (++changes <= n) {
+                gain += up;
+                loss += down;
+                if (changes < n) {
+                    out[i] = Double.NaN;
+                    continue;
+                }
+                gain /= n;
+                loss /= n;
+            } else {
+                gain = (gain * (n - 1) + up) / n;
+                loss = (loss * (n - 1) + down) / n;
+            }
+            out[i] = loss == 0 ? 100 : 100 - 100 / (1 + gain / loss);
+        }
+    }
+
+    /**
+     * Bollinger bands: SMA of n closes plus and minus k population standard deviations.
+     */
+    public static void bollinger(double[] close, int size, int n, double k, double[] middle, double[] upper, double[] lower) {
+        double sum = 0;
+        double sumSquares = 0;
+        int count = 0;
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            double v = close[i];
+            if (!Double.isNaN(v)) {
+                sum += v;
+                sumSquares += v * v;
+                if (++count > n) {
+                    tail = nextValue(close, tail);
+                    sum -= close[tail];
+                    sumSquares -= close[tail] * close[tail];
+                    tail++;
+                    count--;
+                }
+            }
+            if (Double.isNaN(v) || count < n) {
+                middle[i] = Double.NaN;
+                upper[i] = Double.NaN;
+                lower[i] = Double.NaN;
+                continue;
+            }
+            double mean = sum / n;
+            double deviation = Math.sqrt(Math.max(0, sumSquares / n - mean * mean));
+            middle[i] = mean;
+            upper[i] = mean + k * deviation;
+            lower[i] = mean - k * deviation;
+        }
+    }
+
+    /**
+     * Average true range with Wilder smoothing over n bars.
+     */
+    public static void atr(double[] high, double[] low, double[] close, int size, int n, double[] out) {
+        double atr = 0;
+        double previousClose = Double.NaN;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (Double.isNaN(high[i]) || Double.isNaN(low[i]) || Double.isNaN(close[i])) {
+                out[i] = Double.NaN;
+                continue;
+            }
+            double range = high[i] - low[i];
+            if (!Double.isNaN(previousClose)) {
+                range = Math.max(range, Math.max(Math.abs(high[i] - previousClose), Math.abs(low[i] - previousClose)));
+            }
+            previousClose = close[i];
+            if (++count <= n) {
+                atr += range;
+                if (count < n) {
+                    out[i] = Double.NaN;
+                    continue;
+                }
+                atr /= n;
+            } else {
+                atr = (atr * (n - 1) + range) / n;
+            }
+            out[i] = atr;
+        }
+    }
+
+    /**
+     * @return the first index from i on whose value is not NaN
+     */
+    private static int nextValue(double[] values, int i) {
+        while (Double.isNaN(values[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Highest value over the trailing time window (current row included), NaN on a row whose value is missing,
+     * with a monotonic deque of row indexes in scratch (at least size long).
+     */
+    public static void rollingMax(long[] time, double[] values, int size, long windowSeconds, double[] out, int[] scratch) {
+        rollingExtreme(time, values, size, windowSeconds, out, scratch, true);
+    }
+
+    /**
+     * Lowest value over the trailing time window (current row included); see {@link #rollingMax}.
+     */
+    public static void rollingMin(long[] time, double[] values, int size, long windowSeconds, double[] out, int[] scratch) {
+        rollingExtreme(time, values, size, windowSeconds, out, scratch, false);
+    }
+
+    private static void rollingExtreme(long[] time, double[] values, int size, long windowSeconds, double[] out,
+                                       int[] deque, boolean max) {
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            double v = values[i];
+            if (Double.isNaN(v)) {
+                out[i] = Double.NaN;
+                continue;
+            }
+            while (tail > head && (max ? values[deque[tail - 1]] <= v : values[deque[tail - 1]] >= v)) {
+                tail--;
+            }
+            deque[tail++] = i;
+            while (tail > head && time[deque[head]] < time[i] - windowSeconds) {
+                head++;
+            }
+            out[i] = tail > head ? values[deque[head]] : Double.NaN;
+        }
+    }
+}
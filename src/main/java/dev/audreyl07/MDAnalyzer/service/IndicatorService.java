@@ -0,0 +1,191 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes technical indicators on request from a ticker's series ({@link IndicatorKernels}).
+ *
+ * - Series come from {@link DataService#loadSeries(String, String)}, so they are usually served from
+ *   the {@link SeriesStore} or the {@link SeriesCache} without a query
+ * - Results are cached per (table, ticker, indicator, parameters, newest bar); a pipeline run that
+ *   appends a bar changes the key and old entries age out of the LRU. A re-run that rewrote bars a result
+ *   covers (watermark before its newest bar) drops the table's affected entries, and again once the
+ *   {@link SeriesStore} has reloaded ({@link SeriesReloadedEvent})
+ *
+ * Hits and misses are counted as mdanalyzer.cache.requests{cache=indicator}.
+ */
+@Service
+public class IndicatorService {
+
+    private static final DateTimeFormatter WATERMARK = DateTimeFormatter.BASIC_ISO_DATE;
+
+    /**
+     * Supported indicators, their output columns and default window.
+     */
+    public enum Indicator {
+        SMA("sma", 20, "sma"),
+        EMA("ema", 20, "ema"),
+        RSI("rsi", 14, "rsi"),
+        BOLLINGER("bollinger", 20, "middle", "upper", "lower"),
+        ATR("atr", 14, "atr"),
+        HIGH_52W("high52w", 0, "high52w"),
+        LOW_52W("low52w", 0, "low52w");
+
+        private final String apiName;
+        private final int defaultLength;
+        private final List<String> columns;
+
+        Indicator(String apiName, int defaultLength, String... columns) {
+            this.apiName = apiName;
+            this.defaultLength = defaultLength;
+            this.columns = List.of(columns);
+        }
+
+        public int getDefaultLength() {
+            return defaultLength;
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        /**
+         * @return the indicator for an API name (case-insensitive), or null for an unknown name
+         */
+        public static Indicator parse(String name) {
+            for (Indicator indicator : values()) {
+                if (indicator.apiName.equalsIgnoreCase(name)) {
+                    return indicator;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Indicator columns aligned with the series times; the first size entries are valid, NaN during warm-up.
+     */
+    public record Result(int size, long[] time, List<String> columns, double[][] values) {
+    }
+
+    record Key(String table, String ticker, Indicator indicator, int length, double k, int size, long newest) {
+    }
+
+    @Value("${mdanalyzer.indicators.cacheSize:1000}")
+    int cacheSize = 1000;
+
+    @Autowired
+    DataService dataService;
+
+    @Autowired
+    QueryMetrics queryMetrics;
+
+    private final Map<Key, Result> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    /**
+     * @param length window length (ignored by the 52w indicators)
+     * @param k      band width in standard deviations (Bollinger only)
+     */
+    public Result compute(String table, String ticker, Indicator indicator, int length, double k) {
+        OhlcvSeries series = dataService.loadSeries(table, ticker);
+        long newest = series.size() == 0 ? Long.MIN_VALUE : series.time()[series.size() - 1];
+        Key key = new Key(table, ticker, indicator, indicator.defaultLength == 0 ? 0 : length,
+                indicator == Indicator.BOLLINGER ? k : 0, series.size(), newest);
+        Result cached;
+        synchronized (cache) {
+            cached = cache.get(key);
+        }
+        queryMetrics.recordCache("indicator", cached != null);
+        if (cached != null) {
+            return cached;
+        }
+        Result result = run(series, indicator, length, k);
+        synchronized (cache) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    @EventListener
+    public void onPipelineStageCompleted(PipelineStageCompletedEvent event) {
+        dropRewritten(event.table(), event.watermark());
+    }
+
+    @EventListener
+    public void onSeriesReloaded(SeriesReloadedEvent event) {
+        dropRewritten(event.table(), event.watermark());
+    }
+
+    /**
+     * Drops the table's results whose newest bar is after the watermark (yyyyMMdd).
+     */
+    private void dropRewritten(String table, String watermark) {
+        long after = LocalDate.parse(watermark, WATERMARK).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        synchronized (cache) {
+            cache.keySet().removeIf(key -> key.table().equals(table) && key.newest() > after);
+        }
+    }
+
+    static Result run(OhlcvSeries series, Indicator indicator, int length, double k) {
+        int size = series.size();
+        double[][] values = new double[indicator.columns.size()][size];
+        switch (indicator) {
+            case SMA -> IndicatorKernels.sma(series.close(), size, length, values[0]);
+            case EMA -> IndicatorKernels.ema(series.close(), size, length, values[0]);
+            case RSI -> IndicatorKernels.rsi(series.close(), size, length, values[0]);
+            case BOLLINGER -> IndicatorKernels.bollinger(series.close(), size, length, k, values[0], values[1], values[2]);
+            case ATR -> IndicatorKernels.atr(series.high(), series.low(), series.close(), size, length, values[0]);
+            case HIGH_52W -> IndicatorKernels.rollingMax(series.time(), series.high(), size,
+                    IndicatorKernels.WINDOW_52W_SECONDS, values[0], new int[size]);
+            case LOW_52W -> IndicatorKernels.rollingMin(series.time(), series.low(), size,
+                    IndicatorKernels.WINDOW_52W_SECONDS, values[0], new int[size]);
+        }
+        return new Result(size, series.time(), indicator.columns, values);
+    }
+
+    /**
+     * Shapes a result like the series responses: one map per bar with time and each column, skipping
+     * the warm-up bars and, when since is set, bars up to since.
+     */
+    public List<Map<String, Object>> toRows(Result result, Long since) {
+        int from = since == null ? 0 : DataService.firstAfter(result.time(), result.size(), since);
+        double[] first = result.values()[0];
+        while (from < result.size() && Double.isNaN(first[from])) {
+            from++;
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(result.size() - from);
+        for (int i = from; i < result.size(); i++) {
+            Map<String, Object> m = new HashMap<>();
+            m.put("time", result.time()[i]);
+            for (int c = 0; c < result.columns().size(); c++) {
+                double v = result.values()[c][i];
+                m.put(result.columns().get(c), Double.isNaN(v) ? null : v);
+            }
+            rows.add(m);
+        }
+        return rows;
+    }
+
+    int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+}
@@ -1,9 +1,24 @@
 package dev.audreyl07.MDAnalyzer.service;
 
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import io.micrometer.common.util.StringUtils;
@@ -15,13 +30,67 @@ import io.micrometer.common.util.StringUtils;
  * - Import raw CSV files into staging tables
  * - Populate historical, indicator, and analysis tables via SQL window functions
  * - Update or recompute aggregates (52w breadth, moving average breadth)
+ * - Rank tickers by trailing return per date into rs_rank_d ({@link RelativeStrengthRanker})
+ * - Count 52w and MA breadth per ticker group into analysis_group ({@link GroupBreadthCounter})
  * - Provide utilities to query latest processed dates per table/type
+ * - Enable the dedup upsert keys of existing tables ({@link SqlTemplates#DEDUP_KEYS}), after which the
+ *   incremental stages can be re-run from a given day: rewritten rows replace the stored ones
+ *
+ * Query text lives in {@link SqlTemplates}; this class decides tables and watermarks.
  */
 @Service
 public class MaintenanceService {
+
+    private static final Logger log = LoggerFactory.getLogger(MaintenanceService.class);
+
+    private static final String INDICATOR_MA_HEADER = "type,date,ticker,value1,value2,total,difference,"
+            + "previous_difference,percentage,trend,minimum_trend,trending";
+
+    private static final String ANALYSIS_MARKET_HEADER = "type,date,total,count,percentage";
+
+    private static final String RS_RANK_HEADER = "date,ticker,return_1m,return_3m,return_6m,return_12m,"
+            + "rank_1m,rank_3m,rank_6m,rank_12m";
+
+    static final String RS_RANK = "rs_rank";
+
+    private static final String ANALYSIS_GROUP_HEADER = "grp,type,date,total,count,percentage";
+
+    static final String GROUP_BREADTH = "group_breadth";
+
+    private static final List<String> TYPES_52W = List.of("high52w", "low52w");
+
+    private static final DateTimeFormatter WATERMARK = DateTimeFormatter.BASIC_ISO_DATE;
+
     @Autowired
     QuestDBService questDBService;
 
+    @Autowired
+    QueryMetrics queryMetrics;
+
+    @Autowired
+    SqlTemplates sqlTemplates;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    SeriesScan seriesScan;
+
+    @Autowired
+    TickerGroups tickerGroups;
+
+    @Value("${mdanalyzer.maintenance.tickerBatchSize:200}")
+    int tickerBatchSize = 200;
+
+    @Value("${mdanalyzer.maintenance.csvChunkRows:1000000}")
+    int csvChunkRows = 1_000_000;
+
+    @Value("${mdanalyzer.rs.chunkDays:730}")
+    int rsChunkDays = 730;
+
+    @Value("${mdanalyzer.rs.parallelism:0}")
+    int rsParallelism = 0;
+
     private Map<String, Object> getFalseMap() {
         Map<String, Object> map = new HashMap<>();
         map.put("success", Boolean.FALSE);
@@ -31,7 +100,7 @@ public class MaintenanceService {
     public String getLatestDate(String table, String type) {
         String condition;
         if ("analysis_market".equals(table) || "indicator_d_52w".equals(table)) {
-            condition = StringUtils.isNotEmpty(type) ? "type = '" + type + "'" : "";
+            condition = StringUtils.isNotEmpty(type) ? "type = " + QuestDBService.quote(type) : "";
         } else {
             condition = null;
         }
@@ -58,52 +127,50 @@ public class MaintenanceService {
 
 
     public Map<String, Object> insertIntoHistorical(String type) {
+        return insertIntoHistorical(type, null);
+    }
+
+    /**
+     * @param from first day (yyyyMMdd) to rewrite from the raw table, or null to append after the latest date
+     */
+    public Map<String, Object> insertIntoHistorical(String type, String from) {
         String sourceTable;
         String targetTable;
-        String query;
-        String historicalQuery = """
-                INSERT INTO %s
-                SELECT\s
-                    replace(ticker, '%s', ''),
-                    CASE WHEN per = 'D' THEN
-                    to_timestamp(date, 'yyyyMMdd')
-                    ELSE dateadd('h', -6, to_timestamp(concat(date,'T',time), 'yyyyMMddTHHmmss'))
-                    END AS 'date',
-                    open,
-                    high,
-                    low,
-                    close,
-                    vol
-                FROM %s
-                WHERE""";
-
+        String suffix;
         if ("d".equals(type)) {
             sourceTable = "historical_raw_d";
             targetTable = "historical_d";
-            query = String.format(historicalQuery, targetTable, ".US", sourceTable);
+            suffix = ".US";
         } else if ("etf_d".equals(type)) {
             sourceTable = "historical_raw_etf_d";
             targetTable = "historical_etf_d";
-            query = String.format(historicalQuery, targetTable, ".US", sourceTable);
+            suffix = ".US";
         } else if ("indices_d".equals(type)) {
             sourceTable = "indices_raw_d";
             targetTable = "indices_d";
-            query = String.format(historicalQuery, targetTable, "^", sourceTable);
+            suffix = "^";
         } else {
             return getFalseMap();
         }
-        String latest = questDBService.getLatestDate(targetTable, null);
-        System.out.println("Latest:" + latest);
+        String latest = rerunWatermark(targetTable, questDBService.getLatestDate(targetTable, null), from);
+        log.info("latest={}", latest);
         if (latest == null) {
             return getFalseMap();
         }
-        query += " date > '" + latest + "' ORDER BY date, time ASC;";
-        // System.out.println("Query:\n" + query);
-        // return getFalseMap();
-       return questDBService.executeQuery(query);
+        Map<String, Object> result = run(SqlTemplates.INSERT_HISTORICAL, Map.of("target", targetTable,
+                "source", sourceTable, "suffix", suffix, "watermark", latest));
+        publishIfWritten(SqlTemplates.INSERT_HISTORICAL, targetTable, latest, result);
+        return result;
     }
 
     public Map<String, Object> insertIntoIndicator52w(String type) {
+        return insertIntoIndicator52w(type, null);
+    }
+
+    /**
+     * @param from first day (yyyyMMdd) to recompute, or null to append after the latest date
+     */
+    public Map<String, Object> insertIntoIndicator52w(String type, String from) {
         String sourceTable;
         String targetTable;
         if ("d".equals(type)) {
@@ -116,65 +183,19 @@ public class MaintenanceService {
             return getFalseMap();
         }
 
-        String latest = getLatestDate(targetTable, "GENERAL");
-        System.out.println("Latest:" + latest);
+        String latest = rerunWatermark(targetTable, getLatestDate(targetTable, "GENERAL"), from);
+        log.info("latest={}", latest);
         if (latest == null) {
             return getFalseMap();
         }
-        String sourceCondition1 = "";
-        String targetCondition2 = "";
+        SqlTemplate.Fragment sourceFilter = SqlTemplate.Fragment.EMPTY;
+        SqlTemplate.Fragment targetFilter = SqlTemplate.Fragment.EMPTY;
         if (!"19710101".equals(latest)) {
-            sourceCondition1 = "WHERE date > dateadd('d', -400, to_date('" + latest + "', 'yyyyMMdd'))";
-            targetCondition2 = "WHERE date > to_date('" + latest + "', 'yyyyMMdd')";
-        }
-
-        String indicator52wQuery = """
-                WITH first_stage AS
-                (SELECT
-                  'GENERAL' AS type,
-                  date,
-                  ticker,
-                  high,
-                  low,
-                  close,
-                  lag(close) OVER (
-                      PARTITION BY ticker
-                      ORDER BY date
-                  ) AS 'previous_close',
-                  vol,
-                  lag(vol) OVER (
-                      PARTITION BY ticker
-                      ORDER BY date
-                  ) AS 'previous_vol',
-                  max(high) OVER (
-                    PARTITION BY ticker
-                      ORDER BY date
-                      RANGE BETWEEN '365' DAY PRECEDING AND CURRENT ROW
-                  ) AS 'high52w',
-                  max(high) OVER (
-                    PARTITION BY ticker
-                      ORDER BY date
-                      RANGE BETWEEN '365' DAY PRECEDING AND CURRENT ROW EXCLUDE CURRENT ROW
-                  ) AS 'previous_high52w',
-                  min(low) OVER (
-                    PARTITION BY ticker
-                      ORDER BY date
-                      RANGE BETWEEN '365' DAY PRECEDING AND CURRENT ROW
-                  ) AS 'low52w',
-                  min(low) OVER (
-                    PARTITION BY ticker
-                      ORDER BY date
-                      RANGE BETWEEN '365' DAY PRECEDING AND CURRENT ROW EXCLUDE CURRENT ROW
-                  ) AS 'previous_low52w'
-                FROM %s %s)
-                INSERT INTO %s
-                SELECT
-                  type, date, ticker, high, low, close, previous_close, vol, previous_vol,
-                  high52w, previous_high52w, (close - high52w)/high52w, low52w, previous_low52w, (close - low52w)/low52w
-                FROM first_stage %s""";
-
-        String query = String.format(indicator52wQuery, sourceTable, sourceCondition1, targetTable, targetCondition2);
-        return questDBService.executeQuery(query);
+            sourceFilter = sqlTemplates.get(SqlTemplates.INDICATOR_52W_SOURCE_FILTER).fragment(Map.of("watermark", latest));
+            targetFilter = sqlTemplates.get(SqlTemplates.INDICATOR_52W_TARGET_FILTER).fragment(Map.of("watermark", latest));
+        }
+        return run(SqlTemplates.INDICATOR_52W, Map.of("source", sourceTable, "source_filter", sourceFilter,
+                "target", targetTable, "target_filter", targetFilter));
     }
 
     public Map<String, Object> insertIntoIndicatorMA(String type, int interval, boolean truncate) {
@@ -197,92 +218,74 @@ public class MaintenanceService {
             }
         }
 
-        String indicatorMAQuery = """
-                WITH first_stage AS
-                (SELECT
-                    date, ticker, close AS 'value1',
-                    avg(close) OVER
-                        (PARTITION BY ticker ORDER BY date
-                        ROWS BETWEEN %s PRECEDING AND CURRENT ROW
-                        EXCLUDE CURRENT ROW)
-                    AS 'value2',
-                    count() OVER
-                        (PARTITION BY ticker ORDER BY date
-                        ROWS BETWEEN UNBOUNDED PRECEDING AND %s PRECEDING)
-                    AS 'total'
-                FROM %s),
-                second_stage AS
-                (SELECT
-                    date, ticker, value1, value2, total,
-                    value1 - value2 AS 'difference',
-                    ((value1 - value2) / value2) * 100 AS 'percentage',
-                    first_value(value1 - value2) OVER\s
-                        (PARTITION BY ticker ORDER BY date\s
-                        ROWS 1 PRECEDING EXCLUDE CURRENT ROW)\s
-                    AS 'previous_difference'
-                FROM first_stage
-                WHERE total > 0),
-                third_stage AS
-                (SELECT
-                    date, ticker, value1, value2, total,
-                    difference, previous_difference, percentage,
-                    CASE
-                        WHEN difference >=0 and previous_difference >= 0 THEN total
-                        ELSE
-                            CASE
-                                WHEN difference < 0 and previous_difference < 0 THEN total
-                                ELSE (1 - total)
-                            END
-                    END AS 'trend'
-                FROM second_stage),
-                fourth_stage AS
-                (SELECT
-                    date, ticker, value1, value2, total,
-                    difference, previous_difference, percentage, trend,
-                    min(trend) OVER (PARTITION BY ticker ORDER BY date\s
-                        ROWS BETWEEN UNBOUNDED PRECEDING AND CURRENT ROW)
-                    AS 'minimum_trend'
-                FROM third_stage)
-                INSERT INTO %s
-                SELECT
-                    'MA_%s' AS type, date, ticker, value1, value2, total,
-                    difference, previous_difference, percentage, trend, minimum_trend,
-                    (total + minimum_trend) AS 'trending'
-                FROM fourth_stage""";
-
-        String query = String.format(indicatorMAQuery, interval, interval, sourceTable, targetTable, interval);
-        return questDBService.executeQuery(query);
+        return run(SqlTemplates.INDICATOR_MA_WINDOW, Map.of("source", sourceTable, "target", targetTable,
+                "interval", interval));
     }
 
     public Map<String, Object> insertIntoAnalysisMA(String indicatorType) {
-        String condition;
-        String query;
-        if ("MA".equals(indicatorType)) {
-            condition = " type LIKE 'MA_%'";
-            query = """
-                    INSERT INTO analysis_market
-                    SELECT
-                        type,
-                        date,
-                        COUNT(ticker) AS 'total',
-                        SUM(CASE WHEN difference > 0 THEN 1 ELSE 0 END) AS 'count',
-                        (SUM(CASE WHEN difference > 0 THEN 1 ELSE 0 END) * 1.0 / COUNT(ticker)) * 100 AS 'percentage'
-                    FROM
-                      indicator_d_MA
-                    WHERE
-                    type LIKE 'MA_%'
-                    AND total > 0""";
-        } else {
+        return insertIntoAnalysisMA(indicatorType, null);
+    }
+
+    /**
+     * Appends the MA breadth of every MA type in indicator_d_MA to analysis_market, one insert per type after
+     * that type's own latest date, so a type added to indicator_d_MA is backfilled from the start.
+     *
+     * @param from first day (yyyyMMdd) to recount for every type, or null to append after their latest dates
+     */
+    public Map<String, Object> insertIntoAnalysisMA(String indicatorType, String from) {
+        if (!"MA".equals(indicatorType)) {
             return getFalseMap();
         }
-        String latest = questDBService.getLatestDate("analysis_market", condition);
-        System.out.println("Latest:" + latest);
-        if (latest == null) {
+        // the day before from, which caps every type's watermark below
+        String rerun = from == null ? null : rerunWatermark("analysis_market", from, from);
+        if (from != null && rerun == null) {
+            return getFalseMap();
+        }
+        Map<String, Object> result = run(SqlTemplates.ANALYSIS_MA_WATERMARKS, Map.of());
+        Map<String, Object> response = (Map<String, Object>) result.get("response");
+        if (response == null || response.get("dataset") == null) {
+            return getFalseMap();
+        }
+        Map<String, String> latest = new HashMap<>();
+        for (Object obj : (List<Object>) response.get("dataset")) {
+            List<Object> row = (List<Object>) obj;
+            if (row.get(1) != null) {
+                latest.put((String) row.get(0), String.valueOf(row.get(1)));
+            }
+        }
+        List<String> types = firstColumn(run(SqlTemplates.GROUP_BREADTH_MA_TYPES, Map.of()));
+        if (types == null) {
+            return getFalseMap();
+        }
+        long duration = 0;
+        String oldest = null;
+        boolean failed = false;
+        for (String type : types) {
+            String watermark = latest.getOrDefault(type, "19700101");
+            if (rerun != null && rerun.compareTo(watermark) < 0) {
+                watermark = rerun;
+            }
+            log.info("type={} latest={}", type, watermark);
+            Map<String, Object> inserted = run(SqlTemplates.ANALYSIS_MA, Map.of("type", type, "watermark", watermark));
+            Map<String, Object> insertResponse = (Map<String, Object>) inserted.get("response");
+            if (insertResponse == null || !"OK".equals(insertResponse.get("dml"))) {
+                failed = true;
+                break;
+            }
+            duration += getDuration(inserted);
+            oldest = oldest == null || watermark.compareTo(oldest) < 0 ? watermark : oldest;
+        }
+        if (oldest != null) {
+            eventPublisher.publishEvent(new PipelineStageCompletedEvent(SqlTemplates.ANALYSIS_MA, "analysis_market", oldest));
+        }
+        if (failed) {
             return getFalseMap();
         }
-        query += " AND date > to_date('" + latest + "', 'yyyyMMdd')";
-        query += " GROUP BY type, date ORDER BY type, date ASC;";
-        return questDBService.executeQuery(query);
+        Map<String, Object> map = getFalseMap();
+        map.put("success", Boolean.TRUE);
+        map.put("duration", duration);
+        map.put("types", types.size());
+        return map;
     }
 
     public Map<String, Object> insertIntoIndicatorMACompare(String type, int firstInterval, int secondInterval) {
@@ -298,101 +301,133 @@ public class MaintenanceService {
             return getFalseMap();
         }
 
-        String indicatorMAQuery = """
-                WITH first_stage AS
-                  (SELECT
-                      i1.date, i1.ticker,
-                      i1.value2 AS 'value1',
-                      i2.value2 AS 'value2',
-                          count() OVER\s
-                          (PARTITION BY i2.ticker ORDER BY i2.date\s
-                          )\s
-                      AS 'total'
-                  FROM %s i1
-                  JOIN %s i2 ON i1.date = i2.date AND i1.ticker = i2.ticker
-                  WHERE i1.type = 'MA_%s' and i2.type = 'MA_%s'),
-                  second_stage AS
-                  (SELECT
-                      date, ticker, value1, value2, total,
-                      value1 - value2 AS 'difference',
-                      ((value1 - value2) / value2) * 100 AS 'percentage',
-                      first_value(value1 - value2) OVER\s
-                          (PARTITION BY ticker ORDER BY date
-                          ROWS 1 PRECEDING EXCLUDE CURRENT ROW)
-                      AS 'previous_difference'
-                  FROM first_stage
-                  WHERE total > 0),
-                  third_stage AS
-                  (SELECT
-                      date, ticker, value1, value2, total,
-                      difference, previous_difference, percentage,
-                      CASE
-                          WHEN difference >=0 and previous_difference >= 0 THEN total
-                          ELSE
-                              CASE
-                                  WHEN difference < 0 and previous_difference < 0 THEN total
-                                  ELSE (1 - total)
-                              END
-                      END AS 'trend'
-                  FROM second_stage),
-                  fourth_stage AS
-                  (SELECT
-                      date, ticker, value1, value2, total,
-                      difference, previous_difference, percentage, trend,
-                      min(trend) OVER (PARTITION BY ticker ORDER BY date\s
-                          ROWS BETWEEN UNBOUNDED PRECEDING AND CURRENT ROW)
-                      AS 'minimum_trend'
-                  FROM third_stage)
-                  INSERT INTO %s
-                  SELECT
-                      '%s' AS type, date, ticker, value1, value2, total,
-                      difference, previous_difference, percentage, trend, minimum_trend,
-                      (total + minimum_trend) AS 'trending'
-                  FROM fourth_stage""";
         String maType = String.format("MA_%s_%s", firstInterval, secondInterval);
-        String query = String.format(indicatorMAQuery, sourceTable, sourceTable,
-                firstInterval, secondInterval, targetTable, maType);
-        return questDBService.executeQuery(query);
+        return run(SqlTemplates.INDICATOR_MA_COMPARE, Map.of("source", sourceTable, "first", firstInterval,
+                "second", secondInterval, "target", targetTable, "ma_type", maType));
     }
 
-    public Map<String, Object> updateAnalysisMA(String type, int firstInterval, int secondInterval) {
-        int totalDuration = 0;
-        Map<String, Object> result1 = insertIntoIndicatorMA(type, firstInterval, true);
-        System.out.println("RESULT1:\n" + result1);
-        if (!result1.containsKey("response")) {
+    /**
+     * Computes MA_n rows for every interval plus the MA_n_m crossover rows for every pair of intervals
+     * in a single pass over the source table, then loads them into the indicator table together.
+     * Tickers are read in batches of {@code tickerBatchSize}; each ticker's closes are scanned once
+     * regardless of how many intervals are requested.
+     */
+    public Map<String, Object> insertIntoIndicatorMAs(String type, List<Integer> intervals, boolean truncate) {
+        String sourceTable;
+        String targetTable;
+        if ("d".equals(type)) {
+            sourceTable = "historical_d";
+            targetTable = "indicator_d_MA";
+        } else if ("etf_d".equals(type)) {
+            sourceTable = "historical_etf_d";
+            targetTable = "indicator_etf_MA";
+        } else {
             return getFalseMap();
         }
-        totalDuration += getDuration(result1);
-        Map<String, Object> response1 = (Map<String, Object>) result1.get("response");
-        if (!"OK".equals(response1.getOrDefault("dml", "FAILURE"))) {
+        if (intervals == null || intervals.stream().noneMatch(i -> i != null && i > 0)) {
             return getFalseMap();
         }
-        Map<String, Object> result2 = insertIntoIndicatorMA(type, secondInterval, false);
-        System.out.println("RESULT2:\n" + result2);
-        if (!result2.containsKey("response")) {
-            return getFalseMap();
+
+        if (truncate) {
+            boolean truncated = questDBService.truncateTable(targetTable);
+            if (!truncated) {
+                return getFalseMap();
+            }
         }
-        totalDuration += getDuration(result2);
-        Map<String, Object> response2 = (Map<String, Object>) result1.get("response");
-        if (!"OK".equals(response2.getOrDefault("dml", "FAILURE"))) {
+
+        long start = System.currentTimeMillis();
+        List<String> tickers = getTickers(sourceTable);
+        if (tickers == null) {
             return getFalseMap();
         }
-        Map<String, Object> result3 = insertIntoIndicatorMACompare(type, firstInterval, secondInterval);
-        System.out.println("RESULT3:\n" + result3);
-        if (!result3.containsKey("response")) {
+        MovingAverageCalculator calculator = new MovingAverageCalculator(
+                intervals.stream().filter(Objects::nonNull).toList());
+        int batchSize = Math.max(1, tickerBatchSize);
+        String[] dates = new String[0];
+        double[] closes = new double[0];
+        long written;
+        boolean failed;
+        try (CsvImportWriter writer = new CsvImportWriter(questDBService, targetTable, INDICATOR_MA_HEADER, csvChunkRows)) {
+            MovingAverageCalculator.RowSink sink = (maType, date, ticker, value1, value2, total, difference,
+                                                    previousDifference, percentage, trend, minimumTrend, trending) ->
+                    writer.beginRow().add(maType).add(date).add(ticker).add(value1).add(value2).add(total)
+                            .add(difference).add(previousDifference).add(percentage).add(trend)
+                            .add(minimumTrend).add(trending).endRow();
+            for (int from = 0; from < tickers.size(); from += batchSize) {
+                List<String> batch = tickers.subList(from, Math.min(from + batchSize, tickers.size()));
+                Map<String, Object> result = run(SqlTemplates.INDICATOR_MA_READ,
+                        Map.of("source", sourceTable, "tickers", batch));
+                Map<String, Object> response = (Map<String, Object>) result.get("response");
+                if (response == null || response.get("dataset") == null) {
+                    return getFalseMap();
+                }
+                List<Object> dataset = (List<Object>) response.get("dataset");
+                String currentTicker = null;
+                int size = 0;
+                for (Object obj : dataset) {
+                    List<Object> row = (List<Object>) obj;
+                    String ticker = (String) row.get(0);
+                    if (row.get(2) == null) {
+                        continue;
+                    }
+                    if (!ticker.equals(currentTicker)) {
+                        if (size > 0) {
+                            calculator.compute(currentTicker, dates, closes, size, sink);
+                        }
+                        currentTicker = ticker;
+                        size = 0;
+                    }
+                    if (size == dates.length) {
+                        int capacity = Math.max(1024, size * 2);
+                        dates = Arrays.copyOf(dates, capacity);
+                        closes = Arrays.copyOf(closes, capacity);
+                    }
+                    dates[size] = (String) row.get(1);
+                    closes[size] = ((Number) row.get(2)).doubleValue();
+                    size++;
+                }
+                if (size > 0) {
+                    calculator.compute(currentTicker, dates, closes, size, sink);
+                }
+            }
+            writer.flush();
+            written = writer.getRowCount();
+            failed = writer.isFailed();
+        }
+        if (failed) {
             return getFalseMap();
         }
-        totalDuration += getDuration(result3);
-        Map<String, Object> response3 = (Map<String, Object>) result1.get("response");
-        if (!"OK".equals(response3.getOrDefault("dml", "FAILURE"))) {
+        Map<String, Object> map = getFalseMap();
+        map.put("success", Boolean.TRUE);
+        map.put("duration", System.currentTimeMillis() - start);
+        map.put("count", written);
+        map.put("tickers", tickers.size());
+        queryMetrics.recordQuery("indicator_ma", System.currentTimeMillis() - start);
+        return map;
+    }
+
+    public Map<String, Object> updateAnalysisMA(String type, int firstInterval, int secondInterval) {
+        return updateAnalysisMA(type, List.of(firstInterval, secondInterval));
+    }
+
+    /**
+     * Rebuilds the MA indicator table for all intervals (and their crossovers) in one pass,
+     * then appends the MA breadth to analysis_market.
+     */
+    public Map<String, Object> updateAnalysisMA(String type, List<Integer> intervals) {
+        int totalDuration = 0;
+        Map<String, Object> result1 = insertIntoIndicatorMAs(type, intervals, true);
+        log.info("stage 1 result={}", result1);
+        if (!Boolean.TRUE.equals(result1.get("success"))) {
             return getFalseMap();
         }
-        Map<String, Object> result4 = insertIntoAnalysisMA("MA");
-        System.out.println("RESULT4:\n" + result4);
-        if (!result4.containsKey("response")) {
+        totalDuration += getDuration(result1);
+        Map<String, Object> result2 = insertIntoAnalysisMA("MA");
+        log.info("stage 2 result={}", result2);
+        if (!Boolean.TRUE.equals(result2.get("success"))) {
             return getFalseMap();
         }
-        totalDuration += getDuration(result4);
+        totalDuration += getDuration(result2);
         Map<String, Object> map = getFalseMap();
         map.put("success", Boolean.TRUE);
         map.put("duration", totalDuration);
@@ -400,51 +435,309 @@ public class MaintenanceService {
     }
 
     public Map<String, Object> insertIntoAnalysis52w(String indicatorType) {
+        return insertIntoAnalysis52w(indicatorType, null);
+    }
+
+    /**
+     * @param from first day (yyyyMMdd) to recount, or null to append after the latest date
+     */
+    public Map<String, Object> insertIntoAnalysis52w(String indicatorType, String from) {
         String condition;
-        String query;
+        String template;
         if ("high52w".equals(indicatorType)) {
             condition = " type = 'high52w'";
-            query = """
-                    INSERT INTO analysis_market
-                    SELECT
-                        'high52w' as 'type',
-                        date,
-                        count(ticker) as 'total',
-                        SUM(CASE WHEN high52w > previous_high52w THEN 1 ELSE 0 END) AS 'count',
-                        (SUM(CASE WHEN high52w > previous_high52w THEN 1 ELSE 0 END) * 1.0 / COUNT(ticker)) * 100 AS 'percentage'
-                    FROM indicator_d_52w
-                    WHERE
-                    previous_close <> null""";
+            template = SqlTemplates.ANALYSIS_52W_HIGH;
         } else if ("low52w".equals(indicatorType)) {
             condition = " type = 'low52w'";
-            query = """
-                    INSERT INTO analysis_market
-                    SELECT
-                        'low52w' as 'type',
-                        date,
-                        count(ticker) as 'total',
-                        SUM(CASE WHEN low52w < previous_low52w THEN 1 ELSE 0 END) AS 'count',
-                        (SUM(CASE WHEN low52w < previous_low52w THEN 1 ELSE 0 END) * 1.0 / COUNT(ticker)) * 100 AS 'percentage'
-                    FROM indicator_d_52w
-                    WHERE
-                    previous_close <> null""";
+            template = SqlTemplates.ANALYSIS_52W_LOW;
         } else {
             return getFalseMap();
         }
-        String latest = questDBService.getLatestDate("analysis_market", condition);
-        System.out.println("Latest:" + latest);
+        String latest = rerunWatermark("analysis_market", questDBService.getLatestDate("analysis_market", condition), from);
+        log.info("latest={}", latest);
         if (latest == null) {
             return getFalseMap();
         }
-        query += " AND date > to_date('" + latest + "', 'yyyyMMdd')\n";
-        query += " ORDER BY type, date ASC;";
-        return questDBService.executeQuery(query);
+        Map<String, Object> result = execute("analysis_52w", sqlTemplates.render(template, Map.of("watermark", latest)));
+        publishIfWritten(template, "analysis_market", latest, result);
+        return result;
+    }
+
+    /**
+     * Computes the new-high and new-low breadth for every date in one scan of indicator_d_52w
+     * and appends both analysis_market types together. Each type is only written for dates after
+     * its own latest date, so a lagging type is backfilled while the other is appended.
+     */
+    public Map<String, Object> insertIntoAnalysis52wHighLow() {
+        return insertIntoAnalysis52wHighLow(null);
+    }
+
+    /**
+     * @param from first day (yyyyMMdd) to recount for both types, or null to append after their latest dates
+     */
+    public Map<String, Object> insertIntoAnalysis52wHighLow(String from) {
+        String latestHigh = rerunWatermark("analysis_market",
+                questDBService.getLatestDate("analysis_market", " type = 'high52w'"), from);
+        String latestLow = rerunWatermark("analysis_market",
+                questDBService.getLatestDate("analysis_market", " type = 'low52w'"), from);
+        log.info("latest high52w={} low52w={}", latestHigh, latestLow);
+        if (latestHigh == null || latestLow == null) {
+            return getFalseMap();
+        }
+        int highWatermark = Integer.parseInt(latestHigh);
+        int lowWatermark = Integer.parseInt(latestLow);
+        String watermark = String.valueOf(Math.min(highWatermark, lowWatermark));
+        long start = System.currentTimeMillis();
+        Map<String, Object> result = run(SqlTemplates.ANALYSIS_52W_HIGH_LOW, Map.of("watermark", watermark));
+        Map<String, Object> response = (Map<String, Object>) result.get("response");
+        if (response == null || response.get("dataset") == null) {
+            return getFalseMap();
+        }
+        long written;
+        boolean failed;
+        try (CsvImportWriter writer = new CsvImportWriter(questDBService, "analysis_market", ANALYSIS_MARKET_HEADER, csvChunkRows)) {
+            for (Object obj : (List<Object>) response.get("dataset")) {
+                List<Object> row = (List<Object>) obj;
+                String date = (String) row.get(0);
+                int day = ((Number) row.get(1)).intValue();
+                long total = ((Number) row.get(2)).longValue();
+                long highCount = ((Number) row.get(3)).longValue();
+                long lowCount = ((Number) row.get(4)).longValue();
+                if (day > highWatermark) {
+                    writer.beginRow().add("high52w").add(date).add(total).add(highCount)
+                            .add((highCount * 1.0 / total) * 100).endRow();
+                }
+                if (day > lowWatermark) {
+                    writer.beginRow().add("low52w").add(date).add(total).add(lowCount)
+                            .add((lowCount * 1.0 / total) * 100).endRow();
+                }
+            }
+            writer.flush();
+            written = writer.getRowCount();
+            failed = writer.isFailed();
+        }
+        if (failed) {
+            return getFalseMap();
+        }
+        if (written > 0) {
+            eventPublisher.publishEvent(new PipelineStageCompletedEvent(SqlTemplates.ANALYSIS_52W_HIGH_LOW,
+                    "analysis_market", watermark));
+        }
+        Map<String, Object> map = getFalseMap();
+        map.put("success", Boolean.TRUE);
+        map.put("duration", System.currentTimeMillis() - start);
+        map.put("count", written);
+        return map;
+    }
+
+    /**
+     * Ranks every ticker of historical_d by its 1m/3m/6m/12m return for each date after the latest date
+     * of rs_rank_d and appends the percentiles there. Dates are processed in windows of rsChunkDays
+     * calendar days, one pass over the series per window, so a full rebuild holds one window of returns
+     * in memory; a daily run is a single window. Dates of a window are ranked in parallel.
+     */
+    public Map<String, Object> insertIntoRelativeStrength(String type) {
+        return insertIntoRelativeStrength(type, null);
+    }
+
+    /**
+     * @param from first day (yyyyMMdd) to re-rank, or null to append after the latest date
+     */
+    public Map<String, Object> insertIntoRelativeStrength(String type, String from) {
+        if (!"d".equals(type)) {
+            return getFalseMap();
+        }
+        String sourceTable = "historical_d";
+        String targetTable = "rs_rank_d";
+        String watermark = rerunWatermark(targetTable, questDBService.getLatestDate(targetTable, null), from);
+        String sourceFirst = questDBService.getEarliestDate(sourceTable, null);
+        String sourceLatest = questDBService.getLatestDate(sourceTable, null);
+        log.info("latest {}={} {}={}..{}", targetTable, watermark, sourceTable, sourceFirst, sourceLatest);
+        if (watermark == null || sourceFirst == null || sourceLatest == null) {
+            return getFalseMap();
+        }
+        // an empty rs_rank_d starts at the day before the first source date, not at the 19710101 sentinel
+        long after = Math.max(epochSeconds(watermark), epochSeconds(sourceFirst) - 86400L);
+        long until = epochSeconds(sourceLatest);
+        long window = Math.max(1, rsChunkDays) * 86400L;
+        long start = System.currentTimeMillis();
+        int dates = 0;
+        long written;
+        boolean failed;
+        ForkJoinPool pool = new ForkJoinPool(rsParallelism > 0 ? rsParallelism : Runtime.getRuntime().availableProcessors());
+        try (CsvImportWriter writer = new CsvImportWriter(questDBService, targetTable, RS_RANK_HEADER, csvChunkRows)) {
+            RelativeStrengthRanker.RowSink sink = (date, ticker, returns, ranks) -> {
+                writer.beginRow().add(TimestampDecoder.toIso(date)).add(ticker);
+                for (double value : returns) {
+                    writer.add(value);
+                }
+                for (double value : ranks) {
+                    writer.add(value);
+                }
+                writer.endRow();
+            };
+            for (long chunk = after; chunk < until; chunk += window) {
+                RelativeStrengthRanker ranker = new RelativeStrengthRanker(chunk, Math.min(until, chunk + window));
+                if (!seriesScan.forEach(sourceTable, (ticker, series) ->
+                        ranker.add(ticker, series.time(), series.close(), series.size()))) {
+                    return getFalseMap();
+                }
+                dates += ranker.getDateCount();
+                ranker.rank(pool, sink);
+            }
+            writer.flush();
+            written = writer.getRowCount();
+            failed = writer.isFailed();
+        } catch (IOException e) {
+            log.warn("rs_rank read of {} failed: {}", sourceTable, e.getMessage());
+            return getFalseMap();
+        } finally {
+            pool.shutdown();
+        }
+        if (failed) {
+            return getFalseMap();
+        }
+        if (written > 0) {
+            eventPublisher.publishEvent(new PipelineStageCompletedEvent(RS_RANK, targetTable, watermark));
+        }
+        queryMetrics.recordQuery(RS_RANK, System.currentTimeMillis() - start);
+        Map<String, Object> map = getFalseMap();
+        map.put("success", Boolean.TRUE);
+        map.put("duration", System.currentTimeMillis() - start);
+        map.put("count", written);
+        map.put("dates", dates);
+        return map;
+    }
+
+    /**
+     * Computes the analysis_market types (high52w, low52w and every MA_ type) for each {@link TickerGroups}
+     * group and appends them to analysis_group. Each indicator table is read once for all groups, from the
+     * oldest (group, type) watermark on; a pair is only written for dates after its own latest date, so a
+     * new group, or an MA type new to indicator_d_MA, is backfilled by the same pass that appends the new
+     * dates of the others. A group's membership change applies to the dates written after it, or to the
+     * dates of a re-run.
+     */
+    public Map<String, Object> insertIntoGroupBreadth() {
+        return insertIntoGroupBreadth(null);
+    }
+
+    /**
+     * @param from first day (yyyyMMdd) to recount for every group, or null to append after each pair's latest date
+     */
+    public Map<String, Object> insertIntoGroupBreadth(String from) {
+        Map<String, List<String>> groups = tickerGroups.getAll();
+        // the day before from, which caps every pair's watermark below
+        String rerun = from == null ? null : rerunWatermark("analysis_group", from, from);
+        if (from != null && rerun == null) {
+            return getFalseMap();
+        }
+        long start = System.currentTimeMillis();
+        Map<String, Object> result = run(SqlTemplates.GROUP_BREADTH_WATERMARKS, Map.of());
+        Map<String, Object> response = (Map<String, Object>) result.get("response");
+        if (response == null || response.get("dataset") == null) {
+            return getFalseMap();
+        }
+        Map<String, Long> watermarks = new HashMap<>();
+        for (Object obj : (List<Object>) response.get("dataset")) {
+            List<Object> row = (List<Object>) obj;
+            if (row.get(2) != null) {
+                watermarks.put(GroupBreadthCounter.key((String) row.get(0), (String) row.get(1)),
+                        epochSeconds(String.valueOf(row.get(2))));
+            }
+        }
+        if (rerun != null) {
+            long cap = epochSeconds(rerun);
+            watermarks.replaceAll((key, day) -> Math.min(day, cap));
+        }
+        // every MA type in indicator_d_MA, so a type added there is counted from the start for each group
+        List<String> typesMA = firstColumn(run(SqlTemplates.GROUP_BREADTH_MA_TYPES, Map.of()));
+        if (typesMA == null) {
+            return getFalseMap();
+        }
+        long oldest52w = Long.MAX_VALUE;
+        long oldestMA = typesMA.isEmpty() ? Long.MIN_VALUE : Long.MAX_VALUE;
+        for (String group : groups.keySet()) {
+            for (String type : TYPES_52W) {
+                oldest52w = Math.min(oldest52w, watermarks.getOrDefault(GroupBreadthCounter.key(group, type), Long.MIN_VALUE));
+            }
+            for (String type : typesMA) {
+                oldestMA = Math.min(oldestMA, watermarks.getOrDefault(GroupBreadthCounter.key(group, type), Long.MIN_VALUE));
+            }
+        }
+        long written = 0;
+        boolean failed = false;
+        if (!groups.isEmpty()) {
+            try (CsvImportWriter writer = new CsvImportWriter(questDBService, "analysis_group", ANALYSIS_GROUP_HEADER, csvChunkRows)) {
+                GroupBreadthCounter counter = new GroupBreadthCounter(groups, watermarks, (group, type, date, total, count) ->
+                        writer.beginRow().add(group).add(type).add(TimestampDecoder.toIso(date)).add(total).add(count)
+                                .add((count * 1.0 / total) * 100).endRow());
+                long read = questDBService.streamQuery(sqlTemplates.render(SqlTemplates.GROUP_BREADTH_52W,
+                        Map.of("watermark", toWatermark(oldest52w))), row -> {
+                    long time = TimestampDecoder.toEpochSeconds(row[0]);
+                    String ticker = (String) row[1];
+                    counter.add(time, "high52w", ticker, ((Number) row[2]).intValue() > 0);
+                    counter.add(time, "low52w", ticker, ((Number) row[3]).intValue() > 0);
+                });
+                if (read < 0) {
+                    return getFalseMap();
+                }
+                // a date is only emitted once complete, so a failed read never writes partial counts
+                counter.finish();
+                read = questDBService.streamQuery(sqlTemplates.render(SqlTemplates.GROUP_BREADTH_MA,
+                        Map.of("watermark", toWatermark(oldestMA))), row -> counter.add(
+                        TimestampDecoder.toEpochSeconds(row[1]), (String) row[0], (String) row[2],
+                        ((Number) row[3]).intValue() > 0));
+                if (read < 0) {
+                    return getFalseMap();
+                }
+                counter.finish();
+                writer.flush();
+                written = writer.getRowCount();
+                failed = writer.isFailed();
+            } catch (IOException e) {
+                log.warn("group breadth read failed: {}", e.getMessage());
+                return getFalseMap();
+            }
+        }
+        if (failed) {
+            return getFalseMap();
+        }
+        if (written > 0) {
+            eventPublisher.publishEvent(new PipelineStageCompletedEvent(GROUP_BREADTH, "analysis_group",
+                    toWatermark(Math.min(oldest52w, oldestMA))));
+        }
+        queryMetrics.recordQuery(GROUP_BREADTH, System.currentTimeMillis() - start);
+        Map<String, Object> map = getFalseMap();
+        map.put("success", Boolean.TRUE);
+        map.put("duration", System.currentTimeMillis() - start);
+        map.put("count", written);
+        map.put("groups", groups.size());
+        return map;
+    }
+
+    /**
+     * @return the yyyyMMdd day of the epoch seconds, or 19700101 for Long.MIN_VALUE (no rows yet)
+     */
+    private static String toWatermark(long epochSeconds) {
+        return epochSeconds == Long.MIN_VALUE ? "19700101"
+                : WATERMARK.format(LocalDate.ofEpochDay(Math.floorDiv(epochSeconds, 86400L)));
+    }
+
+    private static long epochSeconds(String watermark) {
+        return LocalDate.parse(watermark, WATERMARK).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
     }
 
     public Map<String, Object> updateAnalysis52w(String type) {
+        return updateAnalysis52w(type, null);
+    }
+
+    /**
+     * @param from first day (yyyyMMdd) to recompute in both stages, or null to append after their latest dates
+     */
+    public Map<String, Object> updateAnalysis52w(String type, String from) {
         int totalDuration  = 0;
-        Map<String, Object> result1 = insertIntoIndicator52w(type);
-        System.out.println("RESULT1:\n" + result1);
+        Map<String, Object> result1 = insertIntoIndicator52w(type, from);
+        log.info("stage 1 result={}", result1);
         if (!result1.containsKey("response")) {
             return getFalseMap();
         }
@@ -453,32 +746,138 @@ public class MaintenanceService {
         if (!"OK".equals(response1.getOrDefault("dml", "FAILURE"))) {
             return getFalseMap();
         }
-        Map<String, Object> result2 = insertIntoAnalysis52w("high52w");
-        System.out.println("RESULT2:\n" + result2);
-        if (!result2.containsKey("response")) {
+        Map<String, Object> result2 = insertIntoAnalysis52wHighLow(from);
+        log.info("stage 2 result={}", result2);
+        if (!Boolean.TRUE.equals(result2.get("success"))) {
             return getFalseMap();
         }
         totalDuration += getDuration(result2);
-        Map<String, Object> response2 = (Map<String, Object>) result1.get("response");
-        if (!"OK".equals(response2.getOrDefault("dml", "FAILURE"))) {
-            return getFalseMap();
-        }
-        Map<String, Object> result3 = insertIntoAnalysis52w("low52w");
-        System.out.println("RESULT3:\n" + result3);
-        if (!result3.containsKey("response")) {
+        Map<String, Object> map = getFalseMap();
+        map.put("success", Boolean.TRUE);
+        map.put("duration", totalDuration);
+        return map;
+    }
+
+    /**
+     * Enables the upsert keys of {@link SqlTemplates#DEDUP_KEYS} on every existing table; tables created
+     * from the current scripts already have them, and enabling them again is harmless. Rows duplicated
+     * before are not merged; re-run the affected dates once the keys are in place.
+     *
+     * @return success and OK, FAILED or MISSING per table
+     */
+    public Map<String, Object> migrateDedup() {
+        long start = System.currentTimeMillis();
+        Map<String, Boolean> status = getDedupStatus();
+        if (status == null) {
             return getFalseMap();
         }
-        totalDuration += getDuration(result3);
-        Map<String, Object> response3 = (Map<String, Object>) result1.get("response");
-        if (!"OK".equals(response3.getOrDefault("dml", "FAILURE"))) {
-            return getFalseMap();
+        Map<String, Object> tables = new LinkedHashMap<>();
+        boolean success = true;
+        for (String table : SqlTemplates.DEDUP_KEYS.keySet()) {
+            if (!status.containsKey(table)) {
+                tables.put(table, "MISSING");
+                continue;
+            }
+            Map<String, Object> response = (Map<String, Object>) run(SqlTemplates.dedupTemplate(table), Map.of()).get("response");
+            boolean enabled = response != null && "OK".equals(response.get("ddl"));
+            log.info("dedup table={} enabled={}", table, enabled);
+            tables.put(table, enabled ? "OK" : "FAILED");
+            success &= enabled;
         }
         Map<String, Object> map = getFalseMap();
-        map.put("success", Boolean.TRUE);
-        map.put("duration", totalDuration);
+        map.put("success", success);
+        map.put("duration", System.currentTimeMillis() - start);
+        map.put("tables", tables);
         return map;
     }
 
+    /**
+     * Watermark of a stage run: the table's latest date, or for a re-run the day before from when that is
+     * earlier, so every date from on is written again. A re-run needs the table's upsert keys, otherwise the
+     * rewritten dates would be duplicated.
+     *
+     * @param latest the table's latest date (yyyyMMdd), or null when unknown
+     * @param from   first day (yyyyMMdd) to rewrite, or null for an incremental run
+     * @return the watermark, or null when latest is unknown, from is malformed or the table has no upsert keys
+     */
+    String rerunWatermark(String table, String latest, String from) {
+        if (latest == null || from == null) {
+            return latest;
+        }
+        String before;
+        try {
+            before = LocalDate.parse(from, WATERMARK).minusDays(1).format(WATERMARK);
+        } catch (DateTimeParseException e) {
+            log.warn("re-run of {} rejected, from={} is not yyyyMMdd", table, from);
+            return null;
+        }
+        Map<String, Boolean> status = getDedupStatus();
+        if (status == null || !Boolean.TRUE.equals(status.get(table))) {
+            log.warn("re-run of {} rejected, dedup is not enabled; run migrate-dedup first", table);
+            return null;
+        }
+        return before.compareTo(latest) < 0 ? before : latest;
+    }
+
+    /**
+     * @return whether dedup is enabled, by table name; null when tables() could not be read
+     */
+    private Map<String, Boolean> getDedupStatus() {
+        Map<String, Object> response = (Map<String, Object>) run(SqlTemplates.DEDUP_STATUS, Map.of()).get("response");
+        if (response == null || response.get("dataset") == null) {
+            return null;
+        }
+        Map<String, Boolean> status = new HashMap<>();
+        for (Object obj : (List<Object>) response.get("dataset")) {
+            List<Object> row = (List<Object>) obj;
+            status.put((String) row.get(0), Boolean.TRUE.equals(row.get(1)));
+        }
+        return status;
+    }
+
+    private Map<String, Object> execute(String kind, String query) {
+        return queryMetrics.time(kind, () -> questDBService.executeQuery(query));
+    }
+
+    /**
+     * Publishes a {@link PipelineStageCompletedEvent} when QuestDB acknowledged the DML.
+     */
+    private void publishIfWritten(String stage, String table, String watermark, Map<String, Object> result) {
+        Map<String, Object> response = (Map<String, Object>) result.get("response");
+        if (response != null && "OK".equals(response.get("dml"))) {
+            eventPublisher.publishEvent(new PipelineStageCompletedEvent(stage, table, watermark));
+        }
+    }
+
+    /**
+     * Renders the named template and executes it, timed under the template name.
+     */
+    private Map<String, Object> run(String template, Map<String, ?> args) {
+        return execute(template, sqlTemplates.render(template, args));
+    }
+
+    private List<String> getTickers(String table) {
+        return firstColumn(run(SqlTemplates.TICKERS, Map.of("source", table)));
+    }
+
+    /**
+     * @return the non-null values of the first column, or null when the query failed
+     */
+    private static List<String> firstColumn(Map<String, Object> result) {
+        Map<String, Object> response = (Map<String, Object>) result.get("response");
+        if (response == null || response.get("dataset") == null) {
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        for (Object obj : (List<Object>) response.get("dataset")) {
+            Object value = ((List<Object>) obj).get(0);
+            if (value != null) {
+                values.add(value.toString());
+            }
+        }
+        return values;
+    }
+
     private int getDuration(Map<String, Object> result) {
         Object durationObj = result.get("duration");
         if (durationObj instanceof Number) {
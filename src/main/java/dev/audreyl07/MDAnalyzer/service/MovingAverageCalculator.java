@@ -0,0 +1,128 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single-pass moving average kernel for one ticker's close series.
+ *
+ * For a set of intervals it produces, in one sweep over the closes:
+ * - MA_n rows (close vs. average of the previous n closes)
+ * - MA_n_m crossover rows for every pair of intervals (shorter vs. longer average)
+ *
+ * The derived columns (difference, previous_difference, percentage, trend,
+ * minimum_trend, trending) follow the SQL in MaintenanceService.insertIntoIndicatorMA
+ * so the rows are interchangeable with the ones produced by QuestDB window functions.
+ * Working arrays are reused across tickers; only the sink sees the results.
+ */
+public class MovingAverageCalculator {
+
+    /**
+     * Receives computed indicator rows in indicator_d_MA column order.
+     */
+    public interface RowSink {
+        void accept(String type, String date, String ticker, double value1, double value2, long total,
+                    double difference, double previousDifference, double percentage,
+                    long trend, double minimumTrend, double trending);
+    }
+
+    private final int[] intervals;
+    private final String[] maTypes;
+    private final String[][] compareTypes;
+    private double[][] averages = new double[0][];
+
+    public MovingAverageCalculator(List<Integer> intervals) {
+        this.intervals = intervals.stream().mapToInt(Integer::intValue).filter(i -> i > 0).distinct().sorted().toArray();
+        if (this.intervals.length == 0) {
+            throw new IllegalArgumentException("At least one positive interval is required");
+        }
+        this.maTypes = new String[this.intervals.length];
+        this.compareTypes = new String[this.intervals.length][this.intervals.length];
+        for (int a = 0; a < this.intervals.length; a++) {
+            maTypes[a] = "MA_" + this.intervals[a];
+            for (int b = a + 1; b < this.intervals.length; b++) {
+                compareTypes[a][b] = "MA_" + this.intervals[a] + "_" + this.intervals[b];
+            }
+        }
+    }
+
+    public int[] getIntervals() {
+        return intervals.clone();
+    }
+
+    /**
+     * Computes all MA_n and MA_n_m rows for a single ticker.
+     *
+     * @param dates  QuestDB timestamps in ascending order, written back unchanged
+     * @param closes close prices aligned with dates
+     * @param size   number of valid entries in dates/closes
+     */
+    public void compute(String ticker, String[] dates, double[] closes, int size, RowSink sink) {
+        ensureCapacity(size);
+        for (int k = 0; k < intervals.length; k++) {
+            rollingAverage(closes, size, intervals[k], averages[k]);
+        }
+        for (int k = 0; k < intervals.length; k++) {
+            emit(maTypes[k], ticker, dates, closes, averages[k], intervals[k], size, sink);
+        }
+        for (int a = 0; a < intervals.length; a++) {
+            for (int b = a + 1; b < intervals.length; b++) {
+                // Both averages exist from the longer interval onwards
+                emit(compareTypes[a][b], ticker, dates, averages[a], averages[b], intervals[b], size, sink);
+            }
+        }
+    }
+
+    /**
+     * Average of the previous {@code interval} values (current row excluded), NaN until enough history exists.
+     */
+    static void rollingAverage(double[] values, int size, int interval, double[] out) {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            if (i >= interval) {
+                out[i] = sum / interval;
+                sum -= values[i - interval];
+            } else {
+                out[i] = Double.NaN;
+            }
+            sum += values[i];
+        }
+    }
+
+    private static void emit(String type, String ticker, String[] dates, double[] first, double[] second,
+                             int start, int size, RowSink sink) {
+        double previousDifference = Double.NaN;
+        long minimumTrend = Long.MAX_VALUE;
+        for (int i = start; i < size; i++) {
+            double value1 = first[i];
+            double value2 = second[i];
+            long total = i - start + 1;
+            double difference = value1 - value2;
+            double percentage = (difference / value2) * 100;
+            long trend;
+            if (difference >= 0 && previousDifference >= 0) {
+                trend = total;
+            } else if (difference < 0 && previousDifference < 0) {
+                trend = total;
+            } else {
+                trend = 1 - total;
+            }
+            minimumTrend = Math.min(minimumTrend, trend);
+            sink.accept(type, dates[i], ticker, value1, value2, total, difference, previousDifference,
+                    percentage, trend, minimumTrend, total + minimumTrend);
+            previousDifference = difference;
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (averages.length == intervals.length && averages[0].length >= size) {
+            return;
+        }
+        int capacity = Math.max(size, averages.length == 0 ? 0 : averages[0].length * 2);
+        averages = new double[intervals.length][];
+        for (int k = 0; k < intervals.length; k++) {
+            averages[k] = new double[capacity];
+            Arrays.fill(averages[k], Double.NaN);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import java.util.Arrays;
+
+/**
+ * Columnar OHLCV series: one primitive array per column, the first {@code size} entries valid.
+ * Times are epoch seconds; missing prices or volumes are NaN.
+ */
+public record OhlcvSeries(int size, long[] time, double[] open, double[] high, double[] low, double[] close,
+                          double[] volume) {
+
+    /**
+     * Appends rows into growable arrays; {@link #build()} hands them over without copying.
+     */
+    public static final class Builder {
+
+        private int size;
+        private long[] time;
+        private double[] open;
+        private double[] high;
+        private double[] low;
+        private double[] close;
+        private double[] volume;
+
+        public Builder(int capacity) {
+            int initial = Math.max(capacity, 16);
+            time = new long[initial];
+            open = new double[initial];
+            high = new double[initial];
+            low = new double[initial];
+            close = new double[initial];
+            volume = new double[initial];
+        }
+
+        public Builder add(long t, double o, double h, double l, double c, double v) {
+            if (size == time.length) {
+                int grown = size + (size >> 1);
+                time = Arrays.copyOf(time, grown);
+                open = Arrays.copyOf(open, grown);
+                high = Arrays.copyOf(high, grown);
+                low = Arrays.copyOf(low, grown);
+                close = Arrays.copyOf(close, grown);
+                volume = Arrays.copyOf(volume, grown);
+            }
+            time[size] = t;
+            open[size] = o;
+            high[size] = h;
+            low[size] = l;
+            close[size] = c;
+            volume[size] = v;
+            size++;
+            return this;
+        }
+
+        public OhlcvSeries build() {
+            return new OhlcvSeries(size, time, open, high, low, close, volume);
+        }
+    }
+}
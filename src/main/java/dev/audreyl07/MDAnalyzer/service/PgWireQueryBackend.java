@@ -0,0 +1,171 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * {@link QueryBackend} over QuestDB's PostgreSQL wire protocol (port 8812).
+ *
+ * - Connections come from a HikariCP pool; pool meters are published to the application registry
+ * - Every query is a server-side prepared statement (prepareThreshold=1) prepared from {@link SqlTemplates},
+ *   with the ticker or type bound as a parameter, so user input never reaches the SQL text
+ * - Results use binary transfer; the date column is cast to LONG and all columns are read with the
+ *   primitive getters straight into the series arrays
+ *
+ * Enabled with mdanalyzer.backend=pgwire; connection settings live under mdanalyzer.pgwire.
+ */
+@Component
+@ConditionalOnProperty(name = "mdanalyzer.backend", havingValue = "pgwire")
+public class PgWireQueryBackend implements QueryBackend {
+
+    private static final Logger log = LoggerFactory.getLogger(PgWireQueryBackend.class);
+
+    private static final int INITIAL_CAPACITY = 8192;
+
+    @Value("${mdanalyzer.pgwire.url:jdbc:postgresql://127.0.0.1:8812/qdb}")
+    String url = "jdbc:postgresql://127.0.0.1:8812/qdb";
+
+    @Value("${mdanalyzer.pgwire.username:admin}")
+    String username = "admin";
+
+    @Value("${mdanalyzer.pgwire.password:quest}")
+    String password = "quest";
+
+    @Value("${mdanalyzer.pgwire.maxPoolSize:10}")
+    int maxPoolSize = 10;
+
+    @Autowired
+    QueryMetrics queryMetrics;
+
+    @Autowired
+    QueryLog queryLog;
+
+    @Autowired
+    SqlTemplates sqlTemplates;
+
+    DataSource dataSource;
+
+    @PostConstruct
+    void init() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("questdb-pgwire");
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(maxPoolSize);
+        config.setReadOnly(true);
+        // start even when QuestDB is not up yet; connections are opened on first use
+        config.setInitializationFailTimeout(-1);
+        config.addDataSourceProperty("prepareThreshold", 1);
+        config.addDataSourceProperty("binaryTransfer", true);
+        config.setMetricRegistry(queryMetrics.getRegistry());
+        dataSource = new HikariDataSource(config);
+    }
+
+    @PreDestroy
+    void close() {
+        if (dataSource instanceof HikariDataSource hikari) {
+            hikari.close();
+        }
+    }
+
+    @Override
+    public OhlcvSeries readSeries(String table, String ticker) {
+        OhlcvSeries.Builder builder = new OhlcvSeries.Builder(INITIAL_CAPACITY);
+        read(sqlTemplates.get(SqlTemplates.SERIES_READ).prepare(Map.of("table", table, "ticker", ticker)), rs ->
+                builder.add(Math.floorDiv(rs.getLong(1), 1_000_000L), getDouble(rs, 2), getDouble(rs, 3),
+                        getDouble(rs, 4), getDouble(rs, 5), getDouble(rs, 6)));
+        return builder.build();
+    }
+
+    @Override
+    public ValueSeries readAnalysis(String type) {
+        ValueSeries.Builder builder = new ValueSeries.Builder(INITIAL_CAPACITY);
+        read(sqlTemplates.get(SqlTemplates.ANALYSIS_READ).prepare(Map.of("type", type)), rs ->
+                builder.add(Math.floorDiv(rs.getLong(1), 1_000_000L), getDouble(rs, 2)));
+        return builder.build();
+    }
+
+    @Override
+    public RelativeStrengthSeries readRelativeStrength(String ticker, String period) {
+        int index = HttpQueryBackend.periodIndex(period);
+        int periods = RelativeStrengthRanker.PERIODS.size();
+        RelativeStrengthSeries.Builder builder = new RelativeStrengthSeries.Builder(INITIAL_CAPACITY);
+        read(sqlTemplates.get(SqlTemplates.RS_READ).prepare(Map.of("ticker", ticker)), rs ->
+                builder.add(Math.floorDiv(rs.getLong(1), 1_000_000L), getDouble(rs, 2 + index),
+                        getDouble(rs, 2 + periods + index)));
+        return builder.build();
+    }
+
+    @Override
+    public ValueSeries readGroupBreadth(String group, String type) {
+        ValueSeries.Builder builder = new ValueSeries.Builder(INITIAL_CAPACITY);
+        read(sqlTemplates.get(SqlTemplates.GROUP_BREADTH_READ).prepare(Map.of("group", group, "type", type)), rs ->
+                builder.add(Math.floorDiv(rs.getLong(1), 1_000_000L), getDouble(rs, 2)));
+        return builder.build();
+    }
+
+    /**
+     * Receives each row of a result set, positioned on the row.
+     */
+    private interface RowReader {
+        void row(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Runs the prepared statement and hands every row to the reader.
+     *
+     * @throws QueryFailedException when the connection or the query failed
+     */
+    private void read(SqlTemplate.Prepared prepared, RowReader reader) {
+        long start = System.currentTimeMillis();
+        long rows = 0;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = prepare(connection, prepared)) {
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    reader.row(rs);
+                    rows++;
+                }
+            }
+        } catch (SQLException e) {
+            log.error("Query failed: {}", prepared.sql(), e);
+            queryLog.record(prepared.sql(), System.currentTimeMillis() - start, rows, 0);
+            throw new QueryFailedException("Query failed: " + e.getMessage(), e);
+        }
+        queryLog.record(prepared.sql(), System.currentTimeMillis() - start, rows, 0);
+    }
+
+    private static double getDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return value == 0 && rs.wasNull() ? Double.NaN : value;
+    }
+
+    private static PreparedStatement prepare(Connection connection, SqlTemplate.Prepared prepared) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(prepared.sql());
+        try {
+            for (int i = 0; i < prepared.binds().size(); i++) {
+                statement.setObject(i + 1, prepared.binds().get(i));
+            }
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+        return statement;
+    }
+}
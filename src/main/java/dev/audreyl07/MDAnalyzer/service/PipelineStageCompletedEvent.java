@@ -0,0 +1,12 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+/**
+ * Published by {@link MaintenanceService} after a pipeline stage has written new rows into a table.
+ *
+ * @param stage     the stage, named like its query kind (e.g. insert_historical)
+ * @param table     the table that received rows
+ * @param watermark the table's latest date (yyyyMMdd) before the stage ran, or for a re-run the day before
+ *                  its first rewritten day; every row after it may be new or rewritten
+ */
+public record PipelineStageCompletedEvent(String stage, String table, String watermark) {
+}
@@ -0,0 +1,61 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+/**
+ * Read access to QuestDB for the data API.
+ *
+ * Implementations return columnar series so callers never handle transport-specific rows:
+ * - {@link HttpQueryBackend}: the /exec JSON endpoint (default, mdanalyzer.backend=http)
+ * - {@link PgWireQueryBackend}: the PostgreSQL wire protocol with pooled JDBC connections and
+ *   server-side prepared statements (mdanalyzer.backend=pgwire)
+ *
+ * Timestamps are epoch seconds; missing values are NaN. A read that fails throws
+ * {@link QueryFailedException} rather than returning an empty or partial series, so a failure is
+ * never cached or served as data.
+ */
+public interface QueryBackend {
+
+    /**
+     * @param table  historical_d or indices_d
+     * @param ticker ticker symbol, passed as data (never spliced into SQL unescaped)
+     * @return the full OHLCV series for the ticker, ordered by date
+     * @throws QueryFailedException when QuestDB did not answer the query
+     */
+    OhlcvSeries readSeries(String table, String ticker);
+
+    /**
+     * @param type analysis_market type, e.g. high52w, low52w, MA_50_200
+     * @return date/percentage series for the type, ordered by date
+     * @throws QueryFailedException when QuestDB did not answer the query
+     */
+    ValueSeries readAnalysis(String type);
+
+    /**
+     * @param ticker ticker symbol, passed as data
+     * @param period one of {@link RelativeStrengthRanker#PERIODS}
+     * @return the ticker's return and percentile rank over the period from rs_rank_d, ordered by date
+     * @throws QueryFailedException when QuestDB did not answer the query
+     */
+    RelativeStrengthSeries readRelativeStrength(String ticker, String period);
+
+    /**
+     * @param group {@link TickerGroups} group name, passed as data
+     * @param type  analysis_group type, e.g. high52w or MA_50
+     * @return date/percentage series of the group's type from analysis_group, ordered by date
+     * @throws QueryFailedException when QuestDB did not answer the query
+     */
+    ValueSeries readGroupBreadth(String group, String type);
+
+    /**
+     * Thrown when a read fails, as opposed to a query that matched no rows.
+     */
+    class QueryFailedException extends RuntimeException {
+
+        public QueryFailedException(String message) {
+            super(message);
+        }
+
+        public QueryFailedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
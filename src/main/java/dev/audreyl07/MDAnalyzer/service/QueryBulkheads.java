@@ -0,0 +1,243 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Separate concurrency limits for the kinds of traffic into {@link QuestDBService}.
+ *
+ * - read: interactive chart and API reads, the default for every thread
+ * - maintenance: /maintenance requests and background loads; a thread is moved into this class with
+ *   {@link #runAsMaintenance(Supplier)}, {@link #maintenanceThread(Runnable)} or {@link #setMaintenance(boolean)}
+ * - export: streamed responses that write each row to the client while the query is open
+ *   ({@link #acquireExport()}), so a slow client holds an export permit instead of a read permit
+ *
+ * A call waits up to the bulkhead's timeout for a permit and is rejected with
+ * {@link BulkheadFullException} after that. Maintenance yields to reads: it does not take a permit
+ * while reads are queued, so a backfill cannot push chart requests into their timeout.
+ *
+ * Meters: mdanalyzer.bulkhead.active / .queued{bulkhead} gauges, mdanalyzer.bulkhead.wait{bulkhead}
+ * and mdanalyzer.bulkhead.rejected{bulkhead}.
+ */
+@Component
+public class QueryBulkheads {
+
+    /**
+     * Thrown when no permit became available within the bulkhead's timeout.
+     */
+    public static class BulkheadFullException extends RuntimeException {
+        public BulkheadFullException(String bulkhead, long timeoutMillis) {
+            super("QuestDB " + bulkhead + " bulkhead full after " + timeoutMillis + " ms");
+        }
+    }
+
+    /**
+     * A held permit; closing it releases the permit.
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final ThreadLocal<Boolean> MAINTENANCE = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private static final long YIELD_POLL_MILLIS = 5;
+
+    @Value("${mdanalyzer.bulkhead.read.maxConcurrent:16}")
+    int readMaxConcurrent = 16;
+
+    @Value("${mdanalyzer.bulkhead.read.timeoutMillis:2000}")
+    long readTimeoutMillis = 2000;
+
+    @Value("${mdanalyzer.bulkhead.maintenance.maxConcurrent:4}")
+    int maintenanceMaxConcurrent = 4;
+
+    @Value("${mdanalyzer.bulkhead.maintenance.timeoutMillis:120000}")
+    long maintenanceTimeoutMillis = 120000;
+
+    @Value("${mdanalyzer.bulkhead.export.maxConcurrent:4}")
+    int exportMaxConcurrent = 4;
+
+    @Value("${mdanalyzer.bulkhead.export.timeoutMillis:2000}")
+    long exportTimeoutMillis = 2000;
+
+    @Autowired
+    QueryMetrics queryMetrics;
+
+    private Bulkhead read;
+    private Bulkhead maintenance;
+    private Bulkhead export;
+
+    @PostConstruct
+    void init() {
+        read = new Bulkhead("read", readMaxConcurrent, readTimeoutMillis);
+        maintenance = new Bulkhead("maintenance", maintenanceMaxConcurrent, maintenanceTimeoutMillis);
+        export = new Bulkhead("export", exportMaxConcurrent, exportTimeoutMillis);
+        if (queryMetrics != null) {
+            read.register(queryMetrics);
+            maintenance.register(queryMetrics);
+            export.register(queryMetrics);
+        }
+    }
+
+    /**
+     * Bulkheads without meters, for components constructed outside Spring.
+     */
+    static QueryBulkheads unmetered() {
+        QueryBulkheads bulkheads = new QueryBulkheads();
+        bulkheads.init();
+        return bulkheads;
+    }
+
+    /**
+     * Runs the call with this thread's QuestDB traffic counted as maintenance.
+     */
+    public static <T> T runAsMaintenance(Supplier<T> call) {
+        boolean previous = setMaintenance(true);
+        try {
+            return call.get();
+        } finally {
+            setMaintenance(previous);
+        }
+    }
+
+    /**
+     * Sets this thread's traffic class.
+     *
+     * @return the previous value, to be restored when the work is done
+     */
+    public static boolean setMaintenance(boolean maintenance) {
+        boolean previous = MAINTENANCE.get();
+        if (maintenance) {
+            MAINTENANCE.set(Boolean.TRUE);
+        } else {
+            MAINTENANCE.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * Wraps a thread body so all of its QuestDB traffic counts as maintenance.
+     */
+    public static Runnable maintenanceThread(Runnable body) {
+        return () -> runAsMaintenance(() -> {
+            body.run();
+            return null;
+        });
+    }
+
+    public static boolean isMaintenance() {
+        return MAINTENANCE.get();
+    }
+
+    /**
+     * Takes a permit from the bulkhead of the current thread's traffic class.
+     *
+     * @throws BulkheadFullException when none became available in time
+     */
+    public Permit acquire() {
+        if (isMaintenance()) {
+            return maintenance.acquire(read);
+        }
+        return read.acquire(null);
+    }
+
+    /**
+     * Takes a permit from the export bulkhead, for a query whose rows are written to a client as they arrive.
+     *
+     * @throws BulkheadFullException when none became available in time
+     */
+    public Permit acquireExport() {
+        return export.acquire(null);
+    }
+
+    static final class Bulkhead {
+
+        private final String name;
+        private final Semaphore permits;
+        private final int maxConcurrent;
+        private final long timeoutMillis;
+        private Counter rejected;
+        private Timer wait;
+
+        Bulkhead(String name, int maxConcurrent, long timeoutMillis) {
+            this.name = name;
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            this.permits = new Semaphore(this.maxConcurrent, true);
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        void register(QueryMetrics metrics) {
+            Gauge.builder("mdanalyzer.bulkhead.active", permits, p -> maxConcurrent - p.availablePermits())
+                    .tag("bulkhead", name).register(metrics.getRegistry());
+            Gauge.builder("mdanalyzer.bulkhead.queued", permits, Semaphore::getQueueLength)
+                    .tag("bulkhead", name).register(metrics.getRegistry());
+            rejected = Counter.builder("mdanalyzer.bulkhead.rejected").tag("bulkhead", name).register(metrics.getRegistry());
+            wait = Timer.builder("mdanalyzer.bulkhead.wait").tag("bulkhead", name).register(metrics.getRegistry());
+        }
+
+        /**
+         * @param yieldTo a bulkhead whose queued callers go first, or null
+         */
+        Permit acquire(Bulkhead yieldTo) {
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            try {
+                while (true) {
+                    long remaining = deadline - System.nanoTime();
+                    if (yieldTo != null && yieldTo.hasQueued()) {
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        Thread.sleep(Math.min(YIELD_POLL_MILLIS, TimeUnit.NANOSECONDS.toMillis(remaining) + 1));
+                        continue;
+                    }
+                    long slice = yieldTo == null ? remaining : Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(YIELD_POLL_MILLIS));
+                    if (permits.tryAcquire(Math.max(0, slice), TimeUnit.NANOSECONDS)) {
+                        if (wait != null) {
+                            wait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        }
+                        return permits::release;
+                    }
+                    if (System.nanoTime() - deadline >= 0) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (rejected != null) {
+                rejected.increment();
+            }
+            throw new BulkheadFullException(name, timeoutMillis);
+        }
+
+        int available() {
+            return permits.availablePermits();
+        }
+
+        boolean hasQueued() {
+            return permits.hasQueuedThreads();
+        }
+    }
+
+    Bulkhead getRead() {
+        return read;
+    }
+
+    Bulkhead getMaintenance() {
+        return maintenance;
+    }
+
+    Bulkhead getExport() {
+        return export;
+    }
+}
@@ -0,0 +1,121 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Query logging for the QuestDB hot path.
+ *
+ * - Routine queries are logged at INFO for a sampled fraction only (sampleRate), everything at DEBUG
+ * - Queries slower than slowThresholdMillis are always logged at WARN
+ * - The slowest {@code capacity} queries are kept in memory with their SQL fingerprint, duration,
+ *   rows and bytes, and can be read through the slowqueries actuator endpoint
+ *
+ * Log lines use key=value pairs and go through the asynchronous appender in logback-spring.xml,
+ * so request threads never write to the console themselves.
+ */
+@Component
+public class QueryLog {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryLog.class);
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int MAX_SQL_LENGTH = 2000;
+
+    /**
+     * One captured slow query.
+     */
+    public record Entry(String fingerprint, String sql, long durationMillis, long rows, long bytes, long timestamp) {
+    }
+
+    @Value("${mdanalyzer.logging.querySampleRate:0.01}")
+    double sampleRate = 0.01;
+
+    @Value("${mdanalyzer.logging.slowThresholdMillis:1000}")
+    long slowThresholdMillis = 1000;
+
+    @Value("${mdanalyzer.logging.slowQueryCapacity:50}")
+    int capacity = 50;
+
+    private final PriorityQueue<Entry> slowest = new PriorityQueue<>(Comparator.comparingLong(Entry::durationMillis));
+    private volatile long admissionThreshold = -1;
+
+    public void record(String sql, long durationMillis, long rows, long bytes) {
+        boolean slow = durationMillis >= slowThresholdMillis;
+        boolean sampled = slow || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        boolean retained = capacity > 0 && durationMillis > admissionThreshold;
+        if (!sampled && !retained && !log.isDebugEnabled()) {
+            return;
+        }
+        String fingerprint = fingerprint(sql);
+        if (slow) {
+            log.warn("slow query fingerprint=\"{}\" durationMs={} rows={} bytes={}", fingerprint, durationMillis, rows, bytes);
+        } else if (sampled) {
+            log.info("query fingerprint=\"{}\" durationMs={} rows={} bytes={}", fingerprint, durationMillis, rows, bytes);
+        } else {
+            log.debug("query fingerprint=\"{}\" durationMs={} rows={} bytes={}", fingerprint, durationMillis, rows, bytes);
+        }
+        if (retained) {
+            retain(new Entry(fingerprint, truncate(sql), durationMillis, rows, bytes, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * @return the retained slow queries, slowest first
+     */
+    public List<Entry> getSlowest() {
+        List<Entry> entries;
+        synchronized (slowest) {
+            entries = new ArrayList<>(slowest);
+        }
+        entries.sort(Comparator.comparingLong(Entry::durationMillis).reversed());
+        return entries;
+    }
+
+    public void clear() {
+        synchronized (slowest) {
+            slowest.clear();
+            admissionThreshold = -1;
+        }
+    }
+
+    /**
+     * Normalizes SQL so queries differing only in literals share a fingerprint.
+     */
+    static String fingerprint(String sql) {
+        if (sql == null) {
+            return "";
+        }
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        return truncate(normalized);
+    }
+
+    private void retain(Entry entry) {
+        synchronized (slowest) {
+            if (slowest.size() < capacity) {
+                slowest.add(entry);
+            } else if (entry.durationMillis() > slowest.peek().durationMillis()) {
+                slowest.poll();
+                slowest.add(entry);
+            }
+            admissionThreshold = slowest.size() < capacity ? -1 : slowest.peek().durationMillis();
+        }
+    }
+
+    private static String truncate(String sql) {
+        return sql != null && sql.length() > MAX_SQL_LENGTH ? sql.substring(0, MAX_SQL_LENGTH) + "..." : sql;
+    }
+}
@@ -0,0 +1,88 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer instrumentation for QuestDB traffic.
+ *
+ * Meters:
+ * - mdanalyzer.query{kind}: latency per query kind (series, analysis, each maintenance stage)
+ * - mdanalyzer.import.files / .bytes / .rows{table}: import throughput counters (use rate() for per-second values)
+ * - mdanalyzer.import.duration{table}: wall time per import run
+ * - mdanalyzer.questdb.connections{state}: HTTP connection pool gauges
+ * - mdanalyzer.cache.requests{cache, result}: series cache hits and misses
+ * - mdanalyzer.singleflight.calls{flight, result}: reads that ran a query (leader) or shared one in flight (coalesced)
+ *
+ * Histogram buckets are enabled through management.metrics.distribution in application.yaml.
+ */
+@Component
+public class QueryMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> queryTimers = new ConcurrentHashMap<>();
+
+    public QueryMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Runs the call and records its latency under the given query kind.
+     */
+    public <T> T time(String kind, Supplier<T> call) {
+        return queryTimer(kind).record(call);
+    }
+
+    public void recordQuery(String kind, long durationMillis) {
+        queryTimer(kind).record(durationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordImport(String table, long files, long bytes, long rows, long durationMillis) {
+        Counter.builder("mdanalyzer.import.files").tag("table", table).register(registry).increment(files);
+        Counter.builder("mdanalyzer.import.bytes").baseUnit("bytes").tag("table", table).register(registry).increment(bytes);
+        Counter.builder("mdanalyzer.import.rows").tag("table", table).register(registry).increment(rows);
+        Timer.builder("mdanalyzer.import.duration").tag("table", table).register(registry)
+                .record(durationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordCache(String cache, boolean hit) {
+        Counter.builder("mdanalyzer.cache.requests").tag("cache", cache).tag("result", hit ? "hit" : "miss")
+                .register(registry).increment();
+    }
+
+    public void recordCoalesced(String flight, boolean coalesced) {
+        Counter.builder("mdanalyzer.singleflight.calls").tag("flight", flight).tag("result", coalesced ? "coalesced" : "leader")
+                .register(registry).increment();
+    }
+
+    public void registerConnectionPool(PoolingHttpClientConnectionManager connectionManager) {
+        Gauge.builder("mdanalyzer.questdb.connections", connectionManager, cm -> cm.getTotalStats().getLeased())
+                .tag("state", "leased").register(registry);
+        Gauge.builder("mdanalyzer.questdb.connections", connectionManager, cm -> cm.getTotalStats().getAvailable())
+                .tag("state", "available").register(registry);
+        Gauge.builder("mdanalyzer.questdb.connections", connectionManager, cm -> cm.getTotalStats().getPending())
+                .tag("state", "pending").register(registry);
+        Gauge.builder("mdanalyzer.questdb.connections", connectionManager, cm -> cm.getTotalStats().getMax())
+                .tag("state", "max").register(registry);
+    }
+
+    private Timer queryTimer(String kind) {
+        return queryTimers.computeIfAbsent(kind, k -> Timer.builder("mdanalyzer.query")
+                .description("QuestDB query latency by kind")
+                .tag("kind", k)
+                .register(registry));
+    }
+}
@@ -1,37 +1,68 @@
 package dev.audreyl07.MDAnalyzer.service;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.regex.Pattern;
 
 /**
  * Service for interacting with QuestDB via HTTP endpoints.
  *
  * Features:
- * - Execute SQL queries and return parsed JSON responses
+ * - Execute SQL queries and return parsed JSON responses, or stream the rows one at a time
  * - Import CSV files into QuestDB tables (multipart uploads)
  * - Copy failed imports to an error directory for triage
  * - Utility operations: truncate table, get latest processed date
+ *
+ * All requests share one pooled HTTP client; pool usage and import throughput are
+ * published through {@link QueryMetrics}. Every request first takes a permit from
+ * {@link QueryBulkheads}, so maintenance work cannot use up the connections chart reads need.
  */
 @Service
 public class QuestDBService {
 
+    private static final Logger log = LoggerFactory.getLogger(QuestDBService.class);
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    /**
+     * Receives the rows of {@link #streamQuery(String, RowHandler)}. The array is reused for every
+     * row and only valid during the call.
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        void row(Object[] values) throws IOException;
+    }
+
     String importUrlTemplate = "http://%s/imp?fmt=json&forceHeader=true&name=%s";
 
     String execUrlTemplate = "http://%s/exec";
@@ -45,20 +76,66 @@ public class QuestDBService {
     @Value("${mdanalyzer.hostName}")
     String hostName;
 
+    @Value("${mdanalyzer.questdb.maxConnections:24}")
+    int maxConnections = 24;
+
+    @Autowired
+    QueryMetrics queryMetrics;
+
+    @Autowired
+    QueryLog queryLog;
+
+    @Autowired
+    QueryBulkheads bulkheads = QueryBulkheads.unmetered();
+
+    final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+
+    final CloseableHttpClient httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .build();
+
+    @PostConstruct
+    void init() {
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        queryMetrics.registerConnectionPool(connectionManager);
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        httpClient.close();
+    }
+
     public Boolean truncateTable(String table) {
         String query = String.format("TRUNCATE TABLE %s", table);
-        Map<String, Object> result = executeQuery(query);
+        Map<String, Object> result = queryMetrics.time("truncate", () -> executeQuery(query));
         Map<String, Object> response = (Map<String, Object>) result.get("response");
         String ddl = (String) response.get("ddl");
         return "OK".equals(ddl);
     }
 
     public String getLatestDate(String table, String condition) {
-        String query = String.format("SELECT CAST(TO_STR(MAX(date), 'yyyyMMdd') AS INT) AS MAX FROM %s", table);
+        return getBoundaryDate("MAX", table, condition);
+    }
+
+    /**
+     * Counterpart of {@link #getLatestDate}: the oldest date, or 19710101 for an empty table.
+     */
+    public String getEarliestDate(String table, String condition) {
+        return getBoundaryDate("MIN", table, condition);
+    }
+
+    private String getBoundaryDate(String aggregate, String table, String condition) {
+        if (table == null || !TABLE_NAME.matcher(table).matches()) {
+            log.warn("{} date rejected invalid table name={}", aggregate, table);
+            return null;
+        }
+        String query = String.format("SELECT CAST(TO_STR(%s(date), 'yyyyMMdd') AS INT) AS %s FROM %s", aggregate, aggregate, table);
         if (condition != null && !condition.isEmpty()) {
             query += " WHERE " + condition;
         }
-        Map<String, Object> result = executeQuery(query);
+        String latestQuery = query;
+        Map<String, Object> result = queryMetrics.time("latest_date", () -> executeQuery(latestQuery));
         Map<String, Object> response = (Map<String, Object>) result.get("response");
         List<Object> dataset = (List<Object>) response.get("dataset");
         if (dataset == null || dataset.isEmpty()) {
@@ -74,18 +151,24 @@ public class QuestDBService {
         long start = System.currentTimeMillis();
         Map<String, Object> map = new HashMap<>();
         int count = 0;
+        long bytes = 0;
+        long rows = 0;
         try {
             List<String> fileNames = listFiles(startPath);
             for (String fullFileName : fileNames) {
-                if (importFile(url, fullFileName, startPath.toAbsolutePath().toString(), historicalErrorPath)) {
+                long imported = importFile(url, fullFileName, startPath.toAbsolutePath().toString(), historicalErrorPath);
+                if (imported >= 0) {
                     count++;
+                    bytes += new File(fullFileName).length();
+                    rows += imported;
                 }
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("Failed to list import files under {}", startPath, e);
         }
         long end = System.currentTimeMillis();
-        System.out.println("duration: " + (end - start));
+        log.info("import table={} files={} rows={} bytes={} durationMs={}", table, count, rows, bytes, end - start);
+        queryMetrics.recordImport(table, count, bytes, rows, end - start);
         map.put("duration", end - start);
         map.put("count", count);
         return map;
@@ -104,38 +187,90 @@ public class QuestDBService {
 
             @Override
             public FileVisitResult visitFileFailed(Path file, IOException exc) {
-                System.err.println("Failed to visit file: " + file.toString() + " (" + exc.getMessage() + ")");
+                log.warn("Failed to visit file: {} ({})", file, exc.getMessage());
                 return FileVisitResult.CONTINUE;
             }
         });
         return fileNames;
     }
 
-    private boolean importFile(String url, String fileName, String importHistoricalFilePath, String errorPath) {
-        System.out.println(fileName);
+    /**
+     * @return number of rows QuestDB reported as imported, or -1 when the upload failed
+     */
+    private long importFile(String url, String fileName, String importHistoricalFilePath, String errorPath) {
+        log.debug("import file={}", fileName);
         File file = new File(fileName);
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpPost uploadFile = new HttpPost(url);
+        HttpPost uploadFile = new HttpPost(url);
 
-            MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-            builder.addBinaryBody("data", file);
+        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+        builder.addBinaryBody("data", file);
 
-            HttpEntity multipart = builder.build();
-            uploadFile.setEntity(multipart);
+        HttpEntity multipart = builder.build();
+        uploadFile.setEntity(multipart);
 
-            HttpResponse response = httpClient.execute(uploadFile);
+        try (QueryBulkheads.Permit permit = bulkheads.acquire()) {
+            return upload(uploadFile, file, importHistoricalFilePath, errorPath);
+        }
+    }
+
+    private long upload(HttpPost uploadFile, File file, String importHistoricalFilePath, String errorPath) {
+        String fileName = file.getPath();
+        try (CloseableHttpResponse response = httpClient.execute(uploadFile)) {
             HttpEntity responseEntity = response.getEntity();
 
+            long rows = 0;
             if (responseEntity != null) {
                 String responseString = EntityUtils.toString(responseEntity);
-                System.out.println("Response: " + responseString);
+                log.debug("import file={} response={}", fileName, responseString);
+                rows = getRowsImported(responseString);
             }
-            return true;
+            return rows;
         } catch (Exception e) {
-            System.out.println("ERROR:" + fileName);
+            log.warn("import failed file={}: {}", fileName, e.getMessage());
             copyToErrorDirectory(file, importHistoricalFilePath, errorPath);
         }
-        return false;
+        return -1;
+    }
+
+    private long getRowsImported(String responseString) {
+        try {
+            Object rows = new ObjectMapper().readValue(responseString, Map.class).get("rowsImported");
+            return rows instanceof Number ? ((Number) rows).longValue() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Uploads a single generated CSV file into an existing table and returns the parsed /imp response.
+     * Unlike {@link #importFiles(String)} failures are not copied to the error directory.
+     */
+    public Map<String, Object> importCsv(String table, Path csvFile) {
+        String url = String.format(importUrlTemplate, hostName, table);
+        Map<String, Object> map = new HashMap<>();
+        long start = System.currentTimeMillis();
+        HttpPost uploadFile = new HttpPost(url);
+        uploadFile.setEntity(MultipartEntityBuilder.create()
+                .addBinaryBody("data", csvFile.toFile())
+                .build());
+        long rows = 0;
+        try (QueryBulkheads.Permit permit = bulkheads.acquire()) {
+            try (CloseableHttpResponse response = httpClient.execute(uploadFile)) {
+                HttpEntity entity = response.getEntity();
+                if (entity != null) {
+                    String responseString = EntityUtils.toString(entity);
+                    ObjectMapper mapper = new ObjectMapper();
+                    map.put("response", mapper.readValue(responseString, Map.class));
+                    rows = getRowsImported(responseString);
+                }
+            } catch (Exception e) {
+                log.error("CSV import into {} failed", table, e);
+            }
+        }
+        long end = System.currentTimeMillis();
+        queryMetrics.recordImport(table, 1, csvFile.toFile().length(), rows, end - start);
+        map.put("duration", end - start);
+        return map;
     }
 
     private void copyToErrorDirectory(File file, String importHistoricalFilePath, String errorPath) {
@@ -148,20 +283,29 @@ public class QuestDBService {
             }
             Path targetPath = writeDir.resolve(file.getName());
             Files.copy(file.toPath(), targetPath);
-            System.out.println("File copied to /error/ directory: " + targetPath);
+            log.info("File copied to /error/ directory: {}", targetPath);
         } catch (IOException ioException) {
-            System.err.println("Failed to copy file to /error/ directory: " + ioException.getMessage());
-            ioException.printStackTrace();
+            log.error("Failed to copy file to /error/ directory: {}", ioException.getMessage(), ioException);
         }
     }
 
+    /**
+     * @throws QueryBulkheads.BulkheadFullException when no permit became available in time
+     */
     public Map<String, Object> executeQuery(String query) {
+        try (QueryBulkheads.Permit permit = bulkheads.acquire()) {
+            return execute(query);
+        }
+    }
+
+    private Map<String, Object> execute(String query) {
         String url = String.format(execUrlTemplate, hostName);
         String count = "true";
         Map<String, Object> map = new HashMap<>();
         long start = System.currentTimeMillis();
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            System.out.println("Query:\n" + query);
+        long rows = 0;
+        long bytes = 0;
+        try {
             URI uri = new URIBuilder(url)
                     .addParameter("query", query)
                     .addParameter("count", count)
@@ -169,22 +313,136 @@ public class QuestDBService {
 
             HttpGet request = new HttpGet(uri);
 
-            HttpResponse response = httpClient.execute(request);
-            HttpEntity entity = response.getEntity();
+            try (CloseableHttpResponse response = httpClient.execute(request)) {
+                HttpEntity entity = response.getEntity();
 
-            if (entity != null) {
-                String responseString = EntityUtils.toString(entity);
-                ObjectMapper mapper = new ObjectMapper();
-                Map<String, Object> responseMap = mapper.readValue(responseString, Map.class);
-                map.put("response", responseMap);
-//                System.out.println("Response: " + responseString);
+                if (entity != null) {
+                    String responseString = EntityUtils.toString(entity);
+                    ObjectMapper mapper = new ObjectMapper();
+                    Map<String, Object> responseMap = mapper.readValue(responseString, Map.class);
+                    map.put("response", responseMap);
+                    bytes = responseString.length();
+                    rows = getRowCount(responseMap);
+                }
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Query failed: {}", QueryLog.fingerprint(query), e);
         }
         long end = System.currentTimeMillis();
-        System.out.println("duration: " + (end - start));
+        queryLog.record(query, end - start, rows, bytes);
         map.put("duration", end - start);
         return map;
     }
+
+    /**
+     * Executes a query and hands each row of the dataset to the handler as it is parsed from the
+     * response stream, so memory stays flat however many rows come back. Strings stay strings,
+     * integers are longs, decimals are doubles and nulls are null.
+     *
+     * @return rows streamed, or -1 when the query failed before any row was read
+     * @throws QueryBulkheads.BulkheadFullException when no permit became available in time
+     */
+    public long streamQuery(String query, RowHandler handler) throws IOException {
+        try (QueryBulkheads.Permit permit = bulkheads.acquire()) {
+            return stream(query, handler);
+        }
+    }
+
+    /**
+     * {@link #streamQuery} for a handler that writes each row to an HTTP client. The permit comes from
+     * the export bulkhead, since a slow client keeps it for as long as it takes to read the response.
+     *
+     * @return rows streamed, or -1 when the query failed before any row was read
+     * @throws QueryBulkheads.BulkheadFullException when no export permit became available in time
+     */
+    public long exportQuery(String query, RowHandler handler) throws IOException {
+        try (QueryBulkheads.Permit permit = bulkheads.acquireExport()) {
+            return stream(query, handler);
+        }
+    }
+
+    private long stream(String query, RowHandler handler) throws IOException {
+        String url = String.format(execUrlTemplate, hostName);
+        long start = System.currentTimeMillis();
+        long rows = 0;
+        long bytes = 0;
+        try {
+            URI uri = new URIBuilder(url).addParameter("query", query).build();
+            try (CloseableHttpResponse response = httpClient.execute(new HttpGet(uri))) {
+                HttpEntity entity = response.getEntity();
+                if (entity == null) {
+                    return -1;
+                }
+                bytes = Math.max(0, entity.getContentLength());
+                try (InputStream in = entity.getContent(); JsonParser parser = JSON.createParser(in)) {
+                    if (!seekDataset(parser)) {
+                        log.error("Query failed: {}", QueryLog.fingerprint(query));
+                        return -1;
+                    }
+                    Object[] values = new Object[0];
+                    while (parser.nextToken() == JsonToken.START_ARRAY) {
+                        int column = 0;
+                        JsonToken token;
+                        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                            if (column == values.length) {
+                                values = Arrays.copyOf(values, column + 1);
+                            }
+                            values[column++] = switch (token) {
+                                case VALUE_STRING -> parser.getText();
+                                case VALUE_NUMBER_INT -> parser.getLongValue();
+                                case VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+                                case VALUE_TRUE -> Boolean.TRUE;
+                                case VALUE_FALSE -> Boolean.FALSE;
+                                default -> null;
+                            };
+                        }
+                        handler.row(values);
+                        rows++;
+                    }
+                }
+            }
+        } catch (URISyntaxException e) {
+            log.error("Query failed: {}", QueryLog.fingerprint(query), e);
+            return -1;
+        } finally {
+            queryLog.record(query, System.currentTimeMillis() - start, rows, bytes);
+        }
+        return rows;
+    }
+
+    /**
+     * Advances the parser to the start of the top-level dataset array.
+     *
+     * @return false when the response has no dataset (e.g. an error response)
+     */
+    private static boolean seekDataset(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("dataset".equals(field) && value == JsonToken.START_ARRAY) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * Quotes a value as a QuestDB string literal, doubling embedded single quotes.
+     */
+    public static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private static long getRowCount(Map<String, Object> responseMap) {
+        Object count = responseMap.get("count");
+        if (count instanceof Number) {
+            return ((Number) count).longValue();
+        }
+        Object dataset = responseMap.get("dataset");
+        return dataset instanceof List ? ((List<?>) dataset).size() : 0;
+    }
 }
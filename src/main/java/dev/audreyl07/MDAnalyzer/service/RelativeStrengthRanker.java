@@ -0,0 +1,208 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Cross-sectional relative strength: every ticker's trailing return per date, ranked against all
+ * tickers of that date.
+ *
+ * - Returns are close / close n bars earlier - 1 for n = 21, 63, 126 and 252 bars (1m, 3m, 6m, 12m)
+ * - Only dates in (after, until] are collected, so a run covers a bounded window of dates and a
+ *   daily update only the new ones; the series passed in still need the full lookback
+ * - Ranking is a fork-join over dates: each date sorts its returns once per period and places every
+ *   ticker with two binary searches; ties share the average rank
+ * - Percentiles are 0 (weakest) to 100 (strongest); a date with a single ticker ranks it 100
+ *
+ * Rows come out in date order, one per ticker and date with a 1m return, in rs_rank_d column order.
+ */
+public class RelativeStrengthRanker {
+
+    public static final List<String> PERIODS = List.of("1m", "3m", "6m", "12m");
+
+    private static final int[] BARS = {21, 63, 126, 252};
+
+    private static final int DATES_PER_TASK = 8;
+
+    /**
+     * Receives one ranked row; returns and ranks are indexed like {@link #PERIODS}, NaN when undefined.
+     */
+    public interface RowSink {
+        void accept(long date, String ticker, double[] returns, double[] ranks);
+    }
+
+    /**
+     * Tickers and returns of one date, appended ticker by ticker.
+     */
+    static final class DateBucket {
+        final long date;
+        int size;
+        int[] ids = new int[64];
+        double[][] returns = new double[BARS.length][64];
+        double[][] ranks;
+
+        DateBucket(long date) {
+            this.date = date;
+        }
+
+        void add(int id, double[] row) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                for (int p = 0; p < BARS.length; p++) {
+                    returns[p] = Arrays.copyOf(returns[p], size * 2);
+                }
+            }
+            ids[size] = id;
+            for (int p = 0; p < BARS.length; p++) {
+                returns[p][size] = row[p];
+            }
+            size++;
+        }
+
+        void rank() {
+            ranks = new double[BARS.length][size];
+            double[] sorted = new double[size];
+            for (int p = 0; p < BARS.length; p++) {
+                double[] values = returns[p];
+                int n = 0;
+                for (int i = 0; i < size; i++) {
+                    if (!Double.isNaN(values[i])) {
+                        sorted[n++] = values[i];
+                    }
+                }
+                Arrays.sort(sorted, 0, n);
+                for (int i = 0; i < size; i++) {
+                    double v = values[i];
+                    if (Double.isNaN(v)) {
+                        ranks[p][i] = Double.NaN;
+                    } else if (n == 1) {
+                        ranks[p][i] = 100;
+                    } else {
+                        int below = lowerBound(sorted, n, v, false);
+                        int notAbove = lowerBound(sorted, n, v, true);
+                        ranks[p][i] = (below + (notAbove - below - 1) / 2.0) * 100 / (n - 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ranks a range of dates, splitting until at most DATES_PER_TASK remain.
+     */
+    static final class RankTask extends RecursiveAction {
+        private final DateBucket[] buckets;
+        private final int from;
+        private final int to;
+
+        RankTask(DateBucket[] buckets, int from, int to) {
+            this.buckets = buckets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= DATES_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    buckets[i].rank();
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RankTask(buckets, from, mid), new RankTask(buckets, mid, to));
+        }
+    }
+
+    private final long after;
+    private final long until;
+    private final List<String> tickers = new ArrayList<>();
+    private final Map<Long, DateBucket> buckets = new HashMap<>();
+    private final double[] row = new double[BARS.length];
+
+    /**
+     * @param after dates at or before this (epoch seconds) are skipped
+     * @param until dates after this are skipped
+     */
+    public RelativeStrengthRanker(long after, long until) {
+        this.after = after;
+        this.until = until;
+    }
+
+    /**
+     * Collects the ticker's returns for the dates of the window. Not thread-safe.
+     */
+    public void add(String ticker, long[] time, double[] close, int size) {
+        int from = DataService.firstAfter(time, size, after);
+        int id = -1;
+        for (int i = Math.max(from, BARS[0]); i < size && time[i] <= until; i++) {
+            for (int p = 0; p < BARS.length; p++) {
+                row[p] = i >= BARS[p] ? close[i] / close[i - BARS[p]] - 1 : Double.NaN;
+            }
+            if (!Double.isFinite(row[0])) {
+                continue;
+            }
+            for (int p = 1; p < BARS.length; p++) {
+                if (!Double.isFinite(row[p])) {
+                    row[p] = Double.NaN;
+                }
+            }
+            if (id < 0) {
+                id = tickers.size();
+                tickers.add(ticker);
+            }
+            buckets.computeIfAbsent(time[i], DateBucket::new).add(id, row);
+        }
+    }
+
+    public int getDateCount() {
+        return buckets.size();
+    }
+
+    /**
+     * Ranks every collected date on the pool and hands the rows to the sink in date order.
+     *
+     * @return rows written
+     */
+    public long rank(ForkJoinPool pool, RowSink sink) {
+        DateBucket[] dates = buckets.values().toArray(new DateBucket[0]);
+        Arrays.sort(dates, (a, b) -> Long.compare(a.date, b.date));
+        pool.invoke(new RankTask(dates, 0, dates.length));
+        double[] returns = new double[BARS.length];
+        double[] ranks = new double[BARS.length];
+        long rows = 0;
+        for (DateBucket bucket : dates) {
+            for (int i = 0; i < bucket.size; i++) {
+                for (int p = 0; p < BARS.length; p++) {
+                    returns[p] = bucket.returns[p][i];
+                    ranks[p] = bucket.ranks[p][i];
+                }
+                sink.accept(bucket.date, tickers.get(bucket.ids[i]), returns, ranks);
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * @return first index in sorted[0, n) whose value is >= v (> v when inclusive)
+     */
+    private static int lowerBound(double[] sorted, int n, double v, boolean inclusive) {
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (inclusive ? sorted[mid] <= v : sorted[mid] < v) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
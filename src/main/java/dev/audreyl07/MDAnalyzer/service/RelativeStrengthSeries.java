@@ -0,0 +1,46 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import java.util.Arrays;
+
+/**
+ * Columnar rs_rank_d history of one ticker over one period, the first {@code size} entries valid.
+ * Times are epoch seconds; returns are fractions, ranks percentiles; missing values are NaN.
+ */
+public record RelativeStrengthSeries(int size, long[] time, double[] returns, double[] rank) {
+
+    /**
+     * Appends rows into growable arrays; {@link #build()} hands them over without copying.
+     */
+    public static final class Builder {
+
+        private int size;
+        private long[] time;
+        private double[] returns;
+        private double[] rank;
+
+        public Builder(int capacity) {
+            int initial = Math.max(capacity, 16);
+            time = new long[initial];
+            returns = new double[initial];
+            rank = new double[initial];
+        }
+
+        public Builder add(long t, double r, double p) {
+            if (size == time.length) {
+                int grown = size + (size >> 1);
+                time = Arrays.copyOf(time, grown);
+                returns = Arrays.copyOf(returns, grown);
+                rank = Arrays.copyOf(rank, grown);
+            }
+            time[size] = t;
+            returns[size] = r;
+            rank[size] = p;
+            size++;
+            return this;
+        }
+
+        public RelativeStrengthSeries build() {
+            return new RelativeStrengthSeries(size, time, returns, rank);
+        }
+    }
+}
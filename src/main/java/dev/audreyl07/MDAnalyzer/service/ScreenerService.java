@@ -0,0 +1,394 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+/**
+ * Latest-day snapshot of every ticker of a table, with sorted column indexes for screening.
+ *
+ * - One row per ticker whose newest bar is the table's newest date; each {@link Field} is a double[]
+ *   column over those rows, computed from the series with the {@link IndicatorKernels} conventions
+ * - Each column has an index of row ids sorted by value (NaN left out) and the rank of every row in it;
+ *   a range filter is two binary searches, and sorting the matches compares ranks
+ * - A screen walks the range of its most selective filter and checks the others on the columns
+ * - Snapshots are immutable and swapped whole; a pipeline stage writing the table rebuilds it in the
+ *   background, and a request finding the table newer than its snapshot rebuilds it first. A re-run that
+ *   rewrote the snapshot's day (watermark before it) rebuilds it even though the newest date is unchanged,
+ *   and again once the {@link SeriesStore} has reloaded ({@link SeriesReloadedEvent})
+ *
+ * Percentages are in percent: (close - reference) / reference * 100.
+ */
+@Service
+public class ScreenerService {
+
+    private static final Logger log = LoggerFactory.getLogger(ScreenerService.class);
+
+    private static final DateTimeFormatter WATERMARK = DateTimeFormatter.BASIC_ISO_DATE;
+
+    /**
+     * Screenable columns of the snapshot.
+     */
+    public enum Field {
+        CLOSE("close"),
+        CHANGE("change"),
+        VOLUME("volume"),
+        SMA_50("sma50"),
+        SMA_200("sma200"),
+        PCT_SMA_50("pctSma50"),
+        PCT_SMA_200("pctSma200"),
+        HIGH_52W("high52w"),
+        LOW_52W("low52w"),
+        PCT_HIGH_52W("pctHigh52w"),
+        PCT_LOW_52W("pctLow52w"),
+        RSI_14("rsi14");
+
+        private final String apiName;
+
+        Field(String apiName) {
+            this.apiName = apiName;
+        }
+
+        public String getApiName() {
+            return apiName;
+        }
+
+        /**
+         * @return the field for an API name (case-insensitive), or null for an unknown name
+         */
+        public static Field parse(String name) {
+            for (Field field : values()) {
+                if (field.apiName.equalsIgnoreCase(name)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * min <= field <= max; either bound may be infinite. Written field:min:max with empty bounds open.
+     */
+    public record Filter(Field field, double min, double max) {
+
+        /**
+         * @return the filter, or null for an unknown field or malformed bounds
+         */
+        public static Filter parse(String spec) {
+            String[] parts = spec.trim().split(":", -1);
+            Field field = Field.parse(parts[0]);
+            if (field == null || parts.length != 3) {
+                return null;
+            }
+            try {
+                double min = parts[1].isBlank() ? Double.NEGATIVE_INFINITY : Double.parseDouble(parts[1]);
+                double max = parts[2].isBlank() ? Double.POSITIVE_INFINITY : Double.parseDouble(parts[2]);
+                return Double.isNaN(min) || Double.isNaN(max) || min > max ? null : new Filter(field, min, max);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Columns of one day. sorted[f] lists the rows with a value in ascending order; rank[f][row] is the
+     * row's position in it, or tickers.length when the value is NaN.
+     */
+    record Snapshot(long time, String[] tickers, double[][] columns, int[][] sorted, int[][] rank) {
+
+        int size() {
+            return tickers.length;
+        }
+
+        /**
+         * @return first position in sorted[f] whose value is >= value (or > value when strict)
+         */
+        int bound(Field field, double value, boolean strict) {
+            int[] order = sorted[field.ordinal()];
+            double[] column = columns[field.ordinal()];
+            int low = 0;
+            int high = order.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                double v = column[order[mid]];
+                if (strict ? v <= value : v < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    @Autowired
+    SeriesScan seriesScan;
+
+    @Autowired
+    QueryMetrics queryMetrics;
+
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(QueryBulkheads.maintenanceThread(r), "screener-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    void close() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Rows matching every filter, ordered by sort (NaN last) or by ticker when sort is null.
+     */
+    public List<Map<String, Object>> screen(String table, List<Filter> filters, Field sort, boolean descending, int limit) {
+        Snapshot snapshot = current(table);
+        if (snapshot == null) {
+            return List.of();
+        }
+        int[] rows = match(snapshot, filters);
+        if (sort != null) {
+            long[] keys = new long[rows.length];
+            int[] rank = snapshot.rank()[sort.ordinal()];
+            int n = snapshot.size();
+            for (int i = 0; i < rows.length; i++) {
+                int r = rank[rows[i]];
+                long key = descending && r < n ? n - 1 - r : r;
+                keys[i] = key << 32 | rows[i];
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = (int) keys[i];
+            }
+        }
+        List<Map<String, Object>> result = new ArrayList<>(Math.min(limit, rows.length));
+        for (int i = 0; i < rows.length && i < limit; i++) {
+            result.add(toRow(snapshot, rows[i]));
+        }
+        return result;
+    }
+
+    /**
+     * @return matching rows in ticker order
+     */
+    static int[] match(Snapshot snapshot, List<Filter> filters) {
+        if (filters.isEmpty()) {
+            int[] all = new int[snapshot.size()];
+            Arrays.setAll(all, i -> i);
+            return all;
+        }
+        Filter driver = null;
+        int from = 0;
+        int to = 0;
+        for (Filter filter : filters) {
+            int low = snapshot.bound(filter.field(), filter.min(), false);
+            int high = snapshot.bound(filter.field(), filter.max(), true);
+            if (driver == null || high - low < to - from) {
+                driver = filter;
+                from = low;
+                to = high;
+            }
+        }
+        int[] order = snapshot.sorted()[driver.field().ordinal()];
+        int[] rows = new int[Math.max(0, to - from)];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int row = order[i];
+            boolean matches = true;
+            for (Filter filter : filters) {
+                double v = snapshot.columns()[filter.field().ordinal()][row];
+                if (filter != driver && !(v >= filter.min() && v <= filter.max())) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                rows[count++] = row;
+            }
+        }
+        int[] matched = Arrays.copyOf(rows, count);
+        Arrays.sort(matched);
+        return matched;
+    }
+
+    private static Map<String, Object> toRow(Snapshot snapshot, int row) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("ticker", snapshot.tickers()[row]);
+        m.put("time", snapshot.time());
+        for (Field field : Field.values()) {
+            double v = snapshot.columns()[field.ordinal()][row];
+            m.put(field.apiName, Double.isNaN(v) ? null : v);
+        }
+        return m;
+    }
+
+    /**
+     * The table's snapshot, rebuilt first when missing or older than the table.
+     */
+    Snapshot current(String table) {
+        Snapshot snapshot = snapshots.get(table);
+        boolean fresh = snapshot != null && snapshot.time() >= seriesScan.latestTime(table);
+        queryMetrics.recordCache("screener", fresh);
+        return fresh ? snapshot : refresh(table);
+    }
+
+    @EventListener
+    public void onPipelineStageCompleted(PipelineStageCompletedEvent event) {
+        Snapshot snapshot = snapshots.get(event.table());
+        if (snapshot != null) {
+            boolean rewritten = rewrites(event.watermark(), snapshot);
+            refresher.submit(() -> refresh(event.table(), rewritten));
+        }
+    }
+
+    @EventListener
+    public void onSeriesReloaded(SeriesReloadedEvent event) {
+        Snapshot snapshot = snapshots.get(event.table());
+        if (snapshot != null && rewrites(event.watermark(), snapshot)) {
+            refresher.submit(() -> refresh(event.table(), true));
+        }
+    }
+
+    /**
+     * @return whether rows after the watermark (yyyyMMdd) include the snapshot's day
+     */
+    private static boolean rewrites(String watermark, Snapshot snapshot) {
+        return LocalDate.parse(watermark, WATERMARK).atStartOfDay(ZoneOffset.UTC).toEpochSecond() < snapshot.time();
+    }
+
+    Snapshot refresh(String table) {
+        return refresh(table, false);
+    }
+
+    /**
+     * Builds and publishes a new snapshot; on a failed read the previous one stays.
+     *
+     * @param rewritten rebuild even when the snapshot's day is still the newest, its rows were written again
+     */
+    synchronized Snapshot refresh(String table, boolean rewritten) {
+        Snapshot previous = snapshots.get(table);
+        if (!rewritten && previous != null && previous.time() >= seriesScan.latestTime(table)) {
+            return previous;
+        }
+        long start = System.currentTimeMillis();
+        Map<String, double[]> latest = new HashMap<>();
+        long[] newest = {Long.MIN_VALUE};
+        double[][] scratch = {new double[0]};
+        try {
+            boolean complete = seriesScan.forEach(table, (ticker, series) -> {
+                int size = series.size();
+                if (size == 0 || series.time()[size - 1] < newest[0]) {
+                    return;
+                }
+                if (series.time()[size - 1] > newest[0]) {
+                    newest[0] = series.time()[size - 1];
+                    latest.clear();
+                }
+                if (scratch[0].length < size) {
+                    scratch[0] = new double[size];
+                }
+                latest.put(ticker, lastRow(series, scratch[0]));
+            });
+            if (!complete) {
+                log.warn("screener snapshot of table={} incomplete; kept the previous one", table);
+                return previous;
+            }
+        } catch (IOException e) {
+            log.warn("screener snapshot of table={} failed: {}", table, e.getMessage());
+            return previous;
+        }
+        Snapshot snapshot = index(newest[0], latest);
+        snapshots.put(table, snapshot);
+        log.info("screener snapshot table={} tickers={} in {} ms", table, snapshot.size(), System.currentTimeMillis() - start);
+        return snapshot;
+    }
+
+    /**
+     * Field values of the series' last bar, indexed by {@link Field#ordinal()}. Averages and RSI come from
+     * {@link IndicatorKernels}, so a missing close is skipped rather than spoiling them; each kernel writes
+     * the scratch array (at least the series' size) in turn.
+     */
+    static double[] lastRow(OhlcvSeries series, double[] scratch) {
+        int last = series.size() - 1;
+        long[] time = series.time();
+        double[] close = series.close();
+        double[] row = new double[Field.values().length];
+        double c = close[last];
+        IndicatorKernels.sma(close, series.size(), 50, scratch);
+        double sma50 = scratch[last];
+        IndicatorKernels.sma(close, series.size(), 200, scratch);
+        double sma200 = scratch[last];
+        double high = Double.NaN;
+        double low = Double.NaN;
+        for (int i = last; i >= 0 && time[i] >= time[last] - IndicatorKernels.WINDOW_52W_SECONDS; i--) {
+            high = Double.isNaN(high) || series.high()[i] > high ? series.high()[i] : high;
+            low = Double.isNaN(low) || series.low()[i] < low ? series.low()[i] : low;
+        }
+        IndicatorKernels.rsi(close, series.size(), 14, scratch);
+        row[Field.CLOSE.ordinal()] = c;
+        row[Field.CHANGE.ordinal()] = last > 0 ? percent(c, close[last - 1]) : Double.NaN;
+        row[Field.VOLUME.ordinal()] = series.volume()[last];
+        row[Field.SMA_50.ordinal()] = sma50;
+        row[Field.SMA_200.ordinal()] = sma200;
+        row[Field.PCT_SMA_50.ordinal()] = percent(c, sma50);
+        row[Field.PCT_SMA_200.ordinal()] = percent(c, sma200);
+        row[Field.HIGH_52W.ordinal()] = high;
+        row[Field.LOW_52W.ordinal()] = low;
+        row[Field.PCT_HIGH_52W.ordinal()] = percent(c, high);
+        row[Field.PCT_LOW_52W.ordinal()] = percent(c, low);
+        row[Field.RSI_14.ordinal()] = scratch[last];
+        return row;
+    }
+
+    private static double percent(double value, double reference) {
+        return reference == 0 ? Double.NaN : (value - reference) / reference * 100;
+    }
+
+    /**
+     * Lays the rows out in ticker order and builds the sorted index and ranks of every column.
+     */
+    static Snapshot index(long time, Map<String, double[]> rows) {
+        String[] tickers = rows.keySet().toArray(new String[0]);
+        Arrays.sort(tickers);
+        int n = tickers.length;
+        int fields = Field.values().length;
+        double[][] columns = new double[fields][n];
+        for (int r = 0; r < n; r++) {
+            double[] row = rows.get(tickers[r]);
+            for (int f = 0; f < fields; f++) {
+                columns[f][r] = row[f];
+            }
+        }
+        int[][] sorted = new int[fields][];
+        int[][] rank = new int[fields][n];
+        for (int f = 0; f < fields; f++) {
+            double[] column = columns[f];
+            sorted[f] = IntStream.range(0, n).filter(r -> !Double.isNaN(column[r])).boxed()
+                    .sorted((a, b) -> Double.compare(column[a], column[b])).mapToInt(Integer::intValue).toArray();
+            Arrays.fill(rank[f], n);
+            for (int i = 0; i < sorted[f].length; i++) {
+                rank[f][sorted[f][i]] = i;
+            }
+        }
+        return new Snapshot(time, tickers, columns, sorted, rank);
+    }
+}
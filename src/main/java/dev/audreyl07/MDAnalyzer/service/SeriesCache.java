@@ -0,0 +1,150 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of decoded series read from QuestDB, plus request counts per ticker.
+ *
+ * - Series are kept per table and ticker in an LRU map of at most maxTickers entries; analysis
+ *   series are kept per type
+ * - Entries of a table are dropped when a pipeline stage writes to it ({@link PipelineStageCompletedEvent}),
+ *   so the cache never serves data older than the last maintenance run
+ * - Every API request for a ticker is counted; {@link #hotTickers(int)} returns the most requested
+ *   ones for {@link CacheWarmer}, and {@link #decayRequestCounts()} halves the counts so they
+ *   follow recent traffic
+ *
+ * Hits and misses are counted as mdanalyzer.cache.requests{cache, result}.
+ */
+@Component
+public class SeriesCache {
+
+    /**
+     * A table and ticker, as requested through the data API.
+     */
+    public record Key(String table, String ticker) {
+    }
+
+    @Value("${mdanalyzer.cache.enabled:true}")
+    boolean enabled = true;
+
+    @Value("${mdanalyzer.cache.maxTickers:500}")
+    int maxTickers = 500;
+
+    @Autowired
+    QueryMetrics queryMetrics;
+
+    private final Map<Key, OhlcvSeries> series = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, OhlcvSeries> eldest) {
+            return size() > maxTickers;
+        }
+    };
+
+    private final Map<String, ValueSeries> analysis = new ConcurrentHashMap<>();
+
+    private final Map<Key, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Bumped on every invalidation; a load that started before it is returned but not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public OhlcvSeries getSeries(String table, String ticker, Supplier<OhlcvSeries> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Key key = new Key(table, ticker);
+        OhlcvSeries cached;
+        synchronized (series) {
+            cached = series.get(key);
+        }
+        queryMetrics.recordCache("series", cached != null);
+        if (cached != null) {
+            return cached;
+        }
+        long started = generation.get();
+        OhlcvSeries loaded = loader.get();
+        synchronized (series) {
+            if (generation.get() == started) {
+                series.put(key, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    public ValueSeries getAnalysis(String type, Supplier<ValueSeries> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        ValueSeries cached = analysis.get(type);
+        queryMetrics.recordCache("analysis", cached != null);
+        if (cached != null) {
+            return cached;
+        }
+        long started = generation.get();
+        ValueSeries loaded = loader.get();
+        synchronized (series) {
+            if (generation.get() == started) {
+                analysis.put(type, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    public void recordRequest(String table, String ticker) {
+        Key key = new Key(table, ticker);
+        AtomicLong count = requestCounts.get(key);
+        if (count == null) {
+            // unknown symbols are requested too; keep the tracked set bounded
+            if (requestCounts.size() >= maxTickers * 10) {
+                return;
+            }
+            count = requestCounts.computeIfAbsent(key, k -> new AtomicLong());
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * @return up to n most requested tickers, most requested first
+     */
+    public List<Key> hotTickers(int n) {
+        return requestCounts.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<Key, AtomicLong> e) -> e.getValue().get()).reversed())
+                .limit(n)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    public void decayRequestCounts() {
+        requestCounts.entrySet().removeIf(e -> e.getValue().updateAndGet(c -> c / 2) == 0);
+    }
+
+    @EventListener
+    public void onPipelineStageCompleted(PipelineStageCompletedEvent event) {
+        synchronized (series) {
+            generation.incrementAndGet();
+            if (SeriesStore.ANALYSIS_TABLE.equals(event.table())) {
+                analysis.clear();
+            } else {
+                series.keySet().removeIf(key -> key.table().equals(event.table()));
+            }
+        }
+    }
+
+    int size() {
+        synchronized (series) {
+            return series.size() + analysis.size();
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes the rows a pipeline stage wrote to clients subscribed to those tickers or analysis types.
+ *
+ * - Subscribers are indexed by {@link SeriesCache.Key}: (table, ticker) for bars, (analysis_market, type)
+ *   for analysis series
+ * - On a {@link PipelineStageCompletedEvent} the new rows of all subscribed tickers of the table are read
+ *   in one query per tickerBatchSize tickers (only rows after the stage's watermark); analysis series are
+ *   re-read per subscribed type and cut at the watermark
+ * - Each key's payload is serialised once and the same string is queued for every subscriber of the key;
+ *   rows already pushed for a key are never sent again
+ * - Reads run on one maintenance-class background thread, so maintenance requests do not wait for pushes
+ * - Every subscriber has a bounded queue drained by a small sender pool, so a slow client delays only
+ *   itself; heartbeats go through the same queue
+ * - Subscribers whose queue overflows, or that fail a send or a heartbeat, are dropped and closed
+ *
+ * Meters: mdanalyzer.push.subscribers gauge, mdanalyzer.push.messages{event} and mdanalyzer.push.dropped.
+ */
+@Service
+public class SeriesPushService {
+
+    private static final Logger log = LoggerFactory.getLogger(SeriesPushService.class);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final DateTimeFormatter WATERMARK = DateTimeFormatter.BASIC_ISO_DATE;
+
+    /**
+     * The receiving end of a subscription, e.g. an SSE connection.
+     */
+    public interface Subscriber {
+
+        /**
+         * @param event event name (bars or analysis)
+         * @param data  JSON payload, shared by all subscribers of the key
+         */
+        void send(String event, String data) throws IOException;
+
+        void heartbeat() throws IOException;
+
+        /**
+         * Ends the connection after the subscription was dropped.
+         */
+        void close();
+    }
+
+    /**
+     * A subscriber, the keys it listens to and the messages queued for it.
+     */
+    public static final class Subscription {
+
+        private final Subscriber subscriber;
+        private final Set<SeriesCache.Key> keys;
+        private final BlockingQueue<Message> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        public Subscription(Subscriber subscriber, Set<SeriesCache.Key> keys, int queueSize) {
+            this.subscriber = subscriber;
+            this.keys = keys;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        }
+
+        public Subscriber subscriber() {
+            return subscriber;
+        }
+
+        public Set<SeriesCache.Key> keys() {
+            return keys;
+        }
+    }
+
+    /**
+     * A queued send; a null event is a heartbeat.
+     */
+    private record Message(String event, String data) {
+    }
+
+    private static final Message HEARTBEAT = new Message(null, null);
+
+    @Value("${mdanalyzer.push.maxSubscribers:5000}")
+    int maxSubscribers = 5000;
+
+    @Value("${mdanalyzer.push.maxKeysPerSubscriber:200}")
+    int maxKeysPerSubscriber = 200;
+
+    @Value("${mdanalyzer.push.heartbeatSeconds:15}")
+    long heartbeatSeconds = 15;
+
+    @Value("${mdanalyzer.push.tickerBatchSize:500}")
+    int tickerBatchSize = 500;
+
+    @Value("${mdanalyzer.push.queueSize:64}")
+    int queueSize = 64;
+
+    @Value("${mdanalyzer.push.senderThreads:4}")
+    int senderThreads = 4;
+
+    @Autowired
+    QuestDBService questDBService;
+
+    @Autowired
+    QueryBackend queryBackend;
+
+    @Autowired
+    SqlTemplates sqlTemplates;
+
+    @Autowired
+    DataService dataService;
+
+    @Autowired
+    QueryMetrics queryMetrics;
+
+    private final Map<SeriesCache.Key, Set<Subscription>> subscribers = new ConcurrentHashMap<>();
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Time of the newest row pushed per key. Only touched on the push thread.
+     */
+    private final Map<SeriesCache.Key, Long> lastPushed = new HashMap<>();
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    private final ExecutorService pusher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(QueryBulkheads.maintenanceThread(r), "series-push");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ExecutorService senders;
+
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "series-push-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Counter dropped;
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("mdanalyzer.push.subscribers", subscriptions, Set::size).register(queryMetrics.getRegistry());
+        dropped = Counter.builder("mdanalyzer.push.dropped").register(queryMetrics.getRegistry());
+        senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread thread = new Thread(r, "series-push-send");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (heartbeatSeconds > 0) {
+            heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        pusher.shutdownNow();
+        heartbeats.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    /**
+     * @return the subscription, or null when the subscriber limit is reached or keys is empty or too large
+     */
+    public Subscription subscribe(Subscriber subscriber, Set<SeriesCache.Key> keys) {
+        if (keys.isEmpty() || keys.size() > maxKeysPerSubscriber) {
+            return null;
+        }
+        if (count.incrementAndGet() > maxSubscribers) {
+            count.decrementAndGet();
+            return null;
+        }
+        Subscription subscription = new Subscription(subscriber, Set.copyOf(keys), queueSize);
+        subscriptions.add(subscription);
+        for (SeriesCache.Key key : subscription.keys()) {
+            subscribers.compute(key, (k, set) -> {
+                Set<Subscription> keySubscribers = set == null ? ConcurrentHashMap.newKeySet() : set;
+                keySubscribers.add(subscription);
+                return keySubscribers;
+            });
+        }
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        remove(subscription);
+    }
+
+    /**
+     * @return false when the subscription was already removed
+     */
+    private boolean remove(Subscription subscription) {
+        if (subscription == null || !subscriptions.remove(subscription)) {
+            return false;
+        }
+        count.decrementAndGet();
+        for (SeriesCache.Key key : subscription.keys()) {
+            subscribers.computeIfPresent(key, (k, set) -> {
+                set.remove(subscription);
+                return set.isEmpty() ? null : set;
+            });
+        }
+        return true;
+    }
+
+    @EventListener
+    public void onPipelineStageCompleted(PipelineStageCompletedEvent event) {
+        if (subscribers.keySet().stream().anyMatch(key -> key.table().equals(event.table()))) {
+            pusher.submit(() -> push(event));
+        }
+    }
+
+    /**
+     * Reads and fans out the rows written by the stage. Runs on the push thread.
+     */
+    void push(PipelineStageCompletedEvent event) {
+        try {
+            lastPushed.keySet().removeIf(key -> !subscribers.containsKey(key));
+            long after = LocalDate.parse(event.watermark(), WATERMARK).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+            List<String> tickers = new ArrayList<>();
+            for (SeriesCache.Key key : subscribers.keySet()) {
+                if (key.table().equals(event.table())) {
+                    tickers.add(key.ticker());
+                }
+            }
+            if (SeriesStore.ANALYSIS_TABLE.equals(event.table())) {
+                for (String type : tickers) {
+                    pushAnalysis(new SeriesCache.Key(event.table(), type), after);
+                }
+            } else {
+                for (int i = 0; i < tickers.size(); i += tickerBatchSize) {
+                    pushBars(event, tickers.subList(i, Math.min(tickers.size(), i + tickerBatchSize)));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("push after stage={} table={} failed: {}", event.stage(), event.table(), e.getMessage());
+        }
+    }
+
+    private void pushBars(PipelineStageCompletedEvent event, List<String> tickers) throws IOException {
+        String query = sqlTemplates.render(SqlTemplates.SERIES_BATCH_APPEND_READ,
+                Map.of("source", event.table(), "tickers", tickers, "watermark", event.watermark()));
+        Map<String, OhlcvSeries.Builder> rows = new LinkedHashMap<>();
+        long read = questDBService.streamQuery(query, row -> rows.computeIfAbsent((String) row[0], t -> new OhlcvSeries.Builder(4))
+                .add(TimestampDecoder.toEpochSeconds(row[1]), DataService.toDouble(row[2]), DataService.toDouble(row[3]),
+                        DataService.toDouble(row[4]), DataService.toDouble(row[5]), DataService.toDouble(row[6])));
+        if (read < 0) {
+            return;
+        }
+        for (Map.Entry<String, OhlcvSeries.Builder> entry : rows.entrySet()) {
+            SeriesCache.Key key = new SeriesCache.Key(event.table(), entry.getKey());
+            OhlcvSeries series = entry.getValue().build();
+            int from = DataService.firstAfter(series.time(), series.size(), lastPushed.getOrDefault(key, Long.MIN_VALUE));
+            if (from < series.size()) {
+                lastPushed.put(key, series.time()[series.size() - 1]);
+                fanOut(key, "bars", payload("table", key.table(), "ticker", key.ticker(), dataService.outputAsFull(series, from)));
+            }
+        }
+    }
+
+    private void pushAnalysis(SeriesCache.Key key, long after) throws JsonProcessingException {
+        ValueSeries series = queryBackend.readAnalysis(key.ticker());
+        int from = DataService.firstAfter(series.time(), series.size(), Math.max(after, lastPushed.getOrDefault(key, Long.MIN_VALUE)));
+        if (from < series.size()) {
+            lastPushed.put(key, series.time()[series.size() - 1]);
+            fanOut(key, "analysis", payload("table", key.table(), "type", key.ticker(), dataService.outputAsValues(series, from)));
+        }
+    }
+
+    private static String payload(String tableField, String table, String keyField, String key, List<Map<String, Object>> rows)
+            throws JsonProcessingException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put(tableField, table);
+        map.put(keyField, key);
+        map.put("rows", rows);
+        return JSON.writeValueAsString(map);
+    }
+
+    private void fanOut(SeriesCache.Key key, String event, String data) {
+        Set<Subscription> targets = subscribers.get(key);
+        if (targets == null) {
+            return;
+        }
+        Message message = new Message(event, data);
+        for (Subscription subscription : targets) {
+            enqueue(subscription, message);
+        }
+    }
+
+    void heartbeat() {
+        for (Subscription subscription : subscriptions) {
+            enqueue(subscription, HEARTBEAT);
+        }
+    }
+
+    /**
+     * Queues the message and starts draining the subscriber's queue unless a sender already is; a full
+     * queue means the client stopped reading, so it is dropped.
+     */
+    private void enqueue(Subscription subscription, Message message) {
+        if (!subscription.queue.offer(message)) {
+            drop(subscription);
+            return;
+        }
+        if (subscription.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscription));
+        }
+    }
+
+    /**
+     * Sends the queued messages of one subscriber in order. Runs on a sender thread.
+     */
+    private void drain(Subscription subscription) {
+        do {
+            Message message;
+            while ((message = subscription.queue.poll()) != null) {
+                if (!subscriptions.contains(subscription)) {
+                    subscription.queue.clear();
+                    break;
+                }
+                try {
+                    if (message == HEARTBEAT) {
+                        subscription.subscriber().heartbeat();
+                    } else {
+                        subscription.subscriber().send(message.event(), message.data());
+                        Counter.builder("mdanalyzer.push.messages").tag("event", message.event())
+                                .register(queryMetrics.getRegistry()).increment();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    drop(subscription);
+                }
+            }
+            subscription.draining.set(false);
+            // a message queued after the last poll but before the flag was cleared is picked up here
+        } while (!subscription.queue.isEmpty() && subscription.draining.compareAndSet(false, true));
+    }
+
+    private void drop(Subscription subscription) {
+        if (remove(subscription)) {
+            log.debug("dropping subscriber keys={}", subscription.keys().size());
+            dropped.increment();
+            subscription.subscriber().close();
+        }
+    }
+
+    int subscriberCount() {
+        return subscriptions.size();
+    }
+}
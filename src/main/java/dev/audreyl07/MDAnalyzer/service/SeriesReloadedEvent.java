@@ -0,0 +1,11 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+/**
+ * Published by {@link SeriesStore} once a table has been read again after a re-run rewrote rows it held,
+ * so consumers that computed from the old copy in the meantime can drop their results again.
+ *
+ * @param table     the reloaded table
+ * @param watermark the re-run's watermark (yyyyMMdd); rows after it were rewritten
+ */
+public record SeriesReloadedEvent(String table, String watermark) {
+}
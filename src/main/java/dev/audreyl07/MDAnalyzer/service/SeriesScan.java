@@ -0,0 +1,132 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Whole-table passes over every ticker's series, for engines that derive cross-sectional data.
+ *
+ * - Series come from the {@link SeriesStore} when the table is loaded, without copying
+ * - Otherwise the ticker list is read and the rows streamed from QuestDB in batches of tickerBatchSize
+ *   tickers, one series built at a time, so memory stays at one ticker's rows
+ * - A basket of tickers can be read the same way, limited to the bars after a date
+ */
+@Component
+public class SeriesScan {
+
+    private static final DateTimeFormatter WATERMARK = DateTimeFormatter.BASIC_ISO_DATE;
+
+    @Value("${mdanalyzer.scan.tickerBatchSize:200}")
+    int tickerBatchSize = 200;
+
+    @Autowired
+    SeriesStore seriesStore;
+
+    @Autowired
+    QuestDBService questDBService;
+
+    @Autowired
+    SqlTemplates sqlTemplates;
+
+    @Autowired
+    Watermarks watermarks;
+
+    /**
+     * Newest date of the table in epoch seconds, from the store when loaded and the watermark otherwise.
+     */
+    public long latestTime(String table) {
+        if (seriesStore.isReady(table)) {
+            return seriesStore.getMaxTime(table);
+        }
+        String watermark = watermarks.get(table);
+        return watermark == null ? Long.MIN_VALUE
+                : LocalDate.parse(watermark, WATERMARK).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+    }
+
+    /**
+     * Hands every ticker's full series to the consumer.
+     *
+     * @return false when QuestDB could not be read completely
+     */
+    public boolean forEach(String table, BiConsumer<String, OhlcvSeries> consumer) throws IOException {
+        Map<String, OhlcvSeries> stored = seriesStore.isReady(table) ? seriesStore.readTable(table) : null;
+        if (stored != null) {
+            stored.forEach(consumer);
+            return true;
+        }
+        List<String> tickers = new ArrayList<>();
+        if (questDBService.streamQuery(sqlTemplates.render(SqlTemplates.TICKERS, Map.of("source", table)),
+                row -> tickers.add(String.valueOf(row[0]))) < 0) {
+            return false;
+        }
+        return stream(table, tickers, null, consumer);
+    }
+
+    /**
+     * Hands the listed tickers' bars after the given time (epoch seconds, a day boundary) to the consumer,
+     * skipping tickers without any. Store series are trimmed copies, QuestDB reads are batched like
+     * {@link #forEach(String, BiConsumer)}.
+     *
+     * @return false when QuestDB could not be read completely
+     */
+    public boolean forEach(String table, List<String> tickers, long after, BiConsumer<String, OhlcvSeries> consumer)
+            throws IOException {
+        if (seriesStore.isReady(table)) {
+            for (String ticker : tickers) {
+                OhlcvSeries series = seriesStore.readSeries(table, ticker, after + 1, Long.MAX_VALUE);
+                if (series.size() > 0) {
+                    consumer.accept(ticker, series);
+                }
+            }
+            return true;
+        }
+        String watermark = after == Long.MIN_VALUE ? null
+                : WATERMARK.format(Instant.ofEpochSecond(after).atOffset(ZoneOffset.UTC).toLocalDate());
+        return stream(table, tickers, watermark, consumer);
+    }
+
+    private boolean stream(String table, List<String> tickers, String watermark, BiConsumer<String, OhlcvSeries> consumer)
+            throws IOException {
+        int batchSize = Math.max(1, tickerBatchSize);
+        for (int from = 0; from < tickers.size(); from += batchSize) {
+            List<String> batch = tickers.subList(from, Math.min(from + batchSize, tickers.size()));
+            String query = watermark == null
+                    ? sqlTemplates.render(SqlTemplates.SERIES_BATCH_READ, Map.of("source", table, "tickers", batch))
+                    : sqlTemplates.render(SqlTemplates.SERIES_BATCH_APPEND_READ,
+                            Map.of("source", table, "tickers", batch, "watermark", watermark));
+            String[] current = {null};
+            OhlcvSeries.Builder[] builder = {null};
+            long read = questDBService.streamQuery(query, row -> {
+                String ticker = (String) row[0];
+                if (!ticker.equals(current[0])) {
+                    if (current[0] != null) {
+                        consumer.accept(current[0], builder[0].build());
+                    }
+                    current[0] = ticker;
+                    builder[0] = new OhlcvSeries.Builder(256);
+                }
+                builder[0].add(TimestampDecoder.toEpochSeconds(row[1]), DataService.toDouble(row[2]),
+                        DataService.toDouble(row[3]), DataService.toDouble(row[4]), DataService.toDouble(row[5]),
+                        DataService.toDouble(row[6]));
+            });
+            if (read < 0) {
+                return false;
+            }
+            if (current[0] != null) {
+                consumer.accept(current[0], builder[0].build());
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,202 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Snapshot file of decoded series, written by {@link SeriesStore} and memory-mapped back on startup.
+ *
+ * Layout (little endian):
+ * - header: magic "MDSS", format version, number of double columns per entry, watermark
+ *   (latest time in epoch seconds), entry count
+ * - per entry: name length and UTF-8 name, row count, then the time column and each double column
+ *
+ * Files are written to a temporary file and moved into place, so a reader sees either the previous
+ * snapshot or the complete new one. A file with another magic, version or column count is rejected.
+ */
+final class SeriesSnapshotFile {
+
+    static final int MAGIC = 0x5353444D; // "MDSS"
+    static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 4;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final long WINDOW_BYTES = 256L << 20;
+
+    /**
+     * Contents of a snapshot file; entries keep the order they were written in.
+     */
+    record Contents<T>(long watermark, Map<String, T> entries) {
+    }
+
+    private SeriesSnapshotFile() {
+    }
+
+    static void writeOhlcv(Path file, long watermark, Map<String, OhlcvSeries> entries) throws IOException {
+        Map<String, Object[]> columns = new LinkedHashMap<>();
+        entries.forEach((name, s) -> columns.put(name,
+                new Object[]{s.size(), s.time(), s.open(), s.high(), s.low(), s.close(), s.volume()}));
+        write(file, watermark, 5, columns);
+    }
+
+    static void writeValues(Path file, long watermark, Map<String, ValueSeries> entries) throws IOException {
+        Map<String, Object[]> columns = new LinkedHashMap<>();
+        entries.forEach((name, s) -> columns.put(name, new Object[]{s.size(), s.time(), s.value()}));
+        write(file, watermark, 1, columns);
+    }
+
+    static Contents<OhlcvSeries> readOhlcv(Path file) throws IOException {
+        Contents<Object[]> raw = read(file, 5);
+        Map<String, OhlcvSeries> entries = new LinkedHashMap<>();
+        raw.entries().forEach((name, c) -> entries.put(name, new OhlcvSeries((Integer) c[0], (long[]) c[1],
+                (double[]) c[2], (double[]) c[3], (double[]) c[4], (double[]) c[5], (double[]) c[6])));
+        return new Contents<>(raw.watermark(), entries);
+    }
+
+    static Contents<ValueSeries> readValues(Path file) throws IOException {
+        Contents<Object[]> raw = read(file, 1);
+        Map<String, ValueSeries> entries = new LinkedHashMap<>();
+        raw.entries().forEach((name, c) -> entries.put(name,
+                new ValueSeries((Integer) c[0], (long[]) c[1], (double[]) c[2])));
+        return new Contents<>(raw.watermark(), entries);
+    }
+
+    /**
+     * @param entries per entry: row count, long[] times, then one double[] per column (arrays may be longer than the row count)
+     */
+    private static void write(Path file, long watermark, int doubleColumns, Map<String, Object[]> entries) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(doubleColumns).putLong(watermark).putInt(entries.size());
+            for (Map.Entry<String, Object[]> entry : entries.entrySet()) {
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                int size = (Integer) entry.getValue()[0];
+                ensure(channel, buffer, 2 + name.length + 4);
+                buffer.putShort((short) name.length).put(name).putInt(size);
+                long[] time = (long[]) entry.getValue()[1];
+                for (int i = 0; i < size; i++) {
+                    ensure(channel, buffer, 8);
+                    buffer.putLong(time[i]);
+                }
+                for (int c = 0; c < doubleColumns; c++) {
+                    double[] column = (double[]) entry.getValue()[2 + c];
+                    for (int i = 0; i < size; i++) {
+                        ensure(channel, buffer, 8);
+                        buffer.putDouble(column[i]);
+                    }
+                }
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps the file read-only in windows of up to 256 MB (so files above 2 GB work) and bulk-copies
+     * each column into heap arrays.
+     */
+    private static Contents<Object[]> read(Path file, int doubleColumns) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES) {
+                throw new IOException("Snapshot " + file + " is truncated");
+            }
+            Window window = new Window(channel, length);
+            ByteBuffer header = window.slice(0, HEADER_BYTES);
+            int magic = header.getInt();
+            int version = header.getInt();
+            int columns = header.getInt();
+            if (magic != MAGIC || version != VERSION || columns != doubleColumns) {
+                throw new IOException("Snapshot " + file + " has magic=" + Integer.toHexString(magic) + " version="
+                        + version + " columns=" + columns + ", expected version " + VERSION + " columns=" + doubleColumns);
+            }
+            long watermark = header.getLong();
+            int count = header.getInt();
+            Map<String, Object[]> entries = new LinkedHashMap<>();
+            long offset = HEADER_BYTES;
+            for (int e = 0; e < count; e++) {
+                ByteBuffer nameLength = window.slice(offset, 2);
+                int nameBytes = nameLength.getShort() & 0xFFFF;
+                ByteBuffer entryHeader = window.slice(offset + 2, nameBytes + 4);
+                byte[] name = new byte[nameBytes];
+                entryHeader.get(name);
+                int size = entryHeader.getInt();
+                offset += 2 + nameBytes + 4;
+                long dataBytes = (long) size * 8 * (1 + doubleColumns);
+                if (offset + dataBytes > length) {
+                    throw new IOException("Snapshot " + file + " is truncated");
+                }
+                ByteBuffer data = window.slice(offset, dataBytes);
+                Object[] entry = new Object[2 + doubleColumns];
+                entry[0] = size;
+                long[] time = new long[size];
+                data.asLongBuffer().get(time);
+                entry[1] = time;
+                for (int c = 0; c < doubleColumns; c++) {
+                    double[] column = new double[size];
+                    data.position((1 + c) * size * 8).asDoubleBuffer().get(column);
+                    entry[2 + c] = column;
+                }
+                entries.put(new String(name, StandardCharsets.UTF_8), entry);
+                offset += dataBytes;
+            }
+            return new Contents<>(watermark, entries);
+        }
+    }
+
+    /**
+     * A read-only mapping of part of the file, moved forward when a slice falls outside it.
+     */
+    private static final class Window {
+
+        private final FileChannel channel;
+        private final long length;
+        private MappedByteBuffer mapped;
+        private long start;
+
+        Window(FileChannel channel, long length) {
+            this.channel = channel;
+            this.length = length;
+        }
+
+        ByteBuffer slice(long offset, long bytes) throws IOException {
+            if (offset + bytes > length) {
+                throw new IOException("Snapshot is truncated");
+            }
+            if (mapped == null || offset < start || offset + bytes > start + mapped.capacity()) {
+                start = offset;
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.max(bytes, Math.min(WINDOW_BYTES, length - offset)));
+            }
+            return mapped.slice((int) (offset - start), (int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,509 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import io.micrometer.core.instrument.Gauge;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Optional in-process copy of the daily OHLCV tables and the market analysis series, held as
+ * primitive columns per ticker.
+ *
+ * - Each table maps tickers to int ids; each id owns long[] times (epoch seconds) and double[] price
+ *   and volume columns with spare capacity at the end
+ * - Readers get an {@link OhlcvSeries} snapshot; appends write past the published size and then
+ *   publish a new snapshot, so readers never lock and never see a partial row
+ * - Range reads binary-search the time column; a full-range read returns the snapshot without copying
+ * - Tables are loaded in the background once the application is ready, in batches of tickers, and
+ *   caught up after every insert_historical run ({@link PipelineStageCompletedEvent}); a re-run that
+ *   rewrote stored dates (a watermark before the newest stored day) reloads the table instead and then
+ *   publishes a {@link SeriesReloadedEvent}. Loader queries run in the
+ *   maintenance bulkhead ({@link QueryBulkheads})
+ * - Analysis series (analysis_market) are small and re-read whole after every analysis stage
+ * - With mdanalyzer.store.snapshotDir set, every load and catch-up is written to a snapshot file per
+ *   table ({@link SeriesSnapshotFile}); on startup the snapshot is mapped back and served at once, and
+ *   only rows after its watermark are read from QuestDB
+ *
+ * Until a table has finished loading {@link #isReady(String)} is false and reads go to QuestDB.
+ * Memory is about 48 bytes per row. Enabled with mdanalyzer.store.enabled.
+ */
+@Component
+public class SeriesStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SeriesStore.class);
+
+    private static final DateTimeFormatter WATERMARK = DateTimeFormatter.BASIC_ISO_DATE;
+
+    public static final String ANALYSIS_TABLE = "analysis_market";
+    public static final List<String> ANALYSIS_TYPES = List.of("high52w", "low52w", "MA_50_200");
+
+    @Value("${mdanalyzer.store.enabled:false}")
+    boolean enabled = false;
+
+    @Value("${mdanalyzer.store.tables:historical_d,indices_d}")
+    List<String> tables = List.of("historical_d", "indices_d");
+
+    @Value("${mdanalyzer.store.tickerBatchSize:200}")
+    int tickerBatchSize = 200;
+
+    @Value("${mdanalyzer.store.snapshotDir:}")
+    String snapshotDir = "";
+
+    @Autowired
+    QuestDBService questDBService;
+
+    @Autowired
+    SqlTemplates sqlTemplates;
+
+    @Autowired
+    QueryMetrics queryMetrics;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
+    private final Map<String, Table> loaded = new ConcurrentHashMap<>();
+
+    private volatile Map<String, ValueSeries> analysis;
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(QueryBulkheads.maintenanceThread(r), "series-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Columns of one table. Mutated only on the loader thread.
+     */
+    static final class Table {
+
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private volatile Column[] columns = new Column[0];
+        private volatile long rows;
+        private volatile long maxTime = Long.MIN_VALUE;
+
+        Column column(String ticker) {
+            Integer id = ids.get(ticker);
+            return id == null ? null : columns[id];
+        }
+
+        Column columnForWrite(String ticker) {
+            Integer id = ids.get(ticker);
+            if (id != null) {
+                return columns[id];
+            }
+            Column[] grown = Arrays.copyOf(columns, columns.length + 1);
+            grown[columns.length] = new Column();
+            columns = grown;
+            ids.put(ticker, columns.length - 1);
+            return grown[columns.length - 1];
+        }
+
+        int tickers() {
+            return columns.length;
+        }
+
+        Map<String, OhlcvSeries> snapshot() {
+            Map<String, OhlcvSeries> series = new LinkedHashMap<>();
+            ids.forEach((ticker, id) -> series.put(ticker, columns[id].snapshot));
+            return series;
+        }
+
+        static Table restore(SeriesSnapshotFile.Contents<OhlcvSeries> contents) {
+            Table table = new Table();
+            long rows = 0;
+            for (Map.Entry<String, OhlcvSeries> entry : contents.entries().entrySet()) {
+                table.columnForWrite(entry.getKey()).snapshot = entry.getValue();
+                rows += entry.getValue().size();
+            }
+            table.rows = rows;
+            table.maxTime = contents.watermark();
+            return table;
+        }
+    }
+
+    /**
+     * One ticker's rows. The published snapshot's arrays may be longer than its size.
+     */
+    static final class Column {
+
+        private volatile OhlcvSeries snapshot = new OhlcvSeries(0, new long[0], new double[0], new double[0],
+                new double[0], new double[0], new double[0]);
+
+        /**
+         * Appends rows strictly after the last stored time; older or duplicate rows are skipped.
+         *
+         * @return rows appended
+         */
+        int append(OhlcvSeries rows) {
+            OhlcvSeries current = snapshot;
+            int size = current.size();
+            long last = size == 0 ? Long.MIN_VALUE : current.time()[size - 1];
+            int from = 0;
+            while (from < rows.size() && rows.time()[from] <= last) {
+                from++;
+            }
+            int count = rows.size() - from;
+            if (count == 0) {
+                return 0;
+            }
+            long[] time = current.time();
+            double[] open = current.open();
+            double[] high = current.high();
+            double[] low = current.low();
+            double[] close = current.close();
+            double[] volume = current.volume();
+            if (size + count > time.length) {
+                int capacity = Math.max(size + count, size + (size >> 3) + 16);
+                time = Arrays.copyOf(time, capacity);
+                open = Arrays.copyOf(open, capacity);
+                high = Arrays.copyOf(high, capacity);
+                low = Arrays.copyOf(low, capacity);
+                close = Arrays.copyOf(close, capacity);
+                volume = Arrays.copyOf(volume, capacity);
+            }
+            System.arraycopy(rows.time(), from, time, size, count);
+            System.arraycopy(rows.open(), from, open, size, count);
+            System.arraycopy(rows.high(), from, high, size, count);
+            System.arraycopy(rows.low(), from, low, size, count);
+            System.arraycopy(rows.close(), from, close, size, count);
+            System.arraycopy(rows.volume(), from, volume, size, count);
+            snapshot = new OhlcvSeries(size + count, time, open, high, low, close, volume);
+            return count;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        for (String table : tables) {
+            Gauge.builder("mdanalyzer.store.rows", () -> loaded.containsKey(table) ? loaded.get(table).rows : 0)
+                    .tag("table", table).register(queryMetrics.getRegistry());
+            Gauge.builder("mdanalyzer.store.tickers", () -> loaded.containsKey(table) ? loaded.get(table).tickers() : 0)
+                    .tag("table", table).register(queryMetrics.getRegistry());
+            loader.submit(() -> load(table));
+        }
+        loader.submit(this::loadAnalysis);
+    }
+
+    @EventListener
+    public void onPipelineStageCompleted(PipelineStageCompletedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (SqlTemplates.INSERT_HISTORICAL.equals(event.stage()) && tables.contains(event.table())) {
+            loader.submit(() -> {
+                if (rewritesHistory(event.table(), event.watermark())) {
+                    reload(event.table(), event.watermark());
+                } else {
+                    catchUp(event.table());
+                }
+            });
+        } else if (ANALYSIS_TABLE.equals(event.table())) {
+            loader.submit(this::refreshAnalysis);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        loader.shutdownNow();
+    }
+
+    public boolean isReady(String table) {
+        return loaded.containsKey(table);
+    }
+
+    /**
+     * @return the rows of the ticker with from <= time <= to (epoch seconds), empty if the ticker is unknown
+     */
+    public OhlcvSeries readSeries(String table, String ticker, long from, long to) {
+        Table columns = loaded.get(table);
+        Column column = columns == null ? null : columns.column(ticker);
+        if (column == null) {
+            return new OhlcvSeries.Builder(0).build();
+        }
+        OhlcvSeries series = column.snapshot;
+        int start = lowerBound(series.time(), series.size(), from);
+        int end = to == Long.MAX_VALUE ? series.size() : lowerBound(series.time(), series.size(), to + 1);
+        if (start == 0 && end == series.size()) {
+            return series;
+        }
+        int count = Math.max(0, end - start);
+        return new OhlcvSeries(count,
+                Arrays.copyOfRange(series.time(), start, start + count),
+                Arrays.copyOfRange(series.open(), start, start + count),
+                Arrays.copyOfRange(series.high(), start, start + count),
+                Arrays.copyOfRange(series.low(), start, start + count),
+                Arrays.copyOfRange(series.close(), start, start + count),
+                Arrays.copyOfRange(series.volume(), start, start + count));
+    }
+
+    /**
+     * @return the current snapshot of every ticker of the table, or null when the table is not loaded
+     */
+    public Map<String, OhlcvSeries> readTable(String table) {
+        Table columns = loaded.get(table);
+        return columns == null ? null : columns.snapshot();
+    }
+
+    /**
+     * @return the stored analysis series of the type, or null when analysis is not loaded or the type is unknown
+     */
+    public ValueSeries readAnalysis(String type) {
+        Map<String, ValueSeries> series = analysis;
+        return series == null ? null : series.get(type);
+    }
+
+    /**
+     * @return latest stored time of the table in epoch seconds, or Long.MIN_VALUE when empty or not loaded
+     */
+    public long getMaxTime(String table) {
+        Table columns = loaded.get(table);
+        return columns == null ? Long.MIN_VALUE : columns.maxTime;
+    }
+
+    void load(String table) {
+        load(table, true);
+    }
+
+    /**
+     * Reads the table again from QuestDB, ignoring its snapshot; the current copy is served until the
+     * new one is complete, which is then announced with a {@link SeriesReloadedEvent}.
+     */
+    void reload(String table, String watermark) {
+        Table before = loaded.get(table);
+        load(table, false);
+        if (loaded.get(table) != before) {
+            eventPublisher.publishEvent(new SeriesReloadedEvent(table, watermark));
+        }
+    }
+
+    /**
+     * A watermark before the day of the newest stored row means rows the store already holds were written
+     * again; the catch-up only appends rows after each ticker's last stored time, so it would keep the old ones.
+     *
+     * @return whether rows after the watermark (yyyyMMdd) may replace stored rows
+     */
+    boolean rewritesHistory(String table, String watermark) {
+        Table columns = loaded.get(table);
+        if (columns == null || columns.maxTime == Long.MIN_VALUE || watermark == null) {
+            return false;
+        }
+        String newest = LocalDate.ofInstant(Instant.ofEpochSecond(columns.maxTime), ZoneOffset.UTC).format(WATERMARK);
+        return watermark.compareTo(newest) < 0;
+    }
+
+    private void load(String table, boolean fromSnapshot) {
+        long start = System.currentTimeMillis();
+        SeriesSnapshotFile.Contents<OhlcvSeries> restored = fromSnapshot ? readSnapshot(table) : null;
+        if (restored != null) {
+            Table columns = Table.restore(restored);
+            loaded.put(table, columns);
+            log.info("store restored table={} tickers={} rows={} durationMs={}", table, columns.tickers(), columns.rows,
+                    System.currentTimeMillis() - start);
+            catchUp(table);
+            return;
+        }
+        Map<String, Object> tickerResult = questDBService.executeQuery(
+                sqlTemplates.render(SqlTemplates.TICKERS, Map.of("source", table)));
+        List<Object> tickerRows = dataset(tickerResult);
+        if (tickerRows == null) {
+            log.warn("store load failed table={}: ticker list unavailable", table);
+            return;
+        }
+        List<String> tickers = new ArrayList<>();
+        for (Object row : tickerRows) {
+            Object ticker = ((List<Object>) row).get(0);
+            if (ticker != null) {
+                tickers.add(ticker.toString());
+            }
+        }
+        Table columns = new Table();
+        int batchSize = Math.max(1, tickerBatchSize);
+        for (int from = 0; from < tickers.size(); from += batchSize) {
+            List<String> batch = tickers.subList(from, Math.min(from + batchSize, tickers.size()));
+            List<Object> rows = dataset(queryMetrics.time("store_load", () -> questDBService.executeQuery(
+                    sqlTemplates.render(SqlTemplates.SERIES_BATCH_READ, Map.of("source", table, "tickers", batch)))));
+            if (rows == null) {
+                log.warn("store load failed table={} batch={}", table, from / batchSize);
+                return;
+            }
+            appendRows(columns, rows);
+        }
+        loaded.put(table, columns);
+        log.info("store loaded table={} tickers={} rows={} durationMs={}", table, columns.tickers(), columns.rows,
+                System.currentTimeMillis() - start);
+        writeSnapshot(table, columns);
+        catchUp(table);
+    }
+
+    void catchUp(String table) {
+        Table columns = loaded.get(table);
+        if (columns == null || columns.maxTime == Long.MIN_VALUE) {
+            return;
+        }
+        String watermark = catchUpWatermark(columns);
+        List<Object> rows = dataset(queryMetrics.time("store_append", () -> questDBService.executeQuery(
+                sqlTemplates.render(SqlTemplates.SERIES_APPEND_READ, Map.of("source", table, "watermark", watermark)))));
+        if (rows == null) {
+            log.warn("store catch-up failed table={} watermark={}", table, watermark);
+            return;
+        }
+        long before = columns.rows;
+        appendRows(columns, rows);
+        log.info("store caught up table={} watermark={} appended={}", table, watermark, columns.rows - before);
+        if (columns.rows > before) {
+            writeSnapshot(table, columns);
+        }
+    }
+
+    /**
+     * One day of overlap; rows at or before a ticker's last stored time are skipped.
+     */
+    private static String catchUpWatermark(Table columns) {
+        return LocalDate.ofInstant(Instant.ofEpochSecond(columns.maxTime), ZoneOffset.UTC)
+                .minusDays(1).format(WATERMARK);
+    }
+
+    void loadAnalysis() {
+        if (snapshotPath(ANALYSIS_TABLE) != null && Files.exists(snapshotPath(ANALYSIS_TABLE))) {
+            try {
+                analysis = Map.copyOf(SeriesSnapshotFile.readValues(snapshotPath(ANALYSIS_TABLE)).entries());
+                log.info("store restored table={}", ANALYSIS_TABLE);
+            } catch (IOException | RuntimeException e) {
+                log.warn("store snapshot unreadable table={}: {}", ANALYSIS_TABLE, e.getMessage());
+            }
+        }
+        refreshAnalysis();
+    }
+
+    void refreshAnalysis() {
+        Map<String, ValueSeries> series = new HashMap<>();
+        long maxTime = Long.MIN_VALUE;
+        for (String type : ANALYSIS_TYPES) {
+            List<Object> rows = dataset(queryMetrics.time("store_analysis", () -> questDBService.executeQuery(
+                    sqlTemplates.render(SqlTemplates.ANALYSIS_READ, Map.of("type", type)))));
+            if (rows == null) {
+                log.warn("store analysis refresh failed type={}", type);
+                return;
+            }
+            ValueSeries values = HttpQueryBackend.toValueSeries(rows);
+            series.put(type, values);
+            if (values.size() > 0) {
+                maxTime = Math.max(maxTime, values.time()[values.size() - 1]);
+            }
+        }
+        analysis = Map.copyOf(series);
+        Path file = snapshotPath(ANALYSIS_TABLE);
+        if (file != null) {
+            try {
+                SeriesSnapshotFile.writeValues(file, maxTime, series);
+            } catch (IOException e) {
+                log.warn("store snapshot write failed table={}: {}", ANALYSIS_TABLE, e.getMessage());
+            }
+        }
+    }
+
+    private Path snapshotPath(String table) {
+        return snapshotDir == null || snapshotDir.isBlank() ? null : Path.of(snapshotDir, table + ".snap");
+    }
+
+    private SeriesSnapshotFile.Contents<OhlcvSeries> readSnapshot(String table) {
+        Path file = snapshotPath(table);
+        if (file == null || !Files.exists(file)) {
+            return null;
+        }
+        try {
+            return SeriesSnapshotFile.readOhlcv(file);
+        } catch (IOException | RuntimeException e) {
+            log.warn("store snapshot unreadable table={}, loading from QuestDB: {}", table, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeSnapshot(String table, Table columns) {
+        Path file = snapshotPath(table);
+        if (file == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            SeriesSnapshotFile.writeOhlcv(file, columns.maxTime, columns.snapshot());
+            log.info("store snapshot written table={} rows={} durationMs={}", table, columns.rows,
+                    System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            log.warn("store snapshot write failed table={}: {}", table, e.getMessage());
+        }
+    }
+
+    /**
+     * Appends /exec rows laid out as (ticker, date, open, high, low, close, vol), grouped by ticker.
+     */
+    private static void appendRows(Table columns, List<Object> rows) {
+        Map<String, OhlcvSeries.Builder> byTicker = new HashMap<>();
+        for (Object obj : rows) {
+            List<Object> row = (List<Object>) obj;
+            byTicker.computeIfAbsent((String) row.get(0), t -> new OhlcvSeries.Builder(1024))
+                    .add(TimestampDecoder.toEpochSeconds(row.get(1)), toDouble(row.get(2)), toDouble(row.get(3)),
+                            toDouble(row.get(4)), toDouble(row.get(5)), toDouble(row.get(6)));
+        }
+        long appended = 0;
+        long maxTime = columns.maxTime;
+        for (Map.Entry<String, OhlcvSeries.Builder> entry : byTicker.entrySet()) {
+            OhlcvSeries series = entry.getValue().build();
+            appended += columns.columnForWrite(entry.getKey()).append(series);
+            if (series.size() > 0) {
+                maxTime = Math.max(maxTime, series.time()[series.size() - 1]);
+            }
+        }
+        columns.rows += appended;
+        columns.maxTime = maxTime;
+    }
+
+    private static List<Object> dataset(Map<String, Object> result) {
+        Map<String, Object> response = (Map<String, Object>) result.get("response");
+        return response == null ? null : (List<Object>) response.get("dataset");
+    }
+
+    private static double toDouble(Object value) {
+        return value instanceof Number number ? number.doubleValue() : Double.NaN;
+    }
+
+    private static int lowerBound(long[] time, int size, long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (time[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,138 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes series rows straight to a response stream with the Jackson streaming API.
+ *
+ * Formats:
+ * - NDJSON: one JSON object per line
+ * - SSE: each row as a {@code data:} event, followed by an {@code end} event carrying the row count,
+ *   or an {@code error} event when the read failed ({@link #fail(String)})
+ *
+ * Rows have the same fields as the list responses of {@link DataService} (time, value, volume for
+ * single; time, open, high, low, close, volume for full), plus ticker when several tickers are
+ * streamed. The output is flushed every flushRows rows so clients can render while the query runs.
+ */
+public final class SeriesStreamWriter implements AutoCloseable {
+
+    public enum Format { NDJSON, SSE }
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final SerializedString TIME = new SerializedString("time");
+    private static final SerializedString TICKER = new SerializedString("ticker");
+    private static final SerializedString VALUE = new SerializedString("value");
+    private static final SerializedString OPEN = new SerializedString("open");
+    private static final SerializedString HIGH = new SerializedString("high");
+    private static final SerializedString LOW = new SerializedString("low");
+    private static final SerializedString CLOSE = new SerializedString("close");
+    private static final SerializedString VOLUME = new SerializedString("volume");
+
+    private final OutputStream out;
+    private final JsonGenerator generator;
+    private final Format format;
+    private final boolean full;
+    private final boolean withTicker;
+    private final int flushRows;
+    private long rows;
+    private boolean failed;
+
+    public SeriesStreamWriter(OutputStream out, Format format, boolean full, boolean withTicker, int flushRows) {
+        try {
+            this.out = out;
+            this.generator = JSON.createGenerator(out, JsonEncoding.UTF8);
+            this.generator.setRootValueSeparator(null);
+            this.format = format;
+            this.full = full;
+            this.withTicker = withTicker;
+            this.flushRows = Math.max(1, flushRows);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write(String ticker, long time, double open, double high, double low, double close, double volume)
+            throws IOException {
+        if (format == Format.SSE) {
+            generator.writeRaw("data: ");
+        }
+        generator.writeStartObject();
+        if (withTicker) {
+            generator.writeFieldName(TICKER);
+            generator.writeString(ticker);
+        }
+        generator.writeFieldName(TIME);
+        generator.writeNumber(time);
+        if (full) {
+            number(OPEN, open);
+            number(HIGH, high);
+            number(LOW, low);
+            number(CLOSE, close);
+        } else {
+            number(VALUE, close);
+        }
+        number(VOLUME, volume);
+        generator.writeEndObject();
+        generator.writeRaw(format == Format.SSE ? "\n\n" : "\n");
+        if (++rows % flushRows == 0) {
+            generator.flush();
+        }
+    }
+
+    public void write(String ticker, OhlcvSeries series) throws IOException {
+        for (int i = 0; i < series.size(); i++) {
+            write(ticker, series.time()[i], series.open()[i], series.high()[i], series.low()[i],
+                    series.close()[i], series.volume()[i]);
+        }
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Reports a failed read to SSE clients as an error event in place of the end event. NDJSON has
+     * no in-band error, so callers fail the response before anything is written instead.
+     */
+    public void fail(String error) throws IOException {
+        failed = true;
+        if (format == Format.SSE) {
+            generator.writeRaw("event: error\ndata: ");
+            generator.writeStartObject();
+            generator.writeStringField("error", error);
+            generator.writeEndObject();
+            generator.writeRaw("\n\n");
+        }
+    }
+
+    /**
+     * Ends the stream; SSE clients get an end event with the row count unless the read failed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (format == Format.SSE && !failed) {
+            generator.writeRaw("event: end\ndata: {\"rows\":" + rows + "}\n\n");
+        }
+        generator.flush();
+        out.flush();
+    }
+
+    /**
+     * Missing values are NaN in the series and null in the stream.
+     */
+    private void number(SerializedString field, double v) throws IOException {
+        generator.writeFieldName(field);
+        if (Double.isNaN(v)) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(v);
+        }
+    }
+}
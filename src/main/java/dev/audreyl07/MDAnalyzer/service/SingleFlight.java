@@ -0,0 +1,58 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the loader, callers arriving
+ * while it is in flight wait for and share its result (or its exception).
+ *
+ * Nothing is kept once a load completes; caching is left to {@link SeriesCache}. Each call reports
+ * whether it joined another caller's load to the listener.
+ */
+public final class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Consumer<Boolean> listener;
+
+    /**
+     * @param listener receives true for a call that shared another caller's load, false for a call that ran the loader
+     */
+    public SingleFlight(Consumer<Boolean> listener) {
+        this.listener = listener;
+    }
+
+    public V run(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        listener.accept(leader != null);
+        if (leader != null) {
+            try {
+                return leader.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    int inFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,278 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A named SQL template with typed {@code {name}} placeholders, compiled once into literal and
+ * parameter segments.
+ *
+ * Parameter types:
+ * - TABLE: a table name, restricted to the declared set and inlined
+ * - INT: an integer, inlined (window frames and type names cannot be bound)
+ * - DATE: a yyyyMMdd watermark, rendered as a quoted literal or bound
+ * - TEXT: a string, rendered as a quoted literal or bound
+ * - TEXT_LIST: strings rendered as a comma separated list of quoted literals
+ * - FRAGMENT: a {@link Fragment} rendered from another template, or {@link Fragment#EMPTY}
+ *
+ * {@link #render(Map)} produces SQL text for the HTTP /exec endpoint; {@link #prepare(Map)} produces
+ * text with {@code ?} for DATE and TEXT values plus their bind values, and caches the text per
+ * combination of inlined values.
+ */
+public final class SqlTemplate {
+
+    public enum Type { TABLE, INT, DATE, TEXT, TEXT_LIST, FRAGMENT }
+
+    /**
+     * SQL rendered from a template, for use as a FRAGMENT parameter.
+     */
+    public record Fragment(String sql) {
+        public static final Fragment EMPTY = new Fragment("");
+    }
+
+    /**
+     * SQL text with {@code ?} placeholders and the values to bind, in order.
+     */
+    public record Prepared(String sql, List<Object> binds) {
+    }
+
+    private record Param(String name, Type type, Set<String> tables, List<String> columns) {
+    }
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([a-z_][a-z0-9_]*)}");
+    private static final Pattern WATERMARK = Pattern.compile("\\d{8}");
+
+    private final String name;
+    private final Map<String, Param> params;
+    private final Map<String, List<String>> usedTables;
+    private final Object[] segments;
+    private final int literalLength;
+    private final Map<List<String>, String> preparedSql = new ConcurrentHashMap<>();
+
+    private SqlTemplate(String name, String text, Map<String, Param> params, Map<String, List<String>> usedTables) {
+        this.name = name;
+        this.params = params;
+        this.usedTables = usedTables;
+        List<Object> compiled = new ArrayList<>();
+        Set<String> referenced = new LinkedHashSet<>();
+        Matcher matcher = PLACEHOLDER.matcher(text);
+        int last = 0;
+        int length = 0;
+        while (matcher.find()) {
+            Param param = params.get(matcher.group(1));
+            if (param == null) {
+                throw new IllegalStateException("Template " + name + " uses undeclared parameter {" + matcher.group(1) + "}");
+            }
+            String literal = text.substring(last, matcher.start());
+            compiled.add(literal);
+            compiled.add(param);
+            length += literal.length();
+            referenced.add(param.name());
+            last = matcher.end();
+        }
+        compiled.add(text.substring(last));
+        length += text.length() - last;
+        for (String declared : params.keySet()) {
+            if (!referenced.contains(declared)) {
+                throw new IllegalStateException("Template " + name + " declares unused parameter {" + declared + "}");
+            }
+        }
+        this.segments = compiled.toArray();
+        this.literalLength = length;
+    }
+
+    public static Builder builder(String name, String text) {
+        return new Builder(name, text);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String render(Map<String, ?> args) {
+        StringBuilder sb = new StringBuilder(literalLength + 64);
+        for (Object segment : segments) {
+            if (segment instanceof String literal) {
+                sb.append(literal);
+            } else {
+                Param param = (Param) segment;
+                appendValue(sb, param, argument(param, args));
+            }
+        }
+        return sb.toString();
+    }
+
+    public Fragment fragment(Map<String, ?> args) {
+        return new Fragment(render(args));
+    }
+
+    public Prepared prepare(Map<String, ?> args) {
+        List<String> inlined = new ArrayList<>();
+        List<Object> binds = new ArrayList<>();
+        for (Object segment : segments) {
+            if (segment instanceof Param param) {
+                Object value = argument(param, args);
+                if (param.type() == Type.DATE || param.type() == Type.TEXT) {
+                    binds.add(param.type() == Type.DATE ? watermark(param, value) : value.toString());
+                } else {
+                    StringBuilder sb = new StringBuilder();
+                    appendValue(sb, param, value);
+                    inlined.add(sb.toString());
+                }
+            }
+        }
+        String sql = preparedSql.computeIfAbsent(inlined, key -> {
+            StringBuilder sb = new StringBuilder(literalLength + 64);
+            int next = 0;
+            for (Object segment : segments) {
+                if (segment instanceof String literal) {
+                    sb.append(literal);
+                } else {
+                    Param param = (Param) segment;
+                    sb.append(param.type() == Type.DATE || param.type() == Type.TEXT ? "?" : key.get(next++));
+                }
+            }
+            return sb.toString();
+        });
+        return new Prepared(sql, binds);
+    }
+
+    /**
+     * @return columns each referenced table must have, keyed by table name
+     */
+    Map<String, List<String>> getRequiredColumns() {
+        Map<String, List<String>> required = new LinkedHashMap<>(usedTables);
+        for (Param param : params.values()) {
+            if (param.type() == Type.TABLE) {
+                for (String table : param.tables()) {
+                    required.merge(table, param.columns(), (a, b) -> {
+                        List<String> merged = new ArrayList<>(a);
+                        b.stream().filter(c -> !merged.contains(c)).forEach(merged::add);
+                        return merged;
+                    });
+                }
+            }
+        }
+        return required;
+    }
+
+    private Object argument(Param param, Map<String, ?> args) {
+        Object value = args.get(param.name());
+        if (value == null) {
+            throw new IllegalArgumentException("Template " + name + " is missing parameter {" + param.name() + "}");
+        }
+        return value;
+    }
+
+    private void appendValue(StringBuilder sb, Param param, Object value) {
+        switch (param.type()) {
+            case TABLE -> {
+                if (!param.tables().contains(value.toString())) {
+                    throw new IllegalArgumentException("Template " + name + " does not allow table " + value);
+                }
+                sb.append(value);
+            }
+            case INT -> {
+                if (!(value instanceof Integer || value instanceof Long || value instanceof Short)) {
+                    throw new IllegalArgumentException("Template " + name + " expects an integer for {" + param.name() + "}");
+                }
+                sb.append(value);
+            }
+            case DATE -> sb.append('\'').append(watermark(param, value)).append('\'');
+            case TEXT -> sb.append(QuestDBService.quote(value.toString()));
+            case TEXT_LIST -> {
+                if (!(value instanceof Collection<?> values) || values.isEmpty()) {
+                    throw new IllegalArgumentException("Template " + name + " expects a non-empty list for {" + param.name() + "}");
+                }
+                boolean first = true;
+                for (Object item : values) {
+                    if (!first) {
+                        sb.append(", ");
+                    }
+                    sb.append(QuestDBService.quote(item.toString()));
+                    first = false;
+                }
+            }
+            case FRAGMENT -> {
+                if (!(value instanceof Fragment fragment)) {
+                    throw new IllegalArgumentException("Template " + name + " expects a Fragment for {" + param.name() + "}");
+                }
+                sb.append(fragment.sql());
+            }
+        }
+    }
+
+    private String watermark(Param param, Object value) {
+        String text = value.toString();
+        if (!WATERMARK.matcher(text).matches()) {
+            throw new IllegalArgumentException("Template " + name + " expects a yyyyMMdd date for {" + param.name() + "}: " + text);
+        }
+        return text;
+    }
+
+    public static final class Builder {
+
+        private final String name;
+        private final String text;
+        private final Map<String, Param> params = new LinkedHashMap<>();
+        private final Map<String, List<String>> usedTables = new LinkedHashMap<>();
+
+        private Builder(String name, String text) {
+            this.name = name;
+            this.text = text;
+        }
+
+        /**
+         * A table parameter; every allowed table must have the given columns.
+         */
+        public Builder table(String param, Set<String> allowed, String... columns) {
+            params.put(param, new Param(param, Type.TABLE, Set.copyOf(allowed), List.of(columns)));
+            return this;
+        }
+
+        public Builder integer(String param) {
+            return param(param, Type.INT);
+        }
+
+        public Builder date(String param) {
+            return param(param, Type.DATE);
+        }
+
+        public Builder text(String param) {
+            return param(param, Type.TEXT);
+        }
+
+        public Builder textList(String param) {
+            return param(param, Type.TEXT_LIST);
+        }
+
+        public Builder fragment(String param) {
+            return param(param, Type.FRAGMENT);
+        }
+
+        /**
+         * A table named literally in the template text, with the columns it must have.
+         */
+        public Builder uses(String table, String... columns) {
+            usedTables.put(table, List.of(columns));
+            return this;
+        }
+
+        public SqlTemplate build() {
+            return new SqlTemplate(name, text, Map.copyOf(params), Map.copyOf(usedTables));
+        }
+
+        private Builder param(String param, Type type) {
+            params.put(param, new Param(param, type, Set.of(), List.of()));
+            return this;
+        }
+    }
+}
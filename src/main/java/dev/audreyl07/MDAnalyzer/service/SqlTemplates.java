@@ -0,0 +1,614 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Registry of the named SQL templates used by the maintenance pipelines and the PGWire read backend.
+ *
+ * Templates are compiled once when the registry is created. At startup every table a template may
+ * touch is checked against the CREATE TABLE scripts in {@code script/*.sql}, so a renamed or missing
+ * column fails the application start instead of the next pipeline run. Tables without a script
+ * (the ETF tables) are not checked.
+ *
+ * {@link #DEDUP_KEYS} lists the upsert keys of every WAL table the pipelines write; each table has a
+ * "dedup_" template enabling them, and the keys declared by a table's script must match.
+ *
+ * Template names double as the query kinds recorded by {@link QueryMetrics}.
+ */
+@Component
+public class SqlTemplates {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlTemplates.class);
+
+    public static final String INSERT_HISTORICAL = "insert_historical";
+    public static final String INDICATOR_52W = "indicator_52w";
+    public static final String INDICATOR_52W_SOURCE_FILTER = "indicator_52w_source_filter";
+    public static final String INDICATOR_52W_TARGET_FILTER = "indicator_52w_target_filter";
+    public static final String INDICATOR_MA_WINDOW = "indicator_ma_window";
+    public static final String ANALYSIS_MA = "analysis_ma";
+    public static final String ANALYSIS_MA_WATERMARKS = "analysis_ma_watermarks";
+    public static final String INDICATOR_MA_COMPARE = "indicator_ma_compare";
+    public static final String INDICATOR_MA_READ = "indicator_ma_read";
+    public static final String TICKERS = "tickers";
+    public static final String ANALYSIS_52W_HIGH = "analysis_52w_high";
+    public static final String ANALYSIS_52W_LOW = "analysis_52w_low";
+    public static final String ANALYSIS_52W_HIGH_LOW = "analysis_52w_high_low";
+    public static final String SERIES_READ = "series_read";
+    public static final String SERIES_BATCH_READ = "series_batch_read";
+    public static final String SERIES_APPEND_READ = "series_append_read";
+    public static final String SERIES_BATCH_APPEND_READ = "series_batch_append_read";
+    public static final String ANALYSIS_READ = "analysis_read";
+    public static final String RS_READ = "rs_read";
+    public static final String GROUP_BREADTH_WATERMARKS = "group_breadth_watermarks";
+    public static final String GROUP_BREADTH_52W = "group_breadth_52w";
+    public static final String GROUP_BREADTH_MA = "group_breadth_ma";
+    public static final String GROUP_BREADTH_MA_TYPES = "group_breadth_ma_types";
+    public static final String GROUP_BREADTH_READ = "group_breadth_read";
+    public static final String DEDUP_STATUS = "dedup_status";
+
+    /**
+     * DEDUP UPSERT KEYS per written table: a re-inserted row replaces the row with the same keys, so a
+     * stage can be re-run over dates it already wrote.
+     */
+    public static final Map<String, List<String>> DEDUP_KEYS = dedupKeys();
+
+    private static final Set<String> RAW_TABLES = Set.of("historical_raw_d", "historical_raw_etf_d", "indices_raw_d");
+    private static final Set<String> HISTORICAL_TABLES = Set.of("historical_d", "historical_etf_d", "indices_d");
+    private static final Set<String> STOCK_TABLES = Set.of("historical_d", "historical_etf_d");
+    private static final Set<String> INDICATOR_52W_TABLES = Set.of("indicator_d_52w", "indicator_etf_52w");
+    private static final Set<String> INDICATOR_MA_TABLES = Set.of("indicator_d_MA", "indicator_etf_MA");
+
+    private static final String[] OHLCV_COLUMNS = {"ticker", "date", "open", "high", "low", "close", "vol"};
+    private static final String[] INDICATOR_52W_COLUMNS = {"type", "date", "ticker", "high", "low", "close",
+            "previous_close", "vol", "previous_vol", "high52w", "previous_high52w", "high52w_percentage",
+            "low52w", "previous_low52w", "low52w_percentage"};
+    private static final String[] INDICATOR_MA_COLUMNS = {"type", "date", "ticker", "value1", "value2", "total",
+            "difference", "previous_difference", "percentage", "trend", "minimum_trend", "trending"};
+    private static final String[] ANALYSIS_MARKET_COLUMNS = {"type", "date", "total", "count", "percentage"};
+    private static final String[] ANALYSIS_GROUP_COLUMNS = {"grp", "type", "date", "total", "count", "percentage"};
+
+    private static final Pattern CREATE_TABLE = Pattern.compile("CREATE\\s+TABLE\\s+(\\w+)\\s*\\((.*?)\\)\\s*[,;]?\\s*(?:INDEX|TIMESTAMP|$|;)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern COLUMN = Pattern.compile("^\\s*(\\w+)\\s+\\w+");
+    private static final Pattern DEDUP = Pattern.compile("CREATE\\s+TABLE\\s+(\\w+)[^;]*?DEDUP\\s+UPSERT\\s+KEYS\\s*\\(([^)]*)\\)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final Map<String, SqlTemplate> templates = new LinkedHashMap<>();
+
+    public SqlTemplates() {
+        register(SqlTemplate.builder(INSERT_HISTORICAL, """
+                        INSERT INTO {target}
+                        SELECT\s
+                            replace(ticker, {suffix}, ''),
+                            CASE WHEN per = 'D' THEN
+                            to_timestamp(date, 'yyyyMMdd')
+                            ELSE dateadd('h', -6, to_timestamp(concat(date,'T',time), 'yyyyMMddTHHmmss'))
+                            END AS 'date',
+                            open,
+                            high,
+                            low,
+                            close,
+                            vol
+                        FROM {source}
+                        WHERE date > {watermark} ORDER BY date, time ASC;""")
+                .table("target", HISTORICAL_TABLES, OHLCV_COLUMNS)
+                .table("source", RAW_TABLES, "ticker", "per", "date", "time", "open", "high", "low", "close", "vol")
+                .text("suffix")
+                .date("watermark")
+                .build());
+
+        register(SqlTemplate.builder(INDICATOR_52W_SOURCE_FILTER,
+                        "WHERE date > dateadd('d', -400, to_date({watermark}, 'yyyyMMdd'))")
+                .date("watermark")
+                .build());
+        register(SqlTemplate.builder(INDICATOR_52W_TARGET_FILTER,
+                        "WHERE date > to_date({watermark}, 'yyyyMMdd')")
+                .date("watermark")
+                .build());
+        register(SqlTemplate.builder(INDICATOR_52W, """
+                        WITH first_stage AS
+                        (SELECT
+                          'GENERAL' AS type,
+                          date,
+                          ticker,
+                          high,
+                          low,
+                          close,
+                          lag(close) OVER (
+                              PARTITION BY ticker
+                              ORDER BY date
+                          ) AS 'previous_close',
+                          vol,
+                          lag(vol) OVER (
+                              PARTITION BY ticker
+                              ORDER BY date
+                          ) AS 'previous_vol',
+                          max(high) OVER (
+                            PARTITION BY ticker
+                              ORDER BY date
+                              RANGE BETWEEN '365' DAY PRECEDING AND CURRENT ROW
+                          ) AS 'high52w',
+                          max(high) OVER (
+                            PARTITION BY ticker
+                              ORDER BY date
+                              RANGE BETWEEN '365' DAY PRECEDING AND CURRENT ROW EXCLUDE CURRENT ROW
+                          ) AS 'previous_high52w',
+                          min(low) OVER (
+                            PARTITION BY ticker
+                              ORDER BY date
+                              RANGE BETWEEN '365' DAY PRECEDING AND CURRENT ROW
+                          ) AS 'low52w',
+                          min(low) OVER (
+                            PARTITION BY ticker
+                              ORDER BY date
+                              RANGE BETWEEN '365' DAY PRECEDING AND CURRENT ROW EXCLUDE CURRENT ROW
+                          ) AS 'previous_low52w'
+                        FROM {source} {source_filter})
+                        INSERT INTO {target}
+                        SELECT
+                          type, date, ticker, high, low, close, previous_close, vol, previous_vol,
+                          high52w, previous_high52w, (close - high52w)/high52w, low52w, previous_low52w, (close - low52w)/low52w
+                        FROM first_stage {target_filter}""")
+                .table("source", STOCK_TABLES, "date", "ticker", "high", "low", "close", "vol")
+                .table("target", INDICATOR_52W_TABLES, INDICATOR_52W_COLUMNS)
+                .fragment("source_filter")
+                .fragment("target_filter")
+                .build());
+
+        register(SqlTemplate.builder(INDICATOR_MA_WINDOW, """
+                        WITH first_stage AS
+                        (SELECT
+                            date, ticker, close AS 'value1',
+                            avg(close) OVER
+                                (PARTITION BY ticker ORDER BY date
+                                ROWS BETWEEN {interval} PRECEDING AND CURRENT ROW
+                                EXCLUDE CURRENT ROW)
+                            AS 'value2',
+                            count() OVER
+                                (PARTITION BY ticker ORDER BY date
+                                ROWS BETWEEN UNBOUNDED PRECEDING AND {interval} PRECEDING)
+                            AS 'total'
+                        FROM {source}),
+                        second_stage AS
+                        (SELECT
+                            date, ticker, value1, value2, total,
+                            value1 - value2 AS 'difference',
+                            ((value1 - value2) / value2) * 100 AS 'percentage',
+                            first_value(value1 - value2) OVER\s
+                                (PARTITION BY ticker ORDER BY date\s
+                                ROWS 1 PRECEDING EXCLUDE CURRENT ROW)\s
+                            AS 'previous_difference'
+                        FROM first_stage
+                        WHERE total > 0),
+                        third_stage AS
+                        (SELECT
+                            date, ticker, value1, value2, total,
+                            difference, previous_difference, percentage,
+                            CASE
+                                WHEN difference >=0 and previous_difference >= 0 THEN total
+                                ELSE
+                                    CASE
+                                        WHEN difference < 0 and previous_difference < 0 THEN total
+                                        ELSE (1 - total)
+                                    END
+                            END AS 'trend'
+                        FROM second_stage),
+                        fourth_stage AS
+                        (SELECT
+                            date, ticker, value1, value2, total,
+                            difference, previous_difference, percentage, trend,
+                            min(trend) OVER (PARTITION BY ticker ORDER BY date\s
+                                ROWS BETWEEN UNBOUNDED PRECEDING AND CURRENT ROW)
+                            AS 'minimum_trend'
+                        FROM third_stage)
+                        INSERT INTO {target}
+                        SELECT
+                            'MA_{interval}' AS type, date, ticker, value1, value2, total,
+                            difference, previous_difference, percentage, trend, minimum_trend,
+                            (total + minimum_trend) AS 'trending'
+                        FROM fourth_stage""")
+                .table("source", STOCK_TABLES, "date", "ticker", "close")
+                .table("target", INDICATOR_MA_TABLES, INDICATOR_MA_COLUMNS)
+                .integer("interval")
+                .build());
+
+        register(SqlTemplate.builder(ANALYSIS_MA, """
+                        INSERT INTO analysis_market
+                        SELECT
+                            type,
+                            date,
+                            COUNT(ticker) AS 'total',
+                            SUM(CASE WHEN difference > 0 THEN 1 ELSE 0 END) AS 'count',
+                            (SUM(CASE WHEN difference > 0 THEN 1 ELSE 0 END) * 1.0 / COUNT(ticker)) * 100 AS 'percentage'
+                        FROM
+                          indicator_d_MA
+                        WHERE
+                        type = {type}
+                        AND total > 0 AND date > to_date({watermark}, 'yyyyMMdd') GROUP BY type, date ORDER BY type, date ASC;""")
+                .uses("analysis_market", ANALYSIS_MARKET_COLUMNS)
+                .uses("indicator_d_MA", "type", "date", "ticker", "difference", "total")
+                .text("type")
+                .date("watermark")
+                .build());
+        register(SqlTemplate.builder(ANALYSIS_MA_WATERMARKS,
+                        "SELECT type, CAST(TO_STR(max(date), 'yyyyMMdd') AS INT) AS 'day' FROM analysis_market WHERE type LIKE 'MA_%';")
+                .uses("analysis_market", "type", "date")
+                .build());
+
+        register(SqlTemplate.builder(INDICATOR_MA_COMPARE, """
+                        WITH first_stage AS
+                          (SELECT
+                              i1.date, i1.ticker,
+                              i1.value2 AS 'value1',
+                              i2.value2 AS 'value2',
+                                  count() OVER\s
+                                  (PARTITION BY i2.ticker ORDER BY i2.date\s
+                                  )\s
+                              AS 'total'
+                          FROM {source} i1
+                          JOIN {source} i2 ON i1.date = i2.date AND i1.ticker = i2.ticker
+                          WHERE i1.type = 'MA_{first}' and i2.type = 'MA_{second}'),
+                          second_stage AS
+                          (SELECT
+                              date, ticker, value1, value2, total,
+                              value1 - value2 AS 'difference',
+                              ((value1 - value2) / value2) * 100 AS 'percentage',
+                              first_value(value1 - value2) OVER\s
+                                  (PARTITION BY ticker ORDER BY date
+                                  ROWS 1 PRECEDING EXCLUDE CURRENT ROW)
+                              AS 'previous_difference'
+                          FROM first_stage
+                          WHERE total > 0),
+                          third_stage AS
+                          (SELECT
+                              date, ticker, value1, value2, total,
+                              difference, previous_difference, percentage,
+                              CASE
+                                  WHEN difference >=0 and previous_difference >= 0 THEN total
+                                  ELSE
+                                      CASE
+                                          WHEN difference < 0 and previous_difference < 0 THEN total
+                                          ELSE (1 - total)
+                                      END
+                              END AS 'trend'
+                          FROM second_stage),
+                          fourth_stage AS
+                          (SELECT
+                              date, ticker, value1, value2, total,
+                              difference, previous_difference, percentage, trend,
+                              min(trend) OVER (PARTITION BY ticker ORDER BY date\s
+                                  ROWS BETWEEN UNBOUNDED PRECEDING AND CURRENT ROW)
+                              AS 'minimum_trend'
+                          FROM third_stage)
+                          INSERT INTO {target}
+                          SELECT
+                              {ma_type} AS type, date, ticker, value1, value2, total,
+                              difference, previous_difference, percentage, trend, minimum_trend,
+                              (total + minimum_trend) AS 'trending'
+                          FROM fourth_stage""")
+                .table("source", Set.of("indicator_d_MA", "historical_etf_d"), "type", "date", "ticker", "value2")
+                .table("target", INDICATOR_MA_TABLES, INDICATOR_MA_COLUMNS)
+                .integer("first")
+                .integer("second")
+                .text("ma_type")
+                .build());
+
+        register(SqlTemplate.builder(INDICATOR_MA_READ,
+                        "SELECT ticker, date, close FROM {source} WHERE ticker IN ({tickers}) ORDER BY ticker, date ASC;")
+                .table("source", STOCK_TABLES, "ticker", "date", "close")
+                .textList("tickers")
+                .build());
+        register(SqlTemplate.builder(TICKERS, "SELECT DISTINCT ticker FROM {source} ORDER BY ticker;")
+                .table("source", HISTORICAL_TABLES, "ticker")
+                .build());
+        register(SqlTemplate.builder(SERIES_BATCH_READ,
+                        "SELECT ticker, date, open, high, low, close, vol FROM {source} WHERE ticker IN ({tickers}) ORDER BY ticker, date ASC;")
+                .table("source", HISTORICAL_TABLES, OHLCV_COLUMNS)
+                .textList("tickers")
+                .build());
+        register(SqlTemplate.builder(SERIES_APPEND_READ,
+                        "SELECT ticker, date, open, high, low, close, vol FROM {source} WHERE date > to_timestamp({watermark}, 'yyyyMMdd') ORDER BY ticker, date ASC;")
+                .table("source", HISTORICAL_TABLES, OHLCV_COLUMNS)
+                .date("watermark")
+                .build());
+        register(SqlTemplate.builder(SERIES_BATCH_APPEND_READ,
+                        "SELECT ticker, date, open, high, low, close, vol FROM {source} WHERE ticker IN ({tickers}) AND date > to_timestamp({watermark}, 'yyyyMMdd') ORDER BY ticker, date ASC;")
+                .table("source", HISTORICAL_TABLES, OHLCV_COLUMNS)
+                .textList("tickers")
+                .date("watermark")
+                .build());
+
+        register(SqlTemplate.builder(ANALYSIS_52W_HIGH, """
+                        INSERT INTO analysis_market
+                        SELECT
+                            'high52w' as 'type',
+                            date,
+                            count(ticker) as 'total',
+                            SUM(CASE WHEN high52w > previous_high52w THEN 1 ELSE 0 END) AS 'count',
+                            (SUM(CASE WHEN high52w > previous_high52w THEN 1 ELSE 0 END) * 1.0 / COUNT(ticker)) * 100 AS 'percentage'
+                        FROM indicator_d_52w
+                        WHERE
+                        previous_close <> null AND date > to_date({watermark}, 'yyyyMMdd')
+                         ORDER BY type, date ASC;""")
+                .uses("analysis_market", ANALYSIS_MARKET_COLUMNS)
+                .uses("indicator_d_52w", "date", "ticker", "high52w", "previous_high52w", "previous_close")
+                .date("watermark")
+                .build());
+        register(SqlTemplate.builder(ANALYSIS_52W_LOW, """
+                        INSERT INTO analysis_market
+                        SELECT
+                            'low52w' as 'type',
+                            date,
+                            count(ticker) as 'total',
+                            SUM(CASE WHEN low52w < previous_low52w THEN 1 ELSE 0 END) AS 'count',
+                            (SUM(CASE WHEN low52w < previous_low52w THEN 1 ELSE 0 END) * 1.0 / COUNT(ticker)) * 100 AS 'percentage'
+                        FROM indicator_d_52w
+                        WHERE
+                        previous_close <> null AND date > to_date({watermark}, 'yyyyMMdd')
+                         ORDER BY type, date ASC;""")
+                .uses("analysis_market", ANALYSIS_MARKET_COLUMNS)
+                .uses("indicator_d_52w", "date", "ticker", "low52w", "previous_low52w", "previous_close")
+                .date("watermark")
+                .build());
+        register(SqlTemplate.builder(ANALYSIS_52W_HIGH_LOW, """
+                        SELECT
+                            date,
+                            CAST(TO_STR(date, 'yyyyMMdd') AS INT) AS 'day',
+                            count(ticker) AS 'total',
+                            SUM(CASE WHEN high52w > previous_high52w THEN 1 ELSE 0 END) AS 'high_count',
+                            SUM(CASE WHEN low52w < previous_low52w THEN 1 ELSE 0 END) AS 'low_count'
+                        FROM indicator_d_52w
+                        WHERE
+                        previous_close <> null AND date > to_date({watermark}, 'yyyyMMdd')
+                         GROUP BY date ORDER BY date ASC;""")
+                .uses("indicator_d_52w", "date", "ticker", "high52w", "previous_high52w", "low52w",
+                        "previous_low52w", "previous_close")
+                .date("watermark")
+                .build());
+
+        register(SqlTemplate.builder(SERIES_READ,
+                        "SELECT CAST(date AS LONG) AS date, open, high, low, close, vol FROM {table} WHERE ticker = {ticker} ORDER BY date ASC")
+                .table("table", Set.of("historical_d", "indices_d"), OHLCV_COLUMNS)
+                .text("ticker")
+                .build());
+        register(SqlTemplate.builder(ANALYSIS_READ,
+                        "SELECT CAST(date AS LONG) AS date, percentage FROM analysis_market WHERE type = {type} ORDER BY date ASC")
+                .uses("analysis_market", "type", "date", "percentage")
+                .text("type")
+                .build());
+        register(SqlTemplate.builder(RS_READ, """
+                        SELECT CAST(date AS LONG) AS date, return_1m, return_3m, return_6m, return_12m,
+                          rank_1m, rank_3m, rank_6m, rank_12m
+                        FROM rs_rank_d WHERE ticker = {ticker} ORDER BY date ASC""")
+                .uses("rs_rank_d", "date", "ticker", "return_1m", "return_3m", "return_6m", "return_12m",
+                        "rank_1m", "rank_3m", "rank_6m", "rank_12m")
+                .text("ticker")
+                .build());
+
+        register(SqlTemplate.builder(GROUP_BREADTH_WATERMARKS,
+                        "SELECT grp, type, CAST(TO_STR(max(date), 'yyyyMMdd') AS INT) AS 'day' FROM analysis_group;")
+                .uses("analysis_group", ANALYSIS_GROUP_COLUMNS)
+                .build());
+        register(SqlTemplate.builder(GROUP_BREADTH_52W, """
+                        SELECT
+                            date,
+                            ticker,
+                            CASE WHEN high52w > previous_high52w THEN 1 ELSE 0 END AS 'high',
+                            CASE WHEN low52w < previous_low52w THEN 1 ELSE 0 END AS 'low'
+                        FROM indicator_d_52w
+                        WHERE
+                        previous_close <> null AND date > to_date({watermark}, 'yyyyMMdd')
+                         ORDER BY date ASC;""")
+                .uses("indicator_d_52w", "date", "ticker", "high52w", "previous_high52w", "low52w",
+                        "previous_low52w", "previous_close")
+                .date("watermark")
+                .build());
+        register(SqlTemplate.builder(GROUP_BREADTH_MA, """
+                        SELECT
+                            type,
+                            date,
+                            ticker,
+                            CASE WHEN difference > 0 THEN 1 ELSE 0 END AS 'above'
+                        FROM indicator_d_MA
+                        WHERE
+                        type LIKE 'MA_%'
+                        AND total > 0 AND date > to_date({watermark}, 'yyyyMMdd') ORDER BY date ASC;""")
+                .uses("indicator_d_MA", "type", "date", "ticker", "difference", "total")
+                .date("watermark")
+                .build());
+        register(SqlTemplate.builder(GROUP_BREADTH_MA_TYPES,
+                        "SELECT DISTINCT type FROM indicator_d_MA WHERE type LIKE 'MA_%';")
+                .uses("indicator_d_MA", "type")
+                .build());
+        register(SqlTemplate.builder(GROUP_BREADTH_READ,
+                        "SELECT CAST(date AS LONG) AS date, percentage FROM analysis_group WHERE grp = {group} AND type = {type} ORDER BY date ASC")
+                .uses("analysis_group", "grp", "type", "date", "percentage")
+                .text("group")
+                .text("type")
+                .build());
+
+        register(SqlTemplate.builder(DEDUP_STATUS, "SELECT table_name, dedup FROM tables();")
+                .build());
+        DEDUP_KEYS.forEach((table, keys) -> register(SqlTemplate.builder(dedupTemplate(table),
+                        "ALTER TABLE " + table + " DEDUP ENABLE UPSERT KEYS(" + String.join(", ", keys) + ");")
+                .uses(table, keys.toArray(new String[0]))
+                .build()));
+    }
+
+    /**
+     * @return the name of the template enabling the table's {@link #DEDUP_KEYS}
+     */
+    public static String dedupTemplate(String table) {
+        return "dedup_" + table;
+    }
+
+    private static Map<String, List<String>> dedupKeys() {
+        Map<String, List<String>> keys = new LinkedHashMap<>();
+        for (String table : List.of("historical_d", "historical_etf_d", "indices_d", "rs_rank_d")) {
+            keys.put(table, List.of("date", "ticker"));
+        }
+        for (String table : List.of("indicator_d_52w", "indicator_etf_52w", "indicator_d_MA", "indicator_etf_MA")) {
+            keys.put(table, List.of("date", "ticker", "type"));
+        }
+        keys.put("analysis_market", List.of("date", "type"));
+        keys.put("analysis_group", List.of("date", "grp", "type"));
+        return Collections.unmodifiableMap(keys);
+    }
+
+    public SqlTemplate get(String name) {
+        SqlTemplate template = templates.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown SQL template: " + name);
+        }
+        return template;
+    }
+
+    public String render(String name, Map<String, ?> args) {
+        return get(name).render(args);
+    }
+
+    @PostConstruct
+    void validate() {
+        Map<String, Set<String>> schemas = loadSchemas();
+        List<String> problems = validate(schemas);
+        problems.addAll(validateDedupKeys(loadDedupKeys()));
+        if (!problems.isEmpty()) {
+            throw new IllegalStateException("SQL templates do not match the table scripts: " + problems);
+        }
+        log.info("validated sqlTemplates={} tables={}", templates.size(), schemas.keySet());
+    }
+
+    /**
+     * @return one message per column a template needs that the schema of a scripted table lacks
+     */
+    List<String> validate(Map<String, Set<String>> schemas) {
+        List<String> problems = new ArrayList<>();
+        for (SqlTemplate template : templates.values()) {
+            for (Map.Entry<String, List<String>> entry : template.getRequiredColumns().entrySet()) {
+                Set<String> columns = schemas.get(entry.getKey().toLowerCase(Locale.ROOT));
+                if (columns == null) {
+                    log.debug("template={} table={} has no script, not validated", template.getName(), entry.getKey());
+                    continue;
+                }
+                for (String column : entry.getValue()) {
+                    if (!columns.contains(column.toLowerCase(Locale.ROOT))) {
+                        problems.add(template.getName() + ": " + entry.getKey() + "." + column);
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * @param scripted upsert keys per table (lower case) declared by the scripts
+     * @return one message per scripted table of {@link #DEDUP_KEYS} whose script declares other keys
+     */
+    static List<String> validateDedupKeys(Map<String, List<String>> scripted) {
+        List<String> problems = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : DEDUP_KEYS.entrySet()) {
+            String table = entry.getKey().toLowerCase(Locale.ROOT);
+            if (!scripted.containsKey(table)) {
+                continue;
+            }
+            Set<String> expected = new LinkedHashSet<>();
+            entry.getValue().forEach(key -> expected.add(key.toLowerCase(Locale.ROOT)));
+            if (!expected.equals(new LinkedHashSet<>(scripted.get(table)))) {
+                problems.add(dedupTemplate(entry.getKey()) + ": " + entry.getKey() + " keys " + scripted.get(table));
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Column names per table (lower case) from the CREATE TABLE scripts on the classpath.
+     */
+    static Map<String, Set<String>> loadSchemas() {
+        Map<String, Set<String>> schemas = new HashMap<>();
+        for (String ddl : readScripts()) {
+            schemas.putAll(parseSchema(ddl));
+        }
+        return schemas;
+    }
+
+    /**
+     * DEDUP UPSERT KEYS per table (lower case) from the CREATE TABLE scripts on the classpath; tables
+     * without keys are left out.
+     */
+    static Map<String, List<String>> loadDedupKeys() {
+        Map<String, List<String>> keys = new HashMap<>();
+        for (String ddl : readScripts()) {
+            keys.putAll(parseDedupKeys(ddl));
+        }
+        return keys;
+    }
+
+    private static List<String> readScripts() {
+        List<String> scripts = new ArrayList<>();
+        try {
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources("classpath*:script/*.sql")) {
+                try (InputStream in = resource.getInputStream()) {
+                    scripts.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read table scripts", e);
+        }
+        return scripts;
+    }
+
+    static Map<String, List<String>> parseDedupKeys(String ddl) {
+        Map<String, List<String>> keys = new HashMap<>();
+        Matcher table = DEDUP.matcher(ddl);
+        while (table.find()) {
+            List<String> columns = new ArrayList<>();
+            for (String key : table.group(2).split(",")) {
+                if (!key.isBlank()) {
+                    columns.add(key.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+            keys.put(table.group(1).toLowerCase(Locale.ROOT), columns);
+        }
+        return keys;
+    }
+
+    static Map<String, Set<String>> parseSchema(String ddl) {
+        Map<String, Set<String>> schemas = new HashMap<>();
+        Matcher table = CREATE_TABLE.matcher(ddl);
+        while (table.find()) {
+            Set<String> columns = new LinkedHashSet<>();
+            for (String definition : table.group(2).split(",")) {
+                Matcher column = COLUMN.matcher(definition);
+                if (column.find()) {
+                    columns.add(column.group(1).toLowerCase(Locale.ROOT));
+                }
+            }
+            schemas.put(table.group(1).toLowerCase(Locale.ROOT), columns);
+        }
+        return schemas;
+    }
+
+    private void register(SqlTemplate template) {
+        templates.put(template.getName(), template);
+    }
+}
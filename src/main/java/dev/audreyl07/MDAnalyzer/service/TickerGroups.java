@@ -0,0 +1,144 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Named ticker groups (sectors, watchlists, index members) for per-group breadth.
+ *
+ * - Kept in memory as an immutable map swapped on every change, so readers never lock
+ * - Persisted as one JSON object {name: [tickers]} in mdanalyzer.groups.file, written to a temporary
+ *   file and moved into place; loaded on startup
+ * - Names are letters, digits, '_', '-' and '.', at most 64 characters; tickers are
+ *   trimmed and de-duplicated
+ */
+@Component
+public class TickerGroups {
+
+    private static final Logger log = LoggerFactory.getLogger(TickerGroups.class);
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_.-]{1,64}");
+
+    @Value("${mdanalyzer.groups.file:groups.json}")
+    String file = "groups.json";
+
+    @Value("${mdanalyzer.groups.maxGroups:200}")
+    int maxGroups = 200;
+
+    @Value("${mdanalyzer.groups.maxTickers:5000}")
+    int maxTickers = 5000;
+
+    private volatile Map<String, List<String>> groups = Map.of();
+
+    @PostConstruct
+    void load() {
+        Path path = Path.of(file);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            Map<String, List<String>> read = JSON.readValue(path.toFile(), new TypeReference<Map<String, List<String>>>() {
+            });
+            Map<String, List<String>> loaded = new TreeMap<>();
+            read.forEach((name, tickers) -> {
+                if (isValidName(name)) {
+                    loaded.put(name, normalize(tickers));
+                }
+            });
+            groups = Collections.unmodifiableMap(loaded);
+            log.info("loaded {} ticker groups from {}", loaded.size(), path);
+        } catch (IOException e) {
+            log.warn("ticker groups {} could not be read: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * @return every group by name, in name order
+     */
+    public Map<String, List<String>> getAll() {
+        return groups;
+    }
+
+    /**
+     * @return the group's tickers, or null for an unknown group
+     */
+    public List<String> get(String name) {
+        return groups.get(name);
+    }
+
+    /**
+     * Creates or replaces a group.
+     *
+     * @return false for an invalid name, no or too many tickers, or when the group limit is reached
+     */
+    public synchronized boolean put(String name, Collection<String> tickers) throws IOException {
+        List<String> normalized = normalize(tickers);
+        if (!isValidName(name) || normalized.isEmpty() || normalized.size() > maxTickers
+                || (!groups.containsKey(name) && groups.size() >= maxGroups)) {
+            return false;
+        }
+        Map<String, List<String>> updated = new TreeMap<>(groups);
+        updated.put(name, normalized);
+        save(updated);
+        return true;
+    }
+
+    /**
+     * @return false when the group does not exist
+     */
+    public synchronized boolean remove(String name) throws IOException {
+        if (!groups.containsKey(name)) {
+            return false;
+        }
+        Map<String, List<String>> updated = new TreeMap<>(groups);
+        updated.remove(name);
+        save(updated);
+        return true;
+    }
+
+    public static boolean isValidName(String name) {
+        return name != null && NAME.matcher(name).matches();
+    }
+
+    private void save(Map<String, List<String>> updated) throws IOException {
+        Path path = Path.of(file).toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), "groups", ".tmp");
+        try {
+            JSON.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), updated);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        groups = Collections.unmodifiableMap(updated);
+    }
+
+    private static List<String> normalize(Collection<String> tickers) {
+        LinkedHashSet<String> set = new LinkedHashSet<>();
+        for (String ticker : tickers == null ? List.<String>of() : tickers) {
+            if (ticker != null && !ticker.isBlank()) {
+                set.add(ticker.trim());
+            }
+        }
+        return List.copyOf(set);
+    }
+}
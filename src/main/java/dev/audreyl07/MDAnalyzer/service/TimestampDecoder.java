@@ -0,0 +1,83 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import java.time.Instant;
+
+/**
+ * Decodes QuestDB timestamps on the read path without allocating.
+ *
+ * QuestDB's /exec endpoint renders TIMESTAMP columns in one fixed layout,
+ * {@code yyyy-MM-ddTHH:mm:ss.SSSSSSZ}, so the fields are read straight from their character
+ * positions and converted with the days-from-civil algorithm. Values in any other layout fall
+ * back to {@link Instant#parse}. When the query already casts the column to LONG the value is
+ * epoch microseconds and only needs scaling.
+ */
+final class TimestampDecoder {
+
+    private static final int LENGTH = 27;
+
+    private TimestampDecoder() {
+    }
+
+    /**
+     * @param value a QuestDB timestamp string, or epoch microseconds as a number
+     * @return seconds since the epoch
+     */
+    static long toEpochSeconds(Object value) {
+        if (value instanceof Number number) {
+            return Math.floorDiv(number.longValue(), 1_000_000L);
+        }
+        return parseEpochSeconds((CharSequence) value);
+    }
+
+    /**
+     * @return epoch seconds in the /exec layout, for rows written back through /imp
+     */
+    static String toIso(long epochSeconds) {
+        return Instant.ofEpochSecond(epochSeconds).toString().replace("Z", ".000000Z");
+    }
+
+    static long parseEpochSeconds(CharSequence s) {
+        if (s.length() != LENGTH || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T'
+                || s.charAt(13) != ':' || s.charAt(16) != ':' || s.charAt(19) != '.' || s.charAt(26) != 'Z') {
+            return Instant.parse(s).getEpochSecond();
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        int second = digits(s, 17, 2);
+        if ((year | month | day | hour | minute | second) < 0 || month < 1 || month > 12 || day < 1 || day > 31
+                || hour > 23 || minute > 59 || second > 59) {
+            return Instant.parse(s).getEpochSecond();
+        }
+        return daysFromCivil(year, month, day) * 86_400L + hour * 3_600L + minute * 60L + second;
+    }
+
+    /**
+     * Days since 1970-01-01 for a proleptic Gregorian date (Howard Hinnant's days_from_civil).
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468L;
+    }
+
+    /**
+     * @return the decimal value of {@code length} characters from {@code offset}, or -1 if any is not a digit
+     */
+    private static int digits(CharSequence s, int offset, int length) {
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,42 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import java.util.Arrays;
+
+/**
+ * Columnar time/value series, the first {@code size} entries valid.
+ * Times are epoch seconds; missing values are NaN.
+ */
+public record ValueSeries(int size, long[] time, double[] value) {
+
+    /**
+     * Appends rows into growable arrays; {@link #build()} hands them over without copying.
+     */
+    public static final class Builder {
+
+        private int size;
+        private long[] time;
+        private double[] value;
+
+        public Builder(int capacity) {
+            int initial = Math.max(capacity, 16);
+            time = new long[initial];
+            value = new double[initial];
+        }
+
+        public Builder add(long t, double v) {
+            if (size == time.length) {
+                int grown = size + (size >> 1);
+                time = Arrays.copyOf(time, grown);
+                value = Arrays.copyOf(value, grown);
+            }
+            time[size] = t;
+            value[size] = v;
+            size++;
+            return this;
+        }
+
+        public ValueSeries build() {
+            return new ValueSeries(size, time, value);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latest processed date (yyyyMMdd) per table, used to version API responses.
+ *
+ * Looked up once per table with {@link QuestDBService#getLatestDate(String, String)} and kept until a
+ * pipeline stage writes the table ({@link PipelineStageCompletedEvent}), so request handling does not
+ * query QuestDB for it.
+ *
+ * A re-run from an older date rewrites rows without moving the latest date, so every write of a table
+ * ({@link PipelineStageCompletedEvent}, {@link SeriesReloadedEvent}) also bumps its {@link #generation(String)}.
+ */
+@Component
+public class Watermarks {
+
+    private static final DateTimeFormatter WATERMARK = DateTimeFormatter.BASIC_ISO_DATE;
+
+    @Autowired
+    QuestDBService questDBService;
+
+    @Autowired
+    SeriesStore seriesStore;
+
+    private final Map<String, String> latest = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    /**
+     * @return the table's latest date as yyyyMMdd, or null when it cannot be determined
+     */
+    public String get(String table) {
+        String cached = latest.get(table);
+        if (cached != null) {
+            return cached;
+        }
+        String date = questDBService.getLatestDate(table, null);
+        if (date != null) {
+            latest.put(table, date);
+        }
+        return date;
+    }
+
+    /**
+     * Date of the newest row a read of the table is answered with. A loaded store catches up after the stage
+     * event, so until it has, its own newest row is the one served rather than the table's.
+     *
+     * @return yyyyMMdd, or null when it cannot be determined
+     */
+    public String served(String table) {
+        if (seriesStore.isReady(table)) {
+            long maxTime = seriesStore.getMaxTime(table);
+            if (maxTime != Long.MIN_VALUE) {
+                return WATERMARK.format(Instant.ofEpochSecond(maxTime).atOffset(ZoneOffset.UTC).toLocalDate());
+            }
+        }
+        return get(table);
+    }
+
+    /**
+     * @return how often the table was written since startup
+     */
+    public long generation(String table) {
+        AtomicLong generation = generations.get(table);
+        return generation == null ? 0 : generation.get();
+    }
+
+    @EventListener
+    public void onPipelineStageCompleted(PipelineStageCompletedEvent event) {
+        latest.remove(event.table());
+        bump(event.table());
+    }
+
+    @EventListener
+    public void onSeriesReloaded(SeriesReloadedEvent event) {
+        bump(event.table());
+    }
+
+    private void bump(String table) {
+        generations.computeIfAbsent(table, key -> new AtomicLong()).incrementAndGet();
+    }
+}
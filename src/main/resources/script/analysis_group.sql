@@ -0,0 +1,10 @@
+CREATE TABLE analysis_group (
+  grp SYMBOL,
+  type SYMBOL,
+  date TIMESTAMP,
+  total LONG,
+  count LONG,
+  percentage DOUBLE
+), INDEX (grp CAPACITY 256)
+TIMESTAMP(date) PARTITION BY YEAR WAL
+DEDUP UPSERT KEYS(date, grp, type);
\ No newline at end of file
@@ -5,4 +5,5 @@ CREATE TABLE analysis_market (
   count LONG,
   percentage DOUBLE
 ), INDEX (type CAPACITY 32)
-TIMESTAMP(date) PARTITION BY YEAR WAL;
\ No newline at end of file
+TIMESTAMP(date) PARTITION BY YEAR WAL
+DEDUP UPSERT KEYS(date, type);
\ No newline at end of file
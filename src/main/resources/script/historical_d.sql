@@ -8,4 +8,5 @@ CREATE TABLE historical_d (
   vol DOUBLE
 ),
 INDEX (ticker CAPACITY 9000)
-TIMESTAMP(date) PARTITION BY YEAR WAL;
\ No newline at end of file
+TIMESTAMP(date) PARTITION BY YEAR WAL
+DEDUP UPSERT KEYS(date, ticker);
\ No newline at end of file
@@ -16,4 +16,5 @@ CREATE TABLE indicator_d_52w (
   low52w_percentage DOUBLE
 ),
 INDEX(ticker CAPACITY 9000)
-TIMESTAMP(date) PARTITION BY YEAR WAL;
\ No newline at end of file
+TIMESTAMP(date) PARTITION BY YEAR WAL
+DEDUP UPSERT KEYS(date, ticker, type);
\ No newline at end of file
@@ -13,4 +13,5 @@ CREATE TABLE indicator_d_MA (
   trending DOUBLE
 ),
 INDEX(ticker CAPACITY 9000)
-TIMESTAMP(date) PARTITION BY YEAR WAL;
\ No newline at end of file
+TIMESTAMP(date) PARTITION BY YEAR WAL
+DEDUP UPSERT KEYS(date, ticker, type);
\ No newline at end of file
@@ -0,0 +1,15 @@
+CREATE TABLE rs_rank_d (
+  date TIMESTAMP,
+  ticker SYMBOL,
+  return_1m DOUBLE,
+  return_3m DOUBLE,
+  return_6m DOUBLE,
+  return_12m DOUBLE,
+  rank_1m DOUBLE,
+  rank_3m DOUBLE,
+  rank_6m DOUBLE,
+  rank_12m DOUBLE
+),
+INDEX(ticker CAPACITY 9000)
+TIMESTAMP(date) PARTITION BY YEAR WAL
+DEDUP UPSERT KEYS(date, ticker);
\ No newline at end of file
@@ -1,8 +1,26 @@
 package dev.audreyl07.MDAnalyzer.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.audreyl07.MDAnalyzer.service.BreadthEngine;
+import dev.audreyl07.MDAnalyzer.service.CorrelationService;
 import dev.audreyl07.MDAnalyzer.service.DataService;
+import dev.audreyl07.MDAnalyzer.service.IndicatorService;
+import dev.audreyl07.MDAnalyzer.service.QueryBackend;
+import dev.audreyl07.MDAnalyzer.service.QueryBulkheads;
+import dev.audreyl07.MDAnalyzer.service.QueryLog;
+import dev.audreyl07.MDAnalyzer.service.QueryMetrics;
 import dev.audreyl07.MDAnalyzer.service.QuestDBService;
+import dev.audreyl07.MDAnalyzer.service.ScreenerService;
+import dev.audreyl07.MDAnalyzer.service.SeriesScan;
+import dev.audreyl07.MDAnalyzer.service.SeriesCache;
+import dev.audreyl07.MDAnalyzer.service.SeriesPushService;
+import dev.audreyl07.MDAnalyzer.service.SeriesStore;
+import dev.audreyl07.MDAnalyzer.service.TickerGroups;
+import dev.audreyl07.MDAnalyzer.service.SeriesStreamWriter;
+import dev.audreyl07.MDAnalyzer.service.SqlTemplates;
+import dev.audreyl07.MDAnalyzer.service.Watermarks;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -10,12 +28,21 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.mockito.Mockito;
 
 import java.util.*;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -36,6 +63,32 @@ class DataControllerTest {
     @Autowired
     private DataService dataService;
 
+    @Autowired
+    private Watermarks watermarks;
+
+    @Autowired
+    private SeriesPushService seriesPushService;
+
+    @Autowired
+    private IndicatorService indicatorService;
+
+    @Autowired
+    private BreadthEngine breadthEngine;
+
+    @Autowired
+    private ScreenerService screenerService;
+
+    @Autowired
+    private CorrelationService correlationService;
+
+    @Autowired
+    private TickerGroups tickerGroups;
+
+    @AfterEach
+    void resetMocks() {
+        Mockito.reset(watermarks, dataService, seriesPushService, indicatorService, breadthEngine, screenerService, correlationService, tickerGroups);
+    }
+
     @Test
     void getData_market_callsGetAnalysis_andReturnsJson() throws Exception {
         // Given
@@ -43,7 +96,7 @@ class DataControllerTest {
                 Map.of("time", 1700000000L, "value", 12.3),
                 Map.of("time", 1700086400L, "value", 15.7)
         );
-        when(dataService.getAnalysis("high52w")).thenReturn(payload);
+        when(dataService.getAnalysis("high52w", null)).thenReturn(payload);
 
         // When & Then
         mockMvc.perform(get("/market/full/high52w")
@@ -52,7 +105,7 @@ class DataControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(content().json(objectMapper.writeValueAsString(payload)));
 
-        verify(dataService).getAnalysis("high52w");
+        verify(dataService).getAnalysis("high52w", null);
     }
 
     @Test
@@ -61,7 +114,7 @@ class DataControllerTest {
         List<Map<String, Object>> payload = List.of(
                 Map.of("time", 1700000000L, "value", 8.5)
         );
-        when(dataService.getAnalysis("low52w")).thenReturn(payload);
+        when(dataService.getAnalysis("low52w", null)).thenReturn(payload);
 
         // When & Then
         mockMvc.perform(get("/market/single/low52w")
@@ -69,7 +122,7 @@ class DataControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().json(objectMapper.writeValueAsString(payload)));
 
-        verify(dataService).getAnalysis("low52w");
+        verify(dataService).getAnalysis("low52w", null);
     }
 
     @Test
@@ -85,7 +138,7 @@ class DataControllerTest {
                         "volume", 1000000
                 )
         );
-        when(dataService.getData("stock", "full", "AAPL")).thenReturn(payload);
+        when(dataService.getData("stock", "full", "AAPL", null)).thenReturn(payload);
 
         // When & Then
         mockMvc.perform(get("/stock/full/AAPL")
@@ -94,7 +147,7 @@ class DataControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(content().json(objectMapper.writeValueAsString(payload)));
 
-        verify(dataService).getData("stock", "full", "AAPL");
+        verify(dataService).getData("stock", "full", "AAPL", null);
     }
 
     @Test
@@ -103,7 +156,7 @@ class DataControllerTest {
         List<Map<String, Object>> payload = List.of(
                 Map.of("time", 1700000100L, "value", 153.5, "volume", 1000000)
         );
-        when(dataService.getData("stock", "single", "MSFT")).thenReturn(payload);
+        when(dataService.getData("stock", "single", "MSFT", null)).thenReturn(payload);
 
         // When & Then
         mockMvc.perform(get("/stock/single/MSFT")
@@ -111,7 +164,7 @@ class DataControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().json(objectMapper.writeValueAsString(payload)));
 
-        verify(dataService).getData("stock", "single", "MSFT");
+        verify(dataService).getData("stock", "single", "MSFT", null);
     }
 
     @Test
@@ -127,7 +180,7 @@ class DataControllerTest {
                         "volume", 500000000
                 )
         );
-        when(dataService.getData("index", "full", "^GSPC")).thenReturn(payload);
+        when(dataService.getData("index", "full", "^GSPC", null)).thenReturn(payload);
 
         // When & Then
         mockMvc.perform(get("/index/full/^GSPC")
@@ -135,7 +188,7 @@ class DataControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().json(objectMapper.writeValueAsString(payload)));
 
-        verify(dataService).getData("index", "full", "^GSPC");
+        verify(dataService).getData("index", "full", "^GSPC", null);
     }
 
     @Test
@@ -144,7 +197,7 @@ class DataControllerTest {
         List<Map<String, Object>> payload = List.of(
                 Map.of("time", 1700000200L, "value", 4520.0, "volume", 500000000)
         );
-        when(dataService.getData("index", "single", "^DJI")).thenReturn(payload);
+        when(dataService.getData("index", "single", "^DJI", null)).thenReturn(payload);
 
         // When & Then
         mockMvc.perform(get("/index/single/^DJI")
@@ -152,14 +205,14 @@ class DataControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().json(objectMapper.writeValueAsString(payload)));
 
-        verify(dataService).getData("index", "single", "^DJI");
+        verify(dataService).getData("index", "single", "^DJI", null);
     }
 
     @Test
     void getData_emptyResult_returnsEmptyArray() throws Exception {
         // Given
         List<Map<String, Object>> emptyPayload = Collections.emptyList();
-        when(dataService.getData("stock", "full", "UNKNOWN")).thenReturn(emptyPayload);
+        when(dataService.getData("stock", "full", "UNKNOWN", null)).thenReturn(emptyPayload);
 
         // When & Then
         mockMvc.perform(get("/stock/full/UNKNOWN")
@@ -167,7 +220,7 @@ class DataControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().json("[]"));
 
-        verify(dataService).getData("stock", "full", "UNKNOWN");
+        verify(dataService).getData("stock", "full", "UNKNOWN", null);
     }
 
     @Test
@@ -177,7 +230,7 @@ class DataControllerTest {
                 Map.of("time", 1700000000L, "value", 45.2),
                 Map.of("time", 1700086400L, "value", 47.8)
         );
-        when(dataService.getAnalysis("ma_50_200")).thenReturn(payload);
+        when(dataService.getAnalysis("ma_50_200", null)).thenReturn(payload);
 
         // When & Then
         mockMvc.perform(get("/market/full/ma_50_200")
@@ -185,7 +238,7 @@ class DataControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().json(objectMapper.writeValueAsString(payload)));
 
-        verify(dataService).getAnalysis("ma_50_200");
+        verify(dataService).getAnalysis("ma_50_200", null);
     }
 
     @Test
@@ -196,7 +249,7 @@ class DataControllerTest {
                 Map.of("time", 1700086500L, "value", 151.5, "volume", 1100000),
                 Map.of("time", 1700172900L, "value", 153.0, "volume", 1200000)
         );
-        when(dataService.getData("stock", "single", "GOOGL")).thenReturn(payload);
+        when(dataService.getData("stock", "single", "GOOGL", null)).thenReturn(payload);
 
         // When & Then
         mockMvc.perform(get("/stock/single/GOOGL")
@@ -208,7 +261,357 @@ class DataControllerTest {
                 .andExpect(jsonPath("$[1].time").value(1700086500L))
                 .andExpect(jsonPath("$[2].value").value(153.0));
 
-        verify(dataService).getData("stock", "single", "GOOGL");
+        verify(dataService).getData("stock", "single", "GOOGL", null);
+    }
+
+    @Test
+    void getData_withWatermark_setsETagAndCacheControl() throws Exception {
+        when(watermarks.served("historical_d")).thenReturn("20240105");
+        when(dataService.getData("stock", "single", "AAPL", null)).thenReturn(List.of(Map.of("time", 1L, "value", 2.0)));
+
+        mockMvc.perform(get("/stock/single/AAPL"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"historical_d-20240105-0\""))
+                .andExpect(header().string("Cache-Control", "max-age=300, public"));
+    }
+
+    @Test
+    void getData_matchingIfNoneMatch_returns304WithoutReading() throws Exception {
+        when(watermarks.served("analysis_market")).thenReturn("20240105");
+
+        mockMvc.perform(get("/market/single/high52w").header("If-None-Match", "W/\"analysis_market-20240105-0\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verify(dataService, never()).getAnalysis("high52w", null);
+    }
+
+    @Test
+    void getData_staleIfNoneMatch_returnsBody() throws Exception {
+        when(watermarks.served("analysis_market")).thenReturn("20240106");
+        when(dataService.getAnalysis("high52w", null)).thenReturn(List.of());
+
+        mockMvc.perform(get("/market/single/high52w").header("If-None-Match", "W/\"analysis_market-20240105-0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"analysis_market-20240106-0\""));
+    }
+
+    @Test
+    void getData_sameDayRerun_changesETag() throws Exception {
+        when(watermarks.served("analysis_market")).thenReturn("20240105");
+        when(watermarks.generation("analysis_market")).thenReturn(1L);
+        when(dataService.getAnalysis("high52w", null)).thenReturn(List.of());
+
+        mockMvc.perform(get("/market/single/high52w").header("If-None-Match", "W/\"analysis_market-20240105-0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"analysis_market-20240105-1\""));
+    }
+
+    @Test
+    void getData_unknownWatermark_isNotCached() throws Exception {
+        when(dataService.getData("stock", "single", "AAPL", null)).thenReturn(List.of());
+
+        mockMvc.perform(get("/stock/single/AAPL"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("ETag"))
+                .andExpect(header().string("Cache-Control", "no-cache"));
+    }
+
+    @Test
+    void streamData_ndjson_writesOneLinePerRow() throws Exception {
+        doAnswer(inv -> {
+            SeriesStreamWriter writer = inv.getArgument(2);
+            writer.write("AAPL", 1700000000L, 1.0, 2.0, 0.5, 1.5, 100.0);
+            writer.write("AAPL", 1700086400L, 1.5, 2.5, 1.0, 2.0, Double.NaN);
+            return 2L;
+        }).when(dataService).streamData(eq("historical_d"), eq(List.of("AAPL")), any());
+
+        MvcResult result = mockMvc.perform(get("/stream/stock/single/AAPL"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string("{\"time\":1700000000,\"value\":1.5,\"volume\":100.0}\n"
+                        + "{\"time\":1700086400,\"value\":2.0,\"volume\":null}\n"));
+    }
+
+    @Test
+    void streamData_sse_multipleTickers_addsTickerAndEndEvent() throws Exception {
+        doAnswer(inv -> {
+            SeriesStreamWriter writer = inv.getArgument(2);
+            writer.write("GSPC", 1700000000L, 1.0, 2.0, 0.5, 1.5, 100.0);
+            return 1L;
+        }).when(dataService).streamData(eq("indices_d"), eq(List.of("GSPC", "DJI")), any());
+
+        MvcResult result = mockMvc.perform(get("/stream/index/full/GSPC,DJI,GSPC").param("format", "sse"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(content().string("data: {\"ticker\":\"GSPC\",\"time\":1700000000,\"open\":1.0,\"high\":2.0,"
+                        + "\"low\":0.5,\"close\":1.5,\"volume\":100.0}\n\n"
+                        + "event: end\ndata: {\"rows\":1}\n\n"));
+    }
+
+    @Test
+    void streamData_ndjson_failedQuery_returns503() throws Exception {
+        when(dataService.streamData(eq("historical_d"), eq(List.of("AAPL")), any())).thenReturn(-1L);
+
+        MvcResult result = mockMvc.perform(get("/stream/stock/single/AAPL"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("$.success").value(false));
+    }
+
+    @Test
+    void streamData_sse_failedQuery_sendsAnErrorEvent() throws Exception {
+        when(dataService.streamData(eq("historical_d"), eq(List.of("AAPL")), any())).thenReturn(-1L);
+
+        MvcResult result = mockMvc.perform(get("/stream/stock/single/AAPL").param("format", "sse"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(content().string("event: error\ndata: {\"error\":\"query failed\"}\n\n"));
+    }
+
+    @Test
+    void getData_since_passesThrough_andReturnsNewestTimeAsSeriesWatermark() throws Exception {
+        when(dataService.getData("stock", "single", "AAPL", 100L))
+                .thenReturn(List.of(Map.of("time", 200L, "value", 2.0), Map.of("time", 300L, "value", 3.0)));
+
+        mockMvc.perform(get("/stock/single/AAPL").param("since", "100"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Series-Watermark", "300"))
+                .andExpect(jsonPath("$.length()").value(2));
+    }
+
+    @Test
+    void getData_sinceWithNothingNewer_echoesSince() throws Exception {
+        when(watermarks.served("analysis_market")).thenReturn("20240102");
+        when(dataService.getAnalysis("high52w", 300L)).thenReturn(List.of());
+
+        mockMvc.perform(get("/market/single/high52w").param("since", "300"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Series-Watermark", "300"))
+                .andExpect(header().exists("ETag"))
+                .andExpect(content().json("[]"));
+    }
+
+    @Test
+    void getData_invalidSince_returns400() throws Exception {
+        mockMvc.perform(get("/stock/single/AAPL").param("since", "yesterday"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void subscribe_registersTickersAndAnalysisTypes_andOpensEventStream() throws Exception {
+        when(seriesPushService.subscribe(any(), any())).thenAnswer(inv ->
+                new SeriesPushService.Subscription(inv.getArgument(0), inv.getArgument(1), 1));
+
+        mockMvc.perform(get("/subscribe").param("stocks", "AAPL,MSFT").param("indices", "^GSPC").param("analysis", "ma_50_200"))
+                .andExpect(status().isOk())
+                .andExpect(request().asyncStarted())
+                .andExpect(header().string("Content-Type", "text/event-stream"))
+                .andExpect(content().string("event:subscribed\ndata:{\"keys\":4}\n\n"));
+
+        verify(seriesPushService).subscribe(any(), eq(Set.of(
+                new SeriesCache.Key("historical_d", "AAPL"), new SeriesCache.Key("historical_d", "MSFT"),
+                new SeriesCache.Key("indices_d", "^GSPC"), new SeriesCache.Key("analysis_market", "MA_50_200"))));
+    }
+
+    @Test
+    void subscribe_rejectsUnknownAnalysisTypeAndEmptyRequests() throws Exception {
+        mockMvc.perform(get("/subscribe").param("analysis", "breadth"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/subscribe"))
+                .andExpect(status().isBadRequest());
+        verify(seriesPushService, never()).subscribe(any(), any());
+    }
+
+    @Test
+    void subscribe_whenServiceRefuses_returns503() throws Exception {
+        mockMvc.perform(get("/subscribe").param("stocks", "AAPL"))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    void getIndicator_computesWithDefaultsAndVersionsLikeSeries() throws Exception {
+        IndicatorService.Result result = new IndicatorService.Result(0, new long[0], List.of("rsi"), new double[1][0]);
+        when(watermarks.served("historical_d")).thenReturn("20240102");
+        when(indicatorService.compute("historical_d", "AAPL", IndicatorService.Indicator.RSI, 14, 2.0)).thenReturn(result);
+        when(indicatorService.toRows(result, null)).thenReturn(List.of(Map.of("time", 10L, "rsi", 55.0)));
+
+        mockMvc.perform(get("/indicator/stock/AAPL/rsi"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"historical_d-20240102-0\""))
+                .andExpect(header().string("X-Series-Watermark", "10"))
+                .andExpect(jsonPath("$[0].rsi").value(55.0));
+    }
+
+    @Test
+    void getIndicator_rejectsUnknownIndicatorAndBadParameters() throws Exception {
+        mockMvc.perform(get("/indicator/stock/AAPL/macd")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/indicator/stock/AAPL/sma").param("length", "0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/indicator/stock/AAPL/sma").param("length", "5000")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/indicator/stock/AAPL/bollinger").param("k", "-1")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/indicator/crypto/BTC/sma")).andExpect(status().isBadRequest());
+        verify(indicatorService, never()).compute(any(), any(), any(), anyInt(), anyDouble());
+    }
+
+    @Test
+    void getRelativeStrength_versionsOnTheRankTable() throws Exception {
+        when(watermarks.served("rs_rank_d")).thenReturn("20240102");
+        when(dataService.getRelativeStrength("3m", "AAPL", null))
+                .thenReturn(List.of(Map.of("time", 10L, "value", 87.5, "return", 0.12)));
+
+        mockMvc.perform(get("/rs/3m/AAPL"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"rs_rank_d-20240102-0\""))
+                .andExpect(jsonPath("$[0].value").value(87.5));
+    }
+
+    @Test
+    void getRelativeStrength_rejectsUnknownPeriods() throws Exception {
+        mockMvc.perform(get("/rs/2w/AAPL")).andExpect(status().isBadRequest());
+        verify(dataService, never()).getRelativeStrength(any(), any(), any());
+    }
+
+    @Test
+    void getGroupBreadth_normalizesTheType_andVersionsOnTheGroupTable() throws Exception {
+        when(tickerGroups.get("semis")).thenReturn(List.of("NVDA"));
+        when(watermarks.served("analysis_group")).thenReturn("20240102");
+        when(dataService.getGroupBreadth("semis", "MA_50_200", null)).thenReturn(List.of(Map.of("time", 10L, "value", 40.0)));
+
+        mockMvc.perform(get("/group/semis/ma_50_200"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"analysis_group-20240102-0\""))
+                .andExpect(jsonPath("$[0].value").value(40.0));
+    }
+
+    @Test
+    void getGroupBreadth_rejectsUnknownTypesAndGroups() throws Exception {
+        when(tickerGroups.get("none")).thenReturn(null);
+
+        mockMvc.perform(get("/group/semis/breadth")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/group/none/high52w")).andExpect(status().isNotFound());
+        verify(dataService, never()).getGroupBreadth(any(), any(), any());
+    }
+
+    @Test
+    void getBreadth_parsesConditionsAndVersionsLikeSeries() throws Exception {
+        BreadthEngine.Result result = new BreadthEngine.Result(0, new long[0], new int[0], new int[0]);
+        List<BreadthEngine.Condition> conditions = List.of(new BreadthEngine.Condition(BreadthEngine.Kind.ABOVE_SMA, 200, 0),
+                new BreadthEngine.Condition(BreadthEngine.Kind.HIGH_52W, 0, 0));
+        when(watermarks.served("historical_d")).thenReturn("20240102");
+        when(breadthEngine.compute("historical_d", conditions)).thenReturn(result);
+        when(breadthEngine.toRows(result, 5L)).thenReturn(List.of(Map.of("time", 10L, "count", 1, "total", 4, "percentage", 25.0)));
+
+        mockMvc.perform(get("/breadth/stock").param("conditions", "above_sma:200, high52w").param("since", "5"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"historical_d-20240102-0\""))
+                .andExpect(header().string("X-Series-Watermark", "10"))
+                .andExpect(jsonPath("$[0].percentage").value(25.0));
+    }
+
+    @Test
+    void getBreadth_rejectsUnknownConditionsAndTypes() throws Exception {
+        mockMvc.perform(get("/breadth/stock").param("conditions", "above_ema:50")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/breadth/stock").param("conditions", "above_sma:0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/breadth/stock").param("conditions", "high52w:10")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/breadth/stock").param("conditions", " , ")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/breadth/market").param("conditions", "high52w")).andExpect(status().isBadRequest());
+        verify(breadthEngine, never()).compute(any(), any());
+    }
+
+    @Test
+    void screen_parsesFiltersAndDescendingSort() throws Exception {
+        List<ScreenerService.Filter> filters = List.of(
+                new ScreenerService.Filter(ScreenerService.Field.PCT_HIGH_52W, -5, Double.POSITIVE_INFINITY),
+                new ScreenerService.Filter(ScreenerService.Field.CLOSE, Double.NEGATIVE_INFINITY, 50));
+        when(watermarks.served("historical_d")).thenReturn("20240102");
+        when(screenerService.screen("historical_d", filters, ScreenerService.Field.VOLUME, true, 20))
+                .thenReturn(List.of(Map.of("ticker", "AAPL", "time", 1704153600L)));
+
+        mockMvc.perform(get("/screener/stock").param("filters", "pctHigh52w:-5:,close::50")
+                        .param("sort", "-volume").param("limit", "20"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"historical_d-20240102-0\""))
+                .andExpect(jsonPath("$[0].ticker").value("AAPL"));
+    }
+
+    @Test
+    void screen_rejectsUnknownFieldsBoundsAndLimits() throws Exception {
+        mockMvc.perform(get("/screener/stock").param("filters", "pe:0:20")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/screener/stock").param("filters", "close:10")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/screener/stock").param("filters", "close:20:10")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/screener/stock").param("sort", "-pe")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/screener/stock").param("limit", "5000")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/screener/market")).andExpect(status().isBadRequest());
+        verify(screenerService, never()).screen(any(), any(), any(), anyBoolean(), anyInt());
+    }
+
+    @Test
+    void getData_fullReadBulkhead_returns503WithRetryAfter() throws Exception {
+        when(dataService.getData("stock", "single", "AAPL", null))
+                .thenThrow(new QueryBulkheads.BulkheadFullException("read", 2000));
+
+        mockMvc.perform(get("/stock/single/AAPL"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.success").value(false));
+    }
+
+    @Test
+    void getData_failedBackendRead_returns503WithoutETag() throws Exception {
+        when(watermarks.served("historical_d")).thenReturn("20240105");
+        when(dataService.getData("stock", "single", "AAPL", null))
+                .thenThrow(new QueryBackend.QueryFailedException("Query failed: timeout"));
+
+        mockMvc.perform(get("/stock/single/AAPL"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().doesNotExist("ETag"))
+                .andExpect(header().doesNotExist("Cache-Control"))
+                .andExpect(jsonPath("$.success").value(false));
+    }
+
+    @Test
+    void streamData_rejectsUnknownTypeAndFormat() throws Exception {
+        mockMvc.perform(get("/stream/market/single/high52w")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/stream/stock/single/AAPL").param("format", "csv")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getCorrelation_returnsTheMatrixWithTheTableEtag() throws Exception {
+        when(watermarks.served("historical_d")).thenReturn("20240102");
+        when(correlationService.compute("historical_d", List.of("AAPL", "MSFT"), 60)).thenReturn(new CorrelationService.Result(
+                List.of("AAPL", "MSFT"), List.of(), 10L, 20L, 60, new double[][]{{1, 0.5}, {0.5, 1}}));
+
+        mockMvc.perform(get("/correlation/stock").param("tickers", "AAPL,MSFT").param("window", "60"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "W/\"historical_d-20240102-0\""))
+                .andExpect(jsonPath("$.tickers[1]").value("MSFT"))
+                .andExpect(jsonPath("$.matrix[0][1]").value(0.5))
+                .andExpect(jsonPath("$.observations").value(60));
+    }
+
+    @Test
+    void getCorrelation_rejectsBadBaskets_andReportsFailedReads() throws Exception {
+        mockMvc.perform(get("/correlation/stock").param("tickers", "AAPL")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/correlation/stock").param("tickers", "AAPL,MSFT").param("window", "1"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/correlation/market").param("tickers", "AAPL,MSFT")).andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/correlation/stock").param("tickers", "AAPL,MSFT"))
+                .andExpect(status().isServiceUnavailable());
+        verify(correlationService).compute("historical_d", List.of("AAPL", "MSFT"), 252);
     }
 
     /**
@@ -224,6 +627,81 @@ class DataControllerTest {
         public QuestDBService questDBService() {
             return Mockito.mock(QuestDBService.class);
         }
+
+        @Bean
+        public QueryMetrics queryMetrics() {
+            return new QueryMetrics(new SimpleMeterRegistry());
+        }
+
+        @Bean
+        public QueryLog queryLog() {
+            return new QueryLog();
+        }
+
+        @Bean
+        public QueryBulkheads queryBulkheads() {
+            return new QueryBulkheads();
+        }
+
+        @Bean
+        public QueryBackend queryBackend() {
+            return Mockito.mock(QueryBackend.class);
+        }
+
+        @Bean
+        public SqlTemplates sqlTemplates() {
+            return new SqlTemplates();
+        }
+
+        @Bean
+        public Watermarks watermarks() {
+            return Mockito.mock(Watermarks.class);
+        }
+
+        @Bean
+        public SeriesCache seriesCache() {
+            return Mockito.mock(SeriesCache.class);
+        }
+
+        @Bean
+        public IndicatorService indicatorService() {
+            return Mockito.mock(IndicatorService.class);
+        }
+
+        @Bean
+        public BreadthEngine breadthEngine() {
+            return Mockito.mock(BreadthEngine.class);
+        }
+
+        @Bean
+        public ScreenerService screenerService() {
+            return Mockito.mock(ScreenerService.class);
+        }
+
+        @Bean
+        public CorrelationService correlationService() {
+            return Mockito.mock(CorrelationService.class);
+        }
+
+        @Bean
+        public TickerGroups tickerGroups() {
+            return Mockito.mock(TickerGroups.class);
+        }
+
+        @Bean
+        public SeriesScan seriesScan() {
+            return Mockito.mock(SeriesScan.class);
+        }
+
+        @Bean
+        public SeriesPushService seriesPushService() {
+            return Mockito.mock(SeriesPushService.class);
+        }
+
+        @Bean
+        public SeriesStore seriesStore() {
+            return Mockito.mock(SeriesStore.class);
+        }
     }
 }
 
@@ -2,7 +2,16 @@ package dev.audreyl07.MDAnalyzer.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.audreyl07.MDAnalyzer.service.MaintenanceService;
+import dev.audreyl07.MDAnalyzer.service.QueryBulkheads;
+import dev.audreyl07.MDAnalyzer.service.QueryLog;
+import dev.audreyl07.MDAnalyzer.service.QueryMetrics;
 import dev.audreyl07.MDAnalyzer.service.QuestDBService;
+import dev.audreyl07.MDAnalyzer.service.SeriesScan;
+import dev.audreyl07.MDAnalyzer.service.SeriesStore;
+import dev.audreyl07.MDAnalyzer.service.SqlTemplates;
+import dev.audreyl07.MDAnalyzer.service.TickerGroups;
+import dev.audreyl07.MDAnalyzer.service.Watermarks;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,13 +23,19 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.mockito.Mockito;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 /**
@@ -40,10 +55,13 @@ class MaintenanceControllerTest {
     @Autowired
     private MaintenanceService maintenanceService;
 
+    @Autowired
+    private TickerGroups tickerGroups;
+
     @BeforeEach
     void resetMocks() {
         // Ensure no invocations from previous tests linger
-        reset(maintenanceService);
+        reset(maintenanceService, tickerGroups);
     }
 
     @Test
@@ -128,7 +146,7 @@ class MaintenanceControllerTest {
         Map<String, Object> request = Map.of("type", "d");
         Map<String, Object> serviceResult = new HashMap<>();
         serviceResult.put("rowsInserted", 500);
-        when(maintenanceService.insertIntoHistorical("d")).thenReturn(serviceResult);
+        when(maintenanceService.insertIntoHistorical("d", null)).thenReturn(serviceResult);
 
         // When & Then
         mockMvc.perform(post("/maintenance/insert-historical")
@@ -138,7 +156,7 @@ class MaintenanceControllerTest {
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.rowsInserted").value(500));
 
-        verify(maintenanceService).insertIntoHistorical("d");
+        verify(maintenanceService).insertIntoHistorical("d", null);
     }
 
     @Test
@@ -147,7 +165,7 @@ class MaintenanceControllerTest {
         Map<String, Object> request = Map.of("type", "d");
         Map<String, Object> serviceResult = new HashMap<>();
         serviceResult.put("processed", 200);
-        when(maintenanceService.insertIntoIndicator52w("d")).thenReturn(serviceResult);
+        when(maintenanceService.insertIntoIndicator52w("d", null)).thenReturn(serviceResult);
 
         // When & Then
         mockMvc.perform(post("/maintenance/insert-52w")
@@ -157,7 +175,7 @@ class MaintenanceControllerTest {
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.processed").value(200));
 
-        verify(maintenanceService).insertIntoIndicator52w("d");
+        verify(maintenanceService).insertIntoIndicator52w("d", null);
     }
 
     @Test
@@ -166,7 +184,7 @@ class MaintenanceControllerTest {
         Map<String, Object> request = Map.of("type", "high52w");
         Map<String, Object> serviceResult = new HashMap<>();
         serviceResult.put("analysisRecords", 30);
-        when(maintenanceService.insertIntoAnalysis52w("high52w")).thenReturn(serviceResult);
+        when(maintenanceService.insertIntoAnalysis52w("high52w", null)).thenReturn(serviceResult);
 
         // When & Then
         mockMvc.perform(post("/maintenance/insert-analysis52w")
@@ -176,7 +194,7 @@ class MaintenanceControllerTest {
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.analysisRecords").value(30));
 
-        verify(maintenanceService).insertIntoAnalysis52w("high52w");
+        verify(maintenanceService).insertIntoAnalysis52w("high52w", null);
     }
 
     @Test
@@ -185,7 +203,7 @@ class MaintenanceControllerTest {
         Map<String, Object> request = Map.of("type", "low52w");
         Map<String, Object> serviceResult = new HashMap<>();
         serviceResult.put("updated", 25);
-        when(maintenanceService.updateAnalysis52w("low52w")).thenReturn(serviceResult);
+        when(maintenanceService.updateAnalysis52w("low52w", null)).thenReturn(serviceResult);
 
         // When & Then
         mockMvc.perform(post("/maintenance/update-52w")
@@ -195,7 +213,7 @@ class MaintenanceControllerTest {
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.updated").value(25));
 
-        verify(maintenanceService).updateAnalysis52w("low52w");
+        verify(maintenanceService).updateAnalysis52w("low52w", null);
     }
 
     @Test
@@ -268,7 +286,7 @@ class MaintenanceControllerTest {
         Map<String, Object> request = Map.of("type", "MA_50_200");
         Map<String, Object> serviceResult = new HashMap<>();
         serviceResult.put("analysisRows", 100);
-        when(maintenanceService.insertIntoAnalysisMA("MA_50_200")).thenReturn(serviceResult);
+        when(maintenanceService.insertIntoAnalysisMA("MA_50_200", null)).thenReturn(serviceResult);
 
         // When & Then
         mockMvc.perform(post("/maintenance/insert-analysisMA")
@@ -278,7 +296,7 @@ class MaintenanceControllerTest {
                 .andExpect(jsonPath("$.success").value(true))
                 .andExpect(jsonPath("$.analysisRows").value(100));
 
-        verify(maintenanceService).insertIntoAnalysisMA("MA_50_200");
+        verify(maintenanceService).insertIntoAnalysisMA("MA_50_200", null);
     }
 
     @Test
@@ -304,6 +322,26 @@ class MaintenanceControllerTest {
         verify(maintenanceService).updateAnalysisMA("d", 50, 200);
     }
 
+    @Test
+    void updateMA_withIntervalList_usesSinglePassVariant() throws Exception {
+        // Given
+        Map<String, Object> request = Map.of(
+                "type", "d",
+                "intervals", List.of(20, 50, 200)
+        );
+        Map<String, Object> serviceResult = new HashMap<>();
+        when(maintenanceService.updateAnalysisMA("d", List.of(20, 50, 200))).thenReturn(serviceResult);
+
+        // When & Then
+        mockMvc.perform(post("/maintenance/update-MA")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true));
+
+        verify(maintenanceService).updateAnalysisMA("d", List.of(20, 50, 200));
+    }
+
     @Test
     void getLatest_withTableAndType_returnsLatestDate() throws Exception {
         // Given
@@ -358,6 +396,23 @@ class MaintenanceControllerTest {
         verify(maintenanceService).getLatestDate("", "");
     }
 
+    @Test
+    void maintenanceRequests_runInTheMaintenanceBulkhead() throws Exception {
+        AtomicBoolean maintenance = new AtomicBoolean();
+        when(maintenanceService.insertIntoHistorical("d", null)).thenAnswer(invocation -> {
+            maintenance.set(QueryBulkheads.isMaintenance());
+            return new HashMap<>();
+        });
+
+        mockMvc.perform(post("/maintenance/insert-historical")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("type", "d"))))
+                .andExpect(status().isOk());
+
+        assertThat(maintenance).isTrue();
+        assertThat(QueryBulkheads.isMaintenance()).isFalse();
+    }
+
     @Test
     void importQuestDb_withNullResult_stillReturnsSuccess() throws Exception {
         // Given
@@ -375,6 +430,90 @@ class MaintenanceControllerTest {
         verify(maintenanceService, atLeastOnce()).importRawFiles("d");
     }
 
+    @Test
+    void insertRelativeStrength_passesTypeToService() throws Exception {
+        Map<String, Object> serviceResult = new HashMap<>();
+        serviceResult.put("success", Boolean.TRUE);
+        serviceResult.put("count", 8000L);
+        when(maintenanceService.insertIntoRelativeStrength("d", null)).thenReturn(serviceResult);
+
+        mockMvc.perform(post("/maintenance/insert-RS")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("type", "d"))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true))
+                .andExpect(jsonPath("$.count").value(8000));
+
+        verify(maintenanceService).insertIntoRelativeStrength("d", null);
+    }
+
+    @Test
+    void updateGroupBreadth_callsService() throws Exception {
+        Map<String, Object> serviceResult = new HashMap<>();
+        serviceResult.put("success", Boolean.TRUE);
+        serviceResult.put("groups", 3);
+        when(maintenanceService.insertIntoGroupBreadth(null)).thenReturn(serviceResult);
+
+        mockMvc.perform(post("/maintenance/update-group-breadth"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.groups").value(3));
+    }
+
+    @Test
+    void insertHistorical_passesFromForReRun() throws Exception {
+        when(maintenanceService.insertIntoHistorical("d", "20250301")).thenReturn(new HashMap<>(Map.of("success", Boolean.TRUE)));
+
+        mockMvc.perform(post("/maintenance/insert-historical")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("type", "d", "from", "20250301"))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true));
+
+        verify(maintenanceService).insertIntoHistorical("d", "20250301");
+    }
+
+    @Test
+    void migrateDedup_returnsStatusPerTable() throws Exception {
+        Map<String, Object> serviceResult = new HashMap<>();
+        serviceResult.put("success", Boolean.TRUE);
+        serviceResult.put("tables", Map.of("historical_d", "OK", "historical_etf_d", "MISSING"));
+        when(maintenanceService.migrateDedup()).thenReturn(serviceResult);
+
+        mockMvc.perform(post("/maintenance/migrate-dedup"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.success").value(true))
+                .andExpect(jsonPath("$.tables.historical_d").value("OK"))
+                .andExpect(jsonPath("$.tables.historical_etf_d").value("MISSING"));
+    }
+
+    @Test
+    void putGroup_storesTheTickers_andRejectsInvalidGroups() throws Exception {
+        when(tickerGroups.put("semis", List.of("NVDA", "AMD"))).thenReturn(true);
+        when(tickerGroups.get("semis")).thenReturn(List.of("NVDA", "AMD"));
+
+        mockMvc.perform(put("/maintenance/groups/semis")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("tickers", List.of("NVDA", "AMD")))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tickers").value(2));
+        mockMvc.perform(put("/maintenance/groups/semis")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("tickers", "NVDA"))))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getAndDeleteGroups() throws Exception {
+        when(tickerGroups.getAll()).thenReturn(Map.of("banks", List.of("JPM")));
+        when(tickerGroups.remove("banks")).thenReturn(true);
+
+        mockMvc.perform(get("/maintenance/groups"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.banks[0]").value("JPM"));
+        mockMvc.perform(delete("/maintenance/groups/banks")).andExpect(status().isOk());
+        mockMvc.perform(delete("/maintenance/groups/none")).andExpect(status().isNotFound());
+    }
+
     /**
      * Test configuration that provides mock beans for the test context.
      */
@@ -388,5 +527,45 @@ class MaintenanceControllerTest {
         public QuestDBService questDBService() {
             return Mockito.mock(QuestDBService.class);
         }
+
+        @Bean
+        public QueryMetrics queryMetrics() {
+            return new QueryMetrics(new SimpleMeterRegistry());
+        }
+
+        @Bean
+        public QueryLog queryLog() {
+            return new QueryLog();
+        }
+
+        @Bean
+        public QueryBulkheads queryBulkheads() {
+            return new QueryBulkheads();
+        }
+
+        @Bean
+        public SqlTemplates sqlTemplates() {
+            return new SqlTemplates();
+        }
+
+        @Bean
+        public SeriesScan seriesScan() {
+            return Mockito.mock(SeriesScan.class);
+        }
+
+        @Bean
+        public SeriesStore seriesStore() {
+            return Mockito.mock(SeriesStore.class);
+        }
+
+        @Bean
+        public Watermarks watermarks() {
+            return Mockito.mock(Watermarks.class);
+        }
+
+        @Bean
+        public TickerGroups tickerGroups() {
+            return Mockito.mock(TickerGroups.class);
+        }
     }
 }
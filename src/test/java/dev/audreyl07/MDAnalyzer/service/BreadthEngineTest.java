@@ -0,0 +1,198 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static dev.audreyl07.MDAnalyzer.service.OhlcvSeriesFixtures.DAY;
+import static dev.audreyl07.MDAnalyzer.service.OhlcvSeriesFixtures.closes;
+import static dev.audreyl07.MDAnalyzer.service.OhlcvSeriesFixtures.storeOf;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BreadthEngineTest {
+
+    @Mock
+    private SeriesStore seriesStore;
+
+    @Mock
+    private QuestDBService questDBService;
+
+    private SeriesScan scan;
+
+    private BreadthEngine engine;
+
+    private QueryMetrics queryMetrics;
+
+    @BeforeEach
+    void setUp() {
+        queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+        scan = new SeriesScan();
+        scan.seriesStore = seriesStore;
+        scan.questDBService = questDBService;
+        scan.sqlTemplates = new SqlTemplates();
+        engine = new BreadthEngine();
+        engine.seriesScan = scan;
+        engine.queryMetrics = queryMetrics;
+    }
+
+    @Test
+    void parse_readsNamesLengthsAndThresholds() {
+        assertThat(BreadthEngine.Condition.parse("above_sma:200"))
+                .isEqualTo(new BreadthEngine.Condition(BreadthEngine.Kind.ABOVE_SMA, 200, 0));
+        assertThat(BreadthEngine.Condition.parse("RSI_ABOVE"))
+                .isEqualTo(new BreadthEngine.Condition(BreadthEngine.Kind.RSI_ABOVE, 14, 70));
+        assertThat(BreadthEngine.Condition.parse("below_sma:50:5"))
+                .isEqualTo(new BreadthEngine.Condition(BreadthEngine.Kind.BELOW_SMA, 50, 5));
+        assertThat(BreadthEngine.Condition.parse("high52w")).isNotNull();
+        assertThat(BreadthEngine.Condition.parse("high52w:5")).isNull();
+        assertThat(BreadthEngine.Condition.parse("above_sma:x")).isNull();
+        assertThat(BreadthEngine.Condition.parse("above_sma:0")).isNull();
+        assertThat(BreadthEngine.Condition.parse("macd")).isNull();
+    }
+
+    @Test
+    void compute_countsTickersAboveTheirSmaPerDate() {
+        Map<String, OhlcvSeries> table = new LinkedHashMap<>();
+        table.put("UP", closes(0, 1, 2, 3, 4));
+        table.put("DOWN", closes(0, 4, 3, 2, 1));
+        table.put("LATE", closes(0, 5, 5, 6, 7));
+        storeOf(seriesStore, "historical_d", table);
+
+        BreadthEngine.Result result = engine.compute("historical_d",
+                List.of(BreadthEngine.Condition.parse("above_sma:2")));
+
+        // SMA(2) is defined from the second bar on
+        assertThat(result.size()).isEqualTo(3);
+        assertThat(result.time()).startsWith(DAY, 2 * DAY, 3 * DAY);
+        assertThat(result.total()).startsWith(3, 3, 3);
+        assertThat(result.count()).startsWith(1, 2, 2);
+        List<Map<String, Object>> rows = engine.toRows(result, DAY);
+        assertThat(rows).hasSize(2);
+        assertThat(rows.get(0)).containsEntry("time", 2 * DAY).containsEntry("count", 2).containsEntry("total", 3);
+        assertThat((double) rows.get(0).get("percentage")).isCloseTo(66.67, offset(0.01));
+    }
+
+    @Test
+    void compute_combinesConditionsWithAnd_andCountsEligibleTickersOfAllConditions() {
+        Map<String, OhlcvSeries> table = new LinkedHashMap<>();
+        table.put("UP", closes(0, 1, 2, 3, 4));
+        table.put("FLAT", closes(0, 2, 2, 2, 3));
+        storeOf(seriesStore, "historical_d", table);
+
+        BreadthEngine.Result result = engine.compute("historical_d",
+                List.of(BreadthEngine.Condition.parse("above_sma:2"), BreadthEngine.Condition.parse("above_sma:3")));
+
+        // both conditions are defined from the third bar on; FLAT is above both only on the last bar
+        assertThat(result.size()).isEqualTo(2);
+        assertThat(result.total()).startsWith(2, 2);
+        assertThat(result.count()).startsWith(1, 2);
+    }
+
+    @Test
+    void compute_high52w_countsTickersWhoseYearHighMovedUp() {
+        Map<String, OhlcvSeries> table = new LinkedHashMap<>();
+        table.put("A", closes(0, 1, 3, 2, 4));
+        table.put("B", closes(0, 5, 4, 6, 6));
+        storeOf(seriesStore, "historical_d", table);
+
+        BreadthEngine.Result result = engine.compute("historical_d", List.of(BreadthEngine.Condition.parse("high52w")));
+
+        assertThat(result.count()).startsWith(1, 1, 1);
+        assertThat(result.total()).startsWith(2, 2, 2);
+    }
+
+    @Test
+    void compute_high52w_comparesABarAfterAGapWithTheLastHigh() {
+        Map<String, OhlcvSeries> table = new LinkedHashMap<>();
+        table.put("GAP", closes(0, 1, Double.NaN, 3));
+        table.put("B", closes(0, 5, 4, 6));
+        storeOf(seriesStore, "historical_d", table);
+
+        BreadthEngine.Result result = engine.compute("historical_d", List.of(BreadthEngine.Condition.parse("high52w")));
+
+        // GAP is not counted on its missing day, and its next high is compared with the one before the gap
+        assertThat(result.time()).containsExactly(DAY, 2 * DAY);
+        assertThat(result.total()).startsWith(1, 2);
+        assertThat(result.count()).startsWith(0, 2);
+    }
+
+    @Test
+    void compute_reusesBitsUntilTheTableMoves_thenEvaluatesOnlyTheNewDates() {
+        Map<String, OhlcvSeries> table = new LinkedHashMap<>();
+        table.put("UP", closes(0, 1, 2, 3));
+        storeOf(seriesStore, "historical_d", table);
+        BreadthEngine.Condition condition = BreadthEngine.Condition.parse("above_sma:2");
+
+        engine.compute("historical_d", List.of(condition));
+        engine.compute("historical_d", List.of(condition));
+        verify(seriesStore, times(1)).readTable("historical_d");
+        assertThat(queryMetrics.getRegistry().get("mdanalyzer.cache.requests").tag("cache", "breadth")
+                .tag("result", "hit").counter().count()).isEqualTo(1);
+
+        // the new bar falls; an old date re-evaluated against the new series would not change either
+        table.put("UP", closes(0, 1, 2, 3, 1));
+        when(seriesStore.getMaxTime("historical_d")).thenReturn(3 * DAY);
+        BreadthEngine.Result result = engine.compute("historical_d", List.of(condition));
+
+        verify(seriesStore, times(2)).readTable("historical_d");
+        assertThat(result.size()).isEqualTo(3);
+        assertThat(result.count()).startsWith(1, 1, 0);
+    }
+
+    @Test
+    void compute_withoutStore_streamsTheTableFromQuestDb() throws IOException {
+        when(seriesStore.isReady("historical_d")).thenReturn(false);
+        scan.watermarks = mock(Watermarks.class);
+        when(scan.watermarks.get("historical_d")).thenReturn("19700103");
+        when(questDBService.streamQuery(anyString(), any())).thenAnswer(inv -> {
+            QuestDBService.RowHandler handler = inv.getArgument(1);
+            if (inv.<String>getArgument(0).startsWith("SELECT DISTINCT ticker")) {
+                handler.row(new Object[]{"A"});
+                handler.row(new Object[]{"B"});
+                return 2L;
+            }
+            handler.row(new Object[]{"A", "1970-01-01T00:00:00.000000Z", 1.0, 1.0, 1.0, 1.0, 1L});
+            handler.row(new Object[]{"A", "1970-01-02T00:00:00.000000Z", 2.0, 2.0, 2.0, 2.0, 1L});
+            handler.row(new Object[]{"A", "1970-01-03T00:00:00.000000Z", 3.0, 3.0, 3.0, 3.0, 1L});
+            handler.row(new Object[]{"B", "1970-01-02T00:00:00.000000Z", 2.0, 2.0, 2.0, 2.0, 1L});
+            handler.row(new Object[]{"B", "1970-01-03T00:00:00.000000Z", 1.0, 1.0, 1.0, 1.0, 1L});
+            return 5L;
+        });
+
+        BreadthEngine.Result result = engine.compute("historical_d", List.of(BreadthEngine.Condition.parse("above_sma:2")));
+
+        assertThat(result.time()).startsWith(DAY, 2 * DAY);
+        assertThat(result.count()).startsWith(1, 1);
+        assertThat(result.total()).startsWith(1, 2);
+    }
+
+    @Test
+    void stageRewritingEvaluatedDates_clearsTheTable() {
+        Map<String, OhlcvSeries> table = new LinkedHashMap<>();
+        table.put("UP", closes(0, 1, 2, 3));
+        storeOf(seriesStore, "historical_d", table);
+        engine.compute("historical_d", List.of(BreadthEngine.Condition.parse("above_sma:2")));
+
+        engine.onPipelineStageCompleted(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "19700103"));
+        assertThat(engine.conditionCount("historical_d")).isEqualTo(1);
+
+        engine.onPipelineStageCompleted(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "19700101"));
+        assertThat(engine.conditionCount("historical_d")).isZero();
+    }
+}
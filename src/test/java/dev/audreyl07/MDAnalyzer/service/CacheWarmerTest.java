@@ -0,0 +1,77 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CacheWarmerTest {
+
+    @Mock
+    private DataService dataService;
+
+    @Mock
+    private SeriesCache seriesCache;
+
+    @InjectMocks
+    private CacheWarmer cacheWarmer;
+
+    @Test
+    void warmUp_readsHotTickersSeedsAndAllAnalysisTypes() {
+        cacheWarmer.seedTickers = List.of("MSFT", "AAPL");
+        when(seriesCache.hotTickers(50)).thenReturn(List.of(
+                new SeriesCache.Key("historical_d", "AAPL"), new SeriesCache.Key("indices_d", "GSPC")));
+
+        int read = cacheWarmer.warmUp();
+
+        assertThat(read).isEqualTo(6);
+        verify(dataService).loadSeries("historical_d", "AAPL");
+        verify(dataService).loadSeries("indices_d", "GSPC");
+        verify(dataService).loadSeries("historical_d", "MSFT");
+        verify(dataService).loadAnalysis("high52w");
+        verify(dataService).loadAnalysis("low52w");
+        verify(dataService).loadAnalysis("MA_50_200");
+        verify(seriesCache).decayRequestCounts();
+    }
+
+    @Test
+    void warmUp_boundsConcurrentReads() {
+        cacheWarmer.concurrency = 2;
+        List<SeriesCache.Key> hot = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            hot.add(new SeriesCache.Key("historical_d", "T" + i));
+        }
+        when(seriesCache.hotTickers(50)).thenReturn(hot);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(dataService.loadSeries(anyString(), anyString())).thenAnswer(inv -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            inFlight.decrementAndGet();
+            return null;
+        });
+
+        cacheWarmer.warmUp();
+
+        assertThat(peak.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void warmUp_countsFailedReads() {
+        when(seriesCache.hotTickers(50)).thenReturn(List.of(new SeriesCache.Key("historical_d", "AAPL")));
+        when(dataService.loadSeries("historical_d", "AAPL")).thenThrow(new IllegalStateException("down"));
+
+        assertThat(cacheWarmer.warmUp()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,152 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static dev.audreyl07.MDAnalyzer.service.OhlcvSeriesFixtures.DAY;
+import static dev.audreyl07.MDAnalyzer.service.OhlcvSeriesFixtures.closes;
+import static dev.audreyl07.MDAnalyzer.service.OhlcvSeriesFixtures.scanOf;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CorrelationServiceTest {
+
+    @Mock
+    private SeriesScan seriesScan;
+
+    private CorrelationService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new CorrelationService();
+        service.seriesScan = seriesScan;
+        service.queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+        service.parallelism = 2;
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+
+    @Test
+    void compute_correlatesAlignedReturns_andReportsUnusableTickers() throws IOException {
+        Map<String, OhlcvSeries> series = new LinkedHashMap<>();
+        series.put("A", closes(0, 10, 11, 10.5, 12, 11, 13));
+        series.put("DOUBLE", closes(0, 20, 22, 21, 24, 22, 26));
+        series.put("INVERSE", closes(0, 10, 10 / 1.1, 10 / 1.05, 10 / 1.2, 10 / 1.1, 10 / 1.3));
+        series.put("FLAT", closes(0, 5, 5, 5, 5, 5, 5));
+        series.put("NEW", closes(4, 5, 6));
+        scanOf(seriesScan, "historical_d", series);
+
+        CorrelationService.Result result = service.compute("historical_d",
+                List.of("A", "DOUBLE", "INVERSE", "FLAT", "NEW", "NONE"), 4);
+
+        // the last 5 dates give 4 returns; NEW has no close on the first of them
+        assertThat(result.tickers()).containsExactly("A", "DOUBLE", "INVERSE");
+        assertThat(result.missing()).containsExactly("FLAT", "NEW", "NONE");
+        assertThat(result.observations()).isEqualTo(4);
+        assertThat(result.from()).isEqualTo(2 * DAY);
+        assertThat(result.to()).isEqualTo(5 * DAY);
+        assertThat(result.matrix()[0][0]).isEqualTo(1.0);
+        assertThat(result.matrix()[0][1]).isCloseTo(1.0, offset(1e-12));
+        assertThat(result.matrix()[1][2]).isCloseTo(-1.0, offset(1e-12));
+        assertThat(result.matrix()[2][1]).isEqualTo(result.matrix()[1][2]);
+    }
+
+    @Test
+    void compute_failedRead_returnsNull() throws IOException {
+        when(seriesScan.latestTime("historical_d")).thenReturn(10 * DAY);
+        when(seriesScan.forEach(eq("historical_d"), any(List.class), anyLong(), any())).thenReturn(false);
+
+        assertThat(service.compute("historical_d", List.of("A", "B"), 5)).isNull();
+    }
+
+    @Test
+    void logReturns_carriesClosesForwardOverMissingDates() {
+        long[] axis = {DAY, 2 * DAY, 3 * DAY, 4 * DAY};
+        OhlcvSeries series = closes(0, 8, 10, 20);
+        series = new OhlcvSeries(3, new long[]{0, DAY, 4 * DAY}, series.open(), series.high(), series.low(),
+                series.close(), series.volume());
+
+        double[] returns = CorrelationService.logReturns(series, axis);
+
+        assertThat(returns).containsExactly(0.0, 0.0, Math.log(2));
+        assertThat(CorrelationService.logReturns(closes(2, 10, 11), axis)).isNull();
+    }
+
+    @Test
+    void correlate_overSeveralBlocks_matchesPearson() {
+        Random random = new Random(5);
+        int n = CorrelationService.BLOCK * 2 + 9;
+        double[][] returns = new double[n][60];
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < 60; k++) {
+                returns[i][k] = random.nextGaussian() + (i % 3 == 0 ? returns[0][k] : 0);
+            }
+        }
+        double[][] z = new double[n][];
+        for (int i = 0; i < n; i++) {
+            z[i] = CorrelationService.standardize(returns[i].clone());
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        double[][] matrix;
+        try {
+            matrix = CorrelationService.correlate(z, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int i = 0; i < n; i += 7) {
+            for (int j = 0; j < n; j += 5) {
+                assertThat(matrix[i][j]).isCloseTo(pearson(returns[i], returns[j]), offset(1e-9));
+            }
+        }
+        assertThat(matrix[n - 1][n - 1]).isEqualTo(1.0);
+    }
+
+    @Test
+    void toMap_roundsTheMatrix() {
+        Map<String, Object> map = CorrelationService.toMap(new CorrelationService.Result(List.of("A", "B"), List.of(),
+                DAY, 2 * DAY, 1, new double[][]{{1, 0.123456}, {0.123456, 1}}));
+
+        assertThat((double[][]) map.get("matrix")).isDeepEqualTo(new double[][]{{1, 0.1235}, {0.1235, 1}});
+        assertThat(map).containsEntry("observations", 1).containsEntry("tickers", List.of("A", "B"));
+    }
+
+    private static double pearson(double[] x, double[] y) {
+        double mx = 0;
+        double my = 0;
+        for (int k = 0; k < x.length; k++) {
+            mx += x[k] / x.length;
+            my += y[k] / y.length;
+        }
+        double sxy = 0;
+        double sxx = 0;
+        double syy = 0;
+        for (int k = 0; k < x.length; k++) {
+            sxy += (x[k] - mx) * (y[k] - my);
+            sxx += (x[k] - mx) * (x[k] - mx);
+            syy += (y[k] - my) * (y[k] - my);
+        }
+        return sxy / Math.sqrt(sxx * syy);
+    }
+}
@@ -1,16 +1,27 @@
 package dev.audreyl07.MDAnalyzer.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -20,14 +31,33 @@ class DataServiceTest {
     @Mock
     private QuestDBService questDBService;
 
+    @Mock
+    private SeriesStore seriesStore;
+
+    @Spy
+    private SqlTemplates sqlTemplates = new SqlTemplates();
+
+    @Spy
+    private QueryMetrics queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+
     @InjectMocks
     private DataService dataService;
 
     private List<List<Object>> sampleOhlcvDataset; // matches column positions used by DataService
     private List<List<Object>> sampleAnalysisDataset; // [date, percentage]
 
+    private HttpQueryBackend httpQueryBackend;
+
     @BeforeEach
     void setUp() {
+        httpQueryBackend = new HttpQueryBackend();
+        httpQueryBackend.questDBService = questDBService;
+        httpQueryBackend.sqlTemplates = sqlTemplates;
+        dataService.queryBackend = httpQueryBackend;
+        SeriesCache seriesCache = new SeriesCache();
+        seriesCache.queryMetrics = queryMetrics;
+        dataService.seriesCache = seriesCache;
+
         // Two OHLCV rows
         sampleOhlcvDataset = List.of(
                 List.of(
@@ -90,7 +120,7 @@ class DataServiceTest {
                          .containsEntry("high", 12.0)
                          .containsEntry("low", 9.0)
                          .containsEntry("close", 11.0)
-                         .containsEntry("volume", 1000);
+                         .containsEntry("volume", 1000.0);
     }
 
     @Test
@@ -106,7 +136,167 @@ class DataServiceTest {
         Map<String, Object> first = out.get(0);
         assertThat(first).containsEntry("time", 1696118400L)
                          .containsEntry("value", 11.0)
-                         .containsEntry("volume", 1000);
+                         .containsEntry("volume", 1000.0);
+    }
+
+    @Test
+    void getData_readsFromSeriesStore_whenTableLoaded() {
+        OhlcvSeries stored = new OhlcvSeries.Builder(1).add(1696118400L, 10.0, 12.0, 9.0, 11.0, 1000.0).build();
+        when(seriesStore.isReady("historical_d")).thenReturn(true);
+        when(seriesStore.readSeries("historical_d", "AAPL", Long.MIN_VALUE, Long.MAX_VALUE)).thenReturn(stored);
+
+        List<Map<String, Object>> out = dataService.getData("stock", "single", "AAPL");
+
+        assertThat(out).hasSize(1);
+        assertThat(out.get(0)).containsEntry("time", 1696118400L).containsEntry("value", 11.0);
+        verifyNoInteractions(questDBService);
+    }
+
+    @Test
+    void getData_repeatedRequest_isServedFromCacheUntilTableIsWritten() {
+        when(questDBService.executeQuery(anyString())).thenReturn(execResponseWithDataset(sampleOhlcvDataset));
+
+        dataService.getData("stock", "single", "AAPL");
+        List<Map<String, Object>> cached = dataService.getData("stock", "full", "AAPL");
+        verify(questDBService, times(1)).executeQuery(anyString());
+        assertThat(cached).hasSize(2);
+        assertThat(dataService.seriesCache.hotTickers(1)).containsExactly(new SeriesCache.Key("historical_d", "AAPL"));
+
+        dataService.seriesCache.onPipelineStageCompleted(
+                new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20231002"));
+        dataService.getData("stock", "single", "AAPL");
+        verify(questDBService, times(2)).executeQuery(anyString());
+    }
+
+    @Test
+    void getData_since_returnsOnlyLaterBars() {
+        when(questDBService.executeQuery(anyString())).thenReturn(execResponseWithDataset(sampleOhlcvDataset));
+
+        List<Map<String, Object>> newer = dataService.getData("stock", "full", "AAPL", 1696118400L);
+        assertThat(newer).hasSize(1);
+        assertThat(newer.get(0)).containsEntry("time", 1696204800L).containsEntry("close", 12.5);
+
+        assertThat(dataService.getData("stock", "single", "AAPL", 1696204800L)).isEmpty();
+        assertThat(dataService.getData("stock", "single", "AAPL", 0L)).hasSize(2);
+        verify(questDBService, times(1)).executeQuery(anyString());
+    }
+
+    @Test
+    void getAnalysis_since_returnsOnlyLaterPoints() {
+        when(questDBService.executeQuery(anyString())).thenReturn(execResponseWithDataset(sampleAnalysisDataset));
+
+        List<Map<String, Object>> newer = dataService.getAnalysis("high52w", 1696118400L);
+
+        assertThat(newer).containsExactly(Map.of("time", 1696204800L, "value", 42.0));
+    }
+
+    @Test
+    void firstAfter_findsFirstLaterTime() {
+        long[] time = {10, 20, 20, 30, 0};
+        assertThat(DataService.firstAfter(time, 4, 5)).isZero();
+        assertThat(DataService.firstAfter(time, 4, 20)).isEqualTo(3);
+        assertThat(DataService.firstAfter(time, 4, 30)).isEqualTo(4);
+        assertThat(DataService.firstAfter(time, 0, 5)).isZero();
+    }
+
+    @Test
+    void getAnalysis_concurrentBurst_sharesOneQuery() throws Exception {
+        dataService.seriesCache.enabled = false;
+        CountDownLatch release = new CountDownLatch(1);
+        when(questDBService.executeQuery(anyString())).thenAnswer(inv -> {
+            release.await(5, TimeUnit.SECONDS);
+            return execResponseWithDataset(sampleAnalysisDataset);
+        });
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<List<Map<String, Object>>>> calls = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                calls.add(pool.submit(() -> dataService.getAnalysis("high52w")));
+            }
+            while (coalesced("leader") + coalesced("coalesced") < 6) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<List<Map<String, Object>>> call : calls) {
+                assertThat(call.get(5, TimeUnit.SECONDS)).hasSize(2);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        verify(questDBService, times(1)).executeQuery(anyString());
+        assertThat(coalesced("coalesced")).isEqualTo(5.0);
+    }
+
+    @Test
+    void getAnalysis_doesNotJoinAMaintenanceLoad() throws Exception {
+        dataService.seriesCache.enabled = false;
+        CountDownLatch release = new CountDownLatch(1);
+        when(questDBService.executeQuery(anyString())).thenAnswer(inv -> {
+            if (QueryBulkheads.isMaintenance()) {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return execResponseWithDataset(sampleAnalysisDataset);
+        });
+        ExecutorService pool = Executors.newSingleThreadExecutor(r -> new Thread(QueryBulkheads.maintenanceThread(r)));
+        try {
+            Future<List<Map<String, Object>>> warm = pool.submit(() -> dataService.getAnalysis("high52w"));
+            while (coalesced("leader") < 1) {
+                Thread.sleep(1);
+            }
+
+            assertThat(dataService.getAnalysis("high52w")).hasSize(2);
+            assertThat(coalesced("coalesced")).isZero();
+            release.countDown();
+            assertThat(warm.get(5, TimeUnit.SECONDS)).hasSize(2);
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+        verify(questDBService, times(2)).executeQuery(anyString());
+    }
+
+    private double coalesced(String result) {
+        Counter counter = queryMetrics.getRegistry().find("mdanalyzer.singleflight.calls")
+                .tag("flight", "analysis").tag("result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void streamData_streamsQuestDBRowsWithoutBuffering() throws Exception {
+        when(questDBService.exportQuery(anyString(), any())).thenAnswer(inv -> {
+            QuestDBService.RowHandler handler = inv.getArgument(1);
+            handler.row(new Object[]{"AAPL", "2023-10-01T00:00:00.000000Z", 10.0, 12.0, 9.0, 11.0, 1000L});
+            handler.row(new Object[]{"MSFT", "2023-10-01T00:00:00.000000Z", 20.0, 22.0, 19.0, 21.0, null});
+            return 2L;
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (SeriesStreamWriter writer = new SeriesStreamWriter(out, SeriesStreamWriter.Format.NDJSON, false, true, 1)) {
+            assertThat(dataService.streamData("historical_d", List.of("AAPL", "MSFT"), writer)).isEqualTo(2);
+        }
+
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+        verify(questDBService).exportQuery(queryCaptor.capture(), any());
+        assertThat(queryCaptor.getValue()).contains("FROM historical_d").contains("ticker IN ('AAPL', 'MSFT')");
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "{\"ticker\":\"AAPL\",\"time\":1696118400,\"value\":11.0,\"volume\":1000.0}\n"
+                        + "{\"ticker\":\"MSFT\",\"time\":1696118400,\"value\":21.0,\"volume\":null}\n");
+    }
+
+    @Test
+    void streamData_readsFromSeriesStore_whenTableLoaded() throws Exception {
+        when(seriesStore.isReady("indices_d")).thenReturn(true);
+        when(seriesStore.readSeries("indices_d", "GSPC", Long.MIN_VALUE, Long.MAX_VALUE))
+                .thenReturn(new OhlcvSeries.Builder(1).add(1696118400L, 1.0, 2.0, 0.5, 1.5, 10.0).build());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (SeriesStreamWriter writer = new SeriesStreamWriter(out, SeriesStreamWriter.Format.NDJSON, true, false, 1)) {
+            assertThat(dataService.streamData("indices_d", List.of("GSPC"), writer)).isEqualTo(1);
+        }
+
+        verifyNoInteractions(questDBService);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "{\"time\":1696118400,\"open\":1.0,\"high\":2.0,\"low\":0.5,\"close\":1.5,\"volume\":10.0}\n");
     }
 
     @Test
@@ -126,6 +316,41 @@ class DataServiceTest {
         assertThat(out).hasSize(2);
     }
 
+    @Test
+    void getData_epochTimestamps_castsDateAndScalesMicros() {
+        // Given
+        httpQueryBackend.epochTimestamps = true;
+        List<List<Object>> dataset = List.of(List.of("AAPL", 1696118400_000000L, 10.0, 12.0, 9.0, 11.0, 1000));
+        when(questDBService.executeQuery(anyString())).thenReturn(execResponseWithDataset(dataset));
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+
+        // When
+        List<Map<String, Object>> out = dataService.getData("stock", "full", "AAPL");
+
+        // Then
+        verify(questDBService).executeQuery(queryCaptor.capture());
+        assertThat(queryCaptor.getValue()).contains("CAST(date AS LONG) AS date");
+        assertThat(out.get(0)).containsEntry("time", 1696118400L)
+                              .containsEntry("close", 11.0);
+    }
+
+    @Test
+    void getAnalysis_epochTimestamps_castsDate() {
+        // Given
+        httpQueryBackend.epochTimestamps = true;
+        List<List<Object>> dataset = List.of(List.of(1696204800_000000L, 42.0));
+        when(questDBService.executeQuery(anyString())).thenReturn(execResponseWithDataset(dataset));
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+
+        // When
+        List<Map<String, Object>> out = dataService.getAnalysis("high52w");
+
+        // Then
+        verify(questDBService).executeQuery(queryCaptor.capture());
+        assertThat(queryCaptor.getValue()).startsWith("SELECT CAST(date AS LONG) AS date, percentage");
+        assertThat(out.get(0)).containsEntry("time", 1696204800L);
+    }
+
     @Test
     void getData_unknownType_returnsEmpty_andDoesNotQuery() {
         // When
@@ -209,5 +434,57 @@ class DataServiceTest {
         assertThat(out).isEmpty();
         verify(questDBService, never()).executeQuery(anyString());
     }
-}
 
+    @Test
+    void getRelativeStrength_mapsThePeriodColumns_andSkipsUnrankedAndOldRows() {
+        // Given: date, return_1m..12m, rank_1m..12m
+        List<List<Object>> dataset = new ArrayList<>();
+        dataset.add(Arrays.asList(1696118400000000L, 0.1, 0.2, null, null, 40.0, 60.0, null, null));
+        dataset.add(Arrays.asList(1696204800000000L, 0.3, null, null, null, 90.0, null, null, null));
+        dataset.add(Arrays.asList(1696291200000000L, 0.4, 0.5, null, null, 95.0, 70.0, null, null));
+        when(questDBService.executeQuery(anyString())).thenReturn(execResponseWithDataset(dataset));
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+
+        // When
+        List<Map<String, Object>> out = dataService.getRelativeStrength("3m", "AAPL", 1696118400L);
+
+        // Then
+        verify(questDBService).executeQuery(queryCaptor.capture());
+        assertThat(queryCaptor.getValue()).contains("FROM rs_rank_d").contains("ticker = 'AAPL'");
+        assertThat(out).hasSize(1);
+        assertThat(out.get(0)).containsEntry("time", 1696291200L)
+                               .containsEntry("value", 70.0)
+                               .containsEntry("return", 0.5);
+    }
+
+    @Test
+    void getRelativeStrength_unknownPeriod_returnsEmpty_andDoesNotQuery() {
+        assertThat(dataService.getRelativeStrength("2w", "AAPL", null)).isEmpty();
+        verify(questDBService, never()).executeQuery(anyString());
+    }
+
+    @Test
+    void getGroupBreadth_queriesTheGroupAndType_andSkipsOldRows() {
+        List<List<Object>> dataset = new ArrayList<>();
+        dataset.add(Arrays.asList(1696118400000000L, 40.0));
+        dataset.add(Arrays.asList(1696204800000000L, 55.5));
+        when(questDBService.executeQuery(anyString())).thenReturn(execResponseWithDataset(dataset));
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+
+        List<Map<String, Object>> out = dataService.getGroupBreadth("semis", "high52w", 1696118400L);
+
+        verify(questDBService).executeQuery(queryCaptor.capture());
+        assertThat(queryCaptor.getValue()).contains("FROM analysis_group").contains("grp = 'semis'").contains("type = 'high52w'");
+        assertThat(out).hasSize(1);
+        assertThat(out.get(0)).containsEntry("time", 1696204800L).containsEntry("value", 55.5);
+    }
+
+    @Test
+    void groupBreadthType_acceptsAnalysisAndMovingAverageTypes() {
+        assertThat(DataService.groupBreadthType("HIGH52W")).isEqualTo("high52w");
+        assertThat(DataService.groupBreadthType("ma_50")).isEqualTo("MA_50");
+        assertThat(DataService.groupBreadthType("ma_20_50")).isEqualTo("MA_20_50");
+        assertThat(DataService.groupBreadthType("ma_x")).isNull();
+        assertThat(DataService.groupBreadthType("breadth")).isNull();
+    }
+}
@@ -0,0 +1,60 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GroupBreadthCounterTest {
+
+    private static final long DAY = 86400;
+
+    private final List<String> rows = new ArrayList<>();
+
+    private GroupBreadthCounter counter(Map<String, Long> watermarks) {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        groups.put("TECH", List.of("A", "B"));
+        groups.put("MIXED", List.of("B", "C"));
+        return new GroupBreadthCounter(groups, watermarks,
+                (group, type, date, total, count) -> rows.add(group + "," + type + "," + date / DAY + "," + total + "," + count));
+    }
+
+    @Test
+    void add_countsEveryGroupOfTheTicker_perDateAndType() {
+        GroupBreadthCounter counter = counter(Map.of());
+
+        counter.add(DAY, "high52w", "A", true);
+        counter.add(DAY, "high52w", "B", false);
+        counter.add(DAY, "high52w", "C", true);
+        counter.add(DAY, "high52w", "OTHER", true);
+        counter.add(2 * DAY, "high52w", "B", true);
+        counter.add(2 * DAY, "MA_50_200", "C", false);
+        counter.finish();
+
+        assertThat(rows).containsExactly(
+                "TECH,high52w,1,2,1",
+                "MIXED,high52w,1,2,1",
+                "TECH,high52w,2,1,1",
+                "MIXED,high52w,2,1,1",
+                "MIXED,MA_50_200,2,1,0");
+    }
+
+    @Test
+    void add_writesAPairOnlyAfterItsOwnWatermark() {
+        GroupBreadthCounter counter = counter(Map.of(GroupBreadthCounter.key("TECH", "low52w"), DAY));
+
+        counter.add(DAY, "low52w", "B", true);
+        counter.add(2 * DAY, "low52w", "B", false);
+        counter.finish();
+
+        // MIXED has no rows yet, so it is backfilled from the first date
+        assertThat(rows).containsExactly(
+                "MIXED,low52w,1,1,1",
+                "TECH,low52w,2,1,0",
+                "MIXED,low52w,2,1,0");
+    }
+}
@@ -0,0 +1,147 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class HttpQueryBackendTest {
+
+    @Mock
+    private QuestDBService questDBService;
+
+    @InjectMocks
+    private HttpQueryBackend backend;
+
+    private ArgumentCaptor<String> queryCaptor;
+
+    @BeforeEach
+    void setUp() {
+        queryCaptor = ArgumentCaptor.forClass(String.class);
+        backend.sqlTemplates = new SqlTemplates();
+    }
+
+    private Map<String, Object> execResponseWithDataset(List<?> dataset) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("dataset", dataset);
+        Map<String, Object> root = new HashMap<>();
+        root.put("response", response);
+        return root;
+    }
+
+    @Test
+    void readSeries_quotesTicker_andDecodesColumns() {
+        when(questDBService.executeQuery(anyString())).thenReturn(execResponseWithDataset(List.of(
+                Arrays.asList("O'NEIL", "2023-10-01T00:00:00.000000Z", 10.0, 12.0, 9.0, 11.0, null))));
+
+        OhlcvSeries series = backend.readSeries("historical_d", "O'NEIL");
+
+        verify(questDBService).executeQuery(queryCaptor.capture());
+        assertThat(queryCaptor.getValue())
+                .isEqualTo("SELECT * FROM historical_d WHERE ticker = 'O''NEIL' ORDER BY date ASC;");
+        assertThat(series.size()).isEqualTo(1);
+        assertThat(series.time()[0]).isEqualTo(1696118400L);
+        assertThat(series.open()[0]).isEqualTo(10.0);
+        assertThat(series.close()[0]).isEqualTo(11.0);
+        assertThat(series.volume()[0]).isNaN();
+    }
+
+    @Test
+    void readAnalysis_epochTimestamps_castsDate() {
+        backend.epochTimestamps = true;
+        when(questDBService.executeQuery(anyString())).thenReturn(execResponseWithDataset(List.of(
+                List.of(1696204800_000000L, 42.0))));
+
+        ValueSeries series = backend.readAnalysis("high52w");
+
+        verify(questDBService).executeQuery(queryCaptor.capture());
+        assertThat(queryCaptor.getValue()).isEqualTo(
+                "SELECT CAST(date AS LONG) AS date, percentage FROM analysis_market WHERE type = 'high52w' ORDER BY date ASC");
+        assertThat(series.size()).isEqualTo(1);
+        assertThat(series.time()[0]).isEqualTo(1696204800L);
+        assertThat(series.value()[0]).isEqualTo(42.0);
+    }
+
+    @Test
+    void readRelativeStrength_readsThePeriodsReturnAndRank() {
+        when(questDBService.executeQuery(anyString())).thenReturn(execResponseWithDataset(List.of(
+                Arrays.asList(1696118400_000000L, 0.1, 0.2, null, null, 40.0, 60.0, null, null))));
+
+        RelativeStrengthSeries series = backend.readRelativeStrength("O'NEIL", "3m");
+
+        verify(questDBService).executeQuery(queryCaptor.capture());
+        assertThat(queryCaptor.getValue()).contains("FROM rs_rank_d WHERE ticker = 'O''NEIL'");
+        assertThat(series.size()).isEqualTo(1);
+        assertThat(series.time()[0]).isEqualTo(1696118400L);
+        assertThat(series.returns()[0]).isEqualTo(0.2);
+        assertThat(series.rank()[0]).isEqualTo(60.0);
+        assertThatThrownBy(() -> backend.readRelativeStrength("AAPL", "2w")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void readGroupBreadth_quotesGroupAndType() {
+        when(questDBService.executeQuery(anyString())).thenReturn(execResponseWithDataset(List.of(
+                List.of(1696118400_000000L, 55.5))));
+
+        ValueSeries series = backend.readGroupBreadth("semis", "MA_50");
+
+        verify(questDBService).executeQuery(queryCaptor.capture());
+        assertThat(queryCaptor.getValue()).contains("FROM analysis_group WHERE grp = 'semis' AND type = 'MA_50'");
+        assertThat(series.value()[0]).isEqualTo(55.5);
+    }
+
+    @Test
+    void readSeries_missingResponse_throws() {
+        when(questDBService.executeQuery(anyString())).thenReturn(new HashMap<>());
+
+        assertThatThrownBy(() -> backend.readSeries("indices_d", "^GSPC"))
+                .isInstanceOf(QueryBackend.QueryFailedException.class);
+    }
+
+    @Test
+    void readAnalysis_errorResponse_throwsWithTheError() {
+        Map<String, Object> root = new HashMap<>();
+        root.put("response", Map.of("error", "table does not exist"));
+        when(questDBService.executeQuery(anyString())).thenReturn(root);
+
+        assertThatThrownBy(() -> backend.readAnalysis("high52w"))
+                .isInstanceOf(QueryBackend.QueryFailedException.class)
+                .hasMessageContaining("table does not exist");
+    }
+
+    @Test
+    void readSeries_emptyDataset_returnsEmptySeries() {
+        when(questDBService.executeQuery(anyString())).thenReturn(execResponseWithDataset(List.of()));
+
+        assertThat(backend.readSeries("indices_d", "^GSPC").size()).isZero();
+    }
+
+    @Test
+    void toOhlcvSeries_growsPastInitialCapacity() {
+        List<Object> dataset = new java.util.ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            dataset.add(List.of("T", (long) i * 86_400_000_000L, 1.0, 2.0, 0.5, 1.5, (double) i));
+        }
+
+        OhlcvSeries series = HttpQueryBackend.toOhlcvSeries(dataset);
+
+        assertThat(series.size()).isEqualTo(100);
+        assertThat(series.time()[99]).isEqualTo(99L * 86_400);
+        assertThat(series.volume()[99]).isEqualTo(99.0);
+    }
+}
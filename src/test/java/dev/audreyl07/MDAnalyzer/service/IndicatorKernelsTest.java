@@ -0,0 +1,128 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class IndicatorKernelsTest {
+
+    private static final double NaN = Double.NaN;
+
+    private static final long DAY = 86400;
+
+    @Test
+    void sma_includesCurrentRow() {
+        double[] out = new double[5];
+        IndicatorKernels.sma(new double[]{1, 2, 3, 4, 5}, 5, 3, out);
+        assertThat(out).containsExactly(NaN, NaN, 2, 3, 4);
+    }
+
+    @Test
+    void ema_isSeededWithSma() {
+        double[] out = new double[5];
+        IndicatorKernels.ema(new double[]{1, 2, 3, 4, 5}, 5, 3, out);
+        assertThat(out).containsExactly(NaN, NaN, 2, 3, 4);
+    }
+
+    @Test
+    void sma_andEma_skipAMissingBar() {
+        double[] sma = new double[6];
+        IndicatorKernels.sma(new double[]{1, 2, NaN, 3, 4, 5}, 6, 3, sma);
+        assertThat(sma).containsExactly(NaN, NaN, NaN, 2, 3, 4);
+
+        double[] ema = new double[6];
+        IndicatorKernels.ema(new double[]{1, 2, NaN, 3, 4, 5}, 6, 3, ema);
+        assertThat(ema).containsExactly(NaN, NaN, NaN, 2, 3, 4);
+    }
+
+    @Test
+    void rsi_usesWilderSmoothing() {
+        double[] out = new double[5];
+        IndicatorKernels.rsi(new double[]{1, 2, 1, 2, 3}, 5, 2, out);
+        assertThat(out).containsExactly(new double[]{NaN, NaN, 50, 75, 87.5}, within(1e-9));
+    }
+
+    @Test
+    void rsi_withoutLosses_is100() {
+        double[] out = new double[4];
+        IndicatorKernels.rsi(new double[]{1, 2, 3, 4}, 4, 2, out);
+        assertThat(out[3]).isEqualTo(100);
+    }
+
+    @Test
+    void rsi_measuresTheChangeAcrossAMissingBar() {
+        double[] out = new double[6];
+        IndicatorKernels.rsi(new double[]{1, 2, NaN, 1, 2, 3}, 6, 2, out);
+        assertThat(out).containsExactly(new double[]{NaN, NaN, NaN, 50, 75, 87.5}, within(1e-9));
+    }
+
+    @Test
+    void bollinger_bandsAreKDeviationsAroundTheMean() {
+        double[] middle = new double[3];
+        double[] upper = new double[3];
+        double[] lower = new double[3];
+        IndicatorKernels.bollinger(new double[]{1, 3, 5}, 3, 2, 1, middle, upper, lower);
+        assertThat(middle).containsExactly(NaN, 2, 4);
+        assertThat(upper).containsExactly(NaN, 3, 5);
+        assertThat(lower).containsExactly(NaN, 1, 3);
+    }
+
+    @Test
+    void bollinger_skipsAMissingBar() {
+        double[] middle = new double[4];
+        double[] upper = new double[4];
+        double[] lower = new double[4];
+        IndicatorKernels.bollinger(new double[]{1, NaN, 3, 5}, 4, 2, 1, middle, upper, lower);
+        assertThat(middle).containsExactly(NaN, NaN, 2, 4);
+        assertThat(upper).containsExactly(NaN, NaN, 3, 5);
+        assertThat(lower).containsExactly(NaN, NaN, 1, 3);
+    }
+
+    @Test
+    void atr_usesTrueRange() {
+        double[] out = new double[3];
+        IndicatorKernels.atr(new double[]{2, 4, 5}, new double[]{1, 2, 3}, new double[]{1.5, 3, 4}, 3, 2, out);
+        assertThat(out).containsExactly(new double[]{NaN, 1.75, 1.875}, within(1e-9));
+    }
+
+    @Test
+    void atr_skipsAMissingBar() {
+        double[] out = new double[4];
+        IndicatorKernels.atr(new double[]{2, NaN, 4, 5}, new double[]{1, NaN, 2, 3}, new double[]{1.5, NaN, 3, 4}, 4, 2, out);
+        assertThat(out).containsExactly(new double[]{NaN, NaN, 1.75, 1.875}, within(1e-9));
+    }
+
+    @Test
+    void rollingMaxAndMin_followTheTimeWindow() {
+        long[] time = {0, 100 * DAY, 200 * DAY, 400 * DAY, 500 * DAY};
+        double[] values = {5, 3, 4, 1, 2};
+        double[] out = new double[5];
+        int[] scratch = new int[5];
+
+        IndicatorKernels.rollingMax(time, values, 5, IndicatorKernels.WINDOW_52W_SECONDS, out, scratch);
+        assertThat(out).containsExactly(5, 5, 5, 4, 4);
+
+        IndicatorKernels.rollingMin(time, values, 5, IndicatorKernels.WINDOW_52W_SECONDS, out, scratch);
+        assertThat(out).containsExactly(5, 3, 3, 1, 1);
+    }
+
+    @Test
+    void rollingMax_skipsMissingValues() {
+        double[] out = new double[3];
+        IndicatorKernels.rollingMax(new long[]{0, DAY, 2 * DAY}, new double[]{NaN, 2, NaN}, 3, DAY, out, new int[3]);
+        assertThat(out).containsExactly(NaN, 2, NaN);
+    }
+
+    @Test
+    void rollingMinAndMax_leaveAMissingBarEmpty_andKeepItsWindow() {
+        long[] time = {0, DAY, 2 * DAY, 3 * DAY};
+        double[] out = new double[4];
+
+        IndicatorKernels.rollingMax(time, new double[]{3, NaN, 1, 2}, 4, 2 * DAY, out, new int[4]);
+        assertThat(out).containsExactly(3, NaN, 3, 2);
+
+        IndicatorKernels.rollingMin(time, new double[]{1, NaN, 3, 2}, 4, 2 * DAY, out, new int[4]);
+        assertThat(out).containsExactly(1, NaN, 1, 2);
+    }
+}
@@ -0,0 +1,100 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static dev.audreyl07.MDAnalyzer.service.OhlcvSeriesFixtures.closes;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class IndicatorServiceTest {
+
+    @Mock
+    private DataService dataService;
+
+    private SimpleMeterRegistry registry;
+    private IndicatorService service;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        service = new IndicatorService();
+        service.dataService = dataService;
+        service.queryMetrics = new QueryMetrics(registry);
+    }
+
+    private double indicatorRequests(String result) {
+        return registry.get("mdanalyzer.cache.requests").tag("cache", "indicator").tag("result", result).counter().count();
+    }
+
+    @Test
+    void compute_cachesPerParameters_untilANewBarArrives() {
+        when(dataService.loadSeries("historical_d", "AAPL")).thenReturn(closes(0, 1, 2, 3, 4));
+
+        IndicatorService.Result first = service.compute("historical_d", "AAPL", IndicatorService.Indicator.SMA, 2, 2);
+        assertThat(service.compute("historical_d", "AAPL", IndicatorService.Indicator.SMA, 2, 3)).isSameAs(first);
+        assertThat(service.compute("historical_d", "AAPL", IndicatorService.Indicator.SMA, 3, 2)).isNotSameAs(first);
+        assertThat(indicatorRequests("hit")).isEqualTo(1.0);
+        assertThat(indicatorRequests("miss")).isEqualTo(2.0);
+
+        when(dataService.loadSeries("historical_d", "AAPL")).thenReturn(closes(0, 1, 2, 3, 4, 5));
+        IndicatorService.Result appended = service.compute("historical_d", "AAPL", IndicatorService.Indicator.SMA, 2, 2);
+        assertThat(appended).isNotSameAs(first);
+        assertThat(appended.size()).isEqualTo(5);
+    }
+
+    @Test
+    void rewrittenBars_dropTheResultsCoveringThem() {
+        when(dataService.loadSeries("historical_d", "AAPL")).thenReturn(closes(0, 1, 2, 3, 4));
+        IndicatorService.Result first = service.compute("historical_d", "AAPL", IndicatorService.Indicator.SMA, 2, 2);
+
+        // newest bar is 1970-01-04; an incremental run from that day keeps the result
+        service.onPipelineStageCompleted(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "19700104"));
+        service.onPipelineStageCompleted(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "indices_d", "19700101"));
+        assertThat(service.size()).isEqualTo(1);
+
+        when(dataService.loadSeries("historical_d", "AAPL")).thenReturn(closes(0, 1, 2, 3, 6));
+        service.onSeriesReloaded(new SeriesReloadedEvent("historical_d", "19700103"));
+        IndicatorService.Result rewritten = service.compute("historical_d", "AAPL", IndicatorService.Indicator.SMA, 2, 2);
+        assertThat(rewritten).isNotSameAs(first);
+        assertThat(rewritten.values()[0][3]).isEqualTo(4.5);
+    }
+
+    @Test
+    void compute_evictsLeastRecentlyUsed() {
+        service.cacheSize = 1;
+        when(dataService.loadSeries("historical_d", "AAPL")).thenReturn(closes(0, 1, 2, 3));
+
+        service.compute("historical_d", "AAPL", IndicatorService.Indicator.SMA, 2, 2);
+        service.compute("historical_d", "AAPL", IndicatorService.Indicator.EMA, 2, 2);
+
+        assertThat(service.size()).isEqualTo(1);
+    }
+
+    @Test
+    void toRows_skipsWarmUpAndRowsUpToSince() {
+        IndicatorService.Result result = IndicatorService.run(closes(0, 1, 3, 5, 7), IndicatorService.Indicator.BOLLINGER, 2, 1);
+
+        List<Map<String, Object>> rows = service.toRows(result, null);
+        assertThat(rows).hasSize(3);
+        assertThat(rows.get(0)).containsEntry("time", 86400L).containsEntry("middle", 2.0)
+                .containsEntry("upper", 3.0).containsEntry("lower", 1.0);
+
+        assertThat(service.toRows(result, 2 * 86400L)).extracting(row -> row.get("time")).containsExactly(3 * 86400L);
+    }
+
+    @Test
+    void parse_acceptsApiNamesCaseInsensitively() {
+        assertThat(IndicatorService.Indicator.parse("RSI")).isEqualTo(IndicatorService.Indicator.RSI);
+        assertThat(IndicatorService.Indicator.parse("high52w")).isEqualTo(IndicatorService.Indicator.HIGH_52W);
+        assertThat(IndicatorService.Indicator.parse("macd")).isNull();
+    }
+}
@@ -1,5 +1,6 @@
 package dev.audreyl07.MDAnalyzer.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -8,11 +9,16 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalMatchers.and;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -22,6 +28,21 @@ class MaintenanceServiceTest {
     @Mock
     private QuestDBService questDBService;
 
+    @Spy
+    private QueryMetrics queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+
+    @Spy
+    private SqlTemplates sqlTemplates = new SqlTemplates();
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private SeriesScan seriesScan;
+
+    @Mock
+    private TickerGroups tickerGroups;
+
     @Spy
     @InjectMocks
     private MaintenanceService maintenanceService;
@@ -44,6 +65,15 @@ class MaintenanceServiceTest {
         return root;
     }
 
+    private Map<String, Object> datasetResult(List<List<Object>> dataset) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("dataset", dataset);
+        Map<String, Object> root = new HashMap<>();
+        root.put("response", response);
+        root.put("duration", 1);
+        return root;
+    }
+
     private Map<String, Object> dmlFailResult(int duration) {
         Map<String, Object> response = new HashMap<>();
         response.put("dml", "FAIL");
@@ -154,6 +184,22 @@ class MaintenanceServiceTest {
                      .contains("ORDER BY date, time ASC");
     }
 
+    @Test
+    void insertIntoHistorical_publishesStageEvent_whenDmlOk() {
+        when(questDBService.getLatestDate(eq("historical_d"), isNull())).thenReturn("20240101");
+        when(questDBService.executeQuery(anyString())).thenReturn(Map.of("response", Map.of("dml", "OK")));
+        maintenanceService.insertIntoHistorical("d");
+        verify(eventPublisher).publishEvent(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20240101"));
+    }
+
+    @Test
+    void insertIntoHistorical_doesNotPublish_whenDmlMissing() {
+        when(questDBService.getLatestDate(eq("historical_d"), isNull())).thenReturn("20240101");
+        when(questDBService.executeQuery(anyString())).thenReturn(Map.of("ok", true));
+        maintenanceService.insertIntoHistorical("d");
+        verifyNoInteractions(eventPublisher);
+    }
+
     @Test
     void insertIntoHistorical_buildsQueryFor_indices() {
         when(questDBService.getLatestDate(eq("indices_d"), isNull())).thenReturn("20231231");
@@ -284,23 +330,55 @@ class MaintenanceServiceTest {
     }
 
     @Test
-    void insertIntoAnalysisMA_latestNull_returnsFalse() {
-        when(questDBService.getLatestDate(eq("analysis_market"), anyString())).thenReturn(null);
+    void insertIntoAnalysisMA_watermarksUnreadable_returnsFalse() {
+        when(questDBService.executeQuery(anyString())).thenReturn(Map.of("ok", true));
         Map<String, Object> out = maintenanceService.insertIntoAnalysisMA("MA");
         assertThat(out).isEqualTo(falseMap);
+        verify(eventPublisher, never()).publishEvent(any());
     }
 
     @Test
-    void insertIntoAnalysisMA_happy_callsExecuteWithFilters() {
-        when(questDBService.getLatestDate(eq("analysis_market"), anyString())).thenReturn("20240101");
-        when(questDBService.executeQuery(anyString())).thenReturn(Map.of("ok", true));
+    void insertIntoAnalysisMA_insertsEachTypeAfterItsOwnLatestDate() {
+        when(questDBService.executeQuery(contains("max(date)"))).thenReturn(datasetResult(List.of(
+                List.of("MA_50", 20240105), List.of("MA_200", 20240105))));
+        when(questDBService.executeQuery(contains("DISTINCT type FROM indicator_d_MA"))).thenReturn(datasetResult(List.of(
+                List.of("MA_50"), List.of("MA_200"), List.of("MA_20"))));
+        when(questDBService.executeQuery(contains("INSERT INTO analysis_market"))).thenReturn(dmlOkResult(5));
+
+        Map<String, Object> out = maintenanceService.insertIntoAnalysisMA("MA");
+
         ArgumentCaptor<String> qCap = ArgumentCaptor.forClass(String.class);
-        maintenanceService.insertIntoAnalysisMA("MA");
-        verify(questDBService).executeQuery(qCap.capture());
-        String q = qCap.getValue();
-        assertThat(q).contains("type LIKE 'MA_%'")
-                     .contains("AND date > to_date('20240101', 'yyyyMMdd')")
-                     .contains("GROUP BY type, date ORDER BY type, date ASC");
+        verify(questDBService, times(5)).executeQuery(qCap.capture());
+        List<String> inserts = qCap.getAllValues().stream().filter(q -> q.startsWith("INSERT")).toList();
+        assertThat(inserts).hasSize(3);
+        assertThat(inserts.get(0)).contains("type = 'MA_50'")
+                                  .contains("AND date > to_date('20240105', 'yyyyMMdd')")
+                                  .contains("GROUP BY type, date ORDER BY type, date ASC");
+        assertThat(inserts.get(1)).contains("type = 'MA_200'").contains("to_date('20240105', 'yyyyMMdd')");
+        // MA_20 has no analysis_market rows yet, so it is backfilled from the start
+        assertThat(inserts.get(2)).contains("type = 'MA_20'").contains("to_date('19700101', 'yyyyMMdd')");
+        assertThat(out).containsEntry("success", Boolean.TRUE)
+                       .containsEntry("duration", 15L)
+                       .containsEntry("types", 3);
+        verify(eventPublisher).publishEvent(new PipelineStageCompletedEvent(SqlTemplates.ANALYSIS_MA,
+                "analysis_market", "19700101"));
+    }
+
+    @Test
+    void insertIntoAnalysisMA_rerun_capsEveryTypeAtTheDayBeforeFrom() {
+        when(questDBService.executeQuery(contains("FROM tables()"))).thenReturn(dedupStatus("analysis_market", true));
+        when(questDBService.executeQuery(contains("max(date)"))).thenReturn(datasetResult(List.of(
+                List.of("MA_50", 20240105), List.of("MA_200", 20240101))));
+        when(questDBService.executeQuery(contains("DISTINCT type FROM indicator_d_MA"))).thenReturn(datasetResult(List.of(
+                List.of("MA_50"), List.of("MA_200"))));
+        when(questDBService.executeQuery(contains("INSERT INTO analysis_market"))).thenReturn(dmlOkResult(5));
+
+        maintenanceService.insertIntoAnalysisMA("MA", "20240104");
+
+        verify(questDBService).executeQuery(and(contains("type = 'MA_50'"), contains("to_date('20240103', 'yyyyMMdd')")));
+        verify(questDBService).executeQuery(and(contains("type = 'MA_200'"), contains("to_date('20240101', 'yyyyMMdd')")));
+        verify(eventPublisher).publishEvent(new PipelineStageCompletedEvent(SqlTemplates.ANALYSIS_MA,
+                "analysis_market", "20240101"));
     }
 
     // insertIntoIndicatorMACompare
@@ -338,56 +416,99 @@ class MaintenanceServiceTest {
                      .contains("'MA_10_30' AS type");
     }
 
+    // insertIntoIndicatorMAs
+    @Test
+    void insertIntoIndicatorMAs_invalidTypeOrIntervals_returnsFalse() {
+        assertThat(maintenanceService.insertIntoIndicatorMAs("x", List.of(50, 200), true)).isEqualTo(falseMap);
+        assertThat(maintenanceService.insertIntoIndicatorMAs("d", List.of(), true)).isEqualTo(falseMap);
+        verifyNoInteractions(questDBService);
+    }
+
+    @Test
+    void insertIntoIndicatorMAs_readsSourceOnceAndImportsAllTypesTogether() throws Exception {
+        when(questDBService.truncateTable("indicator_d_MA")).thenReturn(true);
+        when(questDBService.executeQuery(startsWith("SELECT DISTINCT ticker")))
+                .thenReturn(datasetResult(List.of(List.of("AAA"), List.of("BBB"))));
+        List<List<Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            rows.add(List.of("AAA", "2024-01-0" + (i + 1) + "T00:00:00.000000Z", 10.0 + i));
+        }
+        for (int i = 0; i < 4; i++) {
+            rows.add(List.of("BBB", "2024-01-0" + (i + 1) + "T00:00:00.000000Z", 20.0 - i));
+        }
+        when(questDBService.executeQuery(startsWith("SELECT ticker, date, close"))).thenReturn(datasetResult(rows));
+        List<String> imported = new ArrayList<>();
+        when(questDBService.importCsv(eq("indicator_d_MA"), any())).thenAnswer(inv -> {
+            imported.addAll(java.nio.file.Files.readAllLines(inv.getArgument(1)));
+            return Map.of("response", Map.of("status", "OK", "rowsImported", imported.size() - 1), "duration", 3);
+        });
+
+        Map<String, Object> out = maintenanceService.insertIntoIndicatorMAs("d", List.of(2, 1), true);
+
+        assertThat(out).containsEntry("success", Boolean.TRUE)
+                       .containsEntry("tickers", 2);
+        ArgumentCaptor<String> qCap = ArgumentCaptor.forClass(String.class);
+        verify(questDBService, times(2)).executeQuery(qCap.capture());
+        assertThat(qCap.getAllValues().get(1)).contains("FROM historical_d WHERE ticker IN ('AAA', 'BBB')");
+        assertThat(imported.get(0)).startsWith("type,date,ticker,value1,value2");
+        // per ticker: MA_1 -> 3 rows, MA_2 -> 2 rows, MA_1_2 -> 2 rows
+        assertThat(imported.stream().filter(l -> l.startsWith("MA_1,")).count()).isEqualTo(6);
+        assertThat(imported.stream().filter(l -> l.startsWith("MA_2,")).count()).isEqualTo(4);
+        assertThat(imported.stream().filter(l -> l.startsWith("MA_1_2,")).count()).isEqualTo(4);
+        assertThat(out).containsEntry("count", 14L);
+    }
+
+    @Test
+    void insertIntoIndicatorMAs_importFailure_returnsFalse() {
+        when(questDBService.executeQuery(startsWith("SELECT DISTINCT ticker")))
+                .thenReturn(datasetResult(List.of(List.of("AAA"))));
+        when(questDBService.executeQuery(startsWith("SELECT ticker, date, close"))).thenReturn(datasetResult(List.of(
+                List.of("AAA", "2024-01-01T00:00:00.000000Z", 1.0),
+                List.of("AAA", "2024-01-02T00:00:00.000000Z", 2.0))));
+        when(questDBService.importCsv(eq("indicator_d_MA"), any()))
+                .thenReturn(Map.of("response", Map.of("status", "Error"), "duration", 1));
+
+        Map<String, Object> out = maintenanceService.insertIntoIndicatorMAs("d", List.of(1), false);
+
+        assertThat(out).isEqualTo(falseMap);
+        verify(questDBService, never()).truncateTable(anyString());
+    }
+
     // updateAnalysisMA
     @Test
-    void updateAnalysisMA_happyPath_aggregatesDurationsAndReturnsSuccess() {
-        doReturn(dmlOkResult(10)).when(maintenanceService).insertIntoIndicatorMA("d", 50, true);
-        doReturn(dmlOkResult(20)).when(maintenanceService).insertIntoIndicatorMA("d", 200, false);
-        doReturn(dmlOkResult(30)).when(maintenanceService).insertIntoIndicatorMACompare("d", 50, 200);
-        doReturn(dmlOkResult(40)).when(maintenanceService).insertIntoAnalysisMA("MA");
+    void updateAnalysisMA_happyPath_runsSinglePassThenBreadth() {
+        Map<String, Object> indicators = new HashMap<>(Map.of("success", Boolean.TRUE, "duration", 60L));
+        doReturn(indicators).when(maintenanceService).insertIntoIndicatorMAs("d", List.of(50, 200), true);
+        doReturn(new HashMap<>(Map.of("success", Boolean.TRUE, "duration", 40L))).when(maintenanceService)
+                .insertIntoAnalysisMA("MA");
 
         Map<String, Object> out = maintenanceService.updateAnalysisMA("d", 50, 200);
         assertThat(out).containsEntry("success", Boolean.TRUE)
                        .containsEntry("duration", 100);
 
-        verify(maintenanceService).insertIntoIndicatorMA("d", 50, true);
-        verify(maintenanceService).insertIntoIndicatorMA("d", 200, false);
-        verify(maintenanceService).insertIntoIndicatorMACompare("d", 50, 200);
+        verify(maintenanceService).insertIntoIndicatorMAs("d", List.of(50, 200), true);
         verify(maintenanceService).insertIntoAnalysisMA("MA");
+        verify(maintenanceService, never()).insertIntoIndicatorMA(anyString(), anyInt(), anyBoolean());
+        verify(maintenanceService, never()).insertIntoIndicatorMACompare(anyString(), anyInt(), anyInt());
     }
 
     @Test
-    void updateAnalysisMA_missingResponseInFirstStep_returnsFalse() {
-        doReturn(new HashMap<>()).when(maintenanceService).insertIntoIndicatorMA("d", 50, true);
+    void updateAnalysisMA_indicatorStageFails_returnsFalse() {
+        doReturn(falseMap).when(maintenanceService).insertIntoIndicatorMAs("d", List.of(50, 200), true);
         Map<String, Object> out = maintenanceService.updateAnalysisMA("d", 50, 200);
         assertThat(out).isEqualTo(falseMap);
+        verify(maintenanceService, never()).insertIntoAnalysisMA(anyString());
     }
 
     @Test
-    void updateAnalysisMA_firstStepNotOk_returnsFalse() {
-        doReturn(dmlFailResult(5)).when(maintenanceService).insertIntoIndicatorMA("d", 50, true);
-        Map<String, Object> out = maintenanceService.updateAnalysisMA("d", 50, 200);
+    void updateAnalysisMA_breadthStepFails_returnsFalse() {
+        doReturn(Map.of("success", Boolean.TRUE)).when(maintenanceService)
+                .insertIntoIndicatorMAs("d", List.of(10, 50, 200), true);
+        doReturn(falseMap).when(maintenanceService).insertIntoAnalysisMA("MA");
+        Map<String, Object> out = maintenanceService.updateAnalysisMA("d", List.of(10, 50, 200));
         assertThat(out).isEqualTo(falseMap);
     }
 
-    @Test
-    void updateAnalysisMA_missingResponseInLaterSteps_returnsFalse() {
-        doReturn(dmlOkResult(10)).when(maintenanceService).insertIntoIndicatorMA("d", 50, true);
-        doReturn(new HashMap<>()).when(maintenanceService).insertIntoIndicatorMA("d", 200, false);
-        Map<String, Object> out1 = maintenanceService.updateAnalysisMA("d", 50, 200);
-        assertThat(out1).isEqualTo(falseMap);
-
-        doReturn(dmlOkResult(20)).when(maintenanceService).insertIntoIndicatorMA("d", 200, false);
-        doReturn(new HashMap<>()).when(maintenanceService).insertIntoIndicatorMACompare("d", 50, 200);
-        Map<String, Object> out2 = maintenanceService.updateAnalysisMA("d", 50, 200);
-        assertThat(out2).isEqualTo(falseMap);
-
-        doReturn(dmlOkResult(30)).when(maintenanceService).insertIntoIndicatorMACompare("d", 50, 200);
-        doReturn(new HashMap<>()).when(maintenanceService).insertIntoAnalysisMA("MA");
-        Map<String, Object> out3 = maintenanceService.updateAnalysisMA("d", 50, 200);
-        assertThat(out3).isEqualTo(falseMap);
-    }
-
     // insertIntoAnalysis52w
     @Test
     void insertIntoAnalysis52w_invalidType_returnsFalse() {
@@ -428,31 +549,329 @@ class MaintenanceServiceTest {
                      .contains("FROM indicator_d_52w");
     }
 
+    // insertIntoAnalysis52wHighLow
+    @Test
+    void insertIntoAnalysis52wHighLow_latestNull_returnsFalse() {
+        when(questDBService.getLatestDate(eq("analysis_market"), anyString())).thenReturn(null);
+        assertThat(maintenanceService.insertIntoAnalysis52wHighLow()).isEqualTo(falseMap);
+        verify(questDBService, never()).executeQuery(anyString());
+    }
+
+    @Test
+    void insertIntoAnalysis52wHighLow_singleScan_writesBothTypesPastTheirWatermarks() throws Exception {
+        when(questDBService.getLatestDate("analysis_market", " type = 'high52w'")).thenReturn("20240102");
+        when(questDBService.getLatestDate("analysis_market", " type = 'low52w'")).thenReturn("20240101");
+        when(questDBService.executeQuery(anyString())).thenReturn(datasetResult(List.of(
+                List.of("2024-01-02T00:00:00.000000Z", 20240102, 200, 10, 4),
+                List.of("2024-01-03T00:00:00.000000Z", 20240103, 100, 5, 20))));
+        List<String> imported = new ArrayList<>();
+        when(questDBService.importCsv(eq("analysis_market"), any())).thenAnswer(inv -> {
+            imported.addAll(java.nio.file.Files.readAllLines(inv.getArgument(1)));
+            return Map.of("response", Map.of("status", "OK"), "duration", 2);
+        });
+
+        Map<String, Object> out = maintenanceService.insertIntoAnalysis52wHighLow();
+
+        ArgumentCaptor<String> qCap = ArgumentCaptor.forClass(String.class);
+        verify(questDBService, times(1)).executeQuery(qCap.capture());
+        assertThat(qCap.getValue()).contains("FROM indicator_d_52w")
+                                   .contains("high_count")
+                                   .contains("low_count")
+                                   .contains("AND date > to_date('20240101', 'yyyyMMdd')")
+                                   .contains("GROUP BY date");
+        assertThat(imported).containsExactly(
+                "type,date,total,count,percentage",
+                "low52w,2024-01-02T00:00:00.000000Z,200,4,2.0",
+                "high52w,2024-01-03T00:00:00.000000Z,100,5,5.0",
+                "low52w,2024-01-03T00:00:00.000000Z,100,20,20.0");
+        assertThat(out).containsEntry("success", Boolean.TRUE)
+                       .containsEntry("count", 3L);
+        verify(eventPublisher).publishEvent(new PipelineStageCompletedEvent(SqlTemplates.ANALYSIS_52W_HIGH_LOW,
+                "analysis_market", "20240101"));
+    }
+
+    // insertIntoRelativeStrength
+    @Test
+    void insertIntoRelativeStrength_unknownType_returnsFalse() {
+        assertThat(maintenanceService.insertIntoRelativeStrength("w")).isEqualTo(falseMap);
+        verifyNoInteractions(questDBService, seriesScan);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void insertIntoRelativeStrength_ranksDatesPastTheWatermark_inWindows() throws Exception {
+        maintenanceService.rsChunkDays = 1;
+        when(questDBService.getLatestDate("rs_rank_d", null)).thenReturn("19700121");
+        when(questDBService.getEarliestDate("historical_d", null)).thenReturn("19700101");
+        when(questDBService.getLatestDate("historical_d", null)).thenReturn("19700123");
+        OhlcvSeries.Builder up = new OhlcvSeries.Builder(23);
+        OhlcvSeries.Builder down = new OhlcvSeries.Builder(23);
+        for (int i = 0; i < 23; i++) {
+            up.add(i * 86400L, 1 + i, 1 + i, 1 + i, 1 + i, 100);
+            down.add(i * 86400L, 100 - i, 100 - i, 100 - i, 100 - i, 100);
+        }
+        when(seriesScan.forEach(eq("historical_d"), any())).thenAnswer(inv -> {
+            BiConsumer<String, OhlcvSeries> consumer = inv.getArgument(1);
+            consumer.accept("UP", up.build());
+            consumer.accept("DOWN", down.build());
+            return true;
+        });
+        List<String> imported = new ArrayList<>();
+        when(questDBService.importCsv(eq("rs_rank_d"), any())).thenAnswer(inv -> {
+            imported.addAll(java.nio.file.Files.readAllLines(inv.getArgument(1)));
+            return Map.of("response", Map.of("status", "OK"), "duration", 2);
+        });
+
+        Map<String, Object> out = maintenanceService.insertIntoRelativeStrength("d");
+
+        verify(seriesScan, times(2)).forEach(eq("historical_d"), any());
+        assertThat(imported).hasSize(5);
+        assertThat(imported.get(0)).startsWith("date,ticker,return_1m");
+        assertThat(imported.get(1)).isEqualTo("1970-01-22T00:00:00.000000Z,UP,21.0,,,,100.0,,,");
+        assertThat(imported.get(2)).startsWith("1970-01-22T00:00:00.000000Z,DOWN,").endsWith(",0.0,,,");
+        assertThat(imported.get(3)).startsWith("1970-01-23T00:00:00.000000Z,UP,");
+        assertThat(out).containsEntry("success", Boolean.TRUE)
+                       .containsEntry("count", 4L)
+                       .containsEntry("dates", 2);
+        verify(eventPublisher).publishEvent(new PipelineStageCompletedEvent(MaintenanceService.RS_RANK,
+                "rs_rank_d", "19700121"));
+    }
+
+    @Test
+    void insertIntoRelativeStrength_failedScan_writesNothing() throws Exception {
+        when(questDBService.getLatestDate("rs_rank_d", null)).thenReturn("19700121");
+        when(questDBService.getEarliestDate("historical_d", null)).thenReturn("19700101");
+        when(questDBService.getLatestDate("historical_d", null)).thenReturn("19700123");
+        when(seriesScan.forEach(eq("historical_d"), any())).thenReturn(false);
+
+        assertThat(maintenanceService.insertIntoRelativeStrength("d")).isEqualTo(falseMap);
+        verify(questDBService, never()).importCsv(anyString(), any());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void insertIntoRelativeStrength_emptyTarget_startsAtTheFirstSourceDate() throws Exception {
+        maintenanceService.rsChunkDays = 1;
+        when(questDBService.getLatestDate("rs_rank_d", null)).thenReturn("19710101");
+        when(questDBService.getEarliestDate("historical_d", null)).thenReturn("20240102");
+        when(questDBService.getLatestDate("historical_d", null)).thenReturn("20240105");
+        when(seriesScan.forEach(eq("historical_d"), any())).thenReturn(true);
+
+        Map<String, Object> out = maintenanceService.insertIntoRelativeStrength("d");
+
+        // one window per day from 20240102 to 20240105, none for the years before the first source date
+        verify(seriesScan, times(4)).forEach(eq("historical_d"), any());
+        assertThat(out).containsEntry("success", Boolean.TRUE);
+    }
+
+    // insertIntoGroupBreadth
+    @Test
+    void insertIntoGroupBreadth_scansEachIndicatorTableOnce_fromTheOldestGroupWatermark() throws Exception {
+        Map<String, List<String>> groups = new java.util.LinkedHashMap<>();
+        groups.put("TECH", List.of("A", "B"));
+        when(tickerGroups.getAll()).thenReturn(groups);
+        when(questDBService.executeQuery(contains("FROM analysis_group"))).thenReturn(datasetResult(List.of(
+                List.of("TECH", "high52w", 19700102))));
+        when(questDBService.executeQuery(contains("DISTINCT type FROM indicator_d_MA"))).thenReturn(datasetResult(List.of(
+                List.of("MA_50_200"))));
+        List<String> queries = new ArrayList<>();
+        when(questDBService.streamQuery(anyString(), any())).thenAnswer(inv -> {
+            String query = inv.getArgument(0);
+            queries.add(query);
+            QuestDBService.RowHandler handler = inv.getArgument(1);
+            if (query.contains("FROM indicator_d_52w")) {
+                handler.row(new Object[]{"1970-01-02T00:00:00.000000Z", "A", 1L, 0L});
+                handler.row(new Object[]{"1970-01-02T00:00:00.000000Z", "B", 0L, 0L});
+                handler.row(new Object[]{"1970-01-03T00:00:00.000000Z", "A", 1L, 1L});
+                handler.row(new Object[]{"1970-01-03T00:00:00.000000Z", "C", 1L, 1L});
+                return 4L;
+            }
+            handler.row(new Object[]{"MA_50_200", "1970-01-03T00:00:00.000000Z", "B", 1L});
+            return 1L;
+        });
+        List<String> imported = new ArrayList<>();
+        when(questDBService.importCsv(eq("analysis_group"), any())).thenAnswer(inv -> {
+            imported.addAll(java.nio.file.Files.readAllLines(inv.getArgument(1)));
+            return Map.of("response", Map.of("status", "OK"), "duration", 2);
+        });
+
+        Map<String, Object> out = maintenanceService.insertIntoGroupBreadth();
+
+        // low52w has no rows for TECH yet, so both tables are read from the start
+        assertThat(queries).hasSize(2);
+        assertThat(queries.get(0)).contains("FROM indicator_d_52w").contains("to_date('19700101', 'yyyyMMdd')");
+        assertThat(queries.get(1)).contains("FROM indicator_d_MA").contains("to_date('19700101', 'yyyyMMdd')");
+        assertThat(imported).containsExactly(
+                "grp,type,date,total,count,percentage",
+                "TECH,low52w,1970-01-02T00:00:00.000000Z,2,0,0.0",
+                "TECH,high52w,1970-01-03T00:00:00.000000Z,1,1,100.0",
+                "TECH,low52w,1970-01-03T00:00:00.000000Z,1,1,100.0",
+                "TECH,MA_50_200,1970-01-03T00:00:00.000000Z,1,1,100.0");
+        assertThat(out).containsEntry("success", Boolean.TRUE)
+                       .containsEntry("count", 4L)
+                       .containsEntry("groups", 1);
+        verify(eventPublisher).publishEvent(new PipelineStageCompletedEvent(MaintenanceService.GROUP_BREADTH,
+                "analysis_group", "19700101"));
+    }
+
+    @Test
+    void insertIntoGroupBreadth_newMAType_isScannedFromTheStart() throws Exception {
+        when(tickerGroups.getAll()).thenReturn(Map.of("TECH", List.of("A")));
+        when(questDBService.executeQuery(contains("FROM analysis_group"))).thenReturn(datasetResult(List.of(
+                List.of("TECH", "high52w", 19700103), List.of("TECH", "low52w", 19700103),
+                List.of("TECH", "MA_50", 19700103))));
+        when(questDBService.executeQuery(contains("DISTINCT type FROM indicator_d_MA"))).thenReturn(datasetResult(List.of(
+                List.of("MA_50"), List.of("MA_20"))));
+        List<String> queries = new ArrayList<>();
+        when(questDBService.streamQuery(anyString(), any())).thenAnswer(inv -> {
+            String query = inv.getArgument(0);
+            queries.add(query);
+            if (query.contains("FROM indicator_d_MA")) {
+                QuestDBService.RowHandler handler = inv.getArgument(1);
+                handler.row(new Object[]{"MA_20", "1970-01-02T00:00:00.000000Z", "A", 1L});
+                handler.row(new Object[]{"MA_50", "1970-01-02T00:00:00.000000Z", "A", 1L});
+                return 2L;
+            }
+            return 0L;
+        });
+        List<String> imported = new ArrayList<>();
+        when(questDBService.importCsv(eq("analysis_group"), any())).thenAnswer(inv -> {
+            imported.addAll(java.nio.file.Files.readAllLines(inv.getArgument(1)));
+            return Map.of("response", Map.of("status", "OK"), "duration", 2);
+        });
+
+        Map<String, Object> out = maintenanceService.insertIntoGroupBreadth();
+
+        // MA_20 has no analysis_group rows yet, so indicator_d_MA is read from the start
+        assertThat(queries.get(0)).contains("FROM indicator_d_52w").contains("to_date('19700103', 'yyyyMMdd')");
+        assertThat(queries.get(1)).contains("FROM indicator_d_MA").contains("to_date('19700101', 'yyyyMMdd')");
+        assertThat(imported).containsExactly(
+                "grp,type,date,total,count,percentage",
+                "TECH,MA_20,1970-01-02T00:00:00.000000Z,1,1,100.0");
+        assertThat(out).containsEntry("success", Boolean.TRUE);
+    }
+
+    @Test
+    void insertIntoGroupBreadth_failedRead_publishesNothing() throws Exception {
+        when(tickerGroups.getAll()).thenReturn(Map.of("TECH", List.of("A")));
+        when(questDBService.executeQuery(anyString())).thenReturn(datasetResult(List.of()));
+        when(questDBService.streamQuery(anyString(), any())).thenReturn(-1L);
+
+        assertThat(maintenanceService.insertIntoGroupBreadth()).isEqualTo(falseMap);
+        verify(questDBService, never()).importCsv(anyString(), any());
+        verifyNoInteractions(eventPublisher);
+    }
+
+    // migrateDedup and re-runs
+    private Map<String, Object> dedupStatus(String table, boolean dedup) {
+        return datasetResult(List.of(List.of(table, dedup)));
+    }
+
+    @Test
+    void migrateDedup_enablesKeysOnExistingTables_andReportsMissingOnes() {
+        when(questDBService.executeQuery(contains("FROM tables()"))).thenReturn(datasetResult(List.of(
+                List.of("historical_d", false), List.of("analysis_group", true))));
+        when(questDBService.executeQuery(startsWith("ALTER TABLE historical_d ")))
+                .thenReturn(Map.of("response", Map.of("ddl", "OK")));
+        when(questDBService.executeQuery(startsWith("ALTER TABLE analysis_group ")))
+                .thenReturn(Map.of("response", Map.of("error", "table busy")));
+
+        Map<String, Object> out = maintenanceService.migrateDedup();
+
+        verify(questDBService).executeQuery("ALTER TABLE historical_d DEDUP ENABLE UPSERT KEYS(date, ticker);");
+        verify(questDBService).executeQuery("ALTER TABLE analysis_group DEDUP ENABLE UPSERT KEYS(date, grp, type);");
+        Map<String, Object> tables = (Map<String, Object>) out.get("tables");
+        assertThat(tables).containsOnlyKeys(SqlTemplates.DEDUP_KEYS.keySet())
+                          .containsEntry("historical_d", "OK")
+                          .containsEntry("analysis_group", "FAILED")
+                          .containsEntry("rs_rank_d", "MISSING");
+        assertThat(out).containsEntry("success", Boolean.FALSE);
+    }
+
+    @Test
+    void migrateDedup_statusUnavailable_returnsFalse() {
+        when(questDBService.executeQuery(anyString())).thenReturn(Map.of("error", "down"));
+        assertThat(maintenanceService.migrateDedup()).isEqualTo(falseMap);
+        verify(questDBService, times(1)).executeQuery(anyString());
+    }
+
+    @Test
+    void insertIntoHistorical_from_rewritesFromTheDay_andPublishesTheEarlierWatermark() {
+        when(questDBService.getLatestDate(eq("historical_d"), isNull())).thenReturn("20250310");
+        when(questDBService.executeQuery(contains("FROM tables()"))).thenReturn(dedupStatus("historical_d", true));
+        when(questDBService.executeQuery(startsWith("INSERT INTO"))).thenReturn(Map.of("response", Map.of("dml", "OK")));
+
+        maintenanceService.insertIntoHistorical("d", "20250301");
+
+        verify(questDBService).executeQuery(contains("date > '20250228'"));
+        verify(eventPublisher).publishEvent(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20250228"));
+    }
+
+    @Test
+    void insertIntoHistorical_fromAfterTheLatestDate_appendsAsUsual() {
+        when(questDBService.getLatestDate(eq("historical_d"), isNull())).thenReturn("20250310");
+        when(questDBService.executeQuery(contains("FROM tables()"))).thenReturn(dedupStatus("historical_d", true));
+        when(questDBService.executeQuery(startsWith("INSERT INTO"))).thenReturn(Map.of("ok", true));
+
+        maintenanceService.insertIntoHistorical("d", "20250401");
+
+        verify(questDBService).executeQuery(contains("date > '20250310'"));
+    }
+
+    @Test
+    void reRun_withoutDedupOrWithMalformedFrom_isRejected() {
+        when(questDBService.getLatestDate(eq("historical_d"), isNull())).thenReturn("20250310");
+        when(questDBService.executeQuery(contains("FROM tables()"))).thenReturn(dedupStatus("historical_d", false));
+
+        assertThat(maintenanceService.insertIntoHistorical("d", "20250301")).isEqualTo(falseMap);
+        assertThat(maintenanceService.insertIntoHistorical("d", "2025-03-01")).isEqualTo(falseMap);
+        assertThat(maintenanceService.insertIntoGroupBreadth("20250301")).isEqualTo(falseMap);
+        verify(questDBService, never()).executeQuery(startsWith("INSERT INTO"));
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void insertIntoGroupBreadth_from_capsEveryPairWatermark() throws Exception {
+        when(tickerGroups.getAll()).thenReturn(Map.of("TECH", List.of("A")));
+        when(questDBService.executeQuery(contains("FROM tables()"))).thenReturn(dedupStatus("analysis_group", true));
+        when(questDBService.executeQuery(contains("FROM analysis_group"))).thenReturn(datasetResult(List.of(
+                List.of("TECH", "high52w", 20250310), List.of("TECH", "low52w", 20250310),
+                List.of("TECH", "MA_50", 20250310))));
+        when(questDBService.executeQuery(contains("DISTINCT type FROM indicator_d_MA"))).thenReturn(datasetResult(List.of(
+                List.of("MA_50"))));
+        List<String> queries = new ArrayList<>();
+        when(questDBService.streamQuery(anyString(), any())).thenAnswer(inv -> {
+            queries.add(inv.getArgument(0));
+            return 0L;
+        });
+
+        Map<String, Object> out = maintenanceService.insertIntoGroupBreadth("20250301");
+
+        assertThat(out).containsEntry("success", Boolean.TRUE);
+        assertThat(queries).hasSize(2).allMatch(query -> query.contains("to_date('20250228', 'yyyyMMdd')"));
+    }
+
     // updateAnalysis52w
     @Test
     void updateAnalysis52w_happyPath_aggregatesDurationsAndReturnsSuccess() {
-        doReturn(dmlOkResult(5)).when(maintenanceService).insertIntoIndicator52w("d");
-        doReturn(dmlOkResult(6)).when(maintenanceService).insertIntoAnalysis52w("high52w");
-        doReturn(dmlOkResult(7)).when(maintenanceService).insertIntoAnalysis52w("low52w");
+        doReturn(dmlOkResult(5)).when(maintenanceService).insertIntoIndicator52w("d", null);
+        doReturn(new HashMap<>(Map.of("success", Boolean.TRUE, "duration", 13L)))
+                .when(maintenanceService).insertIntoAnalysis52wHighLow(null);
         Map<String, Object> out = maintenanceService.updateAnalysis52w("d");
         assertThat(out).containsEntry("success", Boolean.TRUE)
                        .containsEntry("duration", 18);
-        verify(maintenanceService).insertIntoIndicator52w("d");
-        verify(maintenanceService).insertIntoAnalysis52w("high52w");
-        verify(maintenanceService).insertIntoAnalysis52w("low52w");
+        verify(maintenanceService).insertIntoIndicator52w("d", null);
+        verify(maintenanceService).insertIntoAnalysis52wHighLow(null);
+        verify(maintenanceService, never()).insertIntoAnalysis52w(anyString(), any());
     }
 
     @Test
-    void updateAnalysis52w_missingResponseInAnyStep_returnsFalse() {
-        doReturn(new HashMap<>()).when(maintenanceService).insertIntoIndicator52w("d");
-        assertThat(maintenanceService.updateAnalysis52w("d")).isEqualTo(falseMap);
-
-        doReturn(dmlOkResult(5)).when(maintenanceService).insertIntoIndicator52w("d");
-        doReturn(new HashMap<>()).when(maintenanceService).insertIntoAnalysis52w("high52w");
+    void updateAnalysis52w_failureInAnyStep_returnsFalse() {
+        doReturn(new HashMap<>()).when(maintenanceService).insertIntoIndicator52w("d", null);
         assertThat(maintenanceService.updateAnalysis52w("d")).isEqualTo(falseMap);
 
-        doReturn(dmlOkResult(6)).when(maintenanceService).insertIntoAnalysis52w("high52w");
-        doReturn(new HashMap<>()).when(maintenanceService).insertIntoAnalysis52w("low52w");
+        doReturn(dmlOkResult(5)).when(maintenanceService).insertIntoIndicator52w("d", null);
+        doReturn(falseMap).when(maintenanceService).insertIntoAnalysis52wHighLow(null);
         assertThat(maintenanceService.updateAnalysis52w("d")).isEqualTo(falseMap);
     }
 }
@@ -0,0 +1,100 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class MovingAverageCalculatorTest {
+
+    private record Row(String type, String date, double value1, double value2, long total,
+                       double difference, double previousDifference, long trend, double minimumTrend, double trending) {
+    }
+
+    private static List<Row> run(List<Integer> intervals, double... closes) {
+        String[] dates = new String[closes.length];
+        for (int i = 0; i < closes.length; i++) {
+            dates[i] = "d" + i;
+        }
+        List<Row> rows = new ArrayList<>();
+        new MovingAverageCalculator(intervals).compute("AAA", dates, closes, closes.length,
+                (type, date, ticker, value1, value2, total, difference, previousDifference, percentage,
+                 trend, minimumTrend, trending) -> rows.add(new Row(type, date, value1, value2, total,
+                        difference, previousDifference, trend, minimumTrend, trending)));
+        return rows;
+    }
+
+    @Test
+    void rollingAverage_excludesCurrentRow() {
+        double[] out = new double[5];
+        MovingAverageCalculator.rollingAverage(new double[]{1, 2, 3, 4, 5}, 5, 2, out);
+        assertThat(out[0]).isNaN();
+        assertThat(out[1]).isNaN();
+        assertThat(out[2]).isEqualTo(1.5);
+        assertThat(out[3]).isEqualTo(2.5);
+        assertThat(out[4]).isEqualTo(3.5);
+    }
+
+    @Test
+    void compute_maRows_matchWindowFunctionSemantics() {
+        List<Row> rows = run(List.of(2), 10, 11, 12, 13, 9);
+
+        assertThat(rows).extracting(Row::type).containsOnly("MA_2");
+        assertThat(rows).hasSize(3);
+
+        Row first = rows.get(0);
+        assertThat(first.date()).isEqualTo("d2");
+        assertThat(first.value1()).isEqualTo(12.0);
+        assertThat(first.value2()).isEqualTo(10.5);
+        assertThat(first.total()).isEqualTo(1);
+        assertThat(first.previousDifference()).isNaN();
+        assertThat(first.trend()).isEqualTo(0); // 1 - total when previous difference is null
+        assertThat(first.trending()).isEqualTo(1.0);
+
+        Row second = rows.get(1);
+        assertThat(second.difference()).isEqualTo(1.5);
+        assertThat(second.previousDifference()).isEqualTo(1.5);
+        assertThat(second.trend()).isEqualTo(2);
+
+        Row third = rows.get(2);
+        assertThat(third.difference()).isCloseTo(-3.5, within(1e-9));
+        assertThat(third.trend()).isEqualTo(-2); // sign flip
+        assertThat(third.minimumTrend()).isEqualTo(-2.0);
+        assertThat(third.trending()).isEqualTo(1.0);
+    }
+
+    @Test
+    void compute_emitsPairwiseCrossoversFromLongerInterval() {
+        List<Row> rows = run(List.of(3, 1, 2), 1, 2, 3, 4, 5, 6);
+
+        assertThat(rows).extracting(Row::type).containsOnly("MA_1", "MA_2", "MA_3", "MA_1_2", "MA_1_3", "MA_2_3");
+        List<Row> compare = rows.stream().filter(r -> r.type().equals("MA_1_3")).toList();
+        assertThat(compare).hasSize(3);
+        assertThat(compare.get(0).date()).isEqualTo("d3");
+        assertThat(compare.get(0).value1()).isEqualTo(3.0); // MA_1 at d3
+        assertThat(compare.get(0).value2()).isEqualTo(2.0); // MA_3 at d3
+        assertThat(compare.get(0).total()).isEqualTo(1);
+        assertThat(compare.get(2).total()).isEqualTo(3);
+    }
+
+    @Test
+    void compute_reusesBuffersAcrossTickersOfDifferentLength() {
+        MovingAverageCalculator calculator = new MovingAverageCalculator(List.of(1));
+        List<String> dates = new ArrayList<>();
+        MovingAverageCalculator.RowSink sink = (type, date, ticker, value1, value2, total, difference,
+                                                previousDifference, percentage, trend, minimumTrend, trending) -> dates.add(date);
+        calculator.compute("A", new String[]{"a0", "a1"}, new double[]{1, 2}, 2, sink);
+        calculator.compute("B", new String[]{"b0", "b1", "b2", "b3"}, new double[]{1, 2, 3, 4}, 4, sink);
+        assertThat(dates).containsExactly("a1", "b1", "b2", "b3");
+    }
+
+    @Test
+    void constructor_rejectsMissingIntervals() {
+        assertThatThrownBy(() -> new MovingAverageCalculator(List.of(0, -5)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,76 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+
+/**
+ * Daily series built from closes, and stubs handing a table of them to {@link SeriesScan} or {@link SeriesStore}.
+ */
+final class OhlcvSeriesFixtures {
+
+    static final long DAY = 86400;
+
+    private OhlcvSeriesFixtures() {
+    }
+
+    /**
+     * One bar per day from firstDay, open, high and low equal to the close, volume 100.
+     */
+    static OhlcvSeries closes(long firstDay, double... close) {
+        OhlcvSeries.Builder builder = new OhlcvSeries.Builder(close.length);
+        for (int i = 0; i < close.length; i++) {
+            builder.add((firstDay + i) * DAY, close[i], close[i], close[i], close[i], 100);
+        }
+        return builder.build();
+    }
+
+    /**
+     * One bar per day from firstDay, high and low one above and below the close, volume 100 times the bar number.
+     */
+    static OhlcvSeries bars(long firstDay, double... close) {
+        OhlcvSeries.Builder builder = new OhlcvSeries.Builder(close.length);
+        for (int i = 0; i < close.length; i++) {
+            builder.add((firstDay + i) * DAY, close[i], close[i] + 1, close[i] - 1, close[i], 100 * (i + 1));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return time of the newest bar of all series
+     */
+    static long maxTime(Map<String, OhlcvSeries> series) {
+        return series.values().stream().mapToLong(s -> s.time()[s.size() - 1]).max().orElseThrow();
+    }
+
+    /**
+     * Makes the scan report the table's newest bar and hand the series to every forEach.
+     */
+    @SuppressWarnings("unchecked")
+    static void scanOf(SeriesScan scan, String table, Map<String, OhlcvSeries> series) throws IOException {
+        lenient().when(scan.latestTime(table)).thenReturn(maxTime(series));
+        lenient().when(scan.forEach(eq(table), any())).thenAnswer(inv -> {
+            series.forEach((BiConsumer<String, OhlcvSeries>) inv.getArgument(1));
+            return true;
+        });
+        lenient().when(scan.forEach(eq(table), any(List.class), anyLong(), any())).thenAnswer(inv -> {
+            series.forEach((BiConsumer<String, OhlcvSeries>) inv.getArgument(3));
+            return true;
+        });
+    }
+
+    /**
+     * Makes the store serve the series as the loaded table.
+     */
+    static void storeOf(SeriesStore store, String table, Map<String, OhlcvSeries> series) {
+        lenient().when(store.isReady(table)).thenReturn(true);
+        lenient().when(store.getMaxTime(table)).thenReturn(maxTime(series));
+        lenient().when(store.readTable(table)).thenReturn(series);
+    }
+}
@@ -0,0 +1,123 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PgWireQueryBackendTest {
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    private PgWireQueryBackend backend;
+
+    @BeforeEach
+    void setUp() {
+        backend = new PgWireQueryBackend();
+        backend.dataSource = dataSource;
+        backend.queryLog = new QueryLog();
+        backend.sqlTemplates = new SqlTemplates();
+    }
+
+    @Test
+    void readSeries_bindsTicker_andReadsPrimitiveColumns() throws SQLException {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getLong(1)).thenReturn(1696118400_000000L);
+        when(resultSet.getDouble(2)).thenReturn(10.0);
+        when(resultSet.getDouble(3)).thenReturn(12.0);
+        when(resultSet.getDouble(4)).thenReturn(9.0);
+        when(resultSet.getDouble(5)).thenReturn(11.0);
+        when(resultSet.getDouble(6)).thenReturn(0.0);
+        when(resultSet.wasNull()).thenReturn(true);
+
+        OhlcvSeries series = backend.readSeries("historical_d", "AAPL' OR '1'='1");
+
+        verify(connection).prepareStatement(
+                "SELECT CAST(date AS LONG) AS date, open, high, low, close, vol FROM historical_d WHERE ticker = ? ORDER BY date ASC");
+        verify(statement).setObject(1, "AAPL' OR '1'='1");
+        assertThat(series.size()).isEqualTo(1);
+        assertThat(series.time()[0]).isEqualTo(1696118400L);
+        assertThat(series.open()[0]).isEqualTo(10.0);
+        assertThat(series.close()[0]).isEqualTo(11.0);
+        assertThat(series.volume()[0]).isNaN();
+    }
+
+    @Test
+    void readAnalysis_bindsType() throws SQLException {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getLong(1)).thenReturn(1696204800_000000L);
+        when(resultSet.getDouble(2)).thenReturn(42.0);
+
+        ValueSeries series = backend.readAnalysis("MA_50_200");
+
+        verify(statement).setObject(1, "MA_50_200");
+        assertThat(series.size()).isEqualTo(1);
+        assertThat(series.time()[0]).isEqualTo(1696204800L);
+        assertThat(series.value()[0]).isEqualTo(42.0);
+    }
+
+    @Test
+    void readRelativeStrength_bindsTicker_andReadsThePeriodColumns() throws SQLException {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getLong(1)).thenReturn(1696204800_000000L);
+        when(resultSet.getDouble(5)).thenReturn(0.4);
+        when(resultSet.getDouble(9)).thenReturn(80.0);
+
+        RelativeStrengthSeries series = backend.readRelativeStrength("AAPL", "12m");
+
+        verify(statement).setObject(1, "AAPL");
+        assertThat(series.size()).isEqualTo(1);
+        assertThat(series.returns()[0]).isEqualTo(0.4);
+        assertThat(series.rank()[0]).isEqualTo(80.0);
+    }
+
+    @Test
+    void readSeries_connectionFailure_throws() throws SQLException {
+        when(dataSource.getConnection()).thenThrow(new SQLException("refused"));
+
+        assertThatThrownBy(() -> backend.readSeries("indices_d", "^GSPC"))
+                .isInstanceOf(QueryBackend.QueryFailedException.class)
+                .hasMessageContaining("refused");
+    }
+
+    @Test
+    void readSeries_unknownTable_isRejected() throws SQLException {
+        assertThatThrownBy(() -> backend.readSeries("historical_d; DROP TABLE x", "AAPL"))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(dataSource, never()).getConnection();
+    }
+}
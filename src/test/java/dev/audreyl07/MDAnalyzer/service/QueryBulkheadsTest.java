@@ -0,0 +1,132 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryBulkheadsTest {
+
+    private SimpleMeterRegistry registry;
+    private QueryBulkheads bulkheads;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        bulkheads = new QueryBulkheads();
+        bulkheads.queryMetrics = new QueryMetrics(registry);
+        bulkheads.readMaxConcurrent = 2;
+        bulkheads.readTimeoutMillis = 50;
+        bulkheads.maintenanceMaxConcurrent = 1;
+        bulkheads.maintenanceTimeoutMillis = 50;
+        bulkheads.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        QueryBulkheads.setMaintenance(false);
+    }
+
+    private double rejected(String bulkhead) {
+        return registry.get("mdanalyzer.bulkhead.rejected").tag("bulkhead", bulkhead).counter().count();
+    }
+
+    @Test
+    void acquire_rejectsOnceLimitIsReached_andCountsIt() {
+        QueryBulkheads.Permit first = bulkheads.acquire();
+        QueryBulkheads.Permit second = bulkheads.acquire();
+
+        assertThatThrownBy(() -> bulkheads.acquire()).isInstanceOf(QueryBulkheads.BulkheadFullException.class);
+        assertThat(rejected("read")).isEqualTo(1.0);
+        assertThat(registry.get("mdanalyzer.bulkhead.active").tag("bulkhead", "read").gauge().value()).isEqualTo(2.0);
+
+        first.close();
+        bulkheads.acquire().close();
+        second.close();
+        assertThat(bulkheads.getRead().available()).isEqualTo(2);
+    }
+
+    @Test
+    void maintenance_hasItsOwnLimit() {
+        QueryBulkheads.Permit maintenance = QueryBulkheads.runAsMaintenance(bulkheads::acquire);
+
+        assertThatThrownBy(() -> QueryBulkheads.runAsMaintenance(bulkheads::acquire))
+                .isInstanceOf(QueryBulkheads.BulkheadFullException.class);
+        assertThat(rejected("maintenance")).isEqualTo(1.0);
+
+        // a full maintenance bulkhead leaves reads untouched
+        bulkheads.acquire().close();
+        assertThat(rejected("read")).isZero();
+        maintenance.close();
+    }
+
+    @Test
+    void export_hasItsOwnLimit() {
+        bulkheads.exportMaxConcurrent = 1;
+        bulkheads.exportTimeoutMillis = 50;
+        bulkheads.init();
+        QueryBulkheads.Permit export = bulkheads.acquireExport();
+
+        assertThatThrownBy(() -> bulkheads.acquireExport()).isInstanceOf(QueryBulkheads.BulkheadFullException.class);
+        assertThat(rejected("export")).isEqualTo(1.0);
+
+        // a client slow to read its export leaves the read permits free
+        assertThat(bulkheads.getRead().available()).isEqualTo(2);
+        bulkheads.acquire().close();
+        export.close();
+        assertThat(bulkheads.getExport().available()).isEqualTo(1);
+    }
+
+    @Test
+    void maintenance_waitsWhileReadsAreQueued() throws Exception {
+        bulkheads = new QueryBulkheads();
+        bulkheads.readMaxConcurrent = 2;
+        bulkheads.readTimeoutMillis = 5000;
+        bulkheads.maintenanceMaxConcurrent = 1;
+        bulkheads.maintenanceTimeoutMillis = 200;
+        bulkheads.init();
+        QueryBulkheads.Permit first = bulkheads.acquire();
+        QueryBulkheads.Permit second = bulkheads.acquire();
+        CountDownLatch waiting = new CountDownLatch(1);
+        CompletableFuture<QueryBulkheads.Permit> queuedRead = CompletableFuture.supplyAsync(() -> {
+            waiting.countDown();
+            return bulkheads.acquire();
+        });
+        waiting.await();
+        while (!bulkheads.getRead().hasQueued()) {
+            Thread.sleep(1);
+        }
+
+        assertThatThrownBy(() -> QueryBulkheads.runAsMaintenance(bulkheads::acquire))
+                .isInstanceOf(QueryBulkheads.BulkheadFullException.class);
+
+        first.close();
+        queuedRead.get(1, TimeUnit.SECONDS).close();
+        QueryBulkheads.runAsMaintenance(bulkheads::acquire).close();
+        second.close();
+    }
+
+    @Test
+    void runAsMaintenance_restoresThePreviousClass() {
+        AtomicBoolean inside = new AtomicBoolean();
+        QueryBulkheads.runAsMaintenance(() -> {
+            inside.set(QueryBulkheads.isMaintenance());
+            return null;
+        });
+        assertThat(inside).isTrue();
+        assertThat(QueryBulkheads.isMaintenance()).isFalse();
+
+        inside.set(false);
+        QueryBulkheads.maintenanceThread(() -> inside.set(QueryBulkheads.isMaintenance())).run();
+        assertThat(inside).isTrue();
+        assertThat(QueryBulkheads.isMaintenance()).isFalse();
+    }
+}
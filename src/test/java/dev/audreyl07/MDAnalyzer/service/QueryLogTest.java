@@ -0,0 +1,39 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryLogTest {
+
+    @Test
+    void fingerprint_replacesLiteralsAndCollapsesWhitespace() {
+        String sql = "SELECT *\n  FROM historical_d\n WHERE ticker = 'O''NEIL' AND date > to_date('20240101', 'yyyyMMdd') LIMIT 10";
+        assertThat(QueryLog.fingerprint(sql))
+                .isEqualTo("SELECT * FROM historical_d WHERE ticker = ? AND date > to_date(?, ?) LIMIT ?");
+    }
+
+    @Test
+    void record_keepsOnlyTheSlowestEntries_slowestFirst() {
+        QueryLog queryLog = new QueryLog();
+        queryLog.capacity = 3;
+        queryLog.sampleRate = 0;
+        long[] durations = {5, 50, 1, 20, 100, 3};
+        for (long d : durations) {
+            queryLog.record("SELECT " + d, d, 1, 10);
+        }
+        assertThat(queryLog.getSlowest()).extracting(QueryLog.Entry::durationMillis).containsExactly(100L, 50L, 20L);
+        assertThat(queryLog.getSlowest().get(0).fingerprint()).isEqualTo("SELECT ?");
+
+        queryLog.clear();
+        assertThat(queryLog.getSlowest()).isEmpty();
+    }
+
+    @Test
+    void record_withZeroCapacity_retainsNothing() {
+        QueryLog queryLog = new QueryLog();
+        queryLog.capacity = 0;
+        queryLog.record("SELECT 1", 5000, 0, 0);
+        assertThat(queryLog.getSlowest()).isEmpty();
+    }
+}
@@ -0,0 +1,48 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final QueryMetrics metrics = new QueryMetrics(registry);
+
+    @Test
+    void time_recordsTimerPerKind_andReturnsResult() {
+        String out = metrics.time("series", () -> "ok");
+        metrics.time("series", () -> "ok");
+        metrics.recordQuery("analysis", 15);
+
+        assertThat(out).isEqualTo("ok");
+        assertThat(registry.get("mdanalyzer.query").tag("kind", "series").timer().count()).isEqualTo(2);
+        assertThat(registry.get("mdanalyzer.query").tag("kind", "analysis").timer().totalTime(TimeUnit.MILLISECONDS))
+                .isEqualTo(15.0);
+    }
+
+    @Test
+    void recordImport_accumulatesThroughputCounters() {
+        metrics.recordImport("historical_raw_d", 2, 2048, 100, 40);
+        metrics.recordImport("historical_raw_d", 1, 1024, 50, 10);
+
+        assertThat(registry.get("mdanalyzer.import.files").tag("table", "historical_raw_d").counter().count()).isEqualTo(3);
+        assertThat(registry.get("mdanalyzer.import.bytes").counter().count()).isEqualTo(3072);
+        assertThat(registry.get("mdanalyzer.import.rows").counter().count()).isEqualTo(150);
+        assertThat(registry.get("mdanalyzer.import.duration").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void registerConnectionPool_exposesPoolStateGauges() {
+        PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+        cm.setMaxTotal(7);
+        metrics.registerConnectionPool(cm);
+
+        assertThat(registry.get("mdanalyzer.questdb.connections").tag("state", "max").gauge().value()).isEqualTo(7);
+        assertThat(registry.get("mdanalyzer.questdb.connections").tag("state", "leased").gauge().value()).isZero();
+    }
+}
@@ -1,5 +1,6 @@
 package dev.audreyl07.MDAnalyzer.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,15 +15,19 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 class QuestDBServiceTest {
@@ -58,6 +63,8 @@ class QuestDBServiceTest {
     @BeforeEach
     void setUp() throws IOException {
         service = new QuestDBService();
+        service.queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+        service.queryLog = new QueryLog();
         spy = Mockito.spy(service);
         // Set package-private fields directly (same package in tests)
         tempDir = Files.createTempDirectory("qdb_hist_");
@@ -159,6 +166,30 @@ class QuestDBServiceTest {
         assertThat(noCond).isEqualTo("20231231");
     }
 
+    @Test
+    void getEarliestDate_selectsTheMinimum_andMapsAnEmptyTableToTheSentinel() {
+        doReturn(execResultWithDataset(List.of(List.of(20000103)))).when(spy)
+                .executeQuery("SELECT CAST(TO_STR(MIN(date), 'yyyyMMdd') AS INT) AS MIN FROM historical_d");
+        doReturn(execResultWithDataset(List.of(Collections.singletonList(null)))).when(spy)
+                .executeQuery("SELECT CAST(TO_STR(MIN(date), 'yyyyMMdd') AS INT) AS MIN FROM rs_rank_d");
+
+        assertThat(spy.getEarliestDate("historical_d", null)).isEqualTo("20000103");
+        assertThat(spy.getEarliestDate("rs_rank_d", null)).isEqualTo("19710101");
+    }
+
+    @Test
+    void getLatestDate_invalidTableName_returnsNullWithoutQuerying() {
+        assertThat(spy.getLatestDate("historical_d; DROP TABLE historical_d", null)).isNull();
+        assertThat(spy.getLatestDate(null, null)).isNull();
+        verify(spy, never()).executeQuery(anyString());
+    }
+
+    @Test
+    void quote_doublesSingleQuotes() {
+        assertThat(QuestDBService.quote("AAPL")).isEqualTo("'AAPL'");
+        assertThat(QuestDBService.quote("x' OR '1'='1")).isEqualTo("'x'' OR ''1''=''1'");
+    }
+
     @Test
     void getLatestDate_returnsNull_whenDatasetNullOrEmpty_andEpochWhenFirstNull() {
         // Case 1: dataset null
@@ -211,6 +242,28 @@ class QuestDBServiceTest {
         assertThat(Files.readString(expectedError)).contains("1,2,3");
     }
 
+    @Test
+    void importCsv_postsFile_parsesResponse_andRecordsThroughput() throws Exception {
+        int port = startServer("/imp", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = "{\"status\":\"OK\",\"rowsImported\":2}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) { os.write(body); }
+        });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QuestDBService svc = new QuestDBService();
+        svc.queryMetrics = new QueryMetrics(registry);
+        svc.queryLog = new QueryLog();
+        svc.hostName = "127.0.0.1:" + port;
+        Path csv = Files.writeString(tempDir.resolve("rows.csv"), "a,b\n1,2\n3,4\n");
+
+        Map<String, Object> result = svc.importCsv("analysis_market", csv);
+
+        assertThat(((Map<?, ?>) result.get("response")).get("status")).isEqualTo("OK");
+        assertThat(registry.get("mdanalyzer.import.rows").tag("table", "analysis_market").counter().count()).isEqualTo(2);
+        assertThat(registry.get("mdanalyzer.import.bytes").counter().count()).isEqualTo(Files.size(csv));
+    }
+
     @Test
     void executeQuery_success_parsesJson_andEchoesParams() throws Exception {
         // Arrange a minimal HTTP server that echoes received query params as JSON
@@ -226,6 +279,8 @@ class QuestDBServiceTest {
         });
 
         QuestDBService svc = new QuestDBService();
+        svc.queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+        svc.queryLog = new QueryLog();
         svc.hostName = "127.0.0.1:" + port;
 
         // Act
@@ -239,6 +294,69 @@ class QuestDBServiceTest {
         assertThat(response.get("receivedCount")).isEqualTo("true");
     }
 
+    @Test
+    void streamQuery_handsRowsToHandlerInOrder_skippingFieldsBeforeDataset() throws Exception {
+        String json = "{\"query\":\"SELECT\",\"columns\":[{\"name\":\"ticker\",\"type\":\"SYMBOL\"}],"
+                + "\"timestamp\":1,\"dataset\":[[\"AAPL\",\"2023-10-01T00:00:00.000000Z\",1.5,null,1000],"
+                + "[\"MSFT\",\"2023-10-02T00:00:00.000000Z\",2.5,true,2000]],\"count\":2}";
+        int port = startServer("/exec", exchange -> {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) { os.write(body); }
+        });
+        QuestDBService svc = new QuestDBService();
+        svc.queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+        svc.queryLog = new QueryLog();
+        svc.hostName = "127.0.0.1:" + port;
+        List<List<Object>> rows = new ArrayList<>();
+
+        long count = svc.streamQuery("SELECT * FROM historical_d", values -> rows.add(List.of(
+                values[0], values[1], values[2], String.valueOf(values[3]), values[4])));
+
+        assertThat(count).isEqualTo(2);
+        assertThat(rows).containsExactly(
+                List.of("AAPL", "2023-10-01T00:00:00.000000Z", 1.5, "null", 1000L),
+                List.of("MSFT", "2023-10-02T00:00:00.000000Z", 2.5, "true", 2000L));
+    }
+
+    @Test
+    void streamQuery_errorResponse_returnsMinusOne() throws Exception {
+        String json = "{\"query\":\"SELECT\",\"error\":\"table does not exist\",\"position\":14}";
+        int port = startServer("/exec", exchange -> {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(400, body.length);
+            try (OutputStream os = exchange.getResponseBody()) { os.write(body); }
+        });
+        QuestDBService svc = new QuestDBService();
+        svc.queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+        svc.queryLog = new QueryLog();
+        svc.hostName = "127.0.0.1:" + port;
+
+        assertThat(svc.streamQuery("SELECT * FROM nope", values -> { })).isEqualTo(-1);
+    }
+
+    @Test
+    void executeQuery_recordsFingerprintRowsAndBytesInQueryLog() throws Exception {
+        String json = "{\"dataset\":[[1],[2],[3]],\"count\":3}";
+        int port = startServer("/exec", exchange -> {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) { os.write(body); }
+        });
+        QuestDBService svc = new QuestDBService();
+        svc.queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+        svc.queryLog = new QueryLog();
+        svc.hostName = "127.0.0.1:" + port;
+
+        svc.executeQuery("SELECT * FROM historical_d WHERE ticker = 'AAPL'");
+
+        List<QueryLog.Entry> slowest = svc.queryLog.getSlowest();
+        assertThat(slowest).hasSize(1);
+        assertThat(slowest.get(0).fingerprint()).isEqualTo("SELECT * FROM historical_d WHERE ticker = ?");
+        assertThat(slowest.get(0).rows()).isEqualTo(3);
+        assertThat(slowest.get(0).bytes()).isEqualTo(json.length());
+    }
+
     @Test
     void executeQuery_noBody_returnsMapWithoutResponse() throws Exception {
         int port = startServer("/exec", exchange -> {
@@ -246,6 +364,8 @@ class QuestDBServiceTest {
             exchange.close();
         });
         QuestDBService svc = new QuestDBService();
+        svc.queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+        svc.queryLog = new QueryLog();
         svc.hostName = "localhost:" + port;
 
         Map<String, Object> result = svc.executeQuery("SELECT 1");
@@ -257,6 +377,8 @@ class QuestDBServiceTest {
     @Test
     void executeQuery_exception_doesNotThrow_andReturnsDurationOnly() {
         QuestDBService svc = new QuestDBService();
+        svc.queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+        svc.queryLog = new QueryLog();
         svc.hostName = "127.0.0.1:1"; // closed port to force connect failure
 
         Map<String, Object> result = svc.executeQuery("SELECT 1");
@@ -265,6 +387,27 @@ class QuestDBServiceTest {
         assertThat(result).doesNotContainKey("response");
     }
 
+    @Test
+    void executeQuery_fullBulkhead_throwsWithoutCallingQuestDB() {
+        QuestDBService svc = new QuestDBService();
+        svc.queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+        svc.queryLog = new QueryLog();
+        svc.hostName = "127.0.0.1:1";
+        svc.bulkheads = new QueryBulkheads();
+        svc.bulkheads.readMaxConcurrent = 1;
+        svc.bulkheads.readTimeoutMillis = 10;
+        svc.bulkheads.init();
+
+        try (QueryBulkheads.Permit held = svc.bulkheads.acquire()) {
+            assertThatThrownBy(() -> svc.executeQuery("SELECT 1"))
+                    .isInstanceOf(QueryBulkheads.BulkheadFullException.class);
+            assertThatThrownBy(() -> svc.streamQuery("SELECT 1", values -> { }))
+                    .isInstanceOf(QueryBulkheads.BulkheadFullException.class);
+        }
+        // the permit is released after a normal call
+        assertThat(svc.executeQuery("SELECT 1")).containsKey("duration");
+    }
+
     // Utility to JSON-escape a simple string
     private static String toJsonString(String s) {
         if (s == null) return "null";
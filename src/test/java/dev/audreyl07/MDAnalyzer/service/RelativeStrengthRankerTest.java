@@ -0,0 +1,140 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+class RelativeStrengthRankerTest {
+
+    private static final long DAY = 86400;
+
+    private record Row(long date, String ticker, double[] returns, double[] ranks) {
+    }
+
+    private static long[] days(int size) {
+        long[] time = new long[size];
+        for (int i = 0; i < size; i++) {
+            time[i] = i * DAY;
+        }
+        return time;
+    }
+
+    private static double[] line(int size, double first, double step) {
+        double[] close = new double[size];
+        for (int i = 0; i < size; i++) {
+            close[i] = first + i * step;
+        }
+        return close;
+    }
+
+    private static List<Row> rank(RelativeStrengthRanker ranker, ForkJoinPool pool) {
+        List<Row> rows = new ArrayList<>();
+        ranker.rank(pool, (date, ticker, returns, ranks) -> rows.add(new Row(date, ticker, returns.clone(), ranks.clone())));
+        return rows;
+    }
+
+    @Test
+    void rank_placesTickersBetweenZeroAndHundred_andLeavesShortLookbacksEmpty() {
+        RelativeStrengthRanker ranker = new RelativeStrengthRanker(Long.MIN_VALUE, Long.MAX_VALUE);
+        ranker.add("FLAT", days(22), line(22, 10, 0), 22);
+        ranker.add("UP", days(22), line(22, 10, 1), 22);
+        ranker.add("DOWN", days(22), line(22, 40, -1), 22);
+        ranker.add("SHORT", days(21), line(21, 10, 1), 21);
+
+        List<Row> rows = rank(ranker, ForkJoinPool.commonPool());
+
+        // only the 22nd bar has a 21-bar lookback
+        assertThat(rows).extracting(Row::ticker).containsExactly("FLAT", "UP", "DOWN");
+        assertThat(rows).extracting(Row::date).containsOnly(21 * DAY);
+        assertThat(rows.get(0).ranks()[0]).isEqualTo(50.0);
+        assertThat(rows.get(1).ranks()[0]).isEqualTo(100.0);
+        assertThat(rows.get(2).ranks()[0]).isEqualTo(0.0);
+        assertThat(rows.get(1).returns()[0]).isCloseTo(2.1, offset(1e-9));
+        assertThat(rows.get(1).returns()[1]).isNaN();
+        assertThat(rows.get(1).ranks()[3]).isNaN();
+    }
+
+    @Test
+    void rank_givesTiesTheAverageRank_andASingleTickerHundred() {
+        RelativeStrengthRanker ranker = new RelativeStrengthRanker(Long.MIN_VALUE, Long.MAX_VALUE);
+        ranker.add("A", days(22), line(22, 10, 1), 22);
+        ranker.add("B", days(22), line(22, 10, 1), 22);
+        ranker.add("C", days(22), line(22, 10, 0), 22);
+        List<Row> rows = rank(ranker, ForkJoinPool.commonPool());
+        assertThat(rows).extracting(r -> r.ranks()[0]).containsExactly(75.0, 75.0, 0.0);
+
+        ranker = new RelativeStrengthRanker(Long.MIN_VALUE, Long.MAX_VALUE);
+        ranker.add("A", days(22), line(22, 10, 1), 22);
+        assertThat(rank(ranker, ForkJoinPool.commonPool()).get(0).ranks()[0]).isEqualTo(100.0);
+    }
+
+    @Test
+    void add_collectsOnlyTheDatesOfTheWindow() {
+        RelativeStrengthRanker ranker = new RelativeStrengthRanker(24 * DAY, 27 * DAY);
+        ranker.add("A", days(30), line(30, 10, 1), 30);
+
+        assertThat(ranker.getDateCount()).isEqualTo(3);
+        assertThat(rank(ranker, ForkJoinPool.commonPool())).extracting(Row::date)
+                .containsExactly(25 * DAY, 26 * DAY, 27 * DAY);
+    }
+
+    @Test
+    void rank_onAParallelPool_matchesABruteForcePercentileInDateOrder() {
+        Random random = new Random(11);
+        RelativeStrengthRanker ranker = new RelativeStrengthRanker(Long.MIN_VALUE, Long.MAX_VALUE);
+        int size = 300;
+        for (int t = 0; t < 40; t++) {
+            double[] close = new double[size];
+            close[0] = 100;
+            for (int i = 1; i < size; i++) {
+                close[i] = close[i - 1] * (1 + (random.nextDouble() - 0.5) / 20);
+            }
+            ranker.add("T" + t, days(size), close, size);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        List<Row> rows;
+        try {
+            rows = rank(ranker, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(rows).hasSize(40 * (size - 21));
+        Map<Long, List<Row>> byDate = new HashMap<>();
+        long previous = Long.MIN_VALUE;
+        for (Row row : rows) {
+            assertThat(row.date()).isGreaterThanOrEqualTo(previous);
+            previous = row.date();
+            byDate.computeIfAbsent(row.date(), d -> new ArrayList<>()).add(row);
+        }
+        for (List<Row> date : byDate.values()) {
+            for (int p = 0; p < RelativeStrengthRanker.PERIODS.size(); p++) {
+                for (Row row : date) {
+                    double value = row.returns()[p];
+                    if (Double.isNaN(value)) {
+                        assertThat(row.ranks()[p]).isNaN();
+                        continue;
+                    }
+                    int n = 0;
+                    int below = 0;
+                    for (Row other : date) {
+                        if (!Double.isNaN(other.returns()[p])) {
+                            n++;
+                            below += other.returns()[p] < value ? 1 : 0;
+                        }
+                    }
+                    assertThat(row.ranks()[p]).isCloseTo(below * 100.0 / (n - 1), offset(1e-9));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static dev.audreyl07.MDAnalyzer.service.OhlcvSeriesFixtures.DAY;
+import static dev.audreyl07.MDAnalyzer.service.OhlcvSeriesFixtures.bars;
+import static dev.audreyl07.MDAnalyzer.service.OhlcvSeriesFixtures.scanOf;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ScreenerServiceTest {
+
+    @Mock
+    private SeriesScan seriesScan;
+
+    private ScreenerService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ScreenerService();
+        service.seriesScan = seriesScan;
+        service.queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+
+    @Test
+    void screen_keepsTickersOfTheNewestDay_withLastBarFields() throws IOException {
+        Map<String, OhlcvSeries> series = new LinkedHashMap<>();
+        series.put("AAA", bars(0, 10, 12, 11));
+        series.put("OLD", bars(0, 10, 12));
+        scanOf(seriesScan, "historical_d", series);
+
+        List<Map<String, Object>> rows = service.screen("historical_d", List.of(), null, false, 10);
+
+        assertThat(rows).hasSize(1);
+        Map<String, Object> row = rows.get(0);
+        assertThat(row).containsEntry("ticker", "AAA").containsEntry("time", 2 * DAY).containsEntry("close", 11.0)
+                .containsEntry("high52w", 13.0).containsEntry("low52w", 9.0).containsEntry("sma50", null);
+        assertThat((double) row.get("change")).isCloseTo(-8.33, offset(0.01));
+        assertThat((double) row.get("pctHigh52w")).isCloseTo(-15.38, offset(0.01));
+    }
+
+    @Test
+    void screen_filtersOnRanges_andSortsDescendingWithMissingValuesLast() throws IOException {
+        Map<String, OhlcvSeries> series = new LinkedHashMap<>();
+        series.put("A", bars(0, 5, 10));
+        series.put("B", bars(0, 20, 20));
+        series.put("C", bars(0, 40, 30));
+        series.put("D", bars(1, 15));
+        scanOf(seriesScan, "historical_d", series);
+
+        List<Map<String, Object>> rows = service.screen("historical_d",
+                List.of(ScreenerService.Filter.parse("close:10:30")), ScreenerService.Field.CHANGE, true, 10);
+
+        // D has a single bar, so its change is missing
+        assertThat(rows).extracting(r -> r.get("ticker")).containsExactly("A", "B", "C", "D");
+        rows = service.screen("historical_d", List.of(ScreenerService.Filter.parse("close:10:30"),
+                ScreenerService.Filter.parse("change::0")), ScreenerService.Field.CLOSE, false, 1);
+        assertThat(rows).extracting(r -> r.get("ticker")).containsExactly("B");
+    }
+
+    @Test
+    void lastRow_averagesSkipAMissingClose() {
+        double[] close = new double[51];
+        Arrays.fill(close, 10);
+        close[5] = Double.NaN;
+        close[50] = 60;
+
+        double[] row = ScreenerService.lastRow(bars(0, close), new double[close.length]);
+
+        // the 50 closes left are averaged, and 200 valid closes are not there yet
+        assertThat(row[ScreenerService.Field.SMA_50.ordinal()]).isEqualTo(11.0);
+        assertThat(row[ScreenerService.Field.PCT_SMA_50.ordinal()]).isCloseTo(445.45, offset(0.01));
+        assertThat(row[ScreenerService.Field.SMA_200.ordinal()]).isNaN();
+        assertThat(row[ScreenerService.Field.RSI_14.ordinal()]).isEqualTo(100.0);
+    }
+
+    @Test
+    void match_agreesWithAFullScan() {
+        Random random = new Random(7);
+        Map<String, double[]> rows = new HashMap<>();
+        for (int t = 0; t < 500; t++) {
+            double[] row = new double[ScreenerService.Field.values().length];
+            for (int f = 0; f < row.length; f++) {
+                row[f] = random.nextInt(10) == 0 ? Double.NaN : random.nextInt(100);
+            }
+            rows.put("T" + t, row);
+        }
+        ScreenerService.Snapshot snapshot = ScreenerService.index(0, rows);
+        List<ScreenerService.Filter> filters = List.of(
+                new ScreenerService.Filter(ScreenerService.Field.CLOSE, 10, 60),
+                new ScreenerService.Filter(ScreenerService.Field.RSI_14, 50, Double.POSITIVE_INFINITY),
+                new ScreenerService.Filter(ScreenerService.Field.VOLUME, Double.NEGATIVE_INFINITY, 80));
+
+        List<Integer> expected = new ArrayList<>();
+        for (int r = 0; r < snapshot.size(); r++) {
+            boolean matches = true;
+            for (ScreenerService.Filter filter : filters) {
+                double v = snapshot.columns()[filter.field().ordinal()][r];
+                matches &= v >= filter.min() && v <= filter.max();
+            }
+            if (matches) {
+                expected.add(r);
+            }
+        }
+        assertThat(ScreenerService.match(snapshot, filters)).containsExactly(expected.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    @Test
+    void current_reusesTheSnapshotUntilTheTableMoves() throws IOException {
+        Map<String, OhlcvSeries> series = new LinkedHashMap<>();
+        series.put("A", bars(0, 5, 10));
+        scanOf(seriesScan, "historical_d", series);
+
+        service.screen("historical_d", List.of(), null, false, 10);
+        service.screen("historical_d", List.of(), null, false, 10);
+        verify(seriesScan, times(1)).forEach(eq("historical_d"), any());
+
+        series.put("A", bars(0, 5, 10, 11));
+        when(seriesScan.latestTime("historical_d")).thenReturn(2 * DAY);
+        assertThat(service.screen("historical_d", List.of(), null, false, 10).get(0)).containsEntry("close", 11.0);
+        verify(seriesScan, times(2)).forEach(eq("historical_d"), any());
+    }
+
+    @Test
+    void onPipelineStageCompleted_rebuildsWhenARerunRewroteTheSnapshotDay() throws IOException {
+        Map<String, OhlcvSeries> series = new LinkedHashMap<>();
+        series.put("A", bars(0, 5, 10));
+        scanOf(seriesScan, "historical_d", series);
+        service.screen("historical_d", List.of(), null, false, 10);
+
+        // an incremental run from the snapshot's day does not rewrite it
+        service.onPipelineStageCompleted(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "19700102"));
+        series.put("A", bars(0, 5, 9));
+        service.onSeriesReloaded(new SeriesReloadedEvent("historical_d", "19700102"));
+        service.onPipelineStageCompleted(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "19700101"));
+
+        verify(seriesScan, timeout(1000).times(2)).forEach(eq("historical_d"), any());
+        // synchronized with the background rebuild, so it returns once that has published
+        service.refresh("historical_d");
+        assertThat(service.screen("historical_d", List.of(), null, false, 10).get(0)).containsEntry("close", 9.0);
+    }
+
+    @Test
+    void refresh_keepsThePreviousSnapshotWhenTheScanFails() throws IOException {
+        Map<String, OhlcvSeries> series = new LinkedHashMap<>();
+        series.put("A", bars(0, 5, 10));
+        scanOf(seriesScan, "historical_d", series);
+        service.screen("historical_d", List.of(), null, false, 10);
+
+        when(seriesScan.latestTime("historical_d")).thenReturn(2 * DAY);
+        when(seriesScan.forEach(eq("historical_d"), any())).thenReturn(false);
+
+        assertThat(service.screen("historical_d", List.of(), null, false, 10).get(0)).containsEntry("close", 10.0);
+    }
+
+    @Test
+    void filterParse_acceptsOpenBoundsOnly() {
+        assertThat(ScreenerService.Filter.parse("pctHigh52w:-5:")).isEqualTo(
+                new ScreenerService.Filter(ScreenerService.Field.PCT_HIGH_52W, -5, Double.POSITIVE_INFINITY));
+        assertThat(ScreenerService.Filter.parse("close:1")).isNull();
+        assertThat(ScreenerService.Filter.parse("close:2:1")).isNull();
+        assertThat(ScreenerService.Filter.parse("close:a:")).isNull();
+        assertThat(ScreenerService.Filter.parse("pe:1:2")).isNull();
+    }
+}
@@ -0,0 +1,132 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SeriesCacheTest {
+
+    private SimpleMeterRegistry registry;
+    private SeriesCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        cache = new SeriesCache();
+        cache.queryMetrics = new QueryMetrics(registry);
+        loads = new AtomicInteger();
+    }
+
+    private Supplier<OhlcvSeries> loader() {
+        return () -> {
+            loads.incrementAndGet();
+            return new OhlcvSeries.Builder(1).add(0L, 1, 1, 1, 1, 1).build();
+        };
+    }
+
+    private double requests(String cacheName, String result) {
+        return registry.get("mdanalyzer.cache.requests").tag("cache", cacheName).tag("result", result).counter().count();
+    }
+
+    @Test
+    void getSeries_loadsOnce_andCountsHitsAndMisses() {
+        OhlcvSeries first = cache.getSeries("historical_d", "AAPL", loader());
+        OhlcvSeries second = cache.getSeries("historical_d", "AAPL", loader());
+
+        assertThat(second).isSameAs(first);
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(requests("series", "miss")).isEqualTo(1.0);
+        assertThat(requests("series", "hit")).isEqualTo(1.0);
+    }
+
+    @Test
+    void getSeries_failedLoad_isNotCached() {
+        assertThatThrownBy(() -> cache.getSeries("historical_d", "AAPL", () -> {
+            throw new QueryBackend.QueryFailedException("Query failed: timeout");
+        })).isInstanceOf(QueryBackend.QueryFailedException.class);
+
+        cache.getSeries("historical_d", "AAPL", loader());
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void getSeries_evictsLeastRecentlyUsed() {
+        cache.maxTickers = 2;
+        cache.getSeries("historical_d", "A", loader());
+        cache.getSeries("historical_d", "B", loader());
+        cache.getSeries("historical_d", "A", loader());
+        cache.getSeries("historical_d", "C", loader());
+        assertThat(loads.get()).isEqualTo(3);
+
+        cache.getSeries("historical_d", "A", loader());
+        assertThat(loads.get()).isEqualTo(3);
+        cache.getSeries("historical_d", "B", loader());
+        assertThat(loads.get()).isEqualTo(4);
+    }
+
+    @Test
+    void pipelineEvent_dropsOnlyTheWrittenTable() {
+        cache.getSeries("historical_d", "AAPL", loader());
+        cache.getSeries("indices_d", "GSPC", loader());
+        cache.getAnalysis("high52w", () -> new ValueSeries.Builder(0).build());
+
+        cache.onPipelineStageCompleted(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20240101"));
+
+        assertThat(cache.size()).isEqualTo(2);
+        cache.getSeries("indices_d", "GSPC", loader());
+        assertThat(loads.get()).isEqualTo(2);
+
+        cache.onPipelineStageCompleted(new PipelineStageCompletedEvent(SqlTemplates.ANALYSIS_MA, "analysis_market", "20240101"));
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void loadOverlappingInvalidation_isNotCached() {
+        cache.getSeries("historical_d", "AAPL", () -> {
+            cache.onPipelineStageCompleted(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20240101"));
+            return new OhlcvSeries.Builder(0).build();
+        });
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void disabled_alwaysLoads() {
+        cache.enabled = false;
+        cache.getSeries("historical_d", "AAPL", loader());
+        cache.getSeries("historical_d", "AAPL", loader());
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void hotTickers_orderedByCount_andDecayForgetsOneOffs() {
+        cache.recordRequest("historical_d", "AAPL");
+        cache.recordRequest("historical_d", "AAPL");
+        cache.recordRequest("historical_d", "AAPL");
+        cache.recordRequest("indices_d", "GSPC");
+        cache.recordRequest("indices_d", "GSPC");
+        cache.recordRequest("historical_d", "ONCE");
+
+        assertThat(cache.hotTickers(2)).containsExactly(
+                new SeriesCache.Key("historical_d", "AAPL"), new SeriesCache.Key("indices_d", "GSPC"));
+
+        cache.decayRequestCounts();
+        assertThat(cache.hotTickers(10)).containsExactlyInAnyOrder(
+                new SeriesCache.Key("historical_d", "AAPL"), new SeriesCache.Key("indices_d", "GSPC"));
+    }
+
+    @Test
+    void recordRequest_boundsTrackedTickers() {
+        cache.maxTickers = 1;
+        for (int i = 0; i < 20; i++) {
+            cache.recordRequest("historical_d", "T" + i);
+        }
+        assertThat(cache.hotTickers(100)).hasSize(10);
+    }
+}
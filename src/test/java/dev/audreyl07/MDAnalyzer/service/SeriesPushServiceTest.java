@@ -0,0 +1,244 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SeriesPushServiceTest {
+
+    @Mock
+    private QuestDBService questDBService;
+
+    @Mock
+    private QueryBackend queryBackend;
+
+    private SeriesPushService service;
+
+    private static final SeriesCache.Key AAPL = new SeriesCache.Key("historical_d", "AAPL");
+    private static final SeriesCache.Key MSFT = new SeriesCache.Key("historical_d", "MSFT");
+    private static final SeriesCache.Key HIGH52W = new SeriesCache.Key("analysis_market", "high52w");
+
+    /**
+     * Collects what was pushed; fails sends when broken, and blocks them until released when stalled.
+     */
+    private static class Recorder implements SeriesPushService.Subscriber {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean broken;
+        volatile boolean closed;
+        CountDownLatch stalled;
+        final CountDownLatch entered = new CountDownLatch(1);
+
+        @Override
+        public void send(String event, String data) throws IOException {
+            heartbeat();
+            events.add(event + " " + data);
+        }
+
+        @Override
+        public void heartbeat() throws IOException {
+            entered.countDown();
+            if (stalled != null) {
+                try {
+                    stalled.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (broken) {
+                throw new IOException("closed");
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    @BeforeEach
+    void setUp() {
+        service = new SeriesPushService();
+        service.questDBService = questDBService;
+        service.queryBackend = queryBackend;
+        service.sqlTemplates = new SqlTemplates();
+        service.dataService = new DataService();
+        service.queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+        service.heartbeatSeconds = 0;
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+
+    private void stubNewBars() throws IOException {
+        when(questDBService.streamQuery(anyString(), any())).thenAnswer(inv -> {
+            QuestDBService.RowHandler handler = inv.getArgument(1);
+            handler.row(new Object[]{"AAPL", "2024-01-03T00:00:00.000000Z", 1.0, 2.0, 0.5, 1.5, 100L});
+            handler.row(new Object[]{"MSFT", "2024-01-03T00:00:00.000000Z", 3.0, 4.0, 2.5, 3.5, null});
+            return 2L;
+        });
+    }
+
+    @Test
+    void push_readsSubscribedTickersOnce_andSendsEachKeysRowsToItsSubscribers() throws Exception {
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        Recorder other = new Recorder();
+        service.subscribe(first, Set.of(AAPL));
+        service.subscribe(second, Set.of(AAPL, HIGH52W));
+        service.subscribe(other, Set.of(MSFT));
+        stubNewBars();
+
+        service.push(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20240102"));
+
+        verify(questDBService).streamQuery(argThat(q ->
+                q.contains("ticker IN (") && q.contains("'AAPL'") && q.contains("'MSFT'") && q.contains("'20240102'")), any());
+        await(() -> first.events.size() == 1 && second.events.size() == 1 && other.events.size() == 1);
+        assertThat(first.events).hasSize(1);
+        assertThat(first.events.get(0)).startsWith("bars {\"table\":\"historical_d\",\"ticker\":\"AAPL\",\"rows\":[{")
+                .contains("\"time\":1704240000", "\"close\":1.5", "\"volume\":100.0");
+        assertThat(second.events).isEqualTo(first.events);
+        assertThat(other.events).hasSize(1);
+        assertThat(other.events.get(0)).startsWith("bars {\"table\":\"historical_d\",\"ticker\":\"MSFT\"").contains("\"volume\":null");
+    }
+
+    @Test
+    void push_doesNotResendRowsAlreadyPushed() throws Exception {
+        Recorder recorder = new Recorder();
+        service.subscribe(recorder, Set.of(AAPL));
+        stubNewBars();
+
+        service.push(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20240102"));
+        service.push(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20240102"));
+
+        await(() -> recorder.events.size() == 1);
+        service.heartbeat();
+        await(() -> recorder.entered.getCount() == 0);
+        assertThat(recorder.events).hasSize(1);
+    }
+
+    @Test
+    void push_analysis_sendsOnlyPointsAfterTheWatermark() throws Exception {
+        Recorder recorder = new Recorder();
+        service.subscribe(recorder, Set.of(HIGH52W));
+        when(queryBackend.readAnalysis("high52w")).thenReturn(new ValueSeries.Builder(2)
+                .add(1704153600L, 40.0)
+                .add(1704240000L, 42.5)
+                .build());
+
+        service.push(new PipelineStageCompletedEvent(SqlTemplates.ANALYSIS_MA, "analysis_market", "20240102"));
+
+        await(() -> recorder.events.size() == 1);
+        assertThat(recorder.events.get(0)).startsWith("analysis {\"table\":\"analysis_market\",\"type\":\"high52w\",\"rows\":[{")
+                .contains("\"time\":1704240000", "\"value\":42.5").doesNotContain("1704153600");
+    }
+
+    @Test
+    void failingSubscriber_isDropped() throws Exception {
+        Recorder broken = new Recorder();
+        broken.broken = true;
+        SeriesPushService.Subscription subscription = service.subscribe(broken, Set.of(AAPL));
+        assertThat(subscription).isNotNull();
+
+        service.heartbeat();
+
+        await(() -> service.subscriberCount() == 0);
+    }
+
+    @Test
+    void slowSubscriber_doesNotDelayTheOthers() throws Exception {
+        Recorder slow = new Recorder();
+        slow.stalled = new CountDownLatch(1);
+        Recorder fast = new Recorder();
+        service.subscribe(slow, Set.of(AAPL));
+        service.subscribe(fast, Set.of(AAPL));
+        stubNewBars();
+
+        service.push(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20240102"));
+
+        await(() -> fast.events.size() == 1);
+        assertThat(slow.events).isEmpty();
+        slow.stalled.countDown();
+        await(() -> slow.events.size() == 1);
+    }
+
+    @Test
+    void subscriberWhoseQueueOverflows_isDropped() throws Exception {
+        service.queueSize = 1;
+        Recorder stuck = new Recorder();
+        stuck.stalled = new CountDownLatch(1);
+        service.subscribe(stuck, Set.of(AAPL));
+
+        service.heartbeat();
+        assertThat(stuck.entered.await(5, TimeUnit.SECONDS)).isTrue();
+        service.heartbeat();
+        assertThat(service.subscriberCount()).isEqualTo(1);
+        service.heartbeat();
+
+        assertThat(service.subscriberCount()).isZero();
+        assertThat(stuck.closed).isTrue();
+        assertThat(service.queryMetrics.getRegistry().get("mdanalyzer.push.dropped").counter().count()).isEqualTo(1.0);
+        stuck.stalled.countDown();
+    }
+
+    @Test
+    void pushes_readAsMaintenance() throws Exception {
+        service.subscribe(new Recorder(), Set.of(AAPL));
+        List<Boolean> maintenance = Collections.synchronizedList(new ArrayList<>());
+        when(questDBService.streamQuery(anyString(), any())).thenAnswer(inv -> {
+            maintenance.add(QueryBulkheads.isMaintenance());
+            return 0L;
+        });
+
+        service.onPipelineStageCompleted(new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20240102"));
+
+        await(() -> maintenance.size() == 1);
+        assertThat(maintenance).containsExactly(true);
+    }
+
+    @Test
+    void subscribe_enforcesLimits() {
+        service.maxSubscribers = 1;
+        service.maxKeysPerSubscriber = 1;
+
+        assertThat(service.subscribe(new Recorder(), Set.of())).isNull();
+        assertThat(service.subscribe(new Recorder(), Set.of(AAPL, MSFT))).isNull();
+        SeriesPushService.Subscription subscription = service.subscribe(new Recorder(), Set.of(AAPL));
+        assertThat(subscription).isNotNull();
+        assertThat(service.subscribe(new Recorder(), Set.of(MSFT))).isNull();
+
+        service.unsubscribe(subscription);
+        assertThat(service.subscribe(new Recorder(), Set.of(MSFT))).isNotNull();
+    }
+}
@@ -0,0 +1,77 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SeriesScanTest {
+
+    private static final long DAY = 86400;
+
+    @Mock
+    private SeriesStore seriesStore;
+
+    @Mock
+    private QuestDBService questDBService;
+
+    private SeriesScan scan;
+
+    @BeforeEach
+    void setUp() {
+        scan = new SeriesScan();
+        scan.seriesStore = seriesStore;
+        scan.questDBService = questDBService;
+        scan.sqlTemplates = new SqlTemplates();
+    }
+
+    @Test
+    void forEachOfBasket_readsTheStoreAfterTheDate_andSkipsEmptySeries() throws IOException {
+        OhlcvSeries bars = new OhlcvSeries.Builder(1).add(3 * DAY, 1, 1, 1, 1, 1).build();
+        when(seriesStore.isReady("historical_d")).thenReturn(true);
+        when(seriesStore.readSeries("historical_d", "A", 2 * DAY + 1, Long.MAX_VALUE)).thenReturn(bars);
+        when(seriesStore.readSeries("historical_d", "B", 2 * DAY + 1, Long.MAX_VALUE)).thenReturn(new OhlcvSeries.Builder(0).build());
+        Map<String, OhlcvSeries> read = new LinkedHashMap<>();
+
+        assertThat(scan.forEach("historical_d", List.of("A", "B"), 2 * DAY, read::put)).isTrue();
+
+        assertThat(read).containsOnlyKeys("A");
+    }
+
+    @Test
+    void forEachOfBasket_withoutStore_streamsBatchesAfterTheWatermark() throws IOException {
+        scan.tickerBatchSize = 1;
+        when(seriesStore.isReady("historical_d")).thenReturn(false);
+        when(questDBService.streamQuery(anyString(), any())).thenAnswer(inv -> {
+            QuestDBService.RowHandler handler = inv.getArgument(1);
+            String ticker = inv.<String>getArgument(0).contains("'A'") ? "A" : "B";
+            handler.row(new Object[]{ticker, "1970-01-04T00:00:00.000000Z", 1.0, 1.0, 1.0, 1.0, 1L});
+            return 1L;
+        });
+        Map<String, OhlcvSeries> read = new LinkedHashMap<>();
+
+        assertThat(scan.forEach("historical_d", List.of("A", "B"), 2 * DAY, read::put)).isTrue();
+
+        ArgumentCaptor<String> query = ArgumentCaptor.forClass(String.class);
+        verify(questDBService, times(2)).streamQuery(query.capture(), any());
+        assertThat(query.getAllValues().get(0)).contains("ticker IN ('A')").contains("to_timestamp('19700103', 'yyyyMMdd')");
+        assertThat(read).containsOnlyKeys("A", "B");
+        assertThat(read.get("B").size()).isEqualTo(1);
+        assertThat(read.get("B").time()[0]).isEqualTo(3 * DAY);
+    }
+}
@@ -0,0 +1,96 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SeriesSnapshotFileTest {
+
+    @TempDir
+    Path dir;
+
+    private static OhlcvSeries series(long start, int rows) {
+        OhlcvSeries.Builder builder = new OhlcvSeries.Builder(rows);
+        for (int i = 0; i < rows; i++) {
+            builder.add(start + i * 86_400L, i, i + 2, i - 1, i + 1, i == 1 ? Double.NaN : 1000.0 * i);
+        }
+        return builder.build();
+    }
+
+    @Test
+    void ohlcv_roundTrip_keepsWatermarkRowsAndNaN() throws IOException {
+        Path file = dir.resolve("historical_d.snap");
+        Map<String, OhlcvSeries> entries = new LinkedHashMap<>();
+        entries.put("AAPL", series(1696118400L, 3));
+        entries.put("MSFT", series(1696118400L, 1));
+        entries.put("EMPTY", new OhlcvSeries.Builder(0).build());
+
+        SeriesSnapshotFile.writeOhlcv(file, 1696291200L, entries);
+        SeriesSnapshotFile.Contents<OhlcvSeries> read = SeriesSnapshotFile.readOhlcv(file);
+
+        assertThat(read.watermark()).isEqualTo(1696291200L);
+        assertThat(read.entries()).containsOnlyKeys("AAPL", "MSFT", "EMPTY");
+        OhlcvSeries aapl = read.entries().get("AAPL");
+        assertThat(aapl.size()).isEqualTo(3);
+        assertThat(aapl.time()).containsExactly(1696118400L, 1696204800L, 1696291200L);
+        assertThat(aapl.close()).containsExactly(1.0, 2.0, 3.0);
+        assertThat(aapl.volume()[1]).isNaN();
+        // arrays come back trimmed to the row count
+        assertThat(read.entries().get("MSFT").open()).hasSize(1);
+        assertThat(read.entries().get("EMPTY").size()).isZero();
+        assertThat(Files.exists(dir.resolve("historical_d.snap.tmp"))).isFalse();
+    }
+
+    @Test
+    void values_roundTrip() throws IOException {
+        Path file = dir.resolve("analysis_market.snap");
+        ValueSeries high = new ValueSeries.Builder(2).add(1696118400L, 1.5).add(1696204800L, 2.5).build();
+
+        SeriesSnapshotFile.writeValues(file, 1696204800L, Map.of("high52w", high));
+        SeriesSnapshotFile.Contents<ValueSeries> read = SeriesSnapshotFile.readValues(file);
+
+        assertThat(read.entries().get("high52w").value()).containsExactly(1.5, 2.5);
+    }
+
+    @Test
+    void read_rejectsOtherVersion() throws IOException {
+        Path file = dir.resolve("historical_d.snap");
+        SeriesSnapshotFile.writeOhlcv(file, 0L, Map.of("AAPL", series(0L, 2)));
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, SeriesSnapshotFile.VERSION + 1);
+        Files.write(file, bytes);
+
+        assertThatThrownBy(() -> SeriesSnapshotFile.readOhlcv(file)).isInstanceOf(IOException.class)
+                .hasMessageContaining("version=" + (SeriesSnapshotFile.VERSION + 1));
+    }
+
+    @Test
+    void read_rejectsValueFileAsOhlcv() throws IOException {
+        Path file = dir.resolve("analysis_market.snap");
+        SeriesSnapshotFile.writeValues(file, 0L, Map.of("high52w", new ValueSeries.Builder(1).add(0L, 1.0).build()));
+
+        assertThatThrownBy(() -> SeriesSnapshotFile.readOhlcv(file)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void read_rejectsTruncatedFile() throws IOException {
+        Path file = dir.resolve("historical_d.snap");
+        SeriesSnapshotFile.writeOhlcv(file, 0L, Map.of("AAPL", series(0L, 10)));
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+
+        assertThatThrownBy(() -> SeriesSnapshotFile.readOhlcv(file)).isInstanceOf(IOException.class)
+                .hasMessageContaining("truncated");
+    }
+}
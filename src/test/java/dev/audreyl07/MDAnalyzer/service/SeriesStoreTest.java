@@ -0,0 +1,249 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SeriesStoreTest {
+
+    private static final long DAY = 86_400L;
+    private static final long D1 = 1696118400L; // 2023-10-01
+
+    @Mock
+    private QuestDBService questDBService;
+
+    @Spy
+    private SqlTemplates sqlTemplates = new SqlTemplates();
+
+    @Spy
+    private QueryMetrics queryMetrics = new QueryMetrics(new SimpleMeterRegistry());
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private SeriesStore seriesStore;
+
+    @TempDir
+    Path snapshotDir;
+
+    private static Map<String, Object> exec(List<?> dataset) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("dataset", dataset);
+        Map<String, Object> root = new HashMap<>();
+        root.put("response", response);
+        return root;
+    }
+
+    private static List<Object> row(String ticker, String date, double close) {
+        return List.of(ticker, date, close - 1, close + 1, close - 2, close, 1000);
+    }
+
+    private void loadTwoTickers() {
+        when(questDBService.executeQuery(startsWith("SELECT DISTINCT ticker"))).thenReturn(exec(List.of(
+                List.of("AAPL"), List.of("MSFT"))));
+        when(questDBService.executeQuery(contains("WHERE ticker IN"))).thenReturn(exec(List.of(
+                row("AAPL", "2023-10-01T00:00:00.000000Z", 10.0),
+                row("AAPL", "2023-10-02T00:00:00.000000Z", 11.0),
+                row("AAPL", "2023-10-03T00:00:00.000000Z", 12.0),
+                row("MSFT", "2023-10-01T00:00:00.000000Z", 20.0))));
+        when(questDBService.executeQuery(contains("WHERE date >"))).thenReturn(exec(List.of()));
+        seriesStore.load("historical_d");
+    }
+
+    @Test
+    void isReady_falseUntilLoaded() {
+        assertThat(seriesStore.isReady("historical_d")).isFalse();
+        loadTwoTickers();
+        assertThat(seriesStore.isReady("historical_d")).isTrue();
+        assertThat(seriesStore.isReady("indices_d")).isFalse();
+    }
+
+    @Test
+    void load_batchesTickersAndStoresColumns() {
+        seriesStore.tickerBatchSize = 1;
+        loadTwoTickers();
+
+        verify(questDBService, times(2)).executeQuery(contains("WHERE ticker IN"));
+        OhlcvSeries aapl = seriesStore.readSeries("historical_d", "AAPL", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertThat(aapl.size()).isEqualTo(3);
+        assertThat(aapl.time()[0]).isEqualTo(D1);
+        assertThat(aapl.close()[2]).isEqualTo(12.0);
+        assertThat(aapl.volume()[0]).isEqualTo(1000.0);
+        assertThat(seriesStore.getMaxTime("historical_d")).isEqualTo(D1 + 2 * DAY);
+    }
+
+    @Test
+    void load_tickerListFailure_leavesTableNotReady() {
+        when(questDBService.executeQuery(anyString())).thenReturn(Map.of("success", false));
+        seriesStore.load("historical_d");
+        assertThat(seriesStore.isReady("historical_d")).isFalse();
+    }
+
+    @Test
+    void readSeries_rangeIsInclusive() {
+        loadTwoTickers();
+        OhlcvSeries range = seriesStore.readSeries("historical_d", "AAPL", D1 + DAY, D1 + 2 * DAY);
+        assertThat(range.size()).isEqualTo(2);
+        assertThat(range.close()).containsExactly(11.0, 12.0);
+
+        OhlcvSeries tail = seriesStore.readSeries("historical_d", "AAPL", D1 + 2 * DAY + 1, Long.MAX_VALUE);
+        assertThat(tail.size()).isZero();
+    }
+
+    @Test
+    void readSeries_unknownTicker_isEmpty() {
+        loadTwoTickers();
+        assertThat(seriesStore.readSeries("historical_d", "NOPE", Long.MIN_VALUE, Long.MAX_VALUE).size()).isZero();
+        assertThat(seriesStore.readSeries("indices_d", "AAPL", Long.MIN_VALUE, Long.MAX_VALUE).size()).isZero();
+    }
+
+    @Test
+    void catchUp_appendsOnlyNewerRows_fromWatermarkMinusOneDay() {
+        loadTwoTickers();
+        OhlcvSeries before = seriesStore.readSeries("historical_d", "AAPL", Long.MIN_VALUE, Long.MAX_VALUE);
+        when(questDBService.executeQuery(contains("WHERE date >"))).thenReturn(exec(List.of(
+                row("AAPL", "2023-10-03T00:00:00.000000Z", 99.0),
+                row("AAPL", "2023-10-04T00:00:00.000000Z", 13.0),
+                row("MSFT", "2023-10-02T00:00:00.000000Z", 21.0),
+                row("NVDA", "2023-10-04T00:00:00.000000Z", 30.0))));
+        ArgumentCaptor<String> queryCaptor = ArgumentCaptor.forClass(String.class);
+
+        seriesStore.catchUp("historical_d");
+
+        verify(questDBService, times(2)).executeQuery(contains("WHERE date >"));
+        verify(questDBService, times(4)).executeQuery(queryCaptor.capture());
+        assertThat(queryCaptor.getValue()).contains("to_timestamp('20231002', 'yyyyMMdd')");
+        OhlcvSeries aapl = seriesStore.readSeries("historical_d", "AAPL", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertThat(aapl.size()).isEqualTo(4);
+        assertThat(aapl.close()[2]).isEqualTo(12.0);
+        assertThat(aapl.close()[3]).isEqualTo(13.0);
+        assertThat(seriesStore.readSeries("historical_d", "MSFT", Long.MIN_VALUE, Long.MAX_VALUE).size()).isEqualTo(2);
+        assertThat(seriesStore.readSeries("historical_d", "NVDA", Long.MIN_VALUE, Long.MAX_VALUE).size()).isEqualTo(1);
+        // snapshots handed out earlier are unchanged
+        assertThat(before.size()).isEqualTo(3);
+    }
+
+    @Test
+    void rewritesHistory_forWatermarksBeforeTheNewestStoredDay() {
+        assertThat(seriesStore.rewritesHistory("historical_d", "20230901")).isFalse();
+        loadTwoTickers();
+
+        // an incremental run starts at the newest stored day; a re-run of that day alone starts the day before
+        assertThat(seriesStore.rewritesHistory("historical_d", "20231004")).isFalse();
+        assertThat(seriesStore.rewritesHistory("historical_d", "20231003")).isFalse();
+        assertThat(seriesStore.rewritesHistory("historical_d", "20231002")).isTrue();
+        assertThat(seriesStore.rewritesHistory("historical_d", "20231001")).isTrue();
+    }
+
+    @Test
+    void reload_ignoresTheSnapshot_andReplacesRewrittenRows() {
+        seriesStore.snapshotDir = snapshotDir.toString();
+        loadTwoTickers();
+        when(questDBService.executeQuery(contains("WHERE ticker IN"))).thenReturn(exec(List.of(
+                row("AAPL", "2023-10-01T00:00:00.000000Z", 10.5),
+                row("AAPL", "2023-10-02T00:00:00.000000Z", 11.0),
+                row("AAPL", "2023-10-03T00:00:00.000000Z", 12.0))));
+
+        seriesStore.reload("historical_d", "20230930");
+
+        verify(questDBService, times(2)).executeQuery(contains("WHERE ticker IN"));
+        assertThat(seriesStore.readSeries("historical_d", "AAPL", Long.MIN_VALUE, Long.MAX_VALUE).close()[0]).isEqualTo(10.5);
+        assertThat(seriesStore.readSeries("historical_d", "MSFT", Long.MIN_VALUE, Long.MAX_VALUE).size()).isZero();
+        verify(eventPublisher).publishEvent(new SeriesReloadedEvent("historical_d", "20230930"));
+    }
+
+    @Test
+    void onPipelineStageCompleted_ignoredWhenDisabled() {
+        seriesStore.onPipelineStageCompleted(
+                new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20231001"));
+        verify(questDBService, never()).executeQuery(anyString());
+    }
+
+    @Test
+    void load_writesSnapshot_andRestartRestoresItThenCatchesUpOnly() {
+        seriesStore.snapshotDir = snapshotDir.toString();
+        loadTwoTickers();
+        assertThat(Files.exists(snapshotDir.resolve("historical_d.snap"))).isTrue();
+
+        QuestDBService restartedQuestDB = mock(QuestDBService.class);
+        when(restartedQuestDB.executeQuery(contains("WHERE date >"))).thenReturn(exec(List.of(
+                row("AAPL", "2023-10-04T00:00:00.000000Z", 13.0))));
+        SeriesStore restarted = new SeriesStore();
+        restarted.questDBService = restartedQuestDB;
+        restarted.sqlTemplates = sqlTemplates;
+        restarted.queryMetrics = queryMetrics;
+        restarted.snapshotDir = snapshotDir.toString();
+
+        restarted.load("historical_d");
+
+        verify(restartedQuestDB, times(1)).executeQuery(anyString());
+        verify(restartedQuestDB).executeQuery(contains("to_timestamp('20231002', 'yyyyMMdd')"));
+        assertThat(restarted.isReady("historical_d")).isTrue();
+        OhlcvSeries aapl = restarted.readSeries("historical_d", "AAPL", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertThat(aapl.size()).isEqualTo(4);
+        assertThat(Arrays.copyOf(aapl.close(), aapl.size())).containsExactly(10.0, 11.0, 12.0, 13.0);
+        assertThat(restarted.readSeries("historical_d", "MSFT", Long.MIN_VALUE, Long.MAX_VALUE).size()).isEqualTo(1);
+        assertThat(restarted.getMaxTime("historical_d")).isEqualTo(D1 + 3 * DAY);
+    }
+
+    @Test
+    void load_corruptSnapshot_fallsBackToFullLoad() throws Exception {
+        seriesStore.snapshotDir = snapshotDir.toString();
+        Files.write(snapshotDir.resolve("historical_d.snap"), new byte[]{1, 2, 3});
+
+        loadTwoTickers();
+
+        verify(questDBService).executeQuery(startsWith("SELECT DISTINCT ticker"));
+        assertThat(seriesStore.readSeries("historical_d", "AAPL", Long.MIN_VALUE, Long.MAX_VALUE).size()).isEqualTo(3);
+    }
+
+    @Test
+    void refreshAnalysis_readsEveryType_andRestoresFromSnapshot() {
+        seriesStore.snapshotDir = snapshotDir.toString();
+        assertThat(seriesStore.readAnalysis("high52w")).isNull();
+        when(questDBService.executeQuery(contains("FROM analysis_market"))).thenReturn(exec(List.of(
+                List.of(1696118400000000L, 12.5))));
+
+        seriesStore.refreshAnalysis();
+
+        verify(questDBService, times(SeriesStore.ANALYSIS_TYPES.size())).executeQuery(contains("FROM analysis_market"));
+        assertThat(seriesStore.readAnalysis("MA_50_200").value()).startsWith(12.5);
+        assertThat(seriesStore.readAnalysis("MA_50_200").time()).startsWith(1696118400L);
+
+        QuestDBService unavailable = mock(QuestDBService.class);
+        when(unavailable.executeQuery(anyString())).thenReturn(Map.of("success", false));
+        SeriesStore restarted = new SeriesStore();
+        restarted.questDBService = unavailable;
+        restarted.sqlTemplates = sqlTemplates;
+        restarted.queryMetrics = queryMetrics;
+        restarted.snapshotDir = snapshotDir.toString();
+        restarted.loadAnalysis();
+        assertThat(restarted.readAnalysis("high52w").size()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,83 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private final AtomicInteger leaders = new AtomicInteger();
+    private final AtomicInteger coalesced = new AtomicInteger();
+    private final SingleFlight<String, Object> flight =
+            new SingleFlight<>(shared -> (shared ? coalesced : leaders).incrementAndGet());
+
+    @Test
+    void concurrentCallsForOneKey_shareOneLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Object result = new Object();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> calls = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                calls.add(pool.submit(() -> flight.run("AAPL", () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return result;
+                })));
+            }
+            while (leaders.get() + coalesced.get() < 8) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<Object> call : calls) {
+                assertThat(call.get(5, TimeUnit.SECONDS)).isSameAs(result);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(leaders.get()).isEqualTo(1);
+        assertThat(coalesced.get()).isEqualTo(7);
+        assertThat(flight.inFlight()).isZero();
+    }
+
+    @Test
+    void distinctKeysAndLaterCalls_loadAgain() {
+        AtomicInteger loads = new AtomicInteger();
+        flight.run("AAPL", loads::incrementAndGet);
+        flight.run("MSFT", loads::incrementAndGet);
+        flight.run("AAPL", loads::incrementAndGet);
+
+        assertThat(loads.get()).isEqualTo(3);
+        assertThat(coalesced.get()).isZero();
+    }
+
+    @Test
+    void failedLoad_isRethrown_andNotRemembered() {
+        assertThatThrownBy(() -> flight.run("AAPL", () -> {
+            throw new IllegalStateException("down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(flight.inFlight()).isZero();
+        assertThat(flight.run("AAPL", () -> "ok")).isEqualTo("ok");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
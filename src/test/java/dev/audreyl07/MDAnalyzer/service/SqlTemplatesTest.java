@@ -0,0 +1,137 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SqlTemplatesTest {
+
+    private final SqlTemplates sqlTemplates = new SqlTemplates();
+
+    @Test
+    void loadSchemas_readsEveryTableScript() {
+        Map<String, Set<String>> schemas = SqlTemplates.loadSchemas();
+
+        assertThat(schemas).containsKeys("historical_d", "historical_raw_d", "indices_d", "indices_raw_d",
+                "indicator_d_52w", "indicator_d_ma", "analysis_market", "rs_rank_d", "analysis_group");
+        assertThat(schemas.get("historical_d")).containsExactly("ticker", "date", "open", "high", "low", "close", "vol");
+        assertThat(schemas.get("historical_raw_d")).contains("per", "time", "openint");
+    }
+
+    @Test
+    void validate_templatesMatchScripts() {
+        assertThat(sqlTemplates.validate(SqlTemplates.loadSchemas())).isEmpty();
+    }
+
+    @Test
+    void validate_reportsMissingColumn() {
+        Map<String, Set<String>> schemas = SqlTemplates.parseSchema("""
+                CREATE TABLE analysis_market (
+                  type SYMBOL,
+                  date TIMESTAMP,
+                  total LONG,
+                  percentage DOUBLE
+                ) TIMESTAMP(date) PARTITION BY YEAR WAL;""");
+
+        assertThat(sqlTemplates.validate(schemas)).contains("analysis_ma: analysis_market.count");
+    }
+
+    @Test
+    void dedupKeys_matchScripts_andEveryWrittenScriptedTableHasThem() {
+        Map<String, List<String>> scripted = SqlTemplates.loadDedupKeys();
+
+        assertThat(SqlTemplates.validateDedupKeys(scripted)).isEmpty();
+        assertThat(scripted).containsOnlyKeys("historical_d", "indices_d", "indicator_d_52w", "indicator_d_ma",
+                "analysis_market", "rs_rank_d", "analysis_group");
+        assertThat(scripted.get("indicator_d_52w")).containsExactly("date", "ticker", "type");
+    }
+
+    @Test
+    void validateDedupKeys_reportsOtherKeys() {
+        Map<String, List<String>> scripted = SqlTemplates.parseDedupKeys("""
+                CREATE TABLE analysis_market (
+                  type SYMBOL,
+                  date TIMESTAMP
+                ) TIMESTAMP(date) PARTITION BY YEAR WAL
+                DEDUP UPSERT KEYS(date);""");
+
+        assertThat(scripted).containsEntry("analysis_market", List.of("date"));
+        assertThat(SqlTemplates.validateDedupKeys(scripted)).containsExactly("dedup_analysis_market: analysis_market keys [date]");
+    }
+
+    @Test
+    void render_dedupTemplate_enablesTheTableKeys() {
+        assertThat(sqlTemplates.render(SqlTemplates.dedupTemplate("indicator_d_MA"), Map.of()))
+                .isEqualTo("ALTER TABLE indicator_d_MA DEDUP ENABLE UPSERT KEYS(date, ticker, type);");
+    }
+
+    @Test
+    void render_quotesTextAndWatermark() {
+        String query = sqlTemplates.render(SqlTemplates.INSERT_HISTORICAL, Map.of(
+                "target", "indices_d", "source", "indices_raw_d", "suffix", "^", "watermark", "20240101"));
+
+        assertThat(query).startsWith("INSERT INTO indices_d\n")
+                .contains("replace(ticker, '^', '')")
+                .endsWith("FROM indices_raw_d\nWHERE date > '20240101' ORDER BY date, time ASC;");
+    }
+
+    @Test
+    void render_rejectsTableOutsideAllowedSet() {
+        assertThatThrownBy(() -> sqlTemplates.render(SqlTemplates.TICKERS, Map.of("source", "analysis_market")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void render_rejectsMalformedWatermark() {
+        assertThatThrownBy(() -> sqlTemplates.render(SqlTemplates.ANALYSIS_MA, Map.of("watermark", "2024-01-01' OR 1=1")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void render_missingParameter_isRejected() {
+        assertThatThrownBy(() -> sqlTemplates.render(SqlTemplates.INDICATOR_MA_WINDOW, Map.of("source", "historical_d")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("is missing parameter");
+    }
+
+    @Test
+    void render_textList_quotesEachValue() {
+        String query = sqlTemplates.render(SqlTemplates.INDICATOR_MA_READ,
+                Map.of("source", "historical_d", "tickers", List.of("AAA", "O'B")));
+
+        assertThat(query).isEqualTo(
+                "SELECT ticker, date, close FROM historical_d WHERE ticker IN ('AAA', 'O''B') ORDER BY ticker, date ASC;");
+    }
+
+    @Test
+    void prepare_bindsTextAndCachesSqlPerTable() {
+        SqlTemplate template = sqlTemplates.get(SqlTemplates.SERIES_READ);
+
+        SqlTemplate.Prepared first = template.prepare(Map.of("table", "historical_d", "ticker", "AAPL"));
+        SqlTemplate.Prepared second = template.prepare(Map.of("table", "historical_d", "ticker", "MSFT"));
+
+        assertThat(first.sql()).isEqualTo(
+                "SELECT CAST(date AS LONG) AS date, open, high, low, close, vol FROM historical_d WHERE ticker = ? ORDER BY date ASC");
+        assertThat(first.binds()).containsExactly("AAPL");
+        assertThat(second.binds()).containsExactly("MSFT");
+        assertThat(second.sql()).isSameAs(first.sql());
+    }
+
+    @Test
+    void builder_undeclaredOrUnusedParameter_failsAtCompile() {
+        assertThatThrownBy(() -> SqlTemplate.builder("bad", "SELECT * FROM {table}").build())
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> SqlTemplate.builder("bad", "SELECT 1").integer("n").build())
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void get_unknownTemplate_isRejected() {
+        assertThatThrownBy(() -> sqlTemplates.get("nope")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
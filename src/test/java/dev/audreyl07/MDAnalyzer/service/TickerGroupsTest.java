@@ -0,0 +1,65 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TickerGroupsTest {
+
+    @TempDir
+    Path dir;
+
+    private TickerGroups groups;
+
+    @BeforeEach
+    void setUp() {
+        groups = new TickerGroups();
+        groups.file = dir.resolve("groups.json").toString();
+        groups.load();
+    }
+
+    @Test
+    void put_persistsGroups_andLoadReadsThemBack() throws IOException {
+        assertThat(groups.put("semis", List.of(" NVDA", "AMD", "NVDA", ""))).isTrue();
+        assertThat(groups.put("banks", List.of("JPM"))).isTrue();
+
+        TickerGroups reloaded = new TickerGroups();
+        reloaded.file = groups.file;
+        reloaded.load();
+
+        assertThat(reloaded.getAll()).containsOnlyKeys("banks", "semis");
+        assertThat(reloaded.get("semis")).containsExactly("NVDA", "AMD");
+    }
+
+    @Test
+    void remove_dropsTheGroupFromTheFile() throws IOException {
+        groups.put("banks", List.of("JPM"));
+
+        assertThat(groups.remove("banks")).isTrue();
+        assertThat(groups.remove("banks")).isFalse();
+        TickerGroups reloaded = new TickerGroups();
+        reloaded.file = groups.file;
+        reloaded.load();
+        assertThat(reloaded.getAll()).isEmpty();
+    }
+
+    @Test
+    void put_rejectsBadNamesEmptyGroupsAndLimits() throws IOException {
+        groups.maxGroups = 1;
+        groups.maxTickers = 2;
+
+        assertThat(groups.put("a b", List.of("A"))).isFalse();
+        assertThat(groups.put("empty", List.of(" "))).isFalse();
+        assertThat(groups.put("big", List.of("A", "B", "C"))).isFalse();
+        assertThat(groups.put("one", List.of("A"))).isTrue();
+        assertThat(groups.put("two", List.of("A"))).isFalse();
+        assertThat(groups.put("one", List.of("A", "B"))).isTrue();
+        assertThat(groups.get("one")).containsExactly("A", "B");
+    }
+}
@@ -0,0 +1,50 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimestampDecoderTest {
+
+    @Test
+    void parseEpochSeconds_matchesInstantParse_acrossLeapYearsAndEpochBoundary() {
+        LocalDate date = LocalDate.of(1899, 12, 25);
+        LocalDate end = LocalDate.of(2101, 3, 5);
+        while (date.isBefore(end)) {
+            String ts = date + "T13:45:59.123456Z";
+            assertThat(TimestampDecoder.parseEpochSeconds(ts)).as(ts).isEqualTo(Instant.parse(ts).getEpochSecond());
+            date = date.plusDays(1);
+        }
+    }
+
+    @Test
+    void parseEpochSeconds_questDbLayout() {
+        assertThat(TimestampDecoder.parseEpochSeconds("2023-10-01T00:00:00.000000Z")).isEqualTo(1696118400L);
+        assertThat(TimestampDecoder.parseEpochSeconds("1970-01-01T00:00:00.000000Z")).isZero();
+        assertThat(TimestampDecoder.parseEpochSeconds("1969-12-31T23:59:59.999999Z")).isEqualTo(-1L);
+    }
+
+    @Test
+    void parseEpochSeconds_otherLayout_fallsBackToInstantParse() {
+        assertThat(TimestampDecoder.parseEpochSeconds("2023-10-01T00:00:00.000Z")).isEqualTo(1696118400L);
+        assertThat(TimestampDecoder.parseEpochSeconds("2023-10-01T00:00:00Z")).isEqualTo(1696118400L);
+    }
+
+    @Test
+    void parseEpochSeconds_invalidDigits_throws() {
+        assertThatThrownBy(() -> TimestampDecoder.parseEpochSeconds("2023-1x-01T00:00:00.000000Z"))
+                .isInstanceOf(DateTimeParseException.class);
+    }
+
+    @Test
+    void toEpochSeconds_number_isEpochMicros() {
+        assertThat(TimestampDecoder.toEpochSeconds(1696118400_000000L)).isEqualTo(1696118400L);
+        assertThat(TimestampDecoder.toEpochSeconds(-1L)).isEqualTo(-1L);
+        assertThat(TimestampDecoder.toEpochSeconds("2023-10-02T00:00:00.000000Z")).isEqualTo(1696204800L);
+    }
+}
@@ -0,0 +1,76 @@
+package dev.audreyl07.MDAnalyzer.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WatermarksTest {
+
+    @Mock
+    private QuestDBService questDBService;
+
+    @Mock
+    private SeriesStore seriesStore;
+
+    @InjectMocks
+    private Watermarks watermarks;
+
+    @Test
+    void get_looksUpOnce_untilTableIsWritten() {
+        when(questDBService.getLatestDate("historical_d", null))
+                .thenReturn("20240105", "20240108");
+
+        assertThat(watermarks.get("historical_d")).isEqualTo("20240105");
+        assertThat(watermarks.get("historical_d")).isEqualTo("20240105");
+        verify(questDBService, times(1)).getLatestDate("historical_d", null);
+
+        watermarks.onPipelineStageCompleted(
+                new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20240105"));
+        assertThat(watermarks.get("historical_d")).isEqualTo("20240108");
+    }
+
+    @Test
+    void served_isTheStoresNewestDay_untilItCatchesUp() {
+        when(seriesStore.isReady("historical_d")).thenReturn(true);
+        when(seriesStore.getMaxTime("historical_d")).thenReturn(1704153600L);
+
+        assertThat(watermarks.served("historical_d")).isEqualTo("20240102");
+        verify(questDBService, never()).getLatestDate("historical_d", null);
+    }
+
+    @Test
+    void served_withoutStore_isTheTablesDate() {
+        when(questDBService.getLatestDate("historical_d", null)).thenReturn("20240105");
+
+        assertThat(watermarks.served("historical_d")).isEqualTo("20240105");
+    }
+
+    @Test
+    void generation_countsStageRunsAndReloads() {
+        assertThat(watermarks.generation("historical_d")).isZero();
+
+        watermarks.onPipelineStageCompleted(
+                new PipelineStageCompletedEvent(SqlTemplates.INSERT_HISTORICAL, "historical_d", "20240102"));
+        watermarks.onSeriesReloaded(new SeriesReloadedEvent("historical_d", "20240102"));
+
+        assertThat(watermarks.generation("historical_d")).isEqualTo(2);
+        assertThat(watermarks.generation("indices_d")).isZero();
+    }
+
+    @Test
+    void get_unknownDate_isNotCached() {
+        when(questDBService.getLatestDate("indices_d", null)).thenReturn(null, "20240105");
+
+        assertThat(watermarks.get("indices_d")).isNull();
+        assertThat(watermarks.get("indices_d")).isEqualTo("20240105");
+    }
+}